@@ -22,7 +22,6 @@ import android.location.Location;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Parcelable;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -50,6 +49,7 @@ import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
 import net.exclaimindustries.geohashdroid.R;
+import net.exclaimindustries.geohashdroid.core.HashDate;
 import net.exclaimindustries.geohashdroid.fragments.AboutDialogFragment;
 import net.exclaimindustries.geohashdroid.fragments.GHDDatePickerDialogFragment;
 import net.exclaimindustries.geohashdroid.fragments.MapTypeDialogFragment;
@@ -62,8 +62,10 @@ import net.exclaimindustries.geohashdroid.util.GHDConstants;
 import net.exclaimindustries.geohashdroid.util.Graticule;
 import net.exclaimindustries.geohashdroid.util.Info;
 import net.exclaimindustries.geohashdroid.util.KnownLocation;
+import net.exclaimindustries.geohashdroid.util.KnownLocationStore;
 import net.exclaimindustries.geohashdroid.util.PermissionsDeniedListener;
 import net.exclaimindustries.geohashdroid.util.SelectAGraticuleMode;
+import net.exclaimindustries.geohashdroid.util.StockResult;
 import net.exclaimindustries.geohashdroid.util.UnitConverter;
 import net.exclaimindustries.geohashdroid.util.VersionHistoryParser;
 import net.exclaimindustries.geohashdroid.widgets.ErrorBanner;
@@ -74,7 +76,6 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.text.DateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -543,12 +544,15 @@ public class CentralMap
             // whether or not we're even going to bother with it.
             int reqFlags = bun.getInt(StockService.EXTRA_REQUEST_FLAGS, 0);
             long reqId = bun.getLong(StockService.EXTRA_REQUEST_ID, -1);
-            Calendar cal = (Calendar)bun.getSerializable(StockService.EXTRA_DATE);
 
             // Now, if the flags state this was from the alarm or somewhere else
             // we weren't expecting, give up now.  We don't want it.
             if((reqFlags & StockService.FLAG_ALARM) != 0) return;
 
+            // The result itself is just a few flat arrays; no Infos get built
+            // until we ask for them below, and only if we actually want them.
+            StockResult result = bun.getParcelable(StockService.EXTRA_RESULT);
+
             // Well, it's what we're looking for.  What was the result?  The
             // default is RESPONSE_NETWORK_ERROR, as not getting a response code
             // is a Bad Thing(tm).
@@ -564,15 +568,10 @@ public class CentralMap
                 // the Info out of it and fire it away to the corresponding
                 // CentralMapMode, if applicable.
                 if(modeMatches) {
-                    Info received = bun.getParcelable(StockService.EXTRA_INFO);
-                    Parcelable[] pArr = bun.getParcelableArray(StockService.EXTRA_NEARBY_POINTS);
-
-                    Info[] nearby = null;
-                    if(pArr != null)
-                        nearby = Arrays.copyOf(pArr, pArr.length, Info[].class);
+                    Info received = result == null ? null : result.getInfo();
                     if(received != null) {
                         updateLastGraticule(received);
-                        mCurrentMode.handleInfo(received, nearby, reqFlags);
+                        mCurrentMode.handleInfo(received, result.getNearbyPoints(), reqFlags);
                     }
                 } else {
                     Log.w(DEBUG_TAG, "Request ID " + reqId + " was NOT expected by this mode, ignoring...");
@@ -589,11 +588,8 @@ public class CentralMap
                         case StockService.RESPONSE_NOT_POSTED_YET:
                             // Just in case, change the text if it's today's
                             // date that was requested.  That's a bit clearer.
-                            Calendar today = Calendar.getInstance();
-                            boolean isActuallyToday = (cal != null
-                                && today.get(Calendar.YEAR) == cal.get(Calendar.YEAR)
-                                && today.get(Calendar.MONTH) == cal.get(Calendar.MONTH)
-                                && today.get(Calendar.DAY_OF_MONTH) == cal.get(Calendar.DAY_OF_MONTH));
+                            boolean isActuallyToday = (result != null
+                                && result.getHashDate().equals(HashDate.fromCalendar(Calendar.getInstance())));
 
                             mBanner.setText(getString(isActuallyToday ? R.string.error_not_yet_posted_today : R.string.error_not_yet_posted));
                             mBanner.setErrorStatus(ErrorBanner.Status.ERROR);
@@ -619,6 +615,14 @@ public class CentralMap
 
     private StockReceiver mStockReceiver = new StockReceiver();
 
+    // If the KnownLocations change while we're around (say, in
+    // KnownLocationsPicker, or from a backup restore), redraw them.  That
+    // might not be on the main thread, hence runOnUiThread.
+    private KnownLocationStore.OnKnownLocationsChangedListener mKnownLocationsListener =
+            snapshot -> runOnUiThread(() -> {
+                if(mMapIsReady) drawKnownLocations(snapshot);
+            });
+
     private LocationCallback mLocationCallback = new LocationCallback() {
         @Override
         public void onLocationResult(LocationResult locationResult) {
@@ -719,6 +723,11 @@ public class CentralMap
             }
         });
 
+        // The KnownLocations can change while we're in the background (that's
+        // what KnownLocationsPicker is for, after all), so keep listening all
+        // the way to onDestroy.
+        KnownLocationStore.get(this).addListener(mKnownLocationsListener);
+
         // Perform startup and cleanup work before the modes arrive.
         doStartupStuff();
 
@@ -812,6 +821,8 @@ public class CentralMap
 
     @Override
     protected void onDestroy() {
+        KnownLocationStore.get(this).removeListener(mKnownLocationsListener);
+
         // Make sure that mode's been cleaned up first.
         mCurrentMode.cleanUp();
 
@@ -1111,6 +1122,23 @@ public class CentralMap
                 .putExtra(StockService.EXTRA_REQUEST_ID, date)
                 .putExtra(StockService.EXTRA_REQUEST_FLAGS, flags);
 
+        // Only the newest request from any given mode matters (the user might
+        // be flipping through dates or typing in a Graticule), so let
+        // StockService drop anything older from the same mode.
+        if(mCurrentMode != null)
+            i.putExtra(StockService.EXTRA_SUPERSEDE_KEY, mCurrentMode.getClass().getName());
+
+        // If we want nearby points, we want however many the user asked for.
+        if((flags & StockService.FLAG_INCLUDE_NEARBY_POINTS) != 0) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+            try {
+                i.putExtra(StockService.EXTRA_NEARBY_RADIUS,
+                        Integer.parseInt(prefs.getString(GHDConstants.PREF_NEARBY_RADIUS, "1")));
+            } catch(NumberFormatException nfe) {
+                // Eh, StockService defaults to 1 anyway.
+            }
+        }
+
         mStockReceiver.addToWaitingList(date);
 
         StockService.enqueueWork(this, i);
@@ -1188,14 +1216,14 @@ public class CentralMap
                 mCurrentMode.onLocationChanged(mLastKnownLocation);
             invalidateOptionsMenu();
 
-            drawKnownLocations();
+            drawKnownLocations(KnownLocationStore.get(this).getAll());
 
             // And finally, start listening.
             startListening();
         }
     }
 
-    private void drawKnownLocations() {
+    private void drawKnownLocations(@NonNull List<KnownLocation> locations) {
         // Now, read all the KnownLocations and put them on the map.  Remove
         // anything we had before.
         if(mKnownLocationMarkers != null) {
@@ -1208,7 +1236,7 @@ public class CentralMap
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
 
         if(prefs.getBoolean(GHDConstants.PREF_SHOW_KNOWN_LOCATIONS, true)) {
-            for(KnownLocation kl : KnownLocation.getAllKnownLocations(this)) {
+            for(KnownLocation kl : locations) {
                 // No snippet this time; there's nothing to do with the marker
                 // other than show its name.
                 Marker mark = mMap.addMarker(kl.makeMarker(this));
@@ -61,6 +61,7 @@ import net.exclaimindustries.geohashdroid.R;
 import net.exclaimindustries.geohashdroid.util.GHDConstants;
 import net.exclaimindustries.geohashdroid.util.KnownLocation;
 import net.exclaimindustries.geohashdroid.util.KnownLocationPinData;
+import net.exclaimindustries.geohashdroid.util.KnownLocationStore;
 import net.exclaimindustries.geohashdroid.util.UnitConverter;
 
 import org.opensextant.geodesy.Angle;
@@ -86,7 +87,8 @@ public class KnownLocationsPicker
         implements GoogleMap.OnMapLongClickListener,
                    GoogleMap.OnMarkerClickListener,
                    GoogleMap.OnInfoWindowClickListener,
-                   Handler.Callback {
+                   Handler.Callback,
+                   KnownLocationStore.OnKnownLocationsChangedListener {
     private static final String DEBUG_TAG = "KnownLocationsPicker";
 
     // These get passed into the dialog.
@@ -439,7 +441,12 @@ public class KnownLocationsPicker
         // Now, we'll need to get the list of KnownLocations right away so we
         // can put them on the map.  Well, I guess not RIGHT away.  We still
         // have to wait on the map callbacks, but still, let's fetch them now.
-        mLocations = KnownLocation.getAllKnownLocations(this);
+        // After that, the store tells us whenever they change, which includes
+        // every change we make ourselves.  So, we never touch this list
+        // directly; we just change the store and wait for the new list.
+        KnownLocationStore store = KnownLocationStore.get(this);
+        mLocations = store.getAll();
+        store.addListener(this);
 
         // We need maps.
         mMarkerMap = HashBiMap.create();
@@ -568,6 +575,26 @@ public class KnownLocationsPicker
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+        KnownLocationStore.get(this).removeListener(this);
+
+        super.onDestroy();
+    }
+
+    @Override
+    public void onKnownLocationsChanged(@NonNull List<KnownLocation> snapshot) {
+        // Usually, this is us changing something on the main thread, but a
+        // backup restore could come in from anywhere.
+        runOnUiThread(() -> {
+            mLocations = snapshot;
+
+            // If the map's not ready yet, doReadyChecks will get to it.
+            if(mMapIsReady && mLayoutComplete)
+                initKnownLocations();
+        });
+    }
+
     @Override
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -818,18 +845,13 @@ public class KnownLocationsPicker
         // An address!  We know what to do with this, right?
         KnownLocation newLoc = new KnownLocation(name, location, range, restrictGraticule);
 
-        // Of course we do!  It's guaranteed to be a new marker!
-        mLocations.add(newLoc);
-
-        // And what's more, it's guaranteed to have an old version on the map!
+        // Of course we do!  It's guaranteed to have an old version on the
+        // map, so that goes first.
         mActiveAddressMap.inverse().remove(address).remove();
 
-        // Then, replace it with the new one.
-        Marker newMark = mMap.addMarker(makeExistingMarker(newLoc));
-        Circle newCircle = mMap.addCircle(newLoc.makeCircle(this));
-        mMarkerMap.forcePut(newMark, newLoc);
-        mCircleMap.forcePut(newCircle, newLoc);
-        KnownLocation.storeKnownLocations(this, mLocations);
+        // Then, it's guaranteed to be a new KnownLocation.  The store will
+        // tell us about it, and its marker goes on the map then.
+        KnownLocationStore.get(this).add(newLoc);
 
         mActiveAddresses.remove(address);
         if(mActiveMarker != null) mActiveMarker.remove();
@@ -846,30 +868,17 @@ public class KnownLocationsPicker
         // Okay, we got location data in.  Make one!
         KnownLocation newLoc = new KnownLocation(name, location, range, restrictGraticule);
 
-        // Is this new or a replacement?
+        // Is this new or a replacement?  Either way, the store tells us about
+        // it, and the markers get redrawn then.
+        KnownLocationStore store = KnownLocationStore.get(this);
         if(existing != null) {
-            // Replacement!  Or rather, remove the old one and re-add the new
-            // one in place.
-            int oldIndex = mLocations.indexOf(existing);
-            mLocations.remove(oldIndex);
-            mLocations.add(oldIndex, newLoc);
-
-            // Since this is an existing KnownLocation, the marker should be in
-            // that map, ripe for removal.
-            mMarkerMap.inverse().remove(existing).remove();
-            mCircleMap.inverse().remove(existing).remove();
+            // Replacement!  The store keeps it in the same place in the list.
+            store.replace(existing, newLoc);
         } else {
             // Brand new!
-            mLocations.add(newLoc);
+            store.add(newLoc);
         }
 
-        // In both cases, store the data and add a new marker.
-        Marker newMark = mMap.addMarker(makeExistingMarker(newLoc));
-        Circle newCircle = mMap.addCircle(newLoc.makeCircle(this));
-        mMarkerMap.forcePut(newMark, newLoc);
-        mCircleMap.forcePut(newCircle, newLoc);
-        KnownLocation.storeKnownLocations(this, mLocations);
-
         // And remove the marker from the map.  The visual one this time.
         // TODO: Null-checking shouldn't be necessary here.
         if(mActiveMarker != null) mActiveMarker.remove();
@@ -882,16 +891,9 @@ public class KnownLocationsPicker
         // This better exist, else we're in trouble.
         if(!mMarkerMap.containsValue(existing)) return;
 
-        // Clear it from the map and from the marker list.
-        Marker marker = mMarkerMap.inverse().get(existing);
-        marker.remove();
-        mMarkerMap.remove(marker);
-        mCircleMap.inverse().remove(existing).remove();
-
-        // Then, remove it from the location list and push that back to the
-        // preferences.
-        mLocations.remove(existing);
-        KnownLocation.storeKnownLocations(this, mLocations);
+        // Take it out of the store.  The store tells us, and its marker comes
+        // off the map then.
+        KnownLocationStore.get(this).remove(existing);
 
         // Also, clear out the active location and marker.
         removeActiveKnownLocation();
@@ -18,6 +18,7 @@ import android.os.Bundle;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
+import android.preference.PreferenceCategory;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import androidx.annotation.StringRes;
@@ -28,6 +29,7 @@ import net.exclaimindustries.geohashdroid.services.AlarmService;
 import net.exclaimindustries.geohashdroid.services.WikiService;
 import net.exclaimindustries.geohashdroid.util.GHDConstants;
 import net.exclaimindustries.geohashdroid.util.HashBuilder;
+import net.exclaimindustries.geohashdroid.util.StockMetrics;
 import net.exclaimindustries.tools.QueueService;
 
 import java.util.List;
@@ -192,6 +194,7 @@ public class PreferencesScreen extends PreferenceActivity {
             bindPreferenceSummaryToValue(findPreference(GHDConstants.PREF_DIST_UNITS));
             bindPreferenceSummaryToValue(findPreference(GHDConstants.PREF_COORD_UNITS));
             bindPreferenceSummaryToValue(findPreference(GHDConstants.PREF_STARTUP_BEHAVIOR));
+            bindPreferenceSummaryToValue(findPreference(GHDConstants.PREF_NEARBY_RADIUS));
 
             // This one needs special handling due to its onPreferenceChange
             // being overridden elsewhere.
@@ -306,6 +309,7 @@ public class PreferencesScreen extends PreferenceActivity {
     public static class OtherPreferenceFragment extends PreferenceFragment {
         private static final String WIPE_DIALOG = "wipeDialog";
         private static final String RESET_BUGGING_ME_DIALOG = "resetBuggingMe";
+        private static final String STOCK_METRICS_DIALOG = "stockMetrics";
 
         /**
          * This is the {@link DialogFragment} that shows up when the user wants
@@ -367,12 +371,45 @@ public class PreferencesScreen extends PreferenceActivity {
             }
         }
 
+        /**
+         * This one's just for debugging.  It shows whatever StockMetrics has
+         * to say about how the stock lookups have been going.
+         */
+        public static class StockMetricsDialogFragment extends DialogFragment {
+            @Override
+            public Dialog onCreateDialog(Bundle savedInstanceState) {
+                return new AlertDialog.Builder(getActivity()).setMessage(StockMetrics.dumpToString())
+                        .setTitle(R.string.pref_stockmetrics_title)
+                        .setPositiveButton(R.string.close_label, (dialog, which) -> dismiss())
+                        .setNeutralButton(R.string.dialog_stockmetrics_reset, (dialog, which) -> {
+                            StockMetrics.reset();
+                            dismiss();
+                        })
+                        .create();
+            }
+        }
+
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
             addPreferencesFromResource(R.xml.pref_other);
 
+            // The debug section stays hidden unless someone went looking for
+            // it.
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+            PreferenceCategory debug = (PreferenceCategory)findPreference("_debug");
+            if(!prefs.getBoolean(GHDConstants.PREF_SHOW_DEBUG_INFO, false)) {
+                getPreferenceScreen().removePreference(debug);
+            } else {
+                findPreference("_stockMetrics").setOnPreferenceClickListener(preference -> {
+                    DialogFragment frag = new StockMetricsDialogFragment();
+                    frag.show(getFragmentManager(), STOCK_METRICS_DIALOG);
+                    return true;
+                });
+            }
+
             bindPreferenceSummaryToValue(findPreference(GHDConstants.PREF_STOCK_CACHE_SIZE));
+            bindPreferenceSummaryToValue(findPreference(GHDConstants.PREF_STOCK_HEDGE_DELAY));
 
             // The stock alarm preference needs to enable/disable the alarm as
             // need be.
@@ -12,15 +12,25 @@ import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.DialogFragment;
+import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.preference.PreferenceManager;
 import android.view.View;
+import android.widget.Toast;
 
 import net.exclaimindustries.geohashdroid.R;
+import net.exclaimindustries.geohashdroid.util.GHDConstants;
 
 /**
  * Where credits become due and links become available.
  */
 public class AboutDialogFragment extends DialogFragment {
+    // How many taps on the version it takes to turn on the debug section of
+    // the preferences.  Yes, this is the same trick Android itself uses.
+    private static final int DEBUG_TAPS = 7;
+
+    private int mVersionTaps = 0;
+
     /**
      * Generates a new AboutDialogFragment, suitable for use in a dialog.
      *
@@ -38,6 +48,16 @@ public class AboutDialogFragment extends DialogFragment {
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         View v = getActivity().getLayoutInflater().inflate(R.layout.about, null);
 
+        v.findViewById(R.id.about_version).setOnClickListener(view -> {
+            if(++mVersionTaps != DEBUG_TAPS) return;
+
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+            if(prefs.getBoolean(GHDConstants.PREF_SHOW_DEBUG_INFO, false)) return;
+
+            prefs.edit().putBoolean(GHDConstants.PREF_SHOW_DEBUG_INFO, true).apply();
+            Toast.makeText(getActivity(), R.string.toast_debug_info_enabled, Toast.LENGTH_SHORT).show();
+        });
+
         return new AlertDialog.Builder(getActivity())
                 .setView(v)
                 .setPositiveButton(R.string.cool_label, (dialog, which) -> dismiss())
@@ -33,24 +33,33 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 import android.util.Log;
 
+import com.google.android.gms.maps.model.LatLng;
+
 import net.exclaimindustries.geohashdroid.R;
 import net.exclaimindustries.geohashdroid.activities.CentralMap;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
 import net.exclaimindustries.geohashdroid.util.GHDConstants;
 import net.exclaimindustries.geohashdroid.util.Graticule;
 import net.exclaimindustries.geohashdroid.util.HashBuilder;
 import net.exclaimindustries.geohashdroid.util.Info;
 import net.exclaimindustries.geohashdroid.util.KnownLocation;
+import net.exclaimindustries.geohashdroid.util.KnownLocationIndex;
+import net.exclaimindustries.geohashdroid.util.KnownLocationStore;
+import net.exclaimindustries.geohashdroid.util.StockPostingStats;
 import net.exclaimindustries.geohashdroid.util.UnitConverter;
 import net.exclaimindustries.tools.AndroidUtil;
 
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.TreeSet;
 
 /**
  * <p>
@@ -73,6 +82,11 @@ public class AlarmService extends JobIntentService {
     
     private static final String DEBUG_TAG = "AlarmService";
 
+    // Retries start out this many minutes apart, doubling each time until
+    // they hit the maximum.
+    private static final long FIRST_RETRY_MINUTES = 2;
+    private static final long MAX_RETRY_MINUTES = 30;
+
     private AlarmManager mAlarmManager;
     private NotificationManagerCompat mNotificationManager;
     
@@ -343,6 +357,70 @@ public class AlarmService extends JobIntentService {
         return base;
     }
 
+    /**
+     * All the hash dates that one stock decides.  Usually that's today (for
+     * anything outside 30W territory) and tomorrow (for anything inside it).
+     * On a Friday, though, Friday's stock decides Friday, the whole weekend,
+     * and Monday's 30W hash, so we can deal with all of those at once and not
+     * bother waking up again until Monday.
+     */
+    private static final class Lookahead {
+        /** The stock date everything here comes from. */
+        final HashDate stockDate;
+        /** The dates decided for anything outside 30W territory. */
+        final List<HashDate> dates = new ArrayList<>();
+        /** The dates decided for anything inside 30W territory. */
+        final List<HashDate> dates30w = new ArrayList<>();
+        /** The Globalhash dates decided. */
+        final List<HashDate> globalDates = new ArrayList<>();
+        /** The first date that'll need a new stock. */
+        final HashDate nextStockDay;
+
+        Lookahead(@NonNull HashDate base) {
+            stockDate = base.getStockDate(false);
+
+            // A week out is more than enough; even a three-day weekend only
+            // covers four dates.
+            HashDate next = null;
+            for(int i = 0; i < 7; i++) {
+                HashDate date = base.plusDays(i);
+
+                if(date.getStockDate(false).equals(stockDate))
+                    dates.add(date);
+                else if(next == null)
+                    next = date;
+
+                if(date.getStockDate(true).equals(stockDate))
+                    dates30w.add(date);
+
+                if(date.getStockDate(date.usesPreviousDay(PackedGraticule.GLOBALHASH)).equals(stockDate))
+                    globalDates.add(date);
+            }
+
+            nextStockDay = next == null ? base.plusDays(1) : next;
+        }
+
+        /**
+         * @return every date in here, in order, no duplicates
+         */
+        @NonNull
+        List<HashDate> getAllDates() {
+            TreeSet<HashDate> all = new TreeSet<>(dates);
+            all.addAll(dates30w);
+            all.addAll(globalDates);
+            return new ArrayList<>(all);
+        }
+    }
+
+    @NonNull
+    private Lookahead makeLookahead() {
+        // This works in New York time, since that's where the stocks come
+        // from.  If it's before 9:30am there, today's stock isn't out yet, so
+        // the most recent one is yesterday's.
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("America/New_York"));
+        return new Lookahead(HashDate.fromCalendar(getMostRecentStockDate(now)));
+    }
+
     private void showNotification(@NonNull Calendar date) {
         // The notification in this case just says when there's an active
         // network transaction going.  We don't need to bug the user that we're
@@ -361,23 +439,66 @@ public class AlarmService extends JobIntentService {
         mNotificationManager.cancel(R.id.alarm_notification);
     }
     
+    private void resetRetries() {
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putInt(GHDConstants.PREF_STOCK_ALARM_RETRY_COUNT, 0)
+                .apply();
+    }
+
     private void snooze() {
+        // Each retry waits twice as long as the last one, starting from a
+        // couple minutes and topping out at the old half hour.  The jitter
+        // keeps us from landing on the servers at the exact same moment as
+        // everyone else who had the same idea.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        int attempt = prefs.getInt(GHDConstants.PREF_STOCK_ALARM_RETRY_COUNT, 0);
+        prefs.edit().putInt(GHDConstants.PREF_STOCK_ALARM_RETRY_COUNT, attempt + 1).apply();
+
+        long delay = Math.min(MAX_RETRY_MINUTES, FIRST_RETRY_MINUTES << Math.min(attempt, 5)) * 60000L;
+        delay = (long)(delay * (0.75 + Math.random() * 0.5));
+
+        // But, if we've seen the stock show up on this day of the week before
+        // that'd go off, wake up right after that instead.  Not any sooner
+        // than the first retry would've been, though.  A posting time a
+        // minute from now is no excuse to hit the servers every minute.
+        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("America/New_York"));
+        int nowMinute = StockPostingStats.getCurrentMinute();
+        int likely = StockPostingStats.get(this).getNextLikelyMinute(now.get(Calendar.DAY_OF_WEEK), nowMinute);
+        if(likely >= 0) {
+            long untilLikely = Math.max(FIRST_RETRY_MINUTES * 60000L, (likely + 1 - nowMinute) * 60000L);
+            if(untilLikely < delay) delay = untilLikely;
+        }
+
         Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.MINUTE, 30);
-        
-        Intent alarmIntent = new Intent(this, StockAlarmReceiver.class);
-        alarmIntent.setAction(STOCK_ALARM_RETRY);
+        cal.setTimeInMillis(System.currentTimeMillis() + delay);
+
+        Log.d(DEBUG_TAG, "Retry #" + (attempt + 1) + " set for " + cal.getTime().toString());
+
+        setAlarm(STOCK_ALARM_RETRY, cal);
+    }
+
+    /**
+     * Sets a wakeup alarm to send the given action to StockAlarmReceiver at
+     * the given time.  We need to re-set one of these every time rather than
+     * use setRepeating, because Doze ruined that for us.
+     *
+     * @param action the action to send
+     * @param alarmTime when to send it
+     */
+    private void setAlarm(@NonNull String action, @NonNull Calendar alarmTime) {
+        Intent alarmIntent = new Intent(action);
+        alarmIntent.setClass(this, StockAlarmReceiver.class);
 
         // Even if the user's added us to the whitelist, we won't be able to use
         // the plain set call in Marshmallow or higher.  Not with Doze to worry
         // about.
         if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             mAlarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP,
-                    cal.getTimeInMillis(),
+                    alarmTime.getTimeInMillis(),
                     PendingIntent.getBroadcast(this, 0, alarmIntent, 0));
         } else {
             mAlarmManager.set(AlarmManager.RTC_WAKEUP,
-                    cal.getTimeInMillis(),
+                    alarmTime.getTimeInMillis(),
                     PendingIntent.getBroadcast(this, 0, alarmIntent, 0));
         }
     }
@@ -409,64 +530,113 @@ public class AlarmService extends JobIntentService {
         // We're aiming at 9:30am ET (with any applicable DST adjustments).  The
         // NYSE opens at 9:00am ET, but in the interests of possible clock
         // discrepancies and such (not to mention any delays in the stock
-        // reporting sites being updated), we'll wait the extra half hour.  The
-        // alarm should be the NEXT available 9:30am ET.  If the user wants to
-        // take a chance and get a stock value closer to 9:00am ET than that,
-        // well, they can do it themselves.
+        // reporting sites being updated), we'll wait the extra half hour.  If
+        // the stock's been showing up later than that on this day of the
+        // week, StockPostingStats will push that back a bit.  The alarm should
+        // be the NEXT available one.  If the user wants to take a chance and
+        // get a stock value closer to 9:00am ET than that, well, they can do
+        // it themselves.
         Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("America/New_York"));
-        Calendar alarmTime = makeNineThirty(cal);
+        Calendar alarmTime = (Calendar)cal.clone();
+        setFirstAttemptTime(alarmTime);
 
         if(definitelyTomorrow || alarmTime.before(cal)) {
             alarmTime.add(Calendar.DAY_OF_MONTH, 1);
+            setFirstAttemptTime(alarmTime);
         }
 
-        Intent alarmIntent = new Intent(STOCK_ALARM);
-        alarmIntent.setClass(this, StockAlarmReceiver.class);
-
         Log.d(DEBUG_TAG, "Setting a wakeup alarm for " + alarmTime.getTime().toString());
 
-        // Because there's no Doze-friendly version of setRepeating (grr), we
-        // have to re-set an allow-idle alarm every time.
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            mAlarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP,
-                    alarmTime.getTimeInMillis(),
-                    PendingIntent.getBroadcast(this, 0, alarmIntent, 0));
-        } else {
-            mAlarmManager.set(AlarmManager.RTC_WAKEUP,
-                    alarmTime.getTimeInMillis(),
-                    PendingIntent.getBroadcast(this, 0, alarmIntent, 0));
+        setAlarm(STOCK_ALARM, alarmTime);
+    }
+    
+    /**
+     * Sets the given Calendar's time to when we should make the first attempt
+     * at that date's stock.  That's 9:30am ET unless StockPostingStats says
+     * the stock's usually later than that on this day of the week.  The
+     * Calendar had better be in New York time already.
+     *
+     * @param cal the Calendar to change
+     */
+    private void setFirstAttemptTime(@NonNull Calendar cal) {
+        int minute = StockPostingStats.get(this).getFirstAttemptMinute(cal.get(Calendar.DAY_OF_WEEK));
+
+        cal.set(Calendar.HOUR_OF_DAY, minute / 60);
+        cal.set(Calendar.MINUTE, minute % 60);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+    }
+
+    /**
+     * Sets up the next stock alarm for the first attempt on the given date.
+     * If that's already passed, this falls back to
+     * {@link #setNextAlarm(boolean)} with true.
+     *
+     * @param date the date to wake up on
+     */
+    private void setNextAlarm(@NonNull HashDate date) {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("America/New_York"));
+        Calendar alarmTime = (Calendar)cal.clone();
+        alarmTime.set(date.getYear(), date.getMonth() - 1, date.getDayOfMonth());
+        setFirstAttemptTime(alarmTime);
+
+        if(!alarmTime.after(cal)) {
+            setNextAlarm(true);
+            return;
         }
 
+        Log.d(DEBUG_TAG, "Setting a wakeup alarm for " + alarmTime.getTime().toString());
+
+        setAlarm(STOCK_ALARM, alarmTime);
     }
-    
-    private void sendRequest(@NonNull Graticule g) {
-        // The Graticule will be one of the dummies, as all we really care about
-        // is if it's 30W or not.  And we don't really care about it THAT much,
-        // just enough to put the right string in the notification.  Otherwise,
-        // StockService works it out.
-        Calendar cal = Calendar.getInstance();
 
-        // However, if it IS 30W, we want to generate a stock cache value for
-        // TOMORROW, as the 30W Rule allows us to know what tomorrow's hash is,
-        // and we WANT that owing to when it triggers.
-        if(g.uses30WRule()) cal.add(Calendar.DATE, 1);
-        cal = getMostRecentStockDate(cal);
-        
-        Intent request = new Intent(this, StockService.class);
-        request.setAction(StockService.ACTION_STOCK_REQUEST)
-            .putExtra(StockService.EXTRA_GRATICULE, g)
-            .putExtra(StockService.EXTRA_DATE, cal)
+    private void sendRequest() {
+        // We want every hash date the most recent stock decides, on both sides
+        // of the 30W line.  The Graticules are the dummies, as all we really
+        // care about is if they're 30W or not; StockService works out the
+        // rest.  Since those all come from the same stock, StockService will
+        // only go out to get it once.
+        Lookahead ahead = makeLookahead();
+
+        List<HashDate> dates = new ArrayList<>();
+        List<Graticule> graticules = new ArrayList<>();
+        for(HashDate date : ahead.dates30w) {
+            dates.add(date);
+            graticules.add(GHDConstants.DUMMY_YESTERDAY);
+        }
+        for(HashDate date : ahead.dates) {
+            dates.add(date);
+            graticules.add(GHDConstants.DUMMY_TODAY);
+        }
+
+        Calendar cal = ahead.stockDate.toCalendar();
+
+        Intent request = StockService.makeBatchRequest(this, dates, graticules)
             .putExtra(StockService.EXTRA_REQUEST_ID, cal.getTimeInMillis() / 1000)
             .putExtra(StockService.EXTRA_REQUEST_FLAGS, StockService.FLAG_ALARM)
             .putExtra(StockService.EXTRA_RESPOND_TO, StockReceiver.class);
         
         // The notification goes up first.
-        showNotification(Info.makeAdjustedCalendar(cal, g));
+        showNotification(cal);
         
         // THEN we send the request.
         StockService.enqueueWork(this, request);
     }
 
+    private static int worstResponse(@NonNull int[] codes) {
+        // No connection trumps everything, since nothing's getting done
+        // until we've got one.  After that, any failure means we try again
+        // later.  Only if everything's okay are we okay.
+        int worst = StockService.RESPONSE_OKAY;
+        for(int code : codes) {
+            if(code == StockService.RESPONSE_NO_CONNECTION)
+                return code;
+            if(code != StockService.RESPONSE_OKAY)
+                worst = code;
+        }
+        return worst;
+    }
+
     /**
      * Convenience method for enqueuing work in to this service.
      */
@@ -521,7 +691,7 @@ public class AlarmService extends JobIntentService {
             case STOCK_ALARM:
             case STOCK_ALARM_RETRY:
             case STOCK_ALARM_NETWORK_BACK:
-            case StockService.ACTION_STOCK_RESULT:
+            case StockService.ACTION_STOCK_BATCH_RESULT:
                 // Aha!  NOW we've got something!
                 Log.d(DEBUG_TAG, "AlarmService has business to attend to!");
 
@@ -534,9 +704,11 @@ public class AlarmService extends JobIntentService {
                 }
 
                 // If we just got the stock alarm, we need to reschedule right away.
+                // This is also a fresh start as far as retries go.
                 if(intent.getAction().equals(STOCK_ALARM)) {
                     Log.d(DEBUG_TAG, "Rescheduling next STOCK_ALARM...");
                     setNextAlarm(true);
+                    resetRetries();
                 }
 
                 // If we got the REAL stock alarm while still waiting on the RETRY
@@ -551,14 +723,16 @@ public class AlarmService extends JobIntentService {
                 // and other things that the alarm-checking StockService used to
                 // take care of.  It'll also tell us if the stock hasn't been
                 // posted just yet.  So, we can count on that for error checking.
-                if(intent.getAction().equals(StockService.ACTION_STOCK_RESULT)) {
+                if(intent.getAction().equals(StockService.ACTION_STOCK_BATCH_RESULT)) {
                     Log.d(DEBUG_TAG, "Just got a stock result!");
 
                     Bundle bun = intent.getBundleExtra(StockService.EXTRA_STUFF);
                     bun.setClassLoader(getClassLoader());
 
-                    int result = bun.getInt(StockService.EXTRA_RESPONSE_CODE, StockService.RESPONSE_NOT_POSTED_YET);
-                    Graticule g = bun.getParcelable(StockService.EXTRA_GRATICULE);
+                    int[] codes = bun.getIntArray(StockService.EXTRA_BATCH_RESPONSE_CODES);
+                    int result = codes == null || codes.length == 0
+                            ? StockService.RESPONSE_NOT_POSTED_YET
+                            : worstResponse(codes);
 
                     if(result == StockService.RESPONSE_NO_CONNECTION) {
                         // No connection means we just set up the receiver and wait.
@@ -573,8 +747,8 @@ public class AlarmService extends JobIntentService {
 
                     if(result == StockService.RESPONSE_NOT_POSTED_YET) {
                         // Not posted yet means we hit the snooze and try again in a
-                        // half hour or so.  Good night!
-                        Log.d(DEBUG_TAG, "Stock wasn't posted yet, snoozing for a half hour...");
+                        // little while (longer each time).  Good night!
+                        Log.d(DEBUG_TAG, "Stock wasn't posted yet, snoozing for a bit...");
                         snooze();
                         clearNotification();
                         return;
@@ -585,41 +759,49 @@ public class AlarmService extends JobIntentService {
                         // really bad.  But, with Doze in effect, that might mean
                         // something weird with how it denies us network access, so
                         // let's just snooze for now.
-                        Log.w(DEBUG_TAG, "Network reported an error, snoozing for a half hour...");
+                        Log.w(DEBUG_TAG, "Network reported an error, snoozing for a bit...");
                         snooze();
                         clearNotification();
                         return;
                     }
 
                     if(result == StockService.RESPONSE_OKAY) {
-                        // An okay response means the Graticule IS good.  If not,
-                        // fix StockService.
-                        if(g == null) {
-                            Log.w(DEBUG_TAG, "g is somehow null in AlarmService?");
-                            clearNotification();
-                        } else if(g.uses30WRule()) {
-                            // If the response we just checked for was a 30W one and
-                            // it came back okay, then we fire off a check for the
-                            // non-30W one.
-                            Log.d(DEBUG_TAG, "That was the 30W response, going up to non-30W...");
-                            sendRequest(GHDConstants.DUMMY_TODAY);
-                        } else {
-                            // If, however, we got the non-30W back, then our job is
-                            // done!  Yay!
-                            Log.d(DEBUG_TAG, "The 30W response!  We're done!");
-                            clearNotification();
-
-                            // And since it's done, we can go off to the part where
-                            // we deal with KnownLocations!
-                            doKnownLocations();
-                        }
+                        // Everything came back okay, so our job is done!  Yay!
+                        Log.d(DEBUG_TAG, "Every date this stock decides is in!  We're done!");
+                        clearNotification();
+                        resetRetries();
+
+                        // And since it's done, we can go off to the part where
+                        // we deal with KnownLocations, all the dates at once!
+                        Lookahead ahead = makeLookahead();
+                        doKnownLocations(ahead);
+
+                        // Since we just dealt with everything this stock
+                        // decides, there's no point waking up again until
+                        // there's a new one (that is, skip the weekend).
+                        setNextAlarm(ahead.nextStockDay);
+
+                        // Then, with the stocks all in, prune the stock cache.
+                        // Whatever dates the known locations were checked
+                        // against stay pinned.
+                        List<HashDate> pinned = ahead.getAllDates();
+                        HashBuilder.performMaintenance(this, pinned.toArray(new HashDate[0]));
                     }
                 } else {
                     // If it's NOT a result, that means we're starting a new check
-                    // at a 30W hash for some reason.  Doesn't matter what reason.
-                    // We just need to do it.
-                    Log.d(DEBUG_TAG, "That wasn't a result, so asking for a 30W...");
-                    sendRequest(GHDConstants.DUMMY_YESTERDAY);
+                    // for some reason.  Doesn't matter what reason.  We just
+                    // need to do it.
+                    // If there's no network at all, though, don't bother
+                    // spinning up StockService just to hear about it.  Go
+                    // straight to waiting for one.
+                    if(!AndroidUtil.isConnected(this)) {
+                        Log.d(DEBUG_TAG, "No network connection available, waiting until we get one...");
+                        waitForNetwork();
+                        return;
+                    }
+
+                    Log.d(DEBUG_TAG, "That wasn't a result, so asking for stocks...");
+                    sendRequest();
                 }
                 break;
             default:
@@ -629,6 +811,21 @@ public class AlarmService extends JobIntentService {
         }
     }
 
+    /**
+     * Sorts a list of matches by distance, closest first.  This goes through
+     * an array, since sorting that in place is a lot faster than shuffling
+     * list nodes around.  Equal distances stay in the order they came in.
+     *
+     * @param matches the matches to sort
+     * @return a new, sorted, modifiable list
+     */
+    @NonNull
+    private static List<KnownLocationMatchData> sortMatches(@NonNull List<KnownLocationMatchData> matches) {
+        KnownLocationMatchData[] sorted = matches.toArray(new KnownLocationMatchData[matches.size()]);
+        Arrays.sort(sorted);
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+
     /**
      * Convenient container for all the data we need for matches.
      */
@@ -651,7 +848,7 @@ public class AlarmService extends JobIntentService {
         }
     }
 
-    private void doKnownLocations() {
+    private void doKnownLocations(@NonNull Lookahead ahead) {
         // First things first, clear out any old notifications.  If those are
         // still around, they're from previous days, so they're no longer valid.
         mNotificationManager.cancel(R.id.alarm_known_location);
@@ -667,56 +864,52 @@ public class AlarmService extends JobIntentService {
         // If the user doesn't want notifications, we can skip the rest of this.
         if(notifyPref.equals(GHDConstants.PREFVAL_KNOWN_NOTIFICATION_NEVER)) return;
 
-        List<KnownLocation> locations = KnownLocation.getAllKnownLocations(this);
+        List<KnownLocation> locations = KnownLocationStore.get(this).getAll();
 
         // If there are no KnownLocations, give up now.
         if(locations.isEmpty()) return;
 
-        List<KnownLocationMatchData> matched = new LinkedList<>();
-        List<KnownLocationMatchData> matchedGlobal = new LinkedList<>();
-
-        // There are some odd time zone implications here if "today" just comes
-        // from Calendar.getInstance(), in that it sometimes might wind up
-        // being "yesterday" if, for instance, you're in AEST (9:30am ET becomes
-        // 11:30pm AEST).  So we need to adjust what date we're reporting if
-        // we're looking at a 30W known location.  Anything 30W should be
-        // "tomorrow", as the reason the 30W Rule was invented in the first
-        // place was because at the open of the NYSE, it's already too late to
-        // do anything with it out there.
-        Calendar today = makeNineThirty(null);
-        Calendar tomorrow = (Calendar)today.clone();
-        tomorrow.add(Calendar.DATE, 1);
-
-        Info global = HashBuilder.getStoredInfo(this, today, null);
-
-        for(KnownLocation kl : locations) {
-            // Every KnownLocation has a method to do this.  Maybe it's a wee
-            // bit inefficient and inelegant, but it does the job.
-            Info best;
-
-            try {
-                best = kl.getClosestInfo(this, (kl.is30w() ? tomorrow : today));
-            } catch (IllegalArgumentException iae) {
-                // This shouldn't happen under normal operation, but if this is
-                // the debug build and the party alarm's been triggered,
-                // makeNineThirty might refer to tomorrow (i.e. if the time zone
-                // is anywhere west of EST/EDT), which may not have a valid
-                // stock yet.  In that case, silently drop it and continue
-                // onward.  Chances are we'll skip all the known locations past
-                // this one anyway.
-                continue;
-            }
-
-            if(kl.isCloseEnough(best.getFinalDestinationLatLng())) {
-                KnownLocationMatchData data = new KnownLocationMatchData(kl, best, kl.getDistanceFrom(best));
-                matched.add(data);
+        List<KnownLocationMatchData> matched = new ArrayList<>();
+        List<KnownLocationMatchData> matchedGlobal = new ArrayList<>();
+
+        // Sort the KnownLocations out by Graticule, so each Graticule's
+        // neighborhood only gets worked out once no matter how many
+        // KnownLocations are in it or how many dates there are.  Each
+        // KnownLocation gets checked against every date the stock decides for
+        // its side of the 30W line.  Anything 30W is a day ahead of
+        // everything else, as the reason the 30W Rule was invented in the
+        // first place was because at the open of the NYSE, it's already too
+        // late to do anything with it out there.  If any of those dates don't
+        // have a hash for some reason, those KnownLocations just silently
+        // don't match for that date.  With a long enough list, the index
+        // splits the work up across a few threads, but the results always
+        // come back in the same order.
+        KnownLocationIndex index = new KnownLocationIndex(locations);
+
+        for(HashDate date : ahead.getAllDates()) {
+            HashDate local = ahead.dates.contains(date) ? date : null;
+            HashDate local30w = ahead.dates30w.contains(date) ? date : null;
+
+            if(local != null || local30w != null) {
+                for(KnownLocationIndex.Match match : index.findMatchesParallel(this, local, local30w)) {
+                    matched.add(new KnownLocationMatchData(match.knownLocation, match.info, match.distance));
+                }
             }
 
             // The Globalhash will be handled as a separate notification,
-            // because frankly, that's sort of special.
-            if(global != null && kl.isCloseEnough(global.getFinalDestinationLatLng())) {
-                KnownLocationMatchData data = new KnownLocationMatchData(kl, global, kl.getDistanceFrom(global));
-                matchedGlobal.add(data);
+            // because frankly, that's sort of special.  There's only the one
+            // point per date, so there's nothing to index.
+            if(ahead.globalDates.contains(date)) {
+                Info global = HashBuilder.getStoredInfo(this, date, null);
+                if(global == null) continue;
+
+                LatLng globalDest = global.getFinalDestinationLatLng();
+                for(KnownLocation kl : locations) {
+                    if(kl.isCloseEnough(globalDest)) {
+                        KnownLocationMatchData data = new KnownLocationMatchData(kl, global, kl.getDistanceFrom(global));
+                        matchedGlobal.add(data);
+                    }
+                }
             }
         }
 
@@ -737,8 +930,9 @@ public class AlarmService extends JobIntentService {
             mNotificationManager.notify(R.id.alarm_known_location_group, groupBuilder.build());
 
             // In any case, the matched selections need to be sorted out for
-            // some reason.
-            Collections.sort(matched);
+            // some reason.  The sort's stable and the matches always come in
+            // in the same order, so ties always land the same way, too.
+            matched = sortMatches(matched);
 
             // So now we have a list of what matched.  From there, let's sort
             // out what notifications need to go up, if any.  There's a
@@ -760,15 +954,19 @@ public class AlarmService extends JobIntentService {
 
                     // Our list of matches is already sorted, so the order in
                     // which we add Graticules matches which Graticules have the
-                    // closest matches.  LinkedHashMap is what we want.
-                    Map<Graticule, List<KnownLocationMatchData>> byGraticule = new LinkedHashMap<>();
+                    // closest matches.  LinkedHashMap is what we want.  Since
+                    // there might be matches on more than one date, the same
+                    // Graticule on different dates counts separately.
+                    Map<Long, List<KnownLocationMatchData>> byGraticule = new LinkedHashMap<>();
 
                     for(KnownLocationMatchData single : matched) {
-                        Graticule matchGrat = single.bestInfo.getGraticule();
+                        Graticule grat = single.bestInfo.getGraticule();
+                        long matchGrat = ((long)single.bestInfo.getHashDate().getEpochDay() << 32)
+                                | ((grat == null ? PackedGraticule.GLOBALHASH : grat.getPackedId()) & 0xFFFFFFFFL);
                         if(!byGraticule.containsKey(matchGrat)) {
                             // We haven't added this Graticule yet.  Let's add
                             // it to the map.
-                            byGraticule.put(matchGrat, new LinkedList<>());
+                            byGraticule.put(matchGrat, new ArrayList<>());
                         }
 
                         // Add it in!
@@ -785,7 +983,7 @@ public class AlarmService extends JobIntentService {
                     // sense because that's not what a Map is there to do.
                     List<List<KnownLocationMatchData>> byGraticuleList = new LinkedList<>();
 
-                    for(Map.Entry<Graticule, List<KnownLocationMatchData>> entry : byGraticule.entrySet()) {
+                    for(Map.Entry<Long, List<KnownLocationMatchData>> entry : byGraticule.entrySet()) {
                         byGraticuleList.add(entry.getValue());
                     }
 
@@ -848,7 +1046,7 @@ public class AlarmService extends JobIntentService {
         // user's preferences (apart from "Never").  And for now, always a
         // single notification.
         if(!matchedGlobal.isEmpty()) {
-            Collections.sort(matchedGlobal);
+            matchedGlobal = sortMatches(matchedGlobal);
             launchNotification(matchedGlobal, START_INFO_GLOBAL, R.id.alarm_known_location_global, R.string.known_locations_alarm_title_global, GLOBAL_NOTIFICATION);
         }
     }
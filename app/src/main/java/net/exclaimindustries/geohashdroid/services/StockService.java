@@ -16,16 +16,30 @@ import androidx.annotation.Nullable;
 import androidx.core.app.JobIntentService;
 import android.util.Log;
 
+import net.exclaimindustries.geohashdroid.core.DayHash;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
 import net.exclaimindustries.geohashdroid.util.Graticule;
 import net.exclaimindustries.geohashdroid.util.HashBuilder;
 import net.exclaimindustries.geohashdroid.util.HashBuilder.StockRunner;
+import net.exclaimindustries.geohashdroid.util.HttpClientProvider;
 import net.exclaimindustries.geohashdroid.util.Info;
+import net.exclaimindustries.geohashdroid.util.PrefetchScheduler;
+import net.exclaimindustries.geohashdroid.util.StockMetrics;
+import net.exclaimindustries.geohashdroid.util.StockResult;
 import net.exclaimindustries.tools.AndroidUtil;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
@@ -74,6 +88,44 @@ public class StockService extends JobIntentService {
      */
     public static final String ACTION_STOCK_RESULT = "net.exclaimindustries.geohashdroid.STOCK_RESULT";
 
+    /**
+     * <p>
+     * Action to send out when you want a whole bunch of Info objects at once,
+     * for any mix of dates and Graticules.  Build it with
+     * {@link #makeBatchRequest(Context, List, List)}; the request ID, flags,
+     * and respond-to extras work the same as with
+     * {@link #ACTION_STOCK_REQUEST}.  {@link #FLAG_INCLUDE_NEARBY_POINTS} is
+     * ignored, though; if you want nearby points, put them in the batch.
+     * </p>
+     *
+     * <p>
+     * StockService works out which hashes and stock dates the items have in
+     * common, so each distinct stock only gets looked up (or fetched) once no
+     * matter how many items need it.  There's exactly one
+     * {@link #ACTION_STOCK_BATCH_RESULT} broadcast in response, with a
+     * response code for each item.
+     * </p>
+     *
+     * <p>
+     * This is for requests that span more than one date (both sides of the
+     * 30W line, or a run of upcoming days).  For one date and its
+     * neighborhood, a plain {@link #ACTION_STOCK_REQUEST} with
+     * {@link #FLAG_INCLUDE_NEARBY_POINTS} already needs only the one stock,
+     * and its result is a lot smaller.
+     * </p>
+     */
+    public static final String ACTION_STOCK_BATCH_REQUEST = "net.exclaimindustries.geohashdroid.STOCK_BATCH_REQUEST";
+
+    /**
+     * Action that gets broadcast in response to an
+     * {@link #ACTION_STOCK_BATCH_REQUEST}.  The {@link #EXTRA_STUFF} Bundle
+     * has the request ID and flags, the {@link #EXTRA_BATCH_DATES} and
+     * {@link #EXTRA_BATCH_GRATICULES} that were requested, and, in the same
+     * order, {@link #EXTRA_BATCH_RESPONSE_CODES},
+     * {@link #EXTRA_BATCH_RESPONSE_FLAGS}, and {@link #EXTRA_BATCH_INFOS}.
+     */
+    public static final String ACTION_STOCK_BATCH_RESULT = "net.exclaimindustries.geohashdroid.STOCK_BATCH_RESULT";
+
     /**
      * <p>
      * Key for the extra stuff Bundle.  This Bundle will contain all the needed
@@ -126,8 +178,9 @@ public class StockService extends JobIntentService {
      */
     public static final String EXTRA_DATE = "net.exclaimindustries.geohashdroid.EXTRA_DATE";
     /**
-     * Key for an Info extra.  This comes back in the broadcast.  Note that the
-     * data will be null if there was an error.
+     * Key for an Info extra.  StockService results don't use this anymore
+     * (see {@link #EXTRA_RESULT}), but the stock alarm's notification still
+     * does.
      */
     public static final String EXTRA_INFO = "net.exclaimindustries.geohashdroid.EXTRA_INFO";
     /**
@@ -135,13 +188,32 @@ public class StockService extends JobIntentService {
      */
     public static final String EXTRA_RESPONSE_CODE = "net.exclaimindustries.geohashdroid.EXTRA_RESPONSE_CODE";
     /**
-     * Key for nearby points, if {@link #FLAG_INCLUDE_NEARBY_POINTS} was
-     * specified.  This will be an array of Info objects.  The order of the
-     * array is arbitrary.  There will usually be eight elements in it, though
-     * there may be fewer if the request is either at the poles or in rare
-     * 30W-related cases.
+     * Key for the result of a single stock request, as a {@link StockResult}.
+     * This comes back in the broadcast and holds the date and Graticule that
+     * were asked for, plus the Info (null if there was an error) and, if
+     * {@link #FLAG_INCLUDE_NEARBY_POINTS} was specified, the nearby points.
+     * The order of the nearby points is arbitrary.  There will usually be
+     * (2r+1)^2-1 of them (eight, for the default radius of 1), though there
+     * may be fewer if the request is near the poles or in rare 30W-related
+     * cases.
      */
-    public static final String EXTRA_NEARBY_POINTS = "net.exclaimindustries.geohashdroid.EXTRA_NEARBY_POINTS";
+    public static final String EXTRA_RESULT = "net.exclaimindustries.geohashdroid.EXTRA_RESULT";
+    /**
+     * Key for how far out the nearby points go, as an int, if
+     * {@link #FLAG_INCLUDE_NEARBY_POINTS} was specified.  1 (the default) is
+     * the eight graticules right around the requested one, 2 is the 5x5 block
+     * around it, and so on, up to {@link #MAX_NEARBY_RADIUS}.  No matter how
+     * big it is, it's still at most two stock lookups, one for each side of
+     * the 30W line.
+     */
+    public static final String EXTRA_NEARBY_RADIUS = "net.exclaimindustries.geohashdroid.EXTRA_NEARBY_RADIUS";
+
+    /**
+     * The biggest {@link #EXTRA_NEARBY_RADIUS} StockService will honor.
+     * Anything bigger gets clamped down to this.  That's 120 nearby points,
+     * which is already a LOT of markers.
+     */
+    public static final int MAX_NEARBY_RADIUS = 5;
     /**
      * <p>
      * Key for the class to which this request should respond.  As per Oreo,
@@ -172,6 +244,66 @@ public class StockService extends JobIntentService {
      */
     public static final String EXTRA_RESPOND_TO = "net.exclaimindustries.geohashdroid.EXTRA_RESPOND_TO";
 
+    /**
+     * <p>
+     * Key for a supersede key, as a String.  If this is given, any newer
+     * request with the same key makes this one obsolete: if it's still
+     * waiting in the queue, it gets skipped, and if it's already running, it
+     * gets interrupted (network requests and all).  Either way, no response
+     * is broadcast for it.  The newest request always runs and responds as
+     * normal.
+     * </p>
+     *
+     * <p>
+     * This is for things like the user flipping through dates or typing in
+     * Graticules, where only the last request means anything.  Use something
+     * that identifies whoever's asking (CentralMap uses the mode's class
+     * name).  Requests without a key never get superseded, nor do they
+     * supersede anything.  This only works if the request goes through
+     * {@link #enqueueWork(Context, Intent)}.
+     * </p>
+     */
+    public static final String EXTRA_SUPERSEDE_KEY = "net.exclaimindustries.geohashdroid.EXTRA_SUPERSEDE_KEY";
+
+    // This gets stamped on requests with a supersede key at enqueue time.
+    // Don't set it yourself.
+    private static final String EXTRA_SUPERSEDE_GENERATION = "net.exclaimindustries.geohashdroid.EXTRA_SUPERSEDE_GENERATION";
+
+    // The supersede key every prefetch uses, so anything else can tell them
+    // to knock it off.
+    private static final String PREFETCH_SUPERSEDE_KEY = "net.exclaimindustries.geohashdroid.PREFETCH";
+
+    /**
+     * Key for the dates in a batch, as an int array of epoch days (see
+     * {@link HashDate#getEpochDay()}).  These are the REAL dates, not
+     * adjusted for anything.
+     */
+    public static final String EXTRA_BATCH_DATES = "net.exclaimindustries.geohashdroid.EXTRA_BATCH_DATES";
+    /**
+     * Key for the Graticules in a batch, as an int array of packed Graticules
+     * (see {@link Graticule#getPackedId()}), with
+     * {@link PackedGraticule#GLOBALHASH} meaning a Globalhash.  This has to be
+     * the same length as {@link #EXTRA_BATCH_DATES}.
+     */
+    public static final String EXTRA_BATCH_GRATICULES = "net.exclaimindustries.geohashdroid.EXTRA_BATCH_GRATICULES";
+    /**
+     * Key for the response codes in a batch result, as an int array, one per
+     * item.  These are the same RESPONSE_ codes a single request gets.
+     */
+    public static final String EXTRA_BATCH_RESPONSE_CODES = "net.exclaimindustries.geohashdroid.EXTRA_BATCH_RESPONSE_CODES";
+    /**
+     * Key for the response flags in a batch result, as an int array, one per
+     * item.
+     */
+    public static final String EXTRA_BATCH_RESPONSE_FLAGS = "net.exclaimindustries.geohashdroid.EXTRA_BATCH_RESPONSE_FLAGS";
+    /**
+     * Key for the Info objects in a batch result, as a Parcelable array, one
+     * per item.  Items that didn't come back okay are null.  Note that this
+     * comes back out of the Bundle as a Parcelable[], not an Info[], so cast
+     * each element, not the array.
+     */
+    public static final String EXTRA_BATCH_INFOS = "net.exclaimindustries.geohashdroid.EXTRA_BATCH_INFOS";
+
     /**
      * Flag meaning this request came from the stock alarm around 9:30am EST.
      * This is for pre-cache stuff.
@@ -202,15 +334,28 @@ public class StockService extends JobIntentService {
     public static final int FLAG_SELECT_A_GRATICULE = 0x10;
 
     /**
-     * Flag meaning that, in addition to the point requested, the (up to) eight
-     * surrounding points should also be included in the response.
+     * Flag meaning that, in addition to the point requested, the surrounding
+     * points should also be included in the response.  That's (up to) eight
+     * of them, unless {@link #EXTRA_NEARBY_RADIUS} says otherwise.
      */
     public static final int FLAG_INCLUDE_NEARBY_POINTS = 0x20;
 
+    /**
+     * Flag meaning this is a speculative batch request, filling the cache with
+     * things the user might look at next (see {@link PrefetchScheduler}).
+     * Prefetches never broadcast a result, get skipped on metered connections
+     * or low batteries, and yield to any other request that comes in through
+     * {@link #enqueueWork(Context, Intent)}.  Any supersede key on them gets
+     * replaced with one all prefetches share.
+     */
+    public static final int FLAG_PREFETCH = 0x40;
+
     /**
      * Flag meaning this response was found in the cache.  If not set, it was
      * either found on the web or it wasn't found at all, the latter of which
-     * implying you really ought to have checked the response code first.
+     * implying you really ought to have checked the response code first.  This
+     * is also set on a {@link #RESPONSE_NOT_POSTED_YET} that came from
+     * remembering a recent "not posted" answer rather than asking again.
      */
     public static final int FLAG_CACHED = 0x1;
 
@@ -228,19 +373,208 @@ public class StockService extends JobIntentService {
 
     private static final int SERVICE_JOB_ID = 1001;
 
+    // Generations count up across every request with a supersede key.  The
+    // latest generation enqueued for each key is the only one that matters.
+    private static final AtomicLong mGenerations = new AtomicLong();
+    private static final ConcurrentHashMap<String, Long> mLatestGeneration =
+            new ConcurrentHashMap<>();
+    // What's running right now for each key, so a newer request can
+    // interrupt it.
+    private static final ConcurrentHashMap<String, RunningRequest> mRunning =
+            new ConcurrentHashMap<>();
+
+    // The supersede key and generation of whatever onHandleWork is doing
+    // right now.  Work is done one at a time, so these are only touched by
+    // that one thread.
+    private String mCurrentKey;
+    private long mCurrentGeneration;
+
+    /**
+     * Keeps track of which thread is working on a superseding request, so it
+     * can be interrupted if something newer comes along, but NOT once it's
+     * moved on to other work.
+     */
+    private static class RunningRequest {
+        private final long mGeneration;
+        private final Thread mThread;
+        private boolean mFinished = false;
+
+        private RunningRequest(long generation, @NonNull Thread thread) {
+            mGeneration = generation;
+            mThread = thread;
+        }
+
+        private synchronized void cancel() {
+            if(!mFinished) mThread.interrupt();
+        }
+
+        private void finish() {
+            synchronized(this) {
+                mFinished = true;
+            }
+
+            // Nobody can interrupt us anymore, so clear out any interrupt
+            // that DID happen.  This thread's going back to the pool.
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Builds an {@link #ACTION_STOCK_BATCH_REQUEST} Intent.  The two lists
+     * are paired up by index; a null Graticule means a Globalhash.  Add
+     * whatever request ID, flags, and respond-to extras you need, then send it
+     * off with {@link #enqueueWork(Context, Intent)}.
+     *
+     * @param context Context for making the Intent
+     * @param dates the REAL dates of each item
+     * @param graticules the Graticules of each item
+     * @return a new batch request Intent
+     * @throws IllegalArgumentException the lists aren't the same size
+     */
+    @NonNull
+    public static Intent makeBatchRequest(@NonNull Context context,
+                                          @NonNull List<HashDate> dates,
+                                          @NonNull List<Graticule> graticules) {
+        if(dates.size() != graticules.size())
+            throw new IllegalArgumentException("There need to be as many dates as Graticules!");
+
+        int[] dateArray = new int[dates.size()];
+        int[] gratArray = new int[graticules.size()];
+
+        for(int i = 0; i < dateArray.length; i++) {
+            Graticule g = graticules.get(i);
+            dateArray[i] = dates.get(i).getEpochDay();
+            gratArray[i] = g == null ? PackedGraticule.GLOBALHASH : g.getPackedId();
+        }
+
+        return new Intent(context, StockService.class)
+                .setAction(ACTION_STOCK_BATCH_REQUEST)
+                .putExtra(EXTRA_BATCH_DATES, dateArray)
+                .putExtra(EXTRA_BATCH_GRATICULES, gratArray);
+    }
+
     /**
      * Convenience method for enqueuing work in to this service.
      */
     public static void enqueueWork(Context context, Intent work) {
+        if((work.getIntExtra(EXTRA_REQUEST_FLAGS, 0) & FLAG_PREFETCH) != 0) {
+            // Prefetches all share a key, so a newer one replaces an older
+            // one.
+            work.putExtra(EXTRA_SUPERSEDE_KEY, PREFETCH_SUPERSEDE_KEY);
+        } else if(mLatestGeneration.containsKey(PREFETCH_SUPERSEDE_KEY)) {
+            // Anything else is something somebody's actually waiting on, so
+            // any prefetch, queued or running, gets out of the way.
+            supersede(PREFETCH_SUPERSEDE_KEY);
+        }
+
+        String key = work.getStringExtra(EXTRA_SUPERSEDE_KEY);
+
+        if(key != null) {
+            // Stamp it, mark it as the latest, and stop whatever older one
+            // might be running right now.  Anything older still in the queue
+            // will notice on its own when it comes up.
+            work.putExtra(EXTRA_SUPERSEDE_GENERATION, supersede(key));
+        }
+
         enqueueWork(context, StockService.class, SERVICE_JOB_ID, work);
     }
 
+    private static long supersede(@NonNull String key) {
+        long generation = mGenerations.incrementAndGet();
+        mLatestGeneration.put(key, generation);
+
+        RunningRequest running = mRunning.get(key);
+        if(running != null && running.mGeneration < generation) {
+            Log.d(DEBUG_TAG, "Interrupting the running request for " + key + ", it's been superseded.");
+            running.cancel();
+        }
+
+        return generation;
+    }
+
+    private static boolean isSuperseded(@Nullable String key, long generation) {
+        if(key == null) return false;
+        Long latest = mLatestGeneration.get(key);
+        return latest != null && latest > generation;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Hang on to the HTTP connection pool while we're around, so repeated
+        // stock lookups can reuse connections.
+        HttpClientProvider.acquire();
+    }
+
+    @Override
+    public void onDestroy() {
+        // And let go of it when we're not.
+        HttpClientProvider.release();
+
+        super.onDestroy();
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        // This is what "adb shell dumpsys activity service" shows.  Report
+        // on how the stock lookups have been going.
+        if(args != null && args.length > 0 && "reset".equals(args[0])) {
+            StockMetrics.reset();
+            writer.println("Stock metrics reset.");
+            return;
+        }
+
+        StockMetrics.dump(writer);
+    }
+
     @Override
     protected void onHandleWork(@NonNull Intent intent) {
         // Gee, thanks, JobIntentService, for covering all that confusing
         // WakeLock stuff!  You're even off the main thread, too, so I don't
-        // have to spawn a new thread to not screw up the UI!  So let's get that
-        // data right in hand, shall we?
+        // have to spawn a new thread to not screw up the UI!
+        mCurrentKey = intent.getStringExtra(EXTRA_SUPERSEDE_KEY);
+        mCurrentGeneration = intent.getLongExtra(EXTRA_SUPERSEDE_GENERATION, 0L);
+
+        RunningRequest running = null;
+        if(mCurrentKey != null) {
+            running = new RunningRequest(mCurrentGeneration, Thread.currentThread());
+            mRunning.put(mCurrentKey, running);
+        }
+
+        try {
+            // If something newer came in while this was waiting in the
+            // queue, don't even bother.
+            if(isSuperseded(mCurrentKey, mCurrentGeneration)) {
+                Log.d(DEBUG_TAG, "Skipping a request for " + mCurrentKey + ", it's been superseded.");
+            } else if(ACTION_STOCK_BATCH_REQUEST.equals(intent.getAction())) {
+                handleBatchRequest(intent);
+            } else {
+                handleStockRequest(intent);
+            }
+        } finally {
+            if(running != null) {
+                running.finish();
+                mRunning.remove(mCurrentKey, running);
+            }
+            mCurrentKey = null;
+        }
+
+        // Now that whoever asked has their answer, if we've been stuffing the
+        // cache full of things, tidy it up.  AlarmService normally does this
+        // once a day, but it might not be running.
+        if(HashBuilder.isMaintenanceDue()) {
+            Log.d(DEBUG_TAG, "Stock cache maintenance is due, doing that now...");
+            HashBuilder.performMaintenance(this);
+        }
+
+        // The first time through, if there's any stock history bundled with
+        // the app, pull that in, too.  After that, this returns right away.
+        HashBuilder.importBundledStocks(this);
+    }
+
+    private void handleStockRequest(@NonNull Intent intent) {
+        // So let's get that data right in hand, shall we?
         if(!intent.hasExtra(EXTRA_DATE)) {
             Log.e(DEBUG_TAG, "BAILING OUT: There's no date!");
             return;
@@ -254,6 +588,9 @@ public class StockService extends JobIntentService {
 
         // Maybe we'll respond with flags!
         int respFlags = 0;
+
+        // Maybe we want a bigger neighborhood!
+        int radius = Math.max(1, Math.min(MAX_NEARBY_RADIUS, intent.getIntExtra(EXTRA_NEARBY_RADIUS, 1)));
         
         // Oh, man, can we ever parcelize a Graticule!
         Parcelable p = intent.getParcelableExtra(EXTRA_GRATICULE);
@@ -275,6 +612,10 @@ public class StockService extends JobIntentService {
         }
         Calendar cal = (Calendar)s;
 
+        // Internally, everything works on HashDates, and that's what goes
+        // back out in the response, too.
+        HashDate date = HashDate.fromCalendar(cal);
+
         // Do we have an explicit respond-to point?  It CAN be null!
         s = intent.getSerializableExtra(EXTRA_RESPOND_TO);
 
@@ -285,23 +626,30 @@ public class StockService extends JobIntentService {
         Class respondTo = (Class)s;
         
         // First, ask the stock cache if we've got an Info we can throw back.
-        Info info = HashBuilder.getStoredInfo(this, cal, graticule);
+        Info info = HashBuilder.getStoredInfo(this, date, graticule);
         
         // If we got something, great!  Broadcast it right on out!
         if(info != null) {
             respFlags |= FLAG_CACHED;
             Info[] nearby = null;
             if((flags & FLAG_INCLUDE_NEARBY_POINTS) != 0)
-                nearby = getNearbyPoints(cal, graticule);
-            dispatchIntent(RESPONSE_OKAY, requestId, flags, respFlags, cal, graticule, info, nearby, respondTo);
+                nearby = getNearbyPoints(date, graticule, radius);
+            dispatchIntent(RESPONSE_OKAY, requestId, flags, respFlags, date, graticule, info, nearby, respondTo);
+        } else if(HashBuilder.isKnownNotPosted(date, graticule)) {
+            // We asked recently, and it wasn't there.  It won't be there now,
+            // either, so don't bother the servers (or even check if we're
+            // connected).
+            Log.d(DEBUG_TAG, "We already know that stock isn't posted yet.");
+            respFlags |= FLAG_CACHED;
+            dispatchIntent(RESPONSE_NOT_POSTED_YET, requestId, flags, respFlags, date, graticule, null, null, respondTo);
         } else {
             // Otherwise, we need to go to the web.
             if(!AndroidUtil.isConnected(this)) {
                 // ...if we CAN go to the web, that is.
                 Log.i(DEBUG_TAG, "We're not connected, stopping now.");
-                dispatchIntent(RESPONSE_NO_CONNECTION, requestId, flags, respFlags, cal, graticule, null, null, respondTo);
+                dispatchIntent(RESPONSE_NO_CONNECTION, requestId, flags, respFlags, date, graticule, null, null, respondTo);
             } else {
-                StockRunner runner = HashBuilder.requestStockRunner(this, cal, graticule);
+                StockRunner runner = HashBuilder.requestStockRunner(this, date, graticule);
                 runner.runStock();
 
                 // And the results are in!
@@ -313,13 +661,13 @@ public class StockService extends JobIntentService {
                         Log.d(DEBUG_TAG, "Stock's good!  Away it goes!");
                         Info[] nearby = null;
                         if((flags & FLAG_INCLUDE_NEARBY_POINTS) != 0)
-                            nearby = getNearbyPoints(cal, graticule);
-                        dispatchIntent(RESPONSE_OKAY, requestId, flags, respFlags, cal, graticule, runner.getLastResultObject(), nearby, respondTo);
+                            nearby = getNearbyPoints(date, graticule, radius);
+                        dispatchIntent(RESPONSE_OKAY, requestId, flags, respFlags, date, graticule, runner.getLastResultObject(), nearby, respondTo);
                         break;
                     case HashBuilder.StockRunner.ERROR_NOT_POSTED:
                         // Aw.  It's not posted yet.
                         Log.d(DEBUG_TAG, "Stock isn't posted yet.");
-                        dispatchIntent(RESPONSE_NOT_POSTED_YET, requestId, flags, respFlags, cal, graticule, null, null, respondTo);
+                        dispatchIntent(RESPONSE_NOT_POSTED_YET, requestId, flags, respFlags, date, graticule, null, null, respondTo);
                         break;
                     default:
                         // In all other cases, just assume it's a network error.
@@ -328,13 +676,214 @@ public class StockService extends JobIntentService {
                         // sense in this context, which means something went
                         // horribly, horribly wrong.
                         Log.e(DEBUG_TAG, "Network error!");
-                        dispatchIntent(RESPONSE_NETWORK_ERROR, requestId, flags, respFlags, cal, graticule, null, null, respondTo);
+                        dispatchIntent(RESPONSE_NETWORK_ERROR, requestId, flags, respFlags, date, graticule, null, null, respondTo);
                 }
             }
         }
     }
     
-    private void dispatchIntent(int responseCode, long requestId, int flags, int respFlags, Calendar date, Graticule graticule, Info info, Info[] nearby, @Nullable Class respondTo) {
+    private void handleBatchRequest(@NonNull Intent intent) {
+        int[] dates = intent.getIntArrayExtra(EXTRA_BATCH_DATES);
+        int[] grats = intent.getIntArrayExtra(EXTRA_BATCH_GRATICULES);
+
+        if(dates == null || grats == null || dates.length != grats.length) {
+            Log.e(DEBUG_TAG, "BAILING OUT: The batch dates and Graticules are missing or don't match up!");
+            return;
+        }
+
+        Serializable s = intent.getSerializableExtra(EXTRA_RESPOND_TO);
+        if(s != null && !(s instanceof Class)) {
+            Log.e(DEBUG_TAG, "BAILING OUT: EXTRA_RESPOND_TO is not null and isn't a Class!");
+            return;
+        }
+        Class respondTo = (Class)s;
+
+        long requestId = intent.getLongExtra(EXTRA_REQUEST_ID, -1L);
+        int flags = intent.getIntExtra(EXTRA_REQUEST_FLAGS, 0);
+        boolean prefetch = (flags & FLAG_PREFETCH) != 0;
+
+        // Things might've changed since the prefetch was scheduled.  If we're
+        // on a metered connection or low on battery now, skip it.
+        if(prefetch && !PrefetchScheduler.isPrefetchAllowed(this)) {
+            Log.d(DEBUG_TAG, "Not a good time to prefetch anymore, skipping.");
+            return;
+        }
+
+        int count = dates.length;
+        int[] codes = new int[count];
+        int[] respFlags = new int[count];
+        Info[] infos = new Info[count];
+
+        // Anything that doesn't get answered is a network error by default.
+        // Everything SHOULD get answered, but just in case.
+        Arrays.fill(codes, RESPONSE_NETWORK_ERROR);
+
+        // First, group everything by DayHash.  Every item on the same date and
+        // the same side of the 30W line has the same hash, so that's one
+        // lookup no matter how many Graticules there are.
+        Map<Integer, List<Integer>> byHash = new LinkedHashMap<>();
+        for(int i = 0; i < count; i++) {
+            HashDate date = HashDate.fromEpochDay(dates[i]);
+            int key = DayHash.makeKey(dates[i], date.usesPreviousDay(grats[i]));
+
+            List<Integer> items = byHash.get(key);
+            if(items == null) {
+                items = new ArrayList<>();
+                byHash.put(key, items);
+            }
+            items.add(i);
+        }
+
+        // Then, ask the caches about each hash.  Whatever they don't know, we
+        // group up by stock date, since different hashes can share a stock
+        // (Tuesday's 30W hash and Monday's non-30W hash both use Monday's).
+        Map<Integer, List<List<Integer>>> byStock = new LinkedHashMap<>();
+        for(List<Integer> items : byHash.values()) {
+            int first = items.get(0);
+            HashDate date = HashDate.fromEpochDay(dates[first]);
+            boolean uses30W = date.usesPreviousDay(grats[first]);
+
+            DayHash hash = HashBuilder.getStoredDayHash(this, date, uses30W);
+            if(hash != null) {
+                fillBatchResults(items, RESPONSE_OKAY, FLAG_CACHED, hash, dates, grats, codes, respFlags, infos);
+                continue;
+            }
+
+            int stockKey = date.getStockDate(uses30W).getEpochDay();
+            List<List<Integer>> hashes = byStock.get(stockKey);
+            if(hashes == null) {
+                hashes = new ArrayList<>();
+                byStock.put(stockKey, hashes);
+            }
+            hashes.add(items);
+        }
+
+        // Now, one trip out per stock date, if any trips are needed at all.
+        Boolean connected = null;
+        for(List<List<Integer>> hashes : byStock.values()) {
+            // If this got superseded partway through, don't go making any
+            // more trips out.  Nobody's listening.
+            if(isSuperseded(mCurrentKey, mCurrentGeneration)) break;
+
+            List<Integer> firstItems = hashes.get(0);
+            int first = firstItems.get(0);
+            HashDate firstDate = HashDate.fromEpochDay(dates[first]);
+            Graticule firstGrat = graticuleFromPacked(grats[first]);
+
+            // If we already know the stock's not there, nothing sharing it
+            // will be, either.
+            if(HashBuilder.isKnownNotPosted(firstDate, firstGrat)) {
+                for(List<Integer> items : hashes)
+                    fillBatchResults(items, RESPONSE_NOT_POSTED_YET, FLAG_CACHED, null, dates, grats, codes, respFlags, infos);
+                continue;
+            }
+
+            // Only check the connection once, and only if we need it.
+            if(connected == null) connected = AndroidUtil.isConnected(this);
+            if(!connected) {
+                for(List<Integer> items : hashes)
+                    fillBatchResults(items, RESPONSE_NO_CONNECTION, 0, null, dates, grats, codes, respFlags, infos);
+                continue;
+            }
+
+            // The first hash goes to the network (if it has to; the stock
+            // might be in the database or archive already).  Once it's back,
+            // the stock's stored, so the rest of the hashes sharing it get it
+            // from there.  If the first one fails, the rest would fail the
+            // same way, so don't bother trying them.
+            int failure = RESPONSE_OKAY;
+            for(List<Integer> items : hashes) {
+                if(failure != RESPONSE_OKAY) {
+                    fillBatchResults(items, failure, 0, null, dates, grats, codes, respFlags, infos);
+                    continue;
+                }
+
+                int item = items.get(0);
+                StockRunner runner = HashBuilder.requestStockRunner(this,
+                        HashDate.fromEpochDay(dates[item]),
+                        graticuleFromPacked(grats[item]));
+                runner.runStock();
+
+                switch(runner.getStatus()) {
+                    case StockRunner.ALL_OKAY:
+                        fillBatchResults(items, RESPONSE_OKAY, 0, runner.getLastDayHash(), dates, grats, codes, respFlags, infos);
+                        break;
+                    case StockRunner.ERROR_NOT_POSTED:
+                        failure = RESPONSE_NOT_POSTED_YET;
+                        fillBatchResults(items, failure, 0, null, dates, grats, codes, respFlags, infos);
+                        break;
+                    default:
+                        failure = RESPONSE_NETWORK_ERROR;
+                        fillBatchResults(items, failure, 0, null, dates, grats, codes, respFlags, infos);
+                        break;
+                }
+            }
+        }
+
+        Log.d(DEBUG_TAG, "Batch of " + count + " item(s) covered " + byHash.size()
+                + " hash(es), " + byStock.size() + " of which needed a stock lookup.");
+
+        if(isSuperseded(mCurrentKey, mCurrentGeneration)) {
+            Log.d(DEBUG_TAG, "Batch was superseded while running, not responding.");
+            return;
+        }
+
+        // Prefetches were just for filling the cache.  Nobody wants to hear
+        // about them.
+        if(prefetch) return;
+
+        // Welcome to central Intent dispatch, bulk division.
+        Intent result = new Intent(ACTION_STOCK_BATCH_RESULT);
+        if(respondTo != null)
+            result.setClass(this, respondTo);
+
+        Bundle bun = new Bundle();
+        bun.putLong(EXTRA_REQUEST_ID, requestId);
+        bun.putInt(EXTRA_REQUEST_FLAGS, flags);
+        bun.putIntArray(EXTRA_BATCH_DATES, dates);
+        bun.putIntArray(EXTRA_BATCH_GRATICULES, grats);
+        bun.putIntArray(EXTRA_BATCH_RESPONSE_CODES, codes);
+        bun.putIntArray(EXTRA_BATCH_RESPONSE_FLAGS, respFlags);
+        bun.putParcelableArray(EXTRA_BATCH_INFOS, infos);
+        result.putExtra(EXTRA_STUFF, bun);
+
+        Log.d(DEBUG_TAG, "Dispatching batch intent...");
+        sendBroadcast(result);
+    }
+
+    private static void fillBatchResults(@NonNull List<Integer> items,
+                                         int code,
+                                         int respFlags,
+                                         @Nullable DayHash hash,
+                                         @NonNull int[] dates,
+                                         @NonNull int[] grats,
+                                         @NonNull int[] codes,
+                                         @NonNull int[] allRespFlags,
+                                         @NonNull Info[] infos) {
+        for(int item : items) {
+            codes[item] = code;
+            allRespFlags[item] = respFlags;
+            if(hash != null)
+                infos[item] = HashBuilder.makeInfo(HashDate.fromEpochDay(dates[item]),
+                        hash,
+                        graticuleFromPacked(grats[item]));
+        }
+    }
+
+    @Nullable
+    private static Graticule graticuleFromPacked(int packed) {
+        return packed == PackedGraticule.GLOBALHASH ? null : Graticule.fromPackedId(packed);
+    }
+
+    private void dispatchIntent(int responseCode, long requestId, int flags, int respFlags, HashDate date, Graticule graticule, Info info, Info[] nearby, @Nullable Class respondTo) {
+        // If this request got superseded while it was running, whatever
+        // result it got (probably an interrupted network error) is of no use
+        // to anyone.
+        if(isSuperseded(mCurrentKey, mCurrentGeneration)) {
+            Log.d(DEBUG_TAG, "Request was superseded while running, not responding.");
+            return;
+        }
+
         // Welcome to central Intent dispatch.  How may I help you?
         Intent intent = new Intent(ACTION_STOCK_RESULT);
 
@@ -351,12 +900,7 @@ public class StockService extends JobIntentService {
         bun.putLong(EXTRA_REQUEST_ID, requestId);
         bun.putInt(EXTRA_REQUEST_FLAGS, flags);
         bun.putInt(EXTRA_RESPONSE_FLAGS, respFlags);
-        bun.putSerializable(EXTRA_DATE, date);
-        bun.putParcelable(EXTRA_GRATICULE, graticule);
-        bun.putParcelable(EXTRA_INFO, info);
-        if(nearby != null && nearby.length != 0) {
-            bun.putParcelableArray(EXTRA_NEARBY_POINTS, nearby);
-        }
+        bun.putParcelable(EXTRA_RESULT, new StockResult(date, graticule, info, nearby));
 
         intent.putExtra(EXTRA_STUFF, bun);
         
@@ -365,57 +909,80 @@ public class StockService extends JobIntentService {
         sendBroadcast(intent);
     }
 
-    private Info[] getNearbyPoints(Calendar cal, Graticule g) {
+    private Info[] getNearbyPoints(@NonNull HashDate date, @Nullable Graticule g, int radius) {
         if(g == null) return new Info[0];
 
-        List<Info> infos = new LinkedList<>();
+        int side = radius * 2 + 1;
+        List<Info> infos = new ArrayList<>(side * side - 1);
+
+        // Every Graticule on the same side of the 30W line gets the same hash,
+        // so there's at most two DayHashes for this whole neighborhood, no
+        // matter how big it is.  We'll look each one up the first time we
+        // need it, and then it's just arithmetic from there.  Index 0 is
+        // non-30W, index 1 is 30W.
+        DayHash[] hashes = new DayHash[2];
+        boolean[] tried = new boolean[2];
+        int base = g.getPackedId();
+        int baseLat = PackedGraticule.getLatitudeIndex(base);
 
         // Hopefully, each nearby point is available.  In addition to cases
         // involving the poles, I *think* there's cases where a 30W point IS
         // available, but a neighboring non-30W point ISN'T.  We'll just ignore
         // those cases.
-        for(int i = -1; i <= 1; i++) {
-            for(int j = -1; j <= 1; j++) {
+        for(int i = -radius; i <= radius; i++) {
+            // If the user's truly adventurous enough to go near the 90N/S
+            // graticules, there aren't any nearby points past the pole.  The
+            // latitude index runs from 89S to 89N (both zeroes included), so
+            // anything off either end of that is right out.  Also, the nearby
+            // points aren't going to be drawn anyway due to the projection,
+            // but hey, that's nitpicking.
+            int latIndex = baseLat + i;
+            if(latIndex < 0 || latIndex >= PackedGraticule.LATITUDE_COUNT)
+                continue;
+
+            for(int j = -radius; j <= radius; j++) {
                 // Zero and zero isn't a nearby point, that's the very point
                 // we're at right now!
                 if(i == 0 && j == 0) continue;
 
-                // If the user's truly adventurous enough to go to the 90N/S
-                // graticules, there aren't any nearby points north/south of
-                // where they are.  Also, the nearby points aren't going to
-                // be drawn anyway due to the projection, but hey, that's
-                // nitpicking.
-                if(Math.abs((g.isSouth() ? -1 : 1) * g.getLatitude() + i) > 90)
-                    continue;
-
-                // Make a new Graticule, properly offset...
-                Graticule offset = Graticule.createOffsetFrom(g, i, j);
-
-                // ...then do the request.  Check the cache first!
-                Info info = HashBuilder.getStoredInfo(this, cal, offset);
-                if(info == null) {
-                    // It's not in the cache.  Try to make it be in the cache.
-                    StockRunner runner = HashBuilder.requestStockRunner(this, cal, offset);
-                    runner.runStock();
-
-                    if(runner.getStatus() == HashBuilder.StockRunner.ALL_OKAY) {
-                        // We've got a winner!
-                        info = runner.getLastResultObject();
+                // Offset the Graticule.  Longitude wraps around at 180, so the
+                // other side of the antimeridian works out on its own (and
+                // with MAX_NEARBY_RADIUS as small as it is, it can't wrap all
+                // the way around and hit the same Graticule twice).
+                int offset = PackedGraticule.offset(base, i, j);
+                Graticule neighbor = Graticule.fromPackedId(offset);
+                boolean uses30W = date.usesPreviousDay(offset);
+                int hashSide = uses30W ? 1 : 0;
+
+                // ...then get the hash for that side, if we haven't already.
+                // Check the cache first!
+                if(!tried[hashSide]) {
+                    tried[hashSide] = true;
+                    hashes[hashSide] = HashBuilder.getStoredDayHash(this, date, uses30W);
+
+                    if(hashes[hashSide] == null) {
+                        // It's not in the cache.  Try to make it be in the
+                        // cache.
+                        StockRunner runner = HashBuilder.requestStockRunner(this, date, neighbor);
+                        runner.runStock();
+
+                        // We'll just ignore it if this doesn't work out.  The
+                        // user doesn't need to be bugged about cache failures
+                        // or whatnot, they already got what they were looking
+                        // for.
+                        if(runner.getStatus() == HashBuilder.StockRunner.ALL_OKAY)
+                            hashes[hashSide] = runner.getLastDayHash();
                     }
-                    // We'll just ignore it if not.  The user doesn't need to be
-                    // bugged about cache failures or whatnot, they already got
-                    // what they were looking for.
                 }
 
-                // Now, add that to the array, if it's not null...
-                if(info != null)
-                    infos.add(info);
+                // Now, add that to the array, if we've got a hash...
+                if(hashes[hashSide] != null)
+                    infos.add(HashBuilder.makeInfo(date, hashes[hashSide], neighbor));
 
                 // And continue on!
             }
         }
 
-        Info[] toReturn = new Info[8];
-        return infos.toArray(toReturn);
+        return infos.toArray(new Info[0]);
     }
 }
@@ -36,6 +36,7 @@ import net.exclaimindustries.geohashdroid.R;
 import net.exclaimindustries.geohashdroid.activities.LoginPromptDialog;
 import net.exclaimindustries.geohashdroid.util.GHDConstants;
 import net.exclaimindustries.geohashdroid.util.Graticule;
+import net.exclaimindustries.geohashdroid.util.HttpClientProvider;
 import net.exclaimindustries.geohashdroid.util.Info;
 import net.exclaimindustries.geohashdroid.wiki.WikiException;
 import net.exclaimindustries.geohashdroid.wiki.WikiImageUtils;
@@ -56,7 +57,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import cz.msebera.android.httpclient.impl.client.CloseableHttpClient;
-import cz.msebera.android.httpclient.impl.client.HttpClients;
 
 /**
  * <code>WikiService</code> is a background service that handles all wiki
@@ -221,6 +221,19 @@ public class WikiService extends QueueService {
 
         // How alarming.  We need the AlarmManager.
         mAlarmManager = (AlarmManager)getSystemService(Context.ALARM_SERVICE);
+
+        // And we'll be needing connections.  Each queue item gets its own
+        // client (and thus its own login cookies), but they all share the same
+        // pool, so a login followed by a bunch of page fetches and posts
+        // doesn't have to reconnect every time.
+        HttpClientProvider.acquire();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        HttpClientProvider.release();
     }
     
     @Override
@@ -267,7 +280,7 @@ public class WikiService extends QueueService {
         // Location becomes null if we're not including it.  Nothing should need
         // to care.
 
-        try(CloseableHttpClient client = HttpClients.createDefault()) {
+        try(CloseableHttpClient client = HttpClientProvider.newSessionClient()) {
             SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
             String username = prefs.getString(GHDConstants.PREF_WIKI_USER, "");
             String password = prefs.getString(GHDConstants.PREF_WIKI_PASS, "");
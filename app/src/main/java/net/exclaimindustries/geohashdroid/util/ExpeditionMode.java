@@ -635,6 +635,10 @@ public class ExpeditionMode
         // I suppose a null Info MIGHT come in.  I don't know how yet, but sure,
         // let's assume a null Info here means we just don't render anything.
         if(mCurrentInfo != null) {
+            // While the user's looking at this one, quietly get the ones
+            // they're likely to look at next.
+            PrefetchScheduler.prefetchAround(mCentralMap, mCurrentInfo);
+
             mCentralMap.runOnUiThread(() -> {
                 // Marker!
                 addDestinationPoint(info);
@@ -877,6 +881,12 @@ public class ExpeditionMode
         // Globalhash), then we're clearly not ready to make stock requests and
         // are currently waiting for an initial location (or for the user to
         // switch to SelectAGraticuleMode instead).
+        //
+        // This stays a single request, not a batch.  One date's nearby points
+        // all come from the same DayHash, so StockService already answers
+        // this (nearby points and all) with one stock lookup and one
+        // broadcast.  A batch would only make it spell out every nearby
+        // Graticule and build an Info for each one.
         if(g != null || isGlobalHash)
             requestStock(g, newDate, StockService.FLAG_USER_INITIATED | (needsNearbyPoints() ? StockService.FLAG_INCLUDE_NEARBY_POINTS : 0));
     }
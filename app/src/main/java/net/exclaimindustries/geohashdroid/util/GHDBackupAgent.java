@@ -9,7 +9,13 @@
 package net.exclaimindustries.geohashdroid.util;
 
 import android.app.backup.BackupAgentHelper;
+import android.app.backup.BackupDataInput;
+import android.app.backup.BackupDataOutput;
+import android.app.backup.FileBackupHelper;
 import android.app.backup.SharedPreferencesBackupHelper;
+import android.os.ParcelFileDescriptor;
+
+import java.io.IOException;
 
 /**
  * This is your standard run-of-the-mill BackupAgentHelper for pre-Marshmallow
@@ -17,10 +23,14 @@ import android.app.backup.SharedPreferencesBackupHelper;
  */
 public class GHDBackupAgent extends BackupAgentHelper {
     static final String PREFS_BACKUP_KEY = "prefsBackupKey";
+    static final String KNOWN_LOCATIONS_BACKUP_KEY = "knownLocationsBackupKey";
 
     @Override
     public void onCreate() {
-        // Hoo boy, there's a few prefs to back up...
+        // Hoo boy, there's a few prefs to back up...  KnownLocations don't
+        // live in the prefs anymore, but that one stays in the list so
+        // restoring an older backup still gets them back (KnownLocationStore
+        // picks them up from there).
         SharedPreferencesBackupHelper helper = new SharedPreferencesBackupHelper(
                 this,
                 GHDConstants.PREF_AUTOZOOM,
@@ -38,11 +48,48 @@ public class GHDBackupAgent extends BackupAgentHelper {
                 GHDConstants.PREF_STARTUP_BEHAVIOR,
                 GHDConstants.PREF_STOCK_ALARM,
                 GHDConstants.PREF_STOCK_CACHE_SIZE,
+                GHDConstants.PREF_STOCK_HEDGE_DELAY,
                 GHDConstants.PREF_STOP_BUGGING_ME_PREFETCH_WARNING,
                 GHDConstants.PREF_WIKI_PASS,
                 GHDConstants.PREF_WIKI_USER,
                 GHDConstants.PREF_NIGHT_MODE
         );
         addHelper(PREFS_BACKUP_KEY, helper);
+
+        // And the KnownLocations themselves.
+        addHelper(KNOWN_LOCATIONS_BACKUP_KEY, new FileBackupHelper(this, KnownLocationStore.FILE_NAME));
+    }
+
+    @Override
+    public void onBackup(ParcelFileDescriptor oldState,
+                         BackupDataOutput data,
+                         ParcelFileDescriptor newState) throws IOException {
+        // Don't let KnownLocationStore write to its file while it's being
+        // backed up.
+        synchronized(KnownLocationStore.FILE_LOCK) {
+            super.onBackup(oldState, data, newState);
+        }
+    }
+
+    @Override
+    public void onRestore(BackupDataInput data,
+                          int appVersionCode,
+                          ParcelFileDescriptor newState) throws IOException {
+        KnownLocationStore store = KnownLocationStore.get(this);
+
+        try {
+            synchronized(KnownLocationStore.FILE_LOCK) {
+                // Anything KnownLocationStore still has queued up to write
+                // was meant for the OLD file.  Make sure that doesn't land on
+                // the new one.
+                store.beginRestore();
+                super.onRestore(data, appVersionCode, newState);
+            }
+        } finally {
+            // Whatever KnownLocationStore had in memory is out of date now.
+            // This also lets it start writing again, so it has to happen even
+            // if the restore blew up.
+            store.reload();
+        }
     }
 }
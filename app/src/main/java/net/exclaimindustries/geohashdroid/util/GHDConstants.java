@@ -37,8 +37,21 @@ public final class GHDConstants {
     public static final String PREF_INFOBOX = "InfoBox";
     /** Prefs key specifying stock cache size. */
     public static final String PREF_STOCK_CACHE_SIZE = "StockCacheSize";
+    /**
+     * Prefs key specifying how long, in milliseconds, to wait on one stock
+     * server before also trying the next one, as a String (ListPreference
+     * again).  0 asks them all at once, and -1 only moves on when one fails.
+     * See {@link HashBuilder.StockRunner#getHedgeDelay(android.content.Context)}.
+     */
+    public static final String PREF_STOCK_HEDGE_DELAY = "StockHedgeDelay";
     /** Prefs key specifying to show nearby meetup points. */
     public static final String PREF_NEARBY_POINTS = "NearbyPoints";
+    /**
+     * Prefs key specifying how many graticules out the nearby points go, as
+     * a String (thanks, ListPreference).  1 is the usual 3x3 block, 2 is 5x5,
+     * and so on.  See {@link net.exclaimindustries.geohashdroid.services.StockService#EXTRA_NEARBY_RADIUS}.
+     */
+    public static final String PREF_NEARBY_RADIUS = "NearbyRadius";
     /** Prefs key specifying to show known locations on the main map. */
     public static final String PREF_SHOW_KNOWN_LOCATIONS = "ShowKnownLocations";
     /** Prefs key that stores the known locations JSON blob. */
@@ -98,6 +111,27 @@ public final class GHDConstants {
      */
     public static final String PREF_STOP_BUGGING_ME_KNOWN_NOTIFICATION_LIMIT = "StopBuggingKnownNotificationLimit";
 
+    /**
+     * Prefs key specifying whether or not the debug section of the
+     * preferences is shown.  There's no checkbox for this; it gets turned on
+     * by tapping the version number in the About dialog a bunch of times.
+     */
+    public static final String PREF_SHOW_DEBUG_INFO = "ShowDebugInfo";
+
+    /**
+     * Prefs key for how many times in a row the stock alarm has retried since
+     * its last success.  This is what the backoff between retries is based
+     * on.
+     */
+    public static final String PREF_STOCK_ALARM_RETRY_COUNT = "StockAlarmRetryCount";
+
+    /**
+     * Prefs key for whether or not the stock history bundled in the assets
+     * has been imported into the stock cache yet.  Wiping out the cache
+     * clears this.
+     */
+    public static final String PREF_BUNDLED_STOCKS_IMPORTED = "BundledStocksImported";
+
     /** Prefs key for whether or not the app is in night mode. */
     public static final String PREF_NIGHT_MODE = "NightMode";
 
@@ -15,6 +15,8 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import androidx.annotation.NonNull;
 
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
+
 /**
  * <p>
  * A <code>Graticule</code> represents, well, a graticule. A 1x1 square degree
@@ -160,62 +162,35 @@ public class Graticule implements Parcelable {
         // If we're just returning the same Graticule, seriously, come on now.
         if(latOff == 0 && lonOff == 0) return g;
 
-        // We already have all the data we need from the old Graticule.  But,
-        // we need to account for passing through the Prime Meridian and/or
-        // equator.  If the sign changes, decrement the amount of the change by
-        // one.  This logic is gratuitously loopy.
-        boolean goingSouth = (latOff < 0);
-        latOff = Math.abs(latOff);
-
-        int finalLat = g.getLatitude();
-        int finalLon = g.getLongitude();
-        boolean finalSouth = g.isSouth();
-        boolean finalWest = g.isWest();
-
-        // Skip the following if latitude is unaffected.
-        if (latOff != 0) {
-            if (g.isSouth() == goingSouth) {
-                // Going the same direction, no equator-hacking needed.
-                finalLat = g.getLatitude() + latOff;
-            } else {
-                // Going opposite directions, check for equator-hacking.
-                if (g.getLatitude() < latOff) {
-                    // We cross the equator!
-                    latOff--;
-                    finalSouth = !finalSouth;
-                }
-                finalLat = Math.abs(g.getLatitude() - latOff);
-            }
-        }
+        // All the loopy equator-hacking and planet-wrapping happens in
+        // PackedGraticule, where it all turns into simple addition.
+        return fromPackedId(PackedGraticule.offset(g.getPackedId(), latOff, lonOff));
+    }
 
-        // Meridian hacking can be handled differently to also cover planet-
-        // wrapping at the same time.  This entire stunt depends on treating
-        // the longitude as a value between 0 and 359, inclusive.  In this,
-        // 179W is 0, 0W is 179, 0E is 180, and 179E is 359.
-        
-        // Adjust us properly.  Remember the negative zero graticules!
-        if(finalWest)
-            finalLon = -finalLon + 179;
-        else
-            finalLon += 180;
-        
-        finalLon += lonOff;
-        finalLon %= 360;
-        
-        if(finalLon < 0) finalLon = 360 - Math.abs(finalLon);
-        
-        if(finalLon >= 180) {
-            finalWest = false;
-            finalLon -= 180;
-        } else {
-            finalWest = true;
-            finalLon -= 179;
-        }
-        
-        finalLon = Math.abs(finalLon);
-        
-        // Now make the new Graticule object and return it.
-        return new Graticule(finalLat, finalSouth, finalLon, finalWest);
+    /**
+     * Makes a Graticule out of a packed int, as made by {@link #getPackedId()}
+     * or {@link PackedGraticule}.  Don't give this {@link PackedGraticule#GLOBALHASH};
+     * that's not a Graticule.
+     *
+     * @param packed the packed Graticule
+     * @return a new Graticule
+     */
+    @NonNull
+    public static Graticule fromPackedId(int packed) {
+        return new Graticule(PackedGraticule.getLatitude(packed),
+                PackedGraticule.isSouth(packed),
+                PackedGraticule.getLongitude(packed),
+                PackedGraticule.isWest(packed));
+    }
+
+    /**
+     * Packs this Graticule down into a single int.  See {@link PackedGraticule}
+     * for what that means and what you can do with it.
+     *
+     * @return this Graticule, packed
+     */
+    public int getPackedId() {
+        return PackedGraticule.pack(mLatitude, mSouth, mLongitude, mWest);
     }
     
     /**
@@ -254,21 +229,11 @@ public class Graticule implements Parcelable {
         
         // I swear, if these wind up not being valid, I reserve the right to
         // dope slap you.
-        if(absLat < 90) {
-            mSouth = true;
-            setLatitude(89 - absLat);
-        } else {
-            mSouth = false;
-            setLatitude(absLat - 90);
-        }
-        
-        if(absLon < 180) {
-            mWest = true;
-            setLongitude(179 - absLon);
-        } else {
-            mWest = false;
-            setLongitude(absLon - 180);
-        }
+        int packed = PackedGraticule.fromIndices(absLat, absLon);
+        mSouth = PackedGraticule.isSouth(packed);
+        mWest = PackedGraticule.isWest(packed);
+        setLatitude(PackedGraticule.getLatitude(packed));
+        setLongitude(PackedGraticule.getLongitude(packed));
     }
     
     @Override
@@ -283,16 +248,9 @@ public class Graticule implements Parcelable {
         // further, we want to only store two ints (instead of two ints and two
         // booleans).  See the comments in readFromParcel for details.  To wit:
         
-        // Latitude!
-        if(mSouth)
-            dest.writeInt(Math.abs(mLatitude - 89));
-        else
-            dest.writeInt(mLatitude + 90);
-        
-        if(mWest)
-            dest.writeInt(Math.abs(mLongitude - 179));
-        else
-            dest.writeInt(mLongitude + 180);
+        int packed = getPackedId();
+        dest.writeInt(PackedGraticule.getLatitudeIndex(packed));
+        dest.writeInt(PackedGraticule.getLongitudeIndex(packed));
     }
 
     /**
@@ -305,7 +263,7 @@ public class Graticule implements Parcelable {
      * @return true if the 30W Rule is in effect, false otherwise
      */
     public boolean uses30WRule() {
-        return (mLongitude < 30 || !isWest());
+        return PackedGraticule.uses30WRule(getPackedId());
     }
 
     private void setLatitude(int latitude) {
@@ -8,30 +8,52 @@
 package net.exclaimindustries.geohashdroid.util;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
 
-import net.exclaimindustries.tools.DateTools;
-import net.exclaimindustries.tools.HexFraction;
-import net.exclaimindustries.tools.MD5Tools;
+import net.exclaimindustries.geohashdroid.core.DayHash;
+import net.exclaimindustries.geohashdroid.core.DayHashCache;
+import net.exclaimindustries.geohashdroid.core.GeohashMath;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
+import net.exclaimindustries.geohashdroid.core.StockArchive;
+import net.exclaimindustries.geohashdroid.core.StockCsvReader;
+import net.exclaimindustries.geohashdroid.core.StockQuote;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
-import java.security.InvalidParameterException;
 import java.util.Calendar;
-import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import cz.msebera.android.httpclient.HttpResponse;
+import cz.msebera.android.httpclient.client.methods.CloseableHttpResponse;
 import cz.msebera.android.httpclient.client.methods.HttpGet;
 import cz.msebera.android.httpclient.impl.client.CloseableHttpClient;
-import cz.msebera.android.httpclient.impl.client.HttpClients;
+import cz.msebera.android.httpclient.util.EntityUtils;
 
 /**
  * <p>
@@ -39,6 +61,13 @@ import cz.msebera.android.httpclient.impl.client.HttpClients;
  * methods to grab and store the day's DJIA and calculate the hash, given a
  * <code>Graticule</code> object.
  * </p>
+ *
+ * <p>
+ * What actually gets cached is a {@link DayHash}, the fractional part of the
+ * hash for a given date and side of the 30W line.  Since that's the same for
+ * every Graticule on that side, a whole neighborhood of points can be worked
+ * out from one lookup with {@link #makeInfo(HashDate, DayHash, Graticule)}.
+ * </p>
  * 
  * <p>
  * This also encompasses <code>StockRunner</code>, which goes out to the web
@@ -47,28 +76,91 @@ import cz.msebera.android.httpclient.impl.client.HttpClients;
  * </p>
  * 
  * <p>
- * This implementation uses the Crox site to get the DJIA, falling back to
- * the peeron.com site if Crox can't figure it out (upstream faults, server
- * failure, etc).
+ * This implementation uses the peeron.com site to get the DJIA, hedging
+ * with the Crox site if peeron doesn't answer quickly or can't figure it out
+ * (upstream faults, server failure, etc).  Whichever comes back with a valid
+ * price first wins.
  * </p>
  * 
  * @author Nicholas Killewald
  */
 public class HashBuilder {
-    
-    // This is used as the lock to prevent multiple requests from happening at
-    // once.  This really shouldn't ever happen, but just in case.
-    private static final Object locker = new Object();
+
+    // Stock fetches that are going on right now, keyed on the stock date's
+    // epoch day.  If a second request for the same stock date comes in while
+    // the first is still out on the network, it just waits on the first one's
+    // result instead of making its own trip.  Requests for different dates
+    // don't wait on each other at all, and anything that can be answered from
+    // the caches never waits on the network.
+    private static final ConcurrentHashMap<Integer, FutureTask<String>> mInFlight =
+            new ConcurrentHashMap<>();
+
+    // Stock dates the servers have told us aren't posted yet, keyed on epoch
+    // day, mapped to the wall-clock time (in millis) at which it's worth
+    // asking again.  Until then, anyone asking gets told "not posted" without
+    // bothering the servers.  See rememberNotPosted for how long that is.
+    private static final ConcurrentHashMap<Integer, Long> mNotPosted =
+            new ConcurrentHashMap<>();
+
+    // The stock market opens at 9:30am in New York.  We give the servers this
+    // much longer after that to actually get the opening posted before we
+    // start asking again.
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    private static final long NOT_POSTED_MARGIN_MS = 5 * 60 * 1000;
+    // If it's already past that point and it's STILL not posted (a slow
+    // server, or a market holiday), give it this long before asking again.
+    private static final long NOT_POSTED_RETRY_MS = 5 * 60 * 1000;
     
     private static final String DEBUG_TAG = "HashBuilder";
     
+    /**
+     * How many DayHashes the quick cache holds by default.  That's both sides
+     * of the 30W line for a month or so, which should be plenty for paging
+     * around retrohashes without hitting the database every time.
+     */
+    public static final int DEFAULT_QUICK_CACHE_SIZE = 64;
+
     private static StockStoreDatabase mStore;
-    // This set allows for quick reloading of the most recent stock and hash in
-    // a given instance of the program, bypassing the SQLite database, as well
-    // as allow for a small cache even if the SQLite database is turned off by
-    // preferences.
-    private static Info mLastInfo;
-    private static Info mTwoInfosAgo;
+    private static final Object mStoreInitLock = new Object();
+    // This allows for quick reloading of recent hashes in a given instance of
+    // the program, bypassing the SQLite database, as well as allow for a small
+    // cache even if the SQLite database is turned off by preferences.  It's
+    // thread-safe on its own, so StockService and AlarmService can both go at
+    // it.
+    private static final DayHashCache mQuickCache = new DayHashCache(DEFAULT_QUICK_CACHE_SIZE);
+
+    // How many rows have gone into the database since maintenance last ran,
+    // and how many it takes before isMaintenanceDue says it's time again.
+    private static final int MAINTENANCE_WRITE_THRESHOLD = 32;
+    private static final AtomicInteger mWritesSinceMaintenance = new AtomicInteger();
+
+    /**
+     * The name of the stock archive file, both in the app's files directory
+     * (where it gets mapped from) and in the assets (where a bundled one would
+     * get copied from the first time it's needed).
+     */
+    public static final String STOCK_ARCHIVE_NAME = "djia.bin";
+
+    // The historical stock archive, if there is one.  That's a read-only pile
+    // of old DJIA openings that gets checked before the database, so
+    // retrohashing doesn't have to go to the network for anything the
+    // archive already knows.  mArchiveChecked means we've already looked for
+    // it, so a missing archive doesn't mean a trip to the filesystem on every
+    // single lookup.
+    private static volatile StockArchive mArchive;
+    private static volatile boolean mArchiveChecked = false;
+    private static final Object mArchiveLock = new Object();
+
+    /**
+     * The name of the bundled stock history CSV in the assets, as per
+     * {@link StockCsvReader}.  If it's there, it gets imported into the
+     * database once, the first time {@link #importBundledStocks(Context)}
+     * runs.
+     */
+    public static final String STOCK_CSV_NAME = "djia.csv";
+
+    // Only one bundled import at a time, please.
+    private static final Object mBundledStocksLock = new Object();
 
     /**
      * <code>StockRunner</code> is what fetches the stocks.  It spawns off
@@ -80,9 +172,21 @@ public class HashBuilder {
     public static class StockRunner {
         private static final String DEBUG_TAG = "StockRunner";
 
-        // In milliseconds, remember.
-        private static final int CONNECTION_TIMEOUT_SEC = 10;
-        private static final int CONNECTION_TIMEOUT_MS = CONNECTION_TIMEOUT_SEC * 1000;
+        // The HTTP client has its own connect and read timeouts (see
+        // HttpClientProvider), but a server that trickles data in slowly
+        // enough can keep beating those forever.  This is how long we give a
+        // whole request before we abort it no matter what.  In milliseconds,
+        // remember.
+        private static final int REQUEST_TIMEOUT_SEC = 15;
+        private static final int REQUEST_TIMEOUT_MS = REQUEST_TIMEOUT_SEC * 1000;
+
+        /**
+         * How long, in milliseconds, to give one stock server before also
+         * trying the next one, by default.  See {@link #getHedgeDelay(Context)}.
+         */
+        public static final long DEFAULT_HEDGE_DELAY_MS = 1500;
+
+        private static ExecutorService mFetchExecutor;
 
         /**
          * This is busy, either with getting the stock price or working out
@@ -110,11 +214,11 @@ public class HashBuilder {
         public static final int ERROR_SERVER = 4;
 
         private Context mContext;
-        private Calendar mCal;
+        private HashDate mDate;
         private Graticule mGrat;
-        private HttpGet mRequest;
         private int mStatus;
         private Info mLastObject;
+        private DayHash mLastDayHash;
 
         // This may be expanded later to allow a user-definable list, hence why
         // it doesn't follow the usual naming conventions I use.  Of course, in
@@ -124,9 +228,27 @@ public class HashBuilder {
         private final static String[] mServers = { "http://irc.peeron.com/xkcd/map/data/%Y/%m/%d",
                 "http://geo.crox.net/djia/%Y/%m/%d" };
 
-        private StockRunner(@NonNull Context con, @NonNull Calendar c, @Nullable Graticule g) {
+        /**
+         * @return how many stock servers there are
+         */
+        public static int getServerCount() {
+            return mServers.length;
+        }
+
+        /**
+         * Gets a short name for one of the stock servers, for diagnostics.
+         *
+         * @param index which server, in the order they're tried
+         * @return its name
+         */
+        @NonNull
+        public static String getServerName(int index) {
+            return StockMetrics.nameFromUrl(mServers[index]);
+        }
+
+        private StockRunner(@NonNull Context con, @NonNull HashDate date, @Nullable Graticule g) {
             mContext = con;
-            mCal = c;
+            mDate = date;
             mGrat = g;
             mStatus = IDLE;
         }
@@ -146,78 +268,74 @@ public class HashBuilder {
          */
         public void runStock() {
             Log.d(DEBUG_TAG, "Now starting a StockRunner for " +
-                DateTools.getHyphenatedDateString(mCal) +
+                mDate +
                     (mGrat == null ? " for the Globalhash" : " at " +
                         mGrat.getTitleString(false))
                     + "...");
-            Info toReturn;
+            DayHash hash;
             String stock;
             
             mStatus = BUSY;
             
-            // First, we need to adjust the calendar in the event we're in the
-            // range of the 30W rule.  To that end, sCal is for stock calendar.
-            Calendar sCal = Info.makeAdjustedCalendar(mCal, mGrat);
+            // First, we need to adjust the date in the event we're in the
+            // range of the 30W rule.  To that end, sDate is for stock date.
+            boolean previousDay = usesPreviousDay(mDate, mGrat);
+            HashDate sDate = mDate.getStockDate(previousDay);
             
-            // Grab a lock on our lock object.
-            synchronized(locker) {
-                // First, if this exists in the cache, use it instead of going
-                // off to the internet.  This method uses the ACTUAL date, so
-                // we can ignore sCal for now.
-                toReturn = getStoredInfo(mContext, mCal, mGrat);
-                if(toReturn != null) {
-                    // Hey, whadya know, we've got something!  Send this data
-                    // back to the Handler and return!
-                    Log.d(DEBUG_TAG, "Found it in the cache!");
-                    mStatus = ALL_OKAY;
-                    sendMessage(toReturn);
+            // First, if this exists in the cache, use it instead of going off
+            // to the internet.  This method uses the ACTUAL date, so we can
+            // ignore sDate for now.
+            hash = getStoredDayHash(mContext, mDate, previousDay);
+            if(hash != null) {
+                // Hey, whadya know, we've got something!  Send this data back
+                // to the Handler and return!
+                Log.d(DEBUG_TAG, "Found it in the cache!");
+                mStatus = ALL_OKAY;
+                sendMessage(makeInfo(mDate, hash, mGrat), hash);
+                return;
+            }
+
+            // If that failed, we need a stock price.  First, check to see if
+            // it's in the database.
+            stock = getStoredStock(mContext, sDate);
+
+            // If we found something, great!  Let's move on!
+            if(stock == null) {
+                // Otherwise, we need to start heading off to the net (or
+                // wait on whoever else is already heading off to the net).
+                mStatus = BUSY;
+                try {
+                    stock = getStockInFlight(mContext, sDate);
+                } catch (FileNotFoundException fnfe) {
+                    // If we got a 404, assume it's not posted yet.
+                    mStatus = ERROR_NOT_POSTED;
+                    sendMessage(createInvalidInfo(mDate, mGrat), null);
+                    return;
+                } catch (IOException ioe) {
+                    // If we got anything else, assume a problem.
+                    mStatus = ERROR_SERVER;
+                    sendMessage(createInvalidInfo(mDate, mGrat), null);
                     return;
-                }
-                
-                // If that failed, we need a stock price.  First, check to see
-                // if it's in the database.  
-                stock = getStoredStock(mContext, sCal);
-                
-                // If we found something, great!  Let's move on!
-                if(stock == null) {
-                    // Otherwise, we need to start heading off to the net.
-                    mStatus = BUSY;
-                    try {
-                        stock = fetchStock(sCal);
-                        // If this didn't throw an exception AND it's not blank,
-                        // stash it in the database.
-                        if(stock.trim().length() != 0)
-                            storeStock(mContext, sCal, stock);
-                    } catch (FileNotFoundException fnfe) {
-                        // If we got a 404, assume it's not posted yet.
-                        mStatus = ERROR_NOT_POSTED;
-                        sendMessage(createInvalidInfo(mCal, mGrat));
-                        return;
-                    } catch (IOException ioe) {
-                        // If we got anything else, assume a problem.
-                        mStatus = ERROR_SERVER;
-                        sendMessage(createInvalidInfo(mCal, mGrat));
-                        return;
-                    }
                 }
             }
 
-            // We assemble an Info object and get ready to return it.  This uses
-            // the REAL date so we display the right thing on the detail screen
-            // (or anywhere else; the point is, we can report to the user if
-            // they're in the influence of the 30W Rule).
-            toReturn = createInfo(mCal, stock, mGrat);
+            // We work out the hash and get ready to return it.  This uses the
+            // REAL date so we display the right thing on the detail screen (or
+            // anywhere else; the point is, we can report to the user if they're
+            // in the influence of the 30W Rule).
+            hash = createDayHash(mDate, previousDay, stock);
                 
             // Good!  Now, we can stash this away in the database for later.
-            storeInfo(mContext, toReturn);
+            storeDayHash(mContext, hash);
             
             // And we're done!
             mStatus = ALL_OKAY;
-            sendMessage(toReturn);
+            sendMessage(makeInfo(mDate, hash, mGrat), hash);
         }
         
-        private void sendMessage(@NonNull Info toReturn) {
+        private void sendMessage(@NonNull Info toReturn, @Nullable DayHash hash) {
             mLastObject = toReturn;
+            mLastDayHash = hash;
         }
         
         /**
@@ -233,112 +351,442 @@ public class HashBuilder {
             return mLastObject;
         }
 
+        /**
+         * Returns the last DayHash this StockRunner found or created.  Same
+         * deal as {@link #getLastResultObject()}, only this can be turned into
+         * an Info for any Graticule on the same side of the 30W line.  This
+         * will be null if the status isn't ALL_OKAY.
+         *
+         * @return the last DayHash from this StockRunner (may be null)
+         */
+        @Nullable
+        public DayHash getLastDayHash() {
+            return mLastDayHash;
+        }
+
+        /**
+         * Gets the stock for the given date from the network, unless someone
+         * else is already doing exactly that, in which case this waits for
+         * their answer (or their exception).  Whoever actually does the fetch
+         * also stores it in the database before anyone gets the answer.
+         *
+         * @param con a Context, for the database
+         * @param sDate the stock date (NOT the expedition date)
+         * @return the stock
+         * @throws FileNotFoundException the stock isn't posted yet
+         * @throws IOException something else went wrong
+         */
         @NonNull
-        private String fetchStock(@NonNull Calendar sCal) throws IOException {
-            // Now, generate a string for the URL.
-            String sMonthStr = String.format(Locale.US, "%02d", sCal.get(Calendar.MONTH) + 1);
-            String sDayStr = String.format(Locale.US, "%02d", sCal.get(Calendar.DAY_OF_MONTH));
-
-            // Good, good! Now, to the web!  Go through our list of sites in
-            // order until we find an answer, we bottom out, or we abort.  In
-            // terms of what we report to the user, "Server error" is lowest-
-            // priority, with "Stock not posted" rating above it.  That is to
-            // say, if one server reports and error but another one explicitly
-            // tells us the stock wasn't found, the latter is what we use.  Of
-            // course, if we get an abort request, that takes absolute
-            // precedence.
-            int curStatus = ERROR_SERVER;
-            String result = "";
+        private static String getStockInFlight(@NonNull final Context con,
+                                               @NonNull final HashDate sDate)
+                throws IOException {
+            // If we already know it's not there, don't bother anyone.
+            if(isStockKnownNotPosted(sDate)) {
+                Log.d(DEBUG_TAG, "We already know the stock for " + sDate + " isn't posted yet.");
+                StockMetrics.notPostedCacheHits.incrementAndGet();
+                throw new FileNotFoundException();
+            }
+
+            // This only loops if we were waiting on someone else's fetch and
+            // it got interrupted out from under us.
+            while(true) {
+                Integer key = sDate.getEpochDay();
+                FutureTask<String> task = new FutureTask<>(() -> {
+                    // Check the database once more.  There's a window where
+                    // someone else could've finished fetching this after we
+                    // looked but before we got in here.
+                    String stock = getStoredStock(con, sDate);
+                    if(stock != null) return stock;
+
+                    StockMetrics.networkFetches.incrementAndGet();
+                    long start = SystemClock.elapsedRealtime();
+                    try {
+                        stock = fetchStock(con, sDate);
+                        StockMetrics.networkSuccesses.incrementAndGet();
+                    } catch (FileNotFoundException fnfe) {
+                        // Not posted yet.  Remember that for a bit.
+                        StockMetrics.networkNotPosted.incrementAndGet();
+                        rememberNotPosted(sDate);
+                        throw fnfe;
+                    } catch (InterruptedIOException iioe) {
+                        // Whoever was running this got told to stop.  That's
+                        // not the server's fault.
+                        StockMetrics.networkCancelled.incrementAndGet();
+                        throw iioe;
+                    } catch (IOException ioe) {
+                        StockMetrics.networkErrors.incrementAndGet();
+                        throw ioe;
+                    } finally {
+                        StockMetrics.networkLatency.record(SystemClock.elapsedRealtime() - start);
+                    }
 
-            for(String s : mServers) {
+                    // If this didn't throw an exception AND it's not blank,
+                    // stash it in the database.
+                    if(stock.trim().length() != 0)
+                        storeStock(con, sDate, stock);
+                    return stock;
+                });
+
+                FutureTask<String> existing = mInFlight.putIfAbsent(key, task);
+
+                if(existing == null) {
+                    // We're the first.  Run it right here in this thread, then
+                    // get out of the map so the next request starts fresh (by
+                    // which point it'll probably find it in the database anyway).
+                    try {
+                        task.run();
+                    } finally {
+                        mInFlight.remove(key, task);
+                    }
+                    existing = task;
+                } else {
+                    Log.d(DEBUG_TAG, "Someone's already fetching the stock for " + sDate
+                            + ", waiting on them...");
+                    StockMetrics.networkCoalesced.incrementAndGet();
+                }
+
+                try {
+                    return existing.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the stock");
+                } catch (ExecutionException ee) {
+                    // Unwrap whatever went wrong, so the 404-versus-server-error
+                    // distinction survives.
+                    Throwable cause = ee.getCause();
+
+                    // If it was someone ELSE'S fetch that got interrupted (say,
+                    // their request was superseded), that says nothing about
+                    // the stock.  They're out of the in-flight map by now, so go
+                    // around again and either start a fresh fetch or join
+                    // whoever else did.
+                    if(cause instanceof InterruptedIOException && existing != task
+                            && !Thread.currentThread().isInterrupted()) {
+                        Log.d(DEBUG_TAG, "The fetch we were waiting on for " + sDate
+                                + " was interrupted, trying again...");
+                        continue;
+                    }
+
+                    if(cause instanceof IOException)
+                        throw (IOException)cause;
+                    if(cause instanceof RuntimeException)
+                        throw (RuntimeException)cause;
+                    throw new IOException(cause);
+                }
+            }
+        }
+
+        @NonNull
+        private static String fetchStock(@NonNull Context con, @NonNull HashDate sDate) throws IOException {
+            // Now, generate a string for the URL.  HashDate gives us yyyyMMdd,
+            // so just chop that up.
+            String sDateStr = sDate.toDateString();
+            String sYearStr = sDateStr.substring(0, 4);
+            String sMonthStr = sDateStr.substring(4, 6);
+            String sDayStr = sDateStr.substring(6, 8);
+
+            // Set up one fetch per server.  Nothing's started yet; they go
+            // out in order as the hedging decides.
+            MirrorFetch[] fetches = new MirrorFetch[mServers.length];
+            for(int i = 0; i < mServers.length; i++) {
                 // Do all our substitutions...
-                String location = s.replaceAll("%Y", Integer.toString(sCal.get(Calendar.YEAR)));
+                String location = mServers[i].replaceAll("%Y", sYearStr);
                 location = location.replaceAll("%m", sMonthStr);
                 location = location.replaceAll("%d", sDayStr);
-                Log.v(DEBUG_TAG, "Trying " + location + "...");
-                
-                // And go fetch!
-                CloseableHttpClient client = HttpClients.createDefault();
-                mRequest = new HttpGet(location);
+                fetches[i] = new MirrorFetch(location, StockMetrics.getMirror(i));
+            }
 
-                HttpResponse response;
+            // Good, good! Now, to the web!  The first server goes out right
+            // away.  If it hasn't come back with an answer by the time the
+            // hedge delay runs out (or if it comes back with a failure), the
+            // next one goes out too, and so on down the list.  Whoever comes
+            // back first with something that's actually a number wins, and
+            // everyone else gets aborted.
+            //
+            // In terms of what we report to the user, "Server error" is
+            // lowest-priority, with "Stock not posted" rating above it.  That
+            // is to say, if one server reports an error but another one
+            // explicitly tells us the stock wasn't found, the latter is what we
+            // use.
+            int curStatus = ERROR_SERVER;
+            String result = null;
 
-                // Get ready to time out if need be.  You never know.
-                TimerTask task = new TimerTask() {
-                    @Override
-                    public void run() {
-                        Log.i(DEBUG_TAG, "Stock fetch connection timed out, aborting now.");
-                        try {
-                            mRequest.abort();
-                        } catch (NullPointerException npe) {
-                            // It COULD be null at that point.  If it is, we can
-                            // just safely ignore it.
+            long hedgeDelay = getHedgeDelay(con);
+            CompletionService<MirrorFetch> completion =
+                    new ExecutorCompletionService<>(getFetchExecutor());
+            int started = 0;
+            int running = 0;
+            long nextLaunch = SystemClock.elapsedRealtime();
+
+            try {
+                while(started < fetches.length || running > 0) {
+                    long now = SystemClock.elapsedRealtime();
+
+                    // If it's time for the next server (or there's nothing
+                    // left running to wait on), send it out.
+                    if(started < fetches.length && (now >= nextLaunch || running == 0)) {
+                        MirrorFetch fetch = fetches[started++];
+                        Log.v(DEBUG_TAG, "Trying " + fetch.mLocation + "...");
+                        fetch.mStarted = now;
+                        fetch.mStats.attempts.incrementAndGet();
+                        completion.submit(fetch);
+                        running++;
+                        nextLaunch = (hedgeDelay >= 0 && started < fetches.length)
+                                ? now + hedgeDelay
+                                : Long.MAX_VALUE;
+                        continue;
+                    }
+
+                    // Otherwise, wait until either the next server's due, the
+                    // oldest running request times out, or something comes
+                    // back, whichever's first.
+                    long wake = started < fetches.length ? nextLaunch : Long.MAX_VALUE;
+                    for(int i = 0; i < started; i++) {
+                        if(!fetches[i].mDone && !fetches[i].mRequest.isAborted())
+                            wake = Math.min(wake, fetches[i].mStarted + REQUEST_TIMEOUT_MS);
+                    }
+
+                    Future<MirrorFetch> future = completion.poll(Math.max(0, wake - now),
+                            TimeUnit.MILLISECONDS);
+
+                    if(future == null) {
+                        // Nothing came back.  Abort anyone who's been at it
+                        // too long; they'll come back as server errors.
+                        now = SystemClock.elapsedRealtime();
+                        for(int i = 0; i < started; i++) {
+                            MirrorFetch fetch = fetches[i];
+                            if(!fetch.mDone && !fetch.mRequest.isAborted()
+                                    && now - fetch.mStarted >= REQUEST_TIMEOUT_MS) {
+                                Log.i(DEBUG_TAG, "Stock fetch connection to " + fetch.mLocation
+                                        + " timed out, aborting now.");
+                                fetch.abort();
+                            }
                         }
+                        continue;
                     }
-                };
 
-                // Timer goes now!  We'll start the client immediately in the
-                // upcoming try block.
-                new Timer(true).schedule(task, CONNECTION_TIMEOUT_MS);
+                    running--;
+                    MirrorFetch done;
+                    try {
+                        done = future.get();
+                    } catch (ExecutionException ee) {
+                        // MirrorFetch catches everything it knows how to
+                        // throw, so this really shouldn't happen.  Count it
+                        // as a server error.
+                        Log.w(DEBUG_TAG, "Stock fetch blew up!", ee.getCause());
+                        continue;
+                    }
 
-                try {
-                    response = client.execute(mRequest);
-                    task.cancel();
+                    if(done.mStatus == ALL_OKAY) {
+                        // We survived!  Set the status flag and stop!
+                        Log.d(DEBUG_TAG, "Success!  Stock found at " + done.mLocation
+                                + "!  It's " + done.mResult + "!");
+                        curStatus = ALL_OKAY;
+                        result = done.mResult;
+                        break;
+                    }
 
-                    // If that came out aborted, it was a timeout, so move on.
-                    if(mRequest.isAborted()) continue;
-                } catch (IOException e) {
-                    // If there was an exception, there was some issue with the
-                    // server.  It might've been aborted by timeout, but still,
-                    // move on to the next server.
-                    Log.d(DEBUG_TAG, "IOException!", e);
-                    continue;
-                }
+                    if(done.mStatus == ERROR_NOT_POSTED) {
+                        // If the server gives us a 404, that's saying it can't
+                        // find the stock for the day, which in turn implies it
+                        // hasn't been posted yet.  Maybe the others just aren't
+                        // in sync, though.
+                        Log.d(DEBUG_TAG, "Server said there was no stock for " + sDate);
+                        curStatus = ERROR_NOT_POSTED;
+                    }
 
-                if (response.getStatusLine().getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
-                    // If the server gives us a 404, that's saying it can't find
-                    // the stock for the day, which in turn implies it hasn't
-                    // been posted yet.  Log as such and try the next server.
-                    // Maybe they're just not in sync.
-                    Log.d(DEBUG_TAG, "Server said there was no stock for " + DateTools.getHyphenatedDateString(sCal));
-                    curStatus = ERROR_NOT_POSTED;
-                    continue;
-                } else if (response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
-                    // A non-okay response that isn't a 404 is bad.  Count this
-                    // one as ERROR_SERVER and just continue.
-                    continue;
+                    // That one failed, so there's no sense waiting around for
+                    // the hedge delay.  Send the next one out now.
+                    nextLaunch = SystemClock.elapsedRealtime();
                 }
-                
-                // Well, we got this far!  Let's read!
-                result = getStringFromStream(response.getEntity().getContent());
-                
-                // With that done, we try to convert the output to the float.
-                // If this fails, we got bogus data and should roll on.
-                try {
-                    Float.parseFloat(result);
-                } catch (NumberFormatException nfe) {
-                    result = "";
-                    continue;
+            } catch (InterruptedException ie) {
+                // Someone wants us to stop.  Fine.  Let whoever it is know
+                // the interruption happened, and treat it like an I/O error.
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while fetching the stock");
+            } finally {
+                // Whatever happened, anyone still out there gets aborted.
+                for(int i = 0; i < started; i++) {
+                    if(!fetches[i].mDone) fetches[i].abort();
                 }
-                
-                // We survived!  Set the status flag and keep going!
-                Log.d(DEBUG_TAG, "Success!  Stock found!  It's " + result + "!");
-                curStatus = ALL_OKAY;
-                client.close();
-                break;
             }
-            
+
+            // Let the posting stats know what each server had to say, so the
+            // stock alarm can get a better idea of when to show up.  Aborted
+            // requests didn't say anything either way.
+            StockPostingStats stats = StockPostingStats.get(con);
+            for(int i = 0; i < started; i++) {
+                MirrorFetch fetch = fetches[i];
+                if(!fetch.mDone || fetch.mRequest.isAborted()) continue;
+
+                if(fetch.mStatus == ALL_OKAY)
+                    stats.recordResult(sDate, i, true);
+                else if(fetch.mStatus == ERROR_NOT_POSTED)
+                    stats.recordResult(sDate, i, false);
+            }
+
             // If we got this far and we still had an ERROR_SERVER or
             // ERROR_NOT_POSTED, throw 'em.  We failed.
             if(curStatus == ERROR_NOT_POSTED)
                 throw new FileNotFoundException();
-            else if(curStatus == ERROR_SERVER)
+            else if(curStatus != ALL_OKAY)
                 throw new IOException();
 
             // If we finally, FINALLY got this far, we've got a successful stock!
             return result;
         }
-        
+
+        /**
+         * Gets how long to wait on one stock server before also trying the
+         * next one in the list, as per the preferences
+         * ({@link GHDConstants#PREF_STOCK_HEDGE_DELAY}).  Zero means try them
+         * all at once.  A negative number means never hedge, and only try the
+         * next server once the previous one's failed or timed out (that's how
+         * it used to work).
+         *
+         * @param con Context used to get at the preferences
+         * @return the hedge delay, in milliseconds
+         */
+        public static long getHedgeDelay(@NonNull Context con) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(con);
+
+            try {
+                return Long.parseLong(prefs.getString(GHDConstants.PREF_STOCK_HEDGE_DELAY,
+                        Long.toString(DEFAULT_HEDGE_DELAY_MS)));
+            } catch(NumberFormatException nfe) {
+                return DEFAULT_HEDGE_DELAY_MS;
+            }
+        }
+
+        @NonNull
+        private static synchronized ExecutorService getFetchExecutor() {
+            if(mFetchExecutor == null) {
+                // Daemon threads, so a hung server can't keep anything alive.
+                // These go away on their own after they've been idle a while.
+                mFetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private int mCount = 0;
+
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        Thread t = new Thread(r, "StockFetch-" + (++mCount));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+
+            return mFetchExecutor;
+        }
+
+        /**
+         * One attempt at getting the stock from one server.  This gets run on
+         * the fetch executor, and its status is one of ALL_OKAY,
+         * ERROR_NOT_POSTED, or ERROR_SERVER once it's done.  It never throws;
+         * an aborted request just comes back as a server error.
+         */
+        private static class MirrorFetch implements Callable<MirrorFetch> {
+            private final String mLocation;
+            private final HttpGet mRequest;
+            private final StockMetrics.MirrorStats mStats;
+            // Set by the thread running fetchStock before this is submitted,
+            // so the executor's handoff makes it visible to call().
+            private long mStarted;
+
+            private volatile boolean mDone = false;
+            private volatile int mStatus = ERROR_SERVER;
+            private volatile String mResult;
+
+            private MirrorFetch(@NonNull String location, @NonNull StockMetrics.MirrorStats stats) {
+                mLocation = location;
+                mRequest = new HttpGet(location);
+                mStats = stats;
+            }
+
+            private void abort() {
+                mRequest.abort();
+            }
+
+            @Override
+            public MirrorFetch call() {
+                CloseableHttpResponse response = null;
+
+                try {
+                    // This is the shared client.  Don't close it.  DO close
+                    // the response, though, so the connection goes back to
+                    // the pool.
+                    CloseableHttpClient client = HttpClientProvider.getClient();
+                    response = client.execute(mRequest);
+                    int code = response.getStatusLine().getStatusCode();
+
+                    if(code == HttpURLConnection.HTTP_OK) {
+                        // Well, we got this far!  Let's read!
+                        String result = getStringFromStream(response.getEntity().getContent());
+                        // It's all ASCII, so characters are bytes.
+                        mStats.bytes.addAndGet(result.length());
+
+                        // With that done, we try to convert the output to the
+                        // float.  If this fails, we got bogus data, and that
+                        // counts as a server error.
+                        try {
+                            Float.parseFloat(result);
+                            mResult = result;
+                            mStatus = ALL_OKAY;
+                        } catch (NumberFormatException nfe) {
+                            Log.d(DEBUG_TAG, mLocation + " returned something that isn't a stock price.");
+                        }
+                    } else {
+                        // Read out whatever error page came along with it, so
+                        // the connection can be used again.
+                        if(response.getEntity() != null && response.getEntity().getContentLength() > 0)
+                            mStats.bytes.addAndGet(response.getEntity().getContentLength());
+                        EntityUtils.consumeQuietly(response.getEntity());
+
+                        // A non-okay response that isn't a 404 is bad.  That
+                        // stays ERROR_SERVER.
+                        if(code == HttpURLConnection.HTTP_NOT_FOUND)
+                            mStatus = ERROR_NOT_POSTED;
+                    }
+                } catch (IOException e) {
+                    // If there was an exception, there was some issue with the
+                    // server.  It might've been aborted by timeout or because
+                    // another server won, but either way, it's a server error.
+                    if(!mRequest.isAborted())
+                        Log.d(DEBUG_TAG, "IOException from " + mLocation + "!", e);
+                } catch (IllegalStateException ise) {
+                    // The connection pool isn't there, or got shut down out
+                    // from under us.  Either whatever wanted this stock is
+                    // already gone, or it forgot to acquire the pool.  Either
+                    // way, no stock from this server.
+                    Log.w(DEBUG_TAG, "No connection pool for " + mLocation + "!", ise);
+                } finally {
+                    if(response != null) {
+                        try {
+                            response.close();
+                        } catch (IOException ioe) {
+                            // Don't care.
+                        }
+                    }
+                    mDone = true;
+
+                    // Aborted requests say more about the other servers than
+                    // this one, so they don't count toward its latency.
+                    if(mRequest.isAborted()) {
+                        mStats.aborted.incrementAndGet();
+                    } else {
+                        mStats.latency.record(SystemClock.elapsedRealtime() - mStarted);
+                        if(mStatus == ALL_OKAY)
+                            mStats.successes.incrementAndGet();
+                        else if(mStatus == ERROR_NOT_POSTED)
+                            mStats.notPosted.incrementAndGet();
+                        else
+                            mStats.errors.incrementAndGet();
+                    }
+                }
+
+                return this;
+            }
+        }
+
         /**
          * Takes the given stream and makes a String out of whatever data it has. Be
          * really careful with this, as it will just attempt to read whatever's in
@@ -390,12 +838,17 @@ public class HashBuilder {
      * @return a new StockStoreDatabase object
      */
     @NonNull
-    private static synchronized StockStoreDatabase getStore(@NonNull Context c) {
-        if(mStore == null) {
-            mStore = new StockStoreDatabase().init(c);
+    private static StockStoreDatabase getStore(@NonNull Context c) {
+        // This has its own lock, separate from the one the writes use, so
+        // that reading from the database doesn't have to wait for someone
+        // else's write and cleanup to finish.  SQLite's fine with that.
+        synchronized(mStoreInitLock) {
+            if(mStore == null) {
+                mStore = new StockStoreDatabase().init(c);
+            }
+
+            return mStore;
         }
-        
-        return mStore;
     }
     
     /**
@@ -403,13 +856,13 @@ public class HashBuilder {
      * operation.
      * 
      * @param con Context for databasey stuff
-     * @param c Calendar object with the adventure date requested (this will
-     *          account for the 30W Rule, so don't put it in) 
+     * @param date the adventure date requested (this will account for the 30W
+     *             Rule, so don't put it in)
      * @param g Graticule to use
      */
     @NonNull
-    public static StockRunner requestStockRunner(@NonNull Context con, @NonNull Calendar c, @Nullable Graticule g) {
-        return new StockRunner(con, c, g);
+    public static StockRunner requestStockRunner(@NonNull Context con, @NonNull HashDate date, @Nullable Graticule g) {
+        return new StockRunner(con, date, g);
     }
 
     /**
@@ -418,292 +871,528 @@ public class HashBuilder {
      * will return null.
      *
      * @param con Context used to retrieve the database, if needed
-     * @param c Calendar object with the adventure date requested (this will
-     *          account for the 30W Rule, so don't put it in) 
+     * @param date the adventure date requested (this will account for the 30W
+     *             Rule, so don't put it in)
      * @param g Graticule to use
      * @return the Info object for the given data, or null if can't be built
      *         without going to the internet.
      */
     @Nullable
-    public static Info getStoredInfo(@NonNull Context con, @NonNull Calendar c, @Nullable Graticule g) {
+    public static Info getStoredInfo(@NonNull Context con, @NonNull HashDate date, @Nullable Graticule g) {
+        DayHash hash = getStoredDayHash(con, date, usesPreviousDay(date, g));
+
+        if(hash == null)
+            return null;
+
+        return makeInfo(date, hash, g);
+    }
+
+    /**
+     * Attempt to get the stored DayHash for the given date and side of the 30W
+     * line, explicitly without going to the internet.  Use this instead of
+     * {@link #getStoredInfo(Context, HashDate, Graticule)} if you need a bunch
+     * of Graticules for the same day; one DayHash covers all of them.
+     *
+     * @param con Context used to retrieve the database, if needed
+     * @param date the adventure date requested (the REAL date, not adjusted
+     *             for anything)
+     * @param uses30W true to get the hash made from the previous day's stock
+     *                (see {@link #usesPreviousDay(HashDate, Graticule)})
+     * @return the DayHash, or null if it can't be had without going to the
+     *         internet
+     */
+    @Nullable
+    public static DayHash getStoredDayHash(@NonNull Context con, @NonNull HashDate date, boolean uses30W) {
         // First, check the quick cache.  If it's in the quick cache, use it.
-        Log.v(DEBUG_TAG, "Checking caches for " + DateTools.getDateString(c)
-                + ((g == null || g.uses30WRule()) ? " with 30W rule" : " without 30W rule"));
-        Info result = getQuickCache(c, g);
+        Log.v(DEBUG_TAG, "Checking caches for " + date
+                + (uses30W ? " with 30W rule" : " without 30W rule"));
+        DayHash result = mQuickCache.get(DayHash.makeKey(date.getEpochDay(), uses30W));
         if(result != null) {
-            Log.v(DEBUG_TAG, "Data found in quickcache!");
-            if(result.isGlobalHash()) return result;
-            else return cloneInfo(result, g);
+            Log.v(DEBUG_TAG, "Data found in quickcache: " + result);
+            return result;
         }
         
         // Otherwise, check the stock cache.
-        Info i = getStore(con).getInfo(c, g);
+        long start = System.nanoTime();
+        result = getStore(con).getDayHash(date, uses30W);
+        StockMetrics.dbLatency.recordSince(start);
         
-        if(i == null)
+        if(result == null) {
+            StockMetrics.dbHashMisses.incrementAndGet();
             return null;
+        }
+
+        StockMetrics.dbHashHits.incrementAndGet();
             
         Log.v(DEBUG_TAG, "Data found in database!  Quickcaching...");
         // If it was in the main cache but not the quick cache, quick cache it.
-        quickCache(i);
-        return i;
+        mQuickCache.put(result);
+        return result;
+    }
+
+    /**
+     * Returns whether the given date and Graticule use the previous day's
+     * stock; that is, whether the 30W Rule is in effect there (Globalhashes
+     * always count).  This is the flag a {@link DayHash} is keyed on.
+     *
+     * @param date the REAL date
+     * @param g the Graticule (null for a Globalhash)
+     * @return true if the previous day's stock is used, false if not
+     */
+    public static boolean usesPreviousDay(@NonNull HashDate date, @Nullable Graticule g) {
+        return date.usesPreviousDay(g == null ? PackedGraticule.GLOBALHASH : g.getPackedId());
     }
     
+    /**
+     * Returns whether we already know the stock for the given date and
+     * Graticule isn't posted yet, because a server told us so recently enough
+     * that it's not worth asking again.  This never goes to the network, so
+     * it's safe to call anywhere.
+     *
+     * @param date the REAL date
+     * @param g the Graticule (null for a Globalhash)
+     * @return true if it's known not to be posted, false if it might be
+     */
+    public static boolean isKnownNotPosted(@NonNull HashDate date, @Nullable Graticule g) {
+        return isStockKnownNotPosted(date.getStockDate(usesPreviousDay(date, g)));
+    }
+
+    private static boolean isStockKnownNotPosted(@NonNull HashDate sDate) {
+        Integer key = sDate.getEpochDay();
+        Long expires = mNotPosted.get(key);
+        if(expires == null) return false;
+
+        if(System.currentTimeMillis() >= expires) {
+            // Time's up.  Time to go ask again.
+            mNotPosted.remove(key, expires);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static void rememberNotPosted(@NonNull HashDate sDate) {
+        // The stock should be showing up at 9:30am New York time on the stock
+        // date, plus a bit.  If it's not there yet, that's when we'll ask
+        // again.  If we're already past that, though, just wait a little
+        // while.
+        Calendar cal = Calendar.getInstance(NEW_YORK);
+        cal.clear();
+        cal.set(sDate.getYear(), sDate.getMonth() - 1, sDate.getDayOfMonth(), 9, 30, 0);
+
+        long now = System.currentTimeMillis();
+        long expires = cal.getTimeInMillis() + NOT_POSTED_MARGIN_MS;
+        if(expires <= now) expires = now + NOT_POSTED_RETRY_MS;
+
+        Log.d(DEBUG_TAG, "Remembering that " + sDate + " isn't posted for "
+                + ((expires - now) / 1000) + " seconds.");
+        mNotPosted.put(sDate.getEpochDay(), expires);
+    }
+
     /**
      * Attempt to get the stock value stored in the database for the given
      * already-adjusted date.  This won't go to the internet; that's the
      * responsibility of a StockRunner.
      * 
      * @param con Context used to retrieve the database, if needed 
-     * @param c already-adjusted date to check
+     * @param sDate already-adjusted date to check
      * @return the String representation of the stock, or null if it's not there
      */
     @Nullable
-    public static String getStoredStock(@NonNull Context con, @NonNull Calendar c) {
-        // We don't quickcache the stock values.
-        Log.v(DEBUG_TAG, "Going to the database for a stock for " + DateTools.getDateString(c));
-        
-        return getStore(con).getStock(c);
+    public static String getStoredStock(@NonNull Context con, @NonNull HashDate sDate) {
+        // We don't quickcache the stock values.  The archive comes first,
+        // though; it's just a bit of arithmetic on a mapped file.
+        StockArchive archive = getArchive(con);
+        if(archive != null) {
+            String stock = archive.getStock(sDate);
+            if(stock != null) {
+                StockMetrics.archiveHits.incrementAndGet();
+                return stock;
+            }
+            StockMetrics.archiveMisses.incrementAndGet();
+        }
+
+        Log.v(DEBUG_TAG, "Going to the database for a stock for " + sDate);
+
+        long start = System.nanoTime();
+        String stock = getStore(con).getStock(sDate);
+        StockMetrics.dbLatency.recordSince(start);
+
+        if(stock == null)
+            StockMetrics.dbStockMisses.incrementAndGet();
+        else
+            StockMetrics.dbStockHits.incrementAndGet();
+
+        return stock;
+    }
+
+    /**
+     * Gets the stock archive, opening it if it hasn't been opened yet.  If
+     * there isn't one in the files directory but there's one bundled in the
+     * assets, that gets copied over first (assets might be compressed, so
+     * they can't be mapped directly).
+     *
+     * @param con Context for finding files
+     * @return the archive, or null if there isn't one
+     */
+    @Nullable
+    private static StockArchive getArchive(@NonNull Context con) {
+        if(mArchiveChecked) return mArchive;
+
+        synchronized(mArchiveLock) {
+            if(mArchiveChecked) return mArchive;
+
+            File file = new File(con.getFilesDir(), STOCK_ARCHIVE_NAME);
+
+            if(!file.exists()) {
+                try(InputStream in = con.getAssets().open(STOCK_ARCHIVE_NAME)) {
+                    Log.d(DEBUG_TAG, "Copying the bundled stock archive out of the assets...");
+                    copyArchive(con, in, file);
+                } catch(FileNotFoundException fnfe) {
+                    // No bundled archive.  That's fine.
+                } catch(IOException ioe) {
+                    Log.w(DEBUG_TAG, "Couldn't copy the bundled stock archive!", ioe);
+                }
+            }
+
+            if(file.exists()) {
+                try {
+                    mArchive = StockArchive.open(file);
+                    Log.d(DEBUG_TAG, "Stock archive covers " + mArchive.getFirstDate()
+                            + " to " + mArchive.getLastDate());
+                } catch(IOException ioe) {
+                    Log.w(DEBUG_TAG, "The stock archive is broken, ignoring it!", ioe);
+                    mArchive = null;
+                }
+            }
+
+            mArchiveChecked = true;
+            return mArchive;
+        }
+    }
+
+    /**
+     * Installs a new stock archive, replacing whatever was there before.  The
+     * new one is checked before it replaces anything, so a bad download
+     * won't wipe out a good archive.  This does file I/O, so don't call it on
+     * the main thread.
+     *
+     * @param con Context for finding files
+     * @param in where the new archive comes from (this won't be closed)
+     * @throws IOException the archive couldn't be written or isn't valid
+     */
+    public static void installStockArchive(@NonNull Context con, @NonNull InputStream in)
+            throws IOException {
+        synchronized(mArchiveLock) {
+            copyArchive(con, in, new File(con.getFilesDir(), STOCK_ARCHIVE_NAME));
+            // Any old mapping stays valid for anyone still holding it; the
+            // rename doesn't touch the old file's data.
+            mArchive = StockArchive.open(new File(con.getFilesDir(), STOCK_ARCHIVE_NAME));
+            mArchiveChecked = true;
+        }
+    }
+
+    private static void copyArchive(@NonNull Context con,
+                                    @NonNull InputStream in,
+                                    @NonNull File dest) throws IOException {
+        // Write it out to a temp file, make sure it's a real archive, THEN
+        // move it into place.
+        File temp = new File(con.getFilesDir(), STOCK_ARCHIVE_NAME + ".tmp");
+
+        try {
+            try(OutputStream out = new FileOutputStream(temp)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while((read = in.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+            }
+
+            StockArchive.open(temp);
+
+            if(!temp.renameTo(dest))
+                throw new IOException("Couldn't move the new stock archive into place!");
+        } finally {
+            if(temp.exists() && !temp.delete())
+                Log.w(DEBUG_TAG, "Couldn't delete the temporary stock archive.");
+        }
     }
     
     /**
-     * Puts the given data into the quick cache.  Note that the Calendar object
-     * is the date of the stock, not the date of the expedition.
-     * 
-     * @param i Info to store
+     * Changes how many DayHashes the quick cache will hold.  If that's fewer
+     * than it's holding now, the least recently used ones get dropped.
+     *
+     * <p>
+     * Nothing in the app calls this; {@link #DEFAULT_QUICK_CACHE_SIZE} covers
+     * a month or so of both 30W and non-30W hashes, which is plenty.  It's
+     * here for anyone poking at memory use or profiling, not as a setting.
+     * </p>
+     *
+     * @param size new size of the quick cache (at least one)
+     * @throws IllegalArgumentException size was less than one
+     */
+    public static void setQuickCacheSize(int size) {
+        mQuickCache.setMaxSize(size);
+    }
+
+    /**
+     * Gets the hit, miss, and eviction counts for the quick cache, for
+     * diagnostic purposes.
+     *
+     * @return a snapshot of the quick cache's stats
      */
-    private static void quickCache(@NonNull Info i) {
-        // Slide over!
-        mTwoInfosAgo = mLastInfo;
-        mLastInfo = i;
+    @NonNull
+    public static DayHashCache.Stats getQuickCacheStats() {
+        return mQuickCache.getStats();
     }
     
     /**
-     * Stores Info data away in the database.  This won't do anything if the
-     * day's Info already exists therein.
+     * Stores a DayHash away in the database.  This won't do anything if the
+     * day's hash already exists therein.
      * 
      * @param con Context used to retrieve the database, if needed
-     * @param i an Info bundle with everything we need
+     * @param hash the DayHash to store
      */
-    private synchronized static void storeInfo(@NonNull Context con, @NonNull Info i) {
-        // First, replace the last-known results.
-        quickCache(i);
+    private synchronized static void storeDayHash(@NonNull Context con, @NonNull DayHash hash) {
+        // First, quick cache it.
+        mQuickCache.put(hash);
         
         StockStoreDatabase store = getStore(con);
         
-        // Then, write it to the database.
-        store.storeInfo(i);
-        store.cleanup(con);
+        // Then, write it to the database.  Pruning waits until the next
+        // maintenance.
+        store.storeDayHash(hash);
+        mWritesSinceMaintenance.incrementAndGet();
     }
     
-    private synchronized static void storeStock(@NonNull Context con, @NonNull Calendar cal, @NonNull String stock) {
+    private synchronized static void storeStock(@NonNull Context con, @NonNull HashDate sDate, @NonNull String stock) {
         StockStoreDatabase store = getStore(con);
         
-        store.storeStock(cal, stock);
-        store.cleanup(con);
+        store.storeStock(sDate, stock);
+        mWritesSinceMaintenance.incrementAndGet();
+    }
+
+    /**
+     * <p>
+     * Performs maintenance on the stock cache database, pruning it back down
+     * to size (see {@link StockStoreDatabase#performMaintenance(Context, int[], int[])}).
+     * This doesn't happen when things are stored, so something has to call
+     * this every so often.  AlarmService does it once per stock check, and
+     * StockService does it when {@link #isMaintenanceDue()} says so.
+     * </p>
+     *
+     * <p>
+     * Today and tomorrow (both in local time) are always pinned, as are the
+     * stocks they use, so the hashes anyone's most likely to ask for never get
+     * evicted.  Pass in any other expedition dates that should get the same
+     * treatment, such as whatever dates the known locations were just checked
+     * against.  Don't call this from the main thread.
+     * </p>
+     *
+     * @param con Context used to retrieve the database, if needed
+     * @param pinnedDates any other REAL dates to keep
+     */
+    public synchronized static void performMaintenance(@NonNull Context con, @NonNull HashDate... pinnedDates) {
+        HashDate today = HashDate.fromCalendar(Calendar.getInstance());
+
+        // Each expedition date pins its own hashes, plus both stock dates it
+        // might use (with and without the 30W Rule).
+        int dateCount = pinnedDates.length + 2;
+        int[] hashDays = new int[dateCount];
+        int[] stockDays = new int[dateCount * 2];
+
+        for(int i = 0; i < dateCount; i++) {
+            HashDate date;
+            if(i == 0) date = today;
+            else if(i == 1) date = today.plusDays(1);
+            else date = pinnedDates[i - 2];
+
+            hashDays[i] = date.getEpochDay();
+            stockDays[i * 2] = date.getStockDate(false).getEpochDay();
+            stockDays[i * 2 + 1] = date.getStockDate(true).getEpochDay();
+        }
+
+        mWritesSinceMaintenance.set(0);
+        getStore(con).performMaintenance(con, stockDays, hashDays);
     }
 
     /**
-     * Wipes out the entire stock cache.  No, seriously.
+     * Returns whether enough has been written to the stock cache since the
+     * last {@link #performMaintenance(Context, HashDate...)} that it's worth
+     * running again.  This is for anything that stores stuff without any
+     * regular schedule, so the cache doesn't grow forever if the stock alarm
+     * is off.
+     *
+     * @return true if it's time for maintenance
+     */
+    public static boolean isMaintenanceDue() {
+        return mWritesSinceMaintenance.get() >= MAINTENANCE_WRITE_THRESHOLD;
+    }
+
+    /**
+     * <p>
+     * Imports a bunch of stock values into the database all at once.  Use
+     * this to backfill historical data.
+     * </p>
+     *
+     * <p>
+     * Imported stocks are kept for good; {@link #performMaintenance(Context, HashDate...)}
+     * won't prune them, and they don't count toward the cache size or toward
+     * {@link #isMaintenanceDue()}.  The quotes get read (and parsed, if that's
+     * what the Iterable does) outside of any locks, and go into the database
+     * in batches, so everyone else can still get at the stock cache while an
+     * import's going on.  Don't call this from the main thread; it's database
+     * I/O.
+     * </p>
+     *
+     * @param con Context used to retrieve the database, if needed
+     * @param quotes the stocks to import
+     * @return how many were new to the database
+     */
+    public static int importStocks(@NonNull Context con, @NonNull Iterable<StockQuote> quotes) {
+        return getStore(con).storeStocks(quotes);
+    }
+
+    /**
+     * Imports historical DJIA openings from CSV, as per {@link StockCsvReader}.
+     * This streams the data straight from the Reader into the database, so
+     * the size of the file doesn't matter much.  The Reader will be closed
+     * when this is done.
+     *
+     * @param con Context used to retrieve the database, if needed
+     * @param csv the CSV data
+     * @return how many were new to the database
+     * @throws IOException something went wrong reading the CSV (anything read
+     *                     before that point will still have been imported)
+     */
+    public static int importStocksFromCsv(@NonNull Context con, @NonNull Reader csv) throws IOException {
+        try(StockCsvReader reader = new StockCsvReader(csv)) {
+            // Pull it all in first, then check for errors.  Everything that
+            // got read before an error is perfectly good data, so there's no
+            // harm in keeping it.
+            int stored = importStocks(con, reader);
+            reader.checkError();
+
+            if(reader.getSkippedLines() > 0)
+                Log.w(DEBUG_TAG, "Skipped " + reader.getSkippedLines() + " bad line(s) in the stock CSV.");
+
+            return stored;
+        }
+    }
+
+    /**
+     * <p>
+     * Imports the stock history bundled in the assets ({@link #STOCK_CSV_NAME}),
+     * if there is one and it hasn't been imported already.  This works a lot
+     * like the bundled stock archive: the first time it's called, it looks in
+     * the assets, and if nothing's there, that's fine, it just won't look
+     * again.  If the import fails partway, whatever made it in stays, and
+     * the next call tries again.
+     * </p>
+     *
+     * <p>
+     * This is a whole lot of database I/O the first time around, so don't
+     * call it from the main thread.
+     * </p>
+     *
+     * @param con Context used to get at the assets, preferences, and database
+     */
+    public static void importBundledStocks(@NonNull Context con) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(con);
+        if(prefs.getBoolean(GHDConstants.PREF_BUNDLED_STOCKS_IMPORTED, false)) return;
+
+        synchronized(mBundledStocksLock) {
+            if(prefs.getBoolean(GHDConstants.PREF_BUNDLED_STOCKS_IMPORTED, false)) return;
+
+            try(InputStream in = con.getAssets().open(STOCK_CSV_NAME)) {
+                Log.d(DEBUG_TAG, "Importing the bundled stock history out of the assets...");
+                int stored = importStocksFromCsv(con,
+                        new BufferedReader(new InputStreamReader(in, "US-ASCII")));
+                Log.d(DEBUG_TAG, "Imported " + stored + " bundled stocks.");
+            } catch(FileNotFoundException fnfe) {
+                // No bundled history.  That's fine.
+            } catch(IOException ioe) {
+                Log.w(DEBUG_TAG, "Couldn't import the bundled stock history, will try again later!", ioe);
+                return;
+            }
+
+            prefs.edit().putBoolean(GHDConstants.PREF_BUNDLED_STOCKS_IMPORTED, true).apply();
+        }
+    }
+
+    /**
+     * Wipes out the entire stock cache.  No, seriously.  That includes any
+     * imported stocks, so the bundled history (if any) will be imported again
+     * the next time {@link #importBundledStocks(Context)} runs.
      * 
      * @param con Context used to retrieve the database
      * @return true on success, false on failure
      */
     public synchronized static boolean deleteCache(@NonNull Context con) {
+        mQuickCache.clear();
+        mNotPosted.clear();
+        PreferenceManager.getDefaultSharedPreferences(con).edit()
+                .remove(GHDConstants.PREF_BUNDLED_STOCKS_IMPORTED)
+                .apply();
         return getStore(con).deleteCache();
     }
     
     /**
-     * Build an Info object.  Since this assumes we already have a stock price
-     * AND the Graticule can tell us if we need to use the 30W rule, use the
-     * REAL date on the Calendar object.
+     * Build a DayHash.  Since this assumes we already have a stock price AND
+     * the caller knows if we need to use the 30W rule, use the REAL date.
      * 
-     * @param c date from which this hash comes
+     * @param date date from which this hash comes
+     * @param uses30W true if the stock price is from the previous day
      * @param stockPrice effective stock price (already adjusted for the 30W Rule)
-     * @param g the graticule in question
-     * @return a new Info object
+     * @return a new DayHash
      */
     @NonNull
-    private static Info createInfo(@NonNull Calendar c, @NonNull String stockPrice, @Nullable Graticule g) {
-        // This creates the Info object that'll go right back to whatever was
-        // calling it.  In general, this is the Handler in StockRunner.
-        
-        // So to that end, we first build up the hash.
-        String hash = makeHash(c, stockPrice);
-        
-        // Then, get the latitude and longitude from that.
-        double lat = getLatitude(g, hash);
-        double lon = getLongitude(g, hash);
+    private static DayHash createDayHash(@NonNull HashDate date, boolean uses30W, @NonNull String stockPrice) {
+        // So to that end, we first work out the fractional parts of the hash.
+        // Remember, date is the REAL date, not the STOCK date!
+        double[] fractions = new double[2];
+        GeohashMath.computeFractions(date.getYear(),
+                date.getMonth(),
+                date.getDayOfMonth(),
+                stockPrice,
+                fractions);
         
         // And finally...
-        return new Info(lat, lon, g, c);
+        return new DayHash(date.getEpochDay(), uses30W, fractions[0], fractions[1]);
     }
     
     /**
      * Build an Info object marked as invalid.  This is for error-reporting.
      * 
-     * @param c date from which this hash should've come
+     * @param date date from which this hash should've come
      * @param g the graticule in question
      * @return an Info object marked invalid
      */
     @NonNull
-    private static Info createInvalidInfo(@NonNull Calendar c, @Nullable Graticule g) {
-        return new Info(g, c);
+    private static Info createInvalidInfo(@NonNull HashDate date, @Nullable Graticule g) {
+        return new Info(g, date);
     }
     
     /**
-     * Builds a new Info object by applying a new Graticule to an existing Info
-     * object.  That is to say, change the destination of an Info object to
-     * somewhere else, as if it were the same day and same stock value (and
-     * thus the same hash).  Note that this will throw an exception if the 
-     * existing Info's 30W-alignment isn't the same as the new Graticule's,
-     * because that might require a trip back to the internet, and by this
-     * point, we should know that we don't need to do so.
-     * 
-     * Also note that you can't do any cloning actions on a globalhash, since
-     * that doesn't make any sense.
-     * 
-     * @param i old Info object to clone
-     * @param g new Graticule to apply
-     * @throws InvalidParameterException the Info and Graticule do not lie on
-     *                                   the same side of the 30W line, or one
-     *                                   of the Graticules in question
-     *                                   represents a globalhash.
-     * @return a new, improved Info object
-     */
-    @NonNull
-    private static Info cloneInfo(@NonNull Info i, @Nullable Graticule g) {
-        if(i.isGlobalHash() || g == null)
-            throw new InvalidParameterException("You can't clone a globalhash point, since that doesn't make any sense.");
-
-        Graticule source = i.getGraticule();
-
-        if(source == null)
-            throw new InvalidParameterException("You can't clone a globalhash point, since that doesn't make any sense.");
-        
-        // This sort of requires the 30W-itude of both to match.
-        if(source.uses30WRule() != g.uses30WRule())
-            throw new InvalidParameterException("The given Info and Graticule do not lie on the same side of the 30W line; this should not have happened.");
-        
-        // Get the destination set...
-        double lat = (g.getLatitude() + i.getLatitudeHash()) * (g.isSouth() ? -1 : 1);
-        double lon = (g.getLongitude() + i.getLongitudeHash()) * (g.isWest() ? -1 : 1);
-        
-        // Then...
-        return new Info(lat, lon, g, i.getCalendar());
-    }
-    
-    /**
-     * Generate the hash string from the date and stock price.  The REAL date,
-     * that is.  Not a 30W Rule-adjusted date.
-     * 
-     * @param c date to use
-     * @param stockPrice stock price to use
-     * @return the hash you're looking for
+     * Builds an Info object out of a DayHash and the Graticule it goes in.
+     * This is the one place the hash gets attached to the Graticule, whether
+     * it came fresh from the stock, the quick cache, or the database.  The
+     * DayHash has to be the one for that Graticule's side of the 30W line, of
+     * course; this doesn't check.
+     *
+     * @param date date from which this hash comes (the REAL date)
+     * @param hash the DayHash
+     * @param g the graticule in question (null for a globalhash)
+     * @return a new Info object
      */
     @NonNull
-    private static String makeHash(@NonNull Calendar c, @NonNull String stockPrice) {
-        // Just reset the hash. This can be handy alone if the graticule has
-        // changed.  Remember, c is the REAL date, not the STOCK date!
-        return MD5Tools.MD5hash(String.format(Locale.US,
-                "%4d-%02d-%02d-%s",
-                c.get(Calendar.YEAR),
-                c.get(Calendar.MONTH) + 1,
-                c.get(Calendar.DAY_OF_MONTH),
-                stockPrice));
-    }
+    public static Info makeInfo(@NonNull HashDate date, @NonNull DayHash hash, @Nullable Graticule g) {
+        // If the Graticule's null, it's a globalhash, and Info wants the raw
+        // hash values for those.
+        if(g == null)
+            return new Info(hash.getLatitudeHash(), hash.getLongitudeHash(), null, date);
 
-    @Nullable
-    private static Info getQuickCache(@NonNull Calendar sCal, @Nullable Graticule g) {
-        // We don't use Calendar.equals here, as that checks all properties,
-        // including potentially some we don't really care about.
-        boolean is30W = (g == null || g.uses30WRule());
-        
-        // At any rate, first off, the most recent date/30W combo.  Then, the
-        // second-most.  Failing THAT, return null.
-        Log.v(DEBUG_TAG, "Checking quickcache for data...");
-        if(mLastInfo != null) {
-            Calendar stored = mLastInfo.getCalendar();
-            
-            if(stored.get(Calendar.MONTH) ==  sCal.get(Calendar.MONTH)
-                    && stored.get(Calendar.DAY_OF_MONTH) ==  sCal.get(Calendar.DAY_OF_MONTH)
-                    && stored.get(Calendar.YEAR) ==  sCal.get(Calendar.YEAR)
-                    && ((mLastInfo.getGraticule() == null && g == null)
-                            || (mLastInfo.getGraticule() != null && g != null))
-                    && mLastInfo.uses30WRule() == is30W) {
-                Log.v(DEBUG_TAG, "Hash data is in quick cache (mLastInfo): " + mLastInfo.getLatitudeHash() + ", " + mLastInfo.getLongitudeHash());
-                return mLastInfo;
-            }
-        }
-        
-        if(mTwoInfosAgo != null) {
-            Calendar stored = mTwoInfosAgo.getCalendar();
-            
-            if(stored.get(Calendar.MONTH) ==  sCal.get(Calendar.MONTH)
-                    && stored.get(Calendar.DAY_OF_MONTH) ==  sCal.get(Calendar.DAY_OF_MONTH)
-                    && stored.get(Calendar.YEAR) ==  sCal.get(Calendar.YEAR)
-                    && ((mTwoInfosAgo.getGraticule() == null && g == null)
-                            || (mTwoInfosAgo.getGraticule() != null && g != null))
-                    && mTwoInfosAgo.uses30WRule() == is30W) {
-                Log.v(DEBUG_TAG, "Hash data is in quick cache (mTwoInfosAgo): " + mTwoInfosAgo.getLatitudeHash() + ", " + mTwoInfosAgo.getLongitudeHash());
-                return mTwoInfosAgo;
-            }
-        }
-        
-        Log.v(DEBUG_TAG, "Data wasn't in quickcache.");
-        
-        return null;
+        // Otherwise, get the destination set...
+        int packed = g.getPackedId();
+        return new Info(hash.getLatitude(packed), hash.getLongitude(packed), g, date);
     }
-    
-    /**
-     * Gets the latitude value of the location for the current date. This is
-     * attached to the current graticule integer value to produce the longitude.
-     * 
-     * @return the fractional latitude value
-     */
-    private static double getLatitudeHash(@NonNull String hash) {
-        String chunk = hash.substring(0, 16);
-        return HexFraction.calculate(chunk);
-    }
-
-    /**
-     * Gets the longitude value of the location for the current date. This is
-     * attached to the current graticule integer value to produce the latitude.
-     * 
-     * @return the fractional longitude value
-     */
-    private static double getLongitudeHash(@NonNull String hash) {
-        String chunk = hash.substring(16, 32);
-        return HexFraction.calculate(chunk);
-    }
-
-    private static double getLatitude(@Nullable Graticule g, @NonNull String hash) {
-        // If the Graticule's not null, this is a normal hash.  If it is, it's a
-        // globalhash, and has to be treated differently.
-        if(g != null) {
-            int lat = g.getLatitude();
-            if (g.isSouth()) {
-                return (lat + getLatitudeHash(hash)) * -1;
-            } else {
-                return lat + getLatitudeHash(hash);
-            }
-        } else {
-            return getLatitudeHash(hash);
-        }
-
-    }
-
-    private static double getLongitude(@Nullable Graticule g, @NonNull String hash) {
-        // Same deal as with getLatitude.
-        if(g != null) {
-            int lon = g.getLongitude();
-            if (g.isWest()) {
-                return (lon + getLongitudeHash(hash)) * -1;
-            } else {
-                return lon + getLongitudeHash(hash);
-            }
-        } else {
-            return getLongitudeHash(hash);
-        }
-    }
-
 }
@@ -0,0 +1,172 @@
+/*
+ * HttpClientProvider.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import cz.msebera.android.httpclient.HttpResponse;
+import cz.msebera.android.httpclient.client.config.RequestConfig;
+import cz.msebera.android.httpclient.impl.client.CloseableHttpClient;
+import cz.msebera.android.httpclient.impl.client.DefaultConnectionKeepAliveStrategy;
+import cz.msebera.android.httpclient.impl.client.HttpClientBuilder;
+import cz.msebera.android.httpclient.impl.client.HttpClients;
+import cz.msebera.android.httpclient.impl.conn.PoolingHttpClientConnectionManager;
+import cz.msebera.android.httpclient.protocol.HttpContext;
+
+/**
+ * <p>
+ * <code>HttpClientProvider</code> hands out HTTP clients that all share one
+ * pool of connections.  That way, asking for the stock three times in a row,
+ * or logging in to the wiki and then posting to it, doesn't mean a brand new
+ * TCP (and maybe TLS) handshake every single time.
+ * </p>
+ *
+ * <p>
+ * There are two flavors.  {@link #getClient()} is the one shared client, which
+ * doesn't keep cookies, for things like the stock servers that don't need
+ * them.  {@link #newSessionClient()} makes a new client with its own cookie
+ * store on top of the same pool, for the wiki, where being logged in is a
+ * matter of cookies and we don't want one queue item's login hanging around
+ * for the next one.
+ * </p>
+ *
+ * <p>
+ * Services that use this should call {@link #acquire()} when they're created
+ * and {@link #release()} when they're destroyed.  The first acquire starts the
+ * pool up, and when the last one lets go, the pool gets shut down and every
+ * connection in it gets closed.  Asking for a client without an acquire in
+ * effect is an error; if that just quietly made a new pool, nothing would ever
+ * release it, and its connections would hang around until the process died.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class HttpClientProvider {
+    private static final String DEBUG_TAG = "HttpClientProvider";
+
+    // In milliseconds, remember.
+    private static final int CONNECT_TIMEOUT_MS = 10 * 1000;
+    private static final int SOCKET_TIMEOUT_MS = 10 * 1000;
+    private static final int POOL_TIMEOUT_MS = 10 * 1000;
+
+    // If the server doesn't say how long to keep a connection alive, we'll
+    // hang on to it for this long.
+    private static final long DEFAULT_KEEP_ALIVE_MS = 30 * 1000;
+
+    // How long a connection can sit in the pool before we check it's still
+    // alive before using it.
+    private static final int VALIDATE_AFTER_MS = 2 * 1000;
+
+    // We only ever talk to a handful of hosts.  Two stock servers plus the
+    // wiki, with the stock hedging possibly having a couple going at once.
+    private static final int MAX_CONNECTIONS = 8;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 4;
+
+    private static PoolingHttpClientConnectionManager mManager;
+    private static CloseableHttpClient mSharedClient;
+    private static int mUsers = 0;
+
+    private HttpClientProvider() { }
+
+    /**
+     * Registers something (usually a Service) as using the pool, starting the
+     * pool up if it isn't already.  The pool won't be shut down until every
+     * acquire has a matching {@link #release()}.
+     */
+    public static synchronized void acquire() {
+        mUsers++;
+
+        if(mManager == null) {
+            Log.d(DEBUG_TAG, "Starting up a new connection pool...");
+            mManager = new PoolingHttpClientConnectionManager();
+            mManager.setMaxTotal(MAX_CONNECTIONS);
+            mManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+            mManager.setValidateAfterInactivity(VALIDATE_AFTER_MS);
+        }
+    }
+
+    /**
+     * Unregisters something from using the pool.  If that was the last one,
+     * the pool gets shut down and all its connections are closed.  Anything
+     * still in the middle of a request when that happens will get an
+     * IOException.
+     */
+    public static synchronized void release() {
+        if(mUsers > 0) mUsers--;
+
+        if(mUsers == 0 && mManager != null) {
+            Log.d(DEBUG_TAG, "Nobody's using the connection pool, shutting it down...");
+
+            // The clients are all just wrappers around the manager, so
+            // shutting that down is enough to close everything.
+            mManager.shutdown();
+            mSharedClient = null;
+            mManager = null;
+        }
+    }
+
+    /**
+     * Gets the shared, cookieless client.  Do NOT close this; it's shared with
+     * everyone else.  Do make sure to consume or close every response,
+     * though, else the connection never makes it back into the pool.
+     *
+     * @return the shared client
+     * @throws IllegalStateException nothing's called {@link #acquire()}
+     */
+    @NonNull
+    public static synchronized CloseableHttpClient getClient() {
+        if(mSharedClient == null) {
+            mSharedClient = makeBuilder()
+                    .disableCookieManagement()
+                    .build();
+        }
+
+        return mSharedClient;
+    }
+
+    /**
+     * Makes a new client with its own cookie store, backed by the shared pool.
+     * Closing this one is fine (and recommended, with a try-with-resources);
+     * it won't close the pool.
+     *
+     * @return a new client
+     * @throws IllegalStateException nothing's called {@link #acquire()}
+     */
+    @NonNull
+    public static synchronized CloseableHttpClient newSessionClient() {
+        return makeBuilder()
+                .setConnectionManagerShared(true)
+                .build();
+    }
+
+    @NonNull
+    private static HttpClientBuilder makeBuilder() {
+        if(mManager == null)
+            throw new IllegalStateException("Nobody's acquired the connection pool; call acquire() first!");
+
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                .setSocketTimeout(SOCKET_TIMEOUT_MS)
+                .setConnectionRequestTimeout(POOL_TIMEOUT_MS)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(mManager)
+                .setDefaultRequestConfig(config)
+                .setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        // Negative means the server didn't say.
+                        long duration = super.getKeepAliveDuration(response, context);
+                        return duration > 0 ? duration : DEFAULT_KEEP_ALIVE_MS;
+                    }
+                });
+    }
+}
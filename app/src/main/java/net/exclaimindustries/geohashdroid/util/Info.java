@@ -9,7 +9,6 @@ package net.exclaimindustries.geohashdroid.util;
 
 import java.util.Date;
 import java.util.Calendar;
-import java.util.GregorianCalendar;
 
 import android.location.Location;
 import android.os.Parcel;
@@ -19,7 +18,10 @@ import androidx.annotation.NonNull;
 
 import com.google.android.gms.maps.model.LatLng;
 
-import net.exclaimindustries.tools.DateTools;
+import net.exclaimindustries.geohashdroid.core.GeohashMath;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
+import net.exclaimindustries.geohashdroid.core.StockDates;
 
 /**
  * <p>
@@ -40,13 +42,10 @@ import net.exclaimindustries.tools.DateTools;
  * 
  */
 public class Info implements Parcelable {
-    /** The earliest date at which the 30W Rule is used. */
-    private static final Calendar LIMIT_30W = new GregorianCalendar(2008, Calendar.MAY, 26);
-
     private double mLatitude;
     private double mLongitude;
     private Graticule mGraticule;
-    private Calendar mDate;
+    private HashDate mDate;
     private boolean mRetroHash;
     private boolean mValid;
 
@@ -68,6 +67,20 @@ public class Info implements Parcelable {
      */
     public Info(double latitude, double longitude, @Nullable Graticule graticule,
             @NonNull Calendar date) {
+        this(latitude, longitude, graticule, HashDate.fromCalendar(date));
+    }
+
+    /**
+     * Creates an Info object with the given data, same as the Calendar
+     * version, only with a HashDate.  This is what HashBuilder uses.
+     *
+     * @param latitude the destination's latitude, as a double
+     * @param longitude the destination's longitude, as a double
+     * @param graticule the graticule
+     * @param date the date
+     */
+    public Info(double latitude, double longitude, @Nullable Graticule graticule,
+            @NonNull HashDate date) {
         mLatitude = latitude;
         mLongitude = longitude;
         mGraticule = graticule;
@@ -85,6 +98,17 @@ public class Info implements Parcelable {
      * @param date the date
      */
     public Info(@Nullable Graticule graticule, @NonNull Calendar date) {
+        this(graticule, HashDate.fromCalendar(date));
+    }
+
+    /**
+     * Creates an invalid Info object, same as the Calendar version, only with
+     * a HashDate.
+     *
+     * @param graticule the graticule
+     * @param date the date
+     */
+    public Info(@Nullable Graticule graticule, @NonNull HashDate date) {
         mLatitude = 0;
         mLongitude = 0;
         mGraticule = graticule;
@@ -112,7 +136,7 @@ public class Info implements Parcelable {
         if(mGraticule != null)
             return mLatitude;
         else
-            return mLatitude * 180 - 90;
+            return GeohashMath.toGlobalLatitude(mLatitude);
     }
 
     /**
@@ -124,7 +148,7 @@ public class Info implements Parcelable {
         if(mGraticule != null)
             return mLongitude;
         else
-            return mLongitude * 360 - 180;
+            return GeohashMath.toGlobalLongitude(mLongitude);
     }
 
     /**
@@ -191,24 +215,36 @@ public class Info implements Parcelable {
     }
 
     /**
-     * Gets the Calendar used to generate this set of information.
+     * Gets the date of this set of information as a Calendar.  This is a new
+     * Calendar every time, set to midnight in the default time zone, so feel
+     * free to mess with it.
      * 
      * @return the Calendar
      */
     @NonNull
     public Calendar getCalendar() {
+        return mDate.toCalendar();
+    }
+
+    /**
+     * Gets the date of this set of information as a HashDate.
+     *
+     * @return the HashDate
+     */
+    @NonNull
+    public HashDate getHashDate() {
         return mDate;
     }
 
     /**
-     * Gets the Date object from the Calendar object used to generate this set
-     * of information.
+     * Gets the Date object of the date used to generate this set of
+     * information.
      * 
      * @return the Date of the Calendar
      */
     @NonNull
     public Date getDate() {
-        return mDate.getTime();
+        return getCalendar().getTime();
     }
     
     /**
@@ -243,7 +279,18 @@ public class Info implements Parcelable {
      */
     @NonNull
     public Calendar getStockCalendar() {
-        return makeAdjustedCalendar(mDate, mGraticule);
+        return getStockDate().toCalendar();
+    }
+
+    /**
+     * Returns the date from which the stock price was pulled, as a HashDate.
+     * See {@link #getStockCalendar()}.
+     *
+     * @return the stock date
+     */
+    @NonNull
+    public HashDate getStockDate() {
+        return mDate.getStockDate(uses30WRule());
     }
     
     /**
@@ -259,31 +306,11 @@ public class Info implements Parcelable {
     @NonNull
     public static Calendar makeAdjustedCalendar(@NonNull Calendar c, @Nullable Graticule g) {
         // This adjusts the calendar for both the 30W Rule and to clamp all
-        // weekend stocks to the preceding Friday.  This saves a few database
-        // entries, as the weekend will always be Friday's value.  Note that
-        // this doesn't account for holidays when the US stocks aren't trading.
-        
-        // First, clone the calendar.  We don't want to muck about with the
-        // original for various reasons.
-        Calendar cal = (Calendar)(c.clone());
-        
-        // Second, 30W Rule hackery.  If g is null, assume we're in a globalhash
-        // (that is, adjustment is needed).  If the date is May 26, 2008 or
-        // earlier (and this isn't a globalhash), ignore it anyway (the 30W Rule
-        // only applies to non-globalhashes AFTER it was created).
-        if(g == null || (cal.after(LIMIT_30W) && g.uses30WRule()))
-            cal.add(Calendar.DAY_OF_MONTH, -1);
-        
-        // Third, if this new date is a weekend, clamp it back to Friday.
-        if(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY)
-            // Saturday: Back one day
-            cal.add(Calendar.DAY_OF_MONTH, -1);
-        else if(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY)
-            // SUNDAY SUNDAY SUNDAY!!!!!!: Back two days
-            cal.add(Calendar.DAY_OF_MONTH, -2);
-        
-        // There!  Done!
-        return cal;
+        // weekend stocks to the preceding Friday.  If g is null, assume we're
+        // in a globalhash (that is, adjustment is needed).  StockDates knows
+        // the rest.
+        return StockDates.makeAdjustedCalendar(c,
+                StockDates.usesPreviousDay(c, g == null ? PackedGraticule.GLOBALHASH : g.getPackedId()));
     }
 
     @NonNull
@@ -306,8 +333,8 @@ public class Info implements Parcelable {
         // If mGraticule is null, this is always 30W.
         if(mGraticule == null) return true;
         
-        // Otherwise, just forward it to the graticule itself.
-        return mDate.after(LIMIT_30W) && mGraticule.uses30WRule();
+        // Otherwise, it depends on both the date and the graticule itself.
+        return mDate.usesPreviousDay(mGraticule.getPackedId());
     }
     
     /**
@@ -370,9 +397,9 @@ public class Info implements Parcelable {
         dest.writeDouble(mLatitude);
         dest.writeDouble(mLongitude);
         dest.writeParcelable(mGraticule, 0);
-        dest.writeInt(mDate.get(Calendar.YEAR));
-        dest.writeInt(mDate.get(Calendar.MONTH));
-        dest.writeInt(mDate.get(Calendar.DAY_OF_MONTH));
+        dest.writeInt(mDate.getYear());
+        dest.writeInt(mDate.getMonth() - 1);
+        dest.writeInt(mDate.getDayOfMonth());
         dest.writeInt(mRetroHash ? 1 : 0);
     }
     
@@ -388,30 +415,26 @@ public class Info implements Parcelable {
         mLongitude = in.readDouble();
         mGraticule = in.readParcelable(Graticule.class.getClassLoader());
 
-        mDate = Calendar.getInstance();
-
-        // In order, this better be year, month, day-of-month.
-        mDate.set(in.readInt(), in.readInt(), in.readInt());
+        // In order, this better be year, month, day-of-month.  The month is
+        // zero-based, Calendar-style.
+        int year = in.readInt();
+        int month = in.readInt() + 1;
+        mDate = HashDate.of(year, month, in.readInt());
 
         mRetroHash = (in.readInt() == 1);
     }
     
-    private void setDate(@NonNull Calendar cal) {
+    private void setDate(@NonNull HashDate date) {
         // First, actually set the date.
-        mDate = cal;
-        
-        // Then, determine if this is before or after today's date.  Since a
-        // straight comparison also takes time into account, we need to force
-        // today's date to midnight.
-        Calendar today = Calendar.getInstance();
-        
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
+        mDate = date;
         
+        // Then, determine if this is before or after today's date.  HashDates
+        // don't have a time of day, so this is a straight comparison.
+        //
         // Yes, this means that if the hash is in the future, mRetroHash will
         // be false.  The only way that can happen is if this is a weekend hash
         // and we're checking on Friday or something.
-        mRetroHash = cal.before(today);
+        mRetroHash = date.compareTo(HashDate.fromCalendar(Calendar.getInstance())) < 0;
     }
 
     /**
@@ -481,7 +504,7 @@ public class Info implements Parcelable {
         // useful.
         return "Info for "
                 + (mGraticule == null ? "Globalhash" : "Graticule")
-                + " on " + DateTools.getDateString(mDate)
+                + " on " + mDate.toDateString()
                 + "; point is at "
                 + getLatitude() + "," + getLongitude();
     }
@@ -8,9 +8,7 @@
 
 package net.exclaimindustries.geohashdroid.util;
 
-import android.app.backup.BackupManager;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -18,7 +16,6 @@ import android.graphics.Paint;
 import android.location.Location;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -29,9 +26,11 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
 
 import net.exclaimindustries.geohashdroid.R;
+import net.exclaimindustries.geohashdroid.core.DayHash;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
 import net.exclaimindustries.tools.LocationUtil;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -140,41 +139,17 @@ public class KnownLocation implements Parcelable {
     }
 
     /**
-     * Gets all KnownLocations from Preferences and returns them as a List.
+     * Gets all KnownLocations and returns them as a List.  This is a copy of
+     * what's in {@link KnownLocationStore}, so go ahead and change it if you
+     * want; it won't change anything stored.  If you just need to read them,
+     * {@link KnownLocationStore#getAll()} skips the copy.
      *
      * @param c a Context
      * @return a List full of KnownLocations (or an empty List)
      */
     @NonNull
     public static List<KnownLocation> getAllKnownLocations(@NonNull Context c) {
-        List<KnownLocation> toReturn = new ArrayList<>();
-
-        // To the preferences!
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(c);
-        String blob = prefs.getString(GHDConstants.PREF_KNOWN_LOCATIONS, "[]");
-
-        // I really hope this is a JSONArray...
-        JSONArray arr;
-        try {
-            arr = new JSONArray(blob);
-        } catch(JSONException je) {
-            Log.e(DEBUG_TAG, "Couldn't parse the known locations JSON blob!", je);
-            return toReturn;
-        }
-
-        // What's more, I really hope every entry in the JSONArray is a
-        // JSONObject that happens to be a KnownLocation...
-        for(int i = 0; i < arr.length(); i++) {
-            try {
-                JSONObject obj = arr.getJSONObject(i);
-                KnownLocation kl = deserialize(obj);
-                if(kl != null) toReturn.add(kl);
-            } catch(JSONException je) {
-                Log.e(DEBUG_TAG, "Item " + i + " in the known locations JSON blob wasn't a JSONObject!", je);
-            }
-        }
-
-        return toReturn;
+        return new ArrayList<>(KnownLocationStore.get(c).getAll());
     }
 
     /**
@@ -201,28 +176,15 @@ public class KnownLocation implements Parcelable {
     }
 
     /**
-     * Stores a bunch of KnownLocations to preferences.  Note that this <b>replaces</b>
-     * all currently-stored KnownLocations.
+     * Stores a bunch of KnownLocations.  Note that this <b>replaces</b> all
+     * currently-stored KnownLocations, and rewrites all of them to disk.  For
+     * changing just one, {@link KnownLocationStore} can do that much faster.
      *
      * @param c a Context
      * @param locations a List of KnownLocations
      */
     public static void storeKnownLocations(@NonNull Context c, @NonNull List<KnownLocation> locations) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor edit = prefs.edit();
-
-        JSONArray arr = new JSONArray();
-
-        for(KnownLocation kl : locations) {
-            arr.put(kl.serialize());
-        }
-
-        // Man, that's easy.
-        edit.putString(GHDConstants.PREF_KNOWN_LOCATIONS, arr.toString());
-        edit.apply();
-
-        BackupManager bm = new BackupManager(c);
-        bm.dataChanged();
+        KnownLocationStore.get(c).replaceAll(locations);
     }
 
     /**
@@ -324,13 +286,14 @@ public class KnownLocation implements Parcelable {
     @NonNull
     public Info getClosestInfo(@NonNull Context con,
                                @NonNull Calendar cal) throws IllegalArgumentException {
-        // Get us a base Graticule.
+        // Get us a base Graticule and a date HashBuilder can use.
         Graticule base = new Graticule(mLocation);
+        HashDate date = HashDate.fromCalendar(cal);
 
         // If we're in graticule restriction, short-circuit it to ONLY stick
         // to the base Graticule.
         if(mRestrictGraticule) {
-            Info info = HashBuilder.getStoredInfo(con, cal, base);
+            Info info = HashBuilder.getStoredInfo(con, date, base);
 
             if(info == null)
                 throw new IllegalArgumentException("Info didn't exist in the cache for that date!");
@@ -338,43 +301,55 @@ public class KnownLocation implements Parcelable {
             return info;
         }
 
+        // All nine Graticules share at most two DayHashes (one per side of the
+        // 30W line), so look those up once and do the rest with arithmetic.
+        // We only need to make an actual Info for the winner.
+        DayHash[] hashes = new DayHash[2];
+        int basePacked = base.getPackedId();
+        float[] dist = new float[1];
+
         double bestSoFar = Double.MAX_VALUE;
-        Info bestInfo = null;
+        int bestPacked = basePacked;
+        DayHash bestHash = null;
 
         for(int i = -1; i <= 1; i++) {
             for(int j = -1; j <= 1; j++) {
                 // Offset the base Graticule, if need be...
-                Graticule check = base;
-                if(i != 0 && j != 0) {
-                    check = Graticule.createOffsetFrom(base, i, j);
-                }
+                int check = PackedGraticule.offset(basePacked, i, j);
+
+                // Okay, now we can get a hash...
+                boolean uses30W = date.usesPreviousDay(check);
+                int side = uses30W ? 1 : 0;
+                if(hashes[side] == null)
+                    hashes[side] = HashBuilder.getStoredDayHash(con, date, uses30W);
 
-                // Okay, now we can get an Info...
-                Info info = HashBuilder.getStoredInfo(con, cal, check);
+                DayHash hash = hashes[side];
 
-                if(info == null) {
-                    // If the info is ever null, we're asking for a date that
-                    // doesn't exist yet.  Doesn't matter if some of the infos
+                if(hash == null) {
+                    // If the hash is ever null, we're asking for a date that
+                    // doesn't exist yet.  Doesn't matter if some of the hashes
                     // in this loop succeeded (unless we already returned true);
-                    // ALL the infos SHOULD ALWAYS exist if any of them do, so
+                    // ALL the hashes SHOULD ALWAYS exist if any of them do, so
                     // that's still really really bad.
                     throw new IllegalArgumentException("Info didn't exist in the cache for that date!");
                 }
 
                 // Now, how close is it?
-                double dist = getDistanceFrom(info);
-                if(dist < bestSoFar) {
-                    bestSoFar = dist;
-                    bestInfo = info;
+                Location.distanceBetween(mLocation.latitude, mLocation.longitude,
+                        hash.getLatitude(check), hash.getLongitude(check), dist);
+                if(dist[0] < bestSoFar) {
+                    bestSoFar = dist[0];
+                    bestPacked = check;
+                    bestHash = hash;
                 }
             }
         }
 
         // Well, whatever we have, it's the closest!
-        if(bestInfo == null)
+        if(bestHash == null)
             throw new IllegalArgumentException("Couldn't find any Infos at all to compare!  The hell?");
 
-        return bestInfo;
+        return HashBuilder.makeInfo(date, bestHash, Graticule.fromPackedId(bestPacked));
     }
 
     /**
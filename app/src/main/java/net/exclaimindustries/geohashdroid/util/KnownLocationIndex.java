@@ -0,0 +1,466 @@
+/*
+ * KnownLocationIndex.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.content.Context;
+import android.location.Location;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import net.exclaimindustries.geohashdroid.core.DayHash;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A <code>KnownLocationIndex</code> sorts a bunch of {@link KnownLocation}s
+ * into buckets by Graticule, so figuring out which of them are close enough to
+ * a hashpoint is a matter of working out each occupied Graticule's neighborhood
+ * once, not once per KnownLocation.  With a few hundred KnownLocations packed
+ * into a handful of Graticules, that's a lot less work.
+ * </p>
+ *
+ * <p>
+ * The answers are the same as calling {@link KnownLocation#getClosestInfo(Context, java.util.Calendar)}
+ * and {@link KnownLocation#isCloseEnough(LatLng)} on every KnownLocation:
+ * a KnownLocation matches if the closest of its (up to) nine hashpoints is in
+ * range, and it's matched to that closest one.  KnownLocations with a range
+ * of zero or less never match anything, so they don't even get indexed.
+ * </p>
+ *
+ * <p>
+ * The index itself never changes once it's built, so it's safe to use from
+ * multiple threads at once, which {@link #findMatchesParallel(Context, HashDate, HashDate)}
+ * takes advantage of for long lists.  Globalhashes aren't handled here; that's only one
+ * point, so there's nothing to index.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class KnownLocationIndex {
+    private static final String DEBUG_TAG = "KnownLocationIndex";
+
+    // A conservative (that is, low) guess at how many meters there are in a
+    // degree of latitude.  This is only used to rule out points that are
+    // obviously too far away before doing the real distance math, so it's
+    // better to guess too small and do the real math more often.
+    private static final double METERS_PER_DEGREE = 110000.0;
+
+    // Below this many KnownLocations, splitting the work up across threads
+    // costs more than it saves.
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    // The most threads we'll ever use for this.  Each one's going to the
+    // database now and then, so there's not much point going wild.
+    private static final int MAX_THREADS = 4;
+
+    // How many pieces to split the work into per thread.  A few extra pieces
+    // means one Graticule with a lot of KnownLocations in it doesn't leave
+    // the other threads sitting around.
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private static ThreadPoolExecutor mExecutor;
+
+    /**
+     * One KnownLocation that matched a hashpoint.
+     */
+    public static final class Match {
+        /** The KnownLocation that matched. */
+        public final KnownLocation knownLocation;
+        /** The Info it matched with. */
+        public final Info info;
+        /** How far apart they are, in meters. */
+        public final double distance;
+
+        private Match(@NonNull KnownLocation kl, @NonNull Info info, double distance) {
+            knownLocation = kl;
+            this.info = info;
+            this.distance = distance;
+        }
+    }
+
+    // Everything we need to know about a KnownLocation, worked out once.
+    private static final class Entry {
+        final KnownLocation location;
+        final double latitude;
+        final double longitude;
+        final double range;
+        final double latSlack;
+        final double lonSlack;
+        final boolean restricted;
+        final boolean is30w;
+
+        Entry(@NonNull KnownLocation kl) {
+            LatLng ll = kl.getLatLng();
+            location = kl;
+            latitude = ll.latitude;
+            longitude = ll.longitude;
+            range = kl.getRange();
+            restricted = kl.isRestrictedGraticule();
+            is30w = kl.is30w();
+
+            // How many degrees the range could possibly cover.  Longitude
+            // degrees get smaller further from the equator, so use the
+            // narrowest spot the range can reach.  Near the poles, just give
+            // up and say anything goes.
+            latSlack = range / METERS_PER_DEGREE;
+            double worstLat = Math.min(90.0, Math.abs(latitude) + latSlack);
+            double cos = Math.cos(Math.toRadians(worstLat));
+            lonSlack = cos < 0.01 ? 360.0 : latSlack / cos;
+        }
+
+        boolean mightReach(double lat, double lon) {
+            if(Math.abs(lat - latitude) > latSlack) return false;
+
+            double lonDiff = Math.abs(lon - longitude);
+            if(lonDiff > 180.0) lonDiff = 360.0 - lonDiff;
+            return lonDiff <= lonSlack;
+        }
+    }
+
+    private final Map<Integer, List<Entry>> mBuckets;
+    private final int mSize;
+
+    /**
+     * Builds an index out of the given KnownLocations.
+     *
+     * @param locations the KnownLocations to index
+     */
+    public KnownLocationIndex(@NonNull Collection<KnownLocation> locations) {
+        // LinkedHashMap, so the results come out in roughly the order the
+        // KnownLocations went in.
+        Map<Integer, List<Entry>> buckets = new LinkedHashMap<>();
+        int size = 0;
+
+        for(KnownLocation kl : locations) {
+            if(kl.getRange() <= 0.0) continue;
+
+            int packed = new Graticule(kl.getLatLng()).getPackedId();
+            List<Entry> bucket = buckets.get(packed);
+            if(bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(packed, bucket);
+            }
+            bucket.add(new Entry(kl));
+            size++;
+        }
+
+        mBuckets = Collections.unmodifiableMap(buckets);
+        mSize = size;
+    }
+
+    /**
+     * @return how many KnownLocations got indexed (that is, the ones that can
+     *         actually match something)
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return how many different Graticules those KnownLocations are in
+     */
+    public int getGraticuleCount() {
+        return mBuckets.size();
+    }
+
+    /**
+     * @return the packed Graticules (see {@link Graticule#getPackedId()}) that
+     *         have KnownLocations in them
+     */
+    @NonNull
+    public Collection<Integer> getGraticules() {
+        return mBuckets.keySet();
+    }
+
+    /**
+     * Finds every KnownLocation in range of its closest hashpoint.  The stock
+     * data has to be in the cache already; this won't go to the network.  Any
+     * KnownLocation whose hashpoints aren't all in the cache gets skipped.
+     *
+     * @param con a Context, for the cache
+     * @param date the date to use for KnownLocations outside 30W territory,
+     *             or null to skip those entirely
+     * @param date30w the date to use for KnownLocations in 30W territory (see
+     *                {@link KnownLocation#is30w()}), or null to skip those
+     *                entirely
+     * @return all the matches, in no particular order
+     */
+    @NonNull
+    public List<Match> findMatches(@NonNull Context con,
+                                   @Nullable HashDate date,
+                                   @Nullable HashDate date30w) {
+        return findMatches(con, date, date30w, mBuckets.keySet());
+    }
+
+    /**
+     * Same as {@link #findMatches(Context, HashDate, HashDate)}, but only
+     * looks at the KnownLocations in the given Graticules.  This is for
+     * splitting the work up.
+     *
+     * @param con a Context, for the cache
+     * @param date the date to use for KnownLocations outside 30W territory,
+     *             or null to skip those
+     * @param date30w the date to use for KnownLocations in 30W territory, or
+     *                null to skip those
+     * @param graticules which of {@link #getGraticules()} to look at
+     * @return all the matches, in no particular order
+     */
+    @NonNull
+    public List<Match> findMatches(@NonNull Context con,
+                                   @Nullable HashDate date,
+                                   @Nullable HashDate date30w,
+                                   @NonNull Iterable<Integer> graticules) {
+        List<Match> matches = new ArrayList<>();
+
+        // There's at most four DayHashes involved here (two dates, two sides
+        // of the 30W line), so remember each one as it comes up.
+        Map<Integer, DayHash> hashes = new HashMap<>();
+
+        // Each bucket needs its neighborhood for at most two dates, too.
+        Neighborhood[] hoods = new Neighborhood[2];
+        float[] dist = new float[1];
+
+        for(int packed : graticules) {
+            List<Entry> bucket = mBuckets.get(packed);
+            if(bucket == null) continue;
+
+            hoods[0] = null;
+            hoods[1] = null;
+
+            for(Entry entry : bucket) {
+                HashDate entryDate = entry.is30w ? date30w : date;
+                if(entryDate == null) continue;
+
+                int which = entry.is30w ? 1 : 0;
+                if(hoods[which] == null)
+                    hoods[which] = new Neighborhood(con, entryDate, packed, hashes);
+
+                Match match = hoods[which].match(entry, dist);
+                if(match != null) matches.add(match);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * <p>
+     * Same as {@link #findMatches(Context, HashDate, HashDate)}, but splits the
+     * Graticules up across a few threads.  The results come out in exactly
+     * the same order as the single-threaded version, no matter which thread
+     * finishes first, so anything that sorts them (stably) afterward gets the
+     * same answer every time.
+     * </p>
+     *
+     * <p>
+     * If there aren't enough KnownLocations to make it worth it, or if
+     * something goes wrong with the threads, this just does it all on the
+     * current thread.  Either way, this blocks until it's done, so don't call
+     * it from the main thread.
+     * </p>
+     *
+     * @param con a Context, for the cache
+     * @param date the date to use for KnownLocations outside 30W territory,
+     *             or null to skip those
+     * @param date30w the date to use for KnownLocations in 30W territory, or
+     *                null to skip those
+     * @return all the matches
+     */
+    @NonNull
+    public List<Match> findMatchesParallel(@NonNull final Context con,
+                                           @Nullable final HashDate date,
+                                           @Nullable final HashDate date30w) {
+        int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        if(mSize < PARALLEL_THRESHOLD || threads < 2 || mBuckets.size() < 2)
+            return findMatches(con, date, date30w);
+
+        List<List<Integer>> chunks = makeChunks(threads * CHUNKS_PER_THREAD);
+        List<Future<List<Match>>> futures = new ArrayList<>(chunks.size());
+        ExecutorService executor = getExecutor(threads);
+
+        try {
+            for(final List<Integer> chunk : chunks) {
+                futures.add(executor.submit(() -> findMatches(con, date, date30w, chunk)));
+            }
+
+            // Now gather them up, in chunk order (NOT finishing order), into
+            // a list that's already the right size.
+            List<List<Match>> results = new ArrayList<>(futures.size());
+            int total = 0;
+            for(Future<List<Match>> future : futures) {
+                List<Match> result = future.get();
+                results.add(result);
+                total += result.size();
+            }
+
+            List<Match> matches = new ArrayList<>(total);
+            for(List<Match> result : results) matches.addAll(result);
+            return matches;
+        } catch(InterruptedException ie) {
+            // Someone wants us to stop.  Pass that along and give up on the
+            // threads, but still come back with the right answer.
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException | RejectedExecutionException e) {
+            Log.w(DEBUG_TAG, "Parallel matching failed, doing it the slow way...", e);
+        }
+
+        for(Future<List<Match>> future : futures) future.cancel(true);
+        return findMatches(con, date, date30w);
+    }
+
+    // Splits the Graticules up into about the given number of runs, each with
+    // about the same number of KnownLocations in it.  The Graticules stay in
+    // the same order they're in in the index.
+    @NonNull
+    private List<List<Integer>> makeChunks(int count) {
+        int target = (mSize + count - 1) / count;
+        List<List<Integer>> chunks = new ArrayList<>(count + 1);
+        List<Integer> current = new ArrayList<>();
+        int inCurrent = 0;
+
+        for(Map.Entry<Integer, List<Entry>> bucket : mBuckets.entrySet()) {
+            current.add(bucket.getKey());
+            inCurrent += bucket.getValue().size();
+
+            if(inCurrent >= target) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                inCurrent = 0;
+            }
+        }
+
+        if(!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    @NonNull
+    private static synchronized ExecutorService getExecutor(int threads) {
+        if(mExecutor == null) {
+            // The threads go away on their own when they've been idle a bit,
+            // since this only really gets used once a day by the stock alarm.
+            mExecutor = new ThreadPoolExecutor(threads, threads,
+                    30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private int mCount = 0;
+
+                        @Override
+                        public Thread newThread(@NonNull Runnable r) {
+                            Thread t = new Thread(r, "KnownLocationMatch-" + (++mCount));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        return mExecutor;
+    }
+
+    // The nine hashpoints around one Graticule on one date.  Index 4 is the
+    // Graticule itself.
+    private static final class Neighborhood {
+        final HashDate date;
+        final int[] graticules = new int[9];
+        final DayHash[] hashes = new DayHash[9];
+        final double[] latitudes = new double[9];
+        final double[] longitudes = new double[9];
+        final boolean complete;
+
+        Neighborhood(@NonNull Context con,
+                     @NonNull HashDate date,
+                     int base,
+                     @NonNull Map<Integer, DayHash> cache) {
+            this.date = date;
+
+            // Same order KnownLocation.getClosestInfo() goes in, so ties come
+            // out the same way.
+            boolean complete = true;
+            int index = 0;
+            for(int i = -1; i <= 1; i++) {
+                for(int j = -1; j <= 1; j++) {
+                    int check = PackedGraticule.offset(base, i, j);
+                    boolean uses30W = date.usesPreviousDay(check);
+                    int key = DayHash.makeKey(date.getEpochDay(), uses30W);
+
+                    DayHash hash;
+                    if(cache.containsKey(key)) {
+                        hash = cache.get(key);
+                    } else {
+                        hash = HashBuilder.getStoredDayHash(con, date, uses30W);
+                        cache.put(key, hash);
+                    }
+
+                    graticules[index] = check;
+                    hashes[index] = hash;
+                    if(hash != null) {
+                        latitudes[index] = hash.getLatitude(check);
+                        longitudes[index] = hash.getLongitude(check);
+                    } else {
+                        complete = false;
+                    }
+                    index++;
+                }
+            }
+
+            this.complete = complete;
+        }
+
+        @Nullable
+        Match match(@NonNull Entry entry, @NonNull float[] dist) {
+            // Graticule-restricted KnownLocations only get their own
+            // Graticule.  Everything else gets all nine, and (same as
+            // getClosestInfo()) if any of them are missing, that's an error,
+            // so skip it.
+            int start = entry.restricted ? 4 : 0;
+            int end = entry.restricted ? 4 : 8;
+            if(entry.restricted ? hashes[4] == null : !complete) return null;
+
+            // The closest point is only in range if SOME point is in range,
+            // and then it's the closest of the ones in range.  So only the
+            // ones that might be in range need the real distance math.
+            int best = -1;
+            float bestDist = Float.MAX_VALUE;
+            for(int i = start; i <= end; i++) {
+                if(!entry.mightReach(latitudes[i], longitudes[i])) continue;
+
+                Location.distanceBetween(entry.latitude, entry.longitude,
+                        latitudes[i], longitudes[i], dist);
+                if(dist[0] < bestDist) {
+                    bestDist = dist[0];
+                    best = i;
+                }
+            }
+
+            if(best < 0 || bestDist > entry.range) return null;
+
+            Info info = HashBuilder.makeInfo(date, hashes[best], Graticule.fromPackedId(graticules[best]));
+            return new Match(entry.location, info, bestDist);
+        }
+    }
+}
@@ -0,0 +1,689 @@
+/*
+ * KnownLocationStore.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.app.backup.BackupManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * <code>KnownLocationStore</code> is where KnownLocations live.  It keeps an
+ * in-memory snapshot of all of them, so reading them is free, and writes each
+ * change to disk as a small record appended to a journal file, so adding,
+ * changing, or deleting one doesn't mean rewriting all the others.  Every so
+ * often, when the journal's gotten a lot bigger than the actual list, it gets
+ * rewritten down to just what's there.
+ * </p>
+ *
+ * <p>
+ * The journal format, all big-endian, {@link DataOutputStream}-style:
+ * </p>
+ *
+ * <ul>
+ * <li>4 bytes: the magic, "GHKL"</li>
+ * <li>4 bytes: the format version (currently 1)</li>
+ * <li>Then, any number of records, each starting with an op byte and an
+ * 8-byte ID.  A put (op 1) follows that with the name (modified UTF-8),
+ * latitude, longitude, range (all doubles), and whether it's
+ * graticule-restricted (one byte).  A put on an ID that's already there
+ * replaces it in place.  A delete (op 2) is just the op and ID.</li>
+ * </ul>
+ *
+ * <p>
+ * If the journal ends partway through a record (the process died mid-write,
+ * say), everything before it is kept and the next rewrite cleans it up.  If
+ * the journal can't be read at all, though (it's not a journal, it's from a
+ * newer version of the format, or there's something in it we don't
+ * recognize), it's left exactly as it is, and nothing gets written to it for
+ * as long as the app's running.  Changes still work in memory, they just don't
+ * stick.  That's annoying, but it beats overwriting something we don't
+ * understand with nothing.
+ * </p>
+ *
+ * <p>
+ * KnownLocations used to be a JSON blob in {@link GHDConstants#PREF_KNOWN_LOCATIONS}.
+ * If that preference is there when the store loads (an old install, or an old
+ * backup just got restored), it gets moved in here, replacing whatever was
+ * there, and then removed.  The journal file itself is backed up by
+ * {@link GHDBackupAgent}.
+ * </p>
+ *
+ * <p>
+ * Changes update the snapshot and tell the listeners right away, on whatever
+ * thread made the change.  The disk writes happen on a background thread.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class KnownLocationStore {
+    private static final String DEBUG_TAG = "KnownLocationStore";
+
+    /** The name of the journal file, in the app's files directory. */
+    public static final String FILE_NAME = "knownlocations.dat";
+
+    static final int MAGIC = 0x47484B4C;
+    static final int VERSION = 1;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+
+    // How much junk the journal can pile up before it gets rewritten.
+    private static final int COMPACT_SLACK = 64;
+
+    // What readJournal found.
+    static final int JOURNAL_OKAY = 0;
+    static final int JOURNAL_NEEDS_REWRITE = 1;
+    static final int JOURNAL_UNREADABLE = 2;
+
+    /**
+     * Everything that came out of a journal: the KnownLocations by ID, the
+     * next ID to hand out, how many records it took to get there, and whether
+     * the journal was in good shape (one of the JOURNAL_ constants).
+     */
+    static final class JournalContents {
+        final LinkedHashMap<Long, KnownLocation> locations = new LinkedHashMap<>();
+        long nextId = 1;
+        int records = 0;
+        int status = JOURNAL_OKAY;
+    }
+
+    /**
+     * Anything that touches the journal file holds this, including the backup
+     * agent when it's reading it.
+     */
+    static final Object FILE_LOCK = new Object();
+
+    /**
+     * Listener for when the KnownLocations change.
+     */
+    public interface OnKnownLocationsChangedListener {
+        /**
+         * Called after any change to the KnownLocations, on whatever thread
+         * made the change.
+         *
+         * @param snapshot all the KnownLocations, now
+         */
+        void onKnownLocationsChanged(@NonNull List<KnownLocation> snapshot);
+    }
+
+    private static KnownLocationStore mInstance;
+
+    private final Context mContext;
+    private final File mFile;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    private final List<OnKnownLocationsChangedListener> mListeners = new CopyOnWriteArrayList<>();
+
+    // Every write captures this when it's queued up, and only goes through if
+    // it's still the same when it gets FILE_LOCK.  A restore bumps it, so
+    // anything queued before the restore (with record IDs from the old file)
+    // gets dropped instead of landing on the new file.  These two don't need
+    // the store's lock, which is good, because the backup agent already has
+    // FILE_LOCK when it gets here.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private volatile boolean mRestoring = false;
+
+    // Everything below here is guarded by this.
+    private final LinkedHashMap<Long, KnownLocation> mLocations = new LinkedHashMap<>();
+    private final IdentityHashMap<KnownLocation, Long> mIds = new IdentityHashMap<>();
+    private volatile List<KnownLocation> mSnapshot = Collections.emptyList();
+    private long mNextId = 1;
+    private int mJournalRecords;
+    private boolean mReadOnly = false;
+
+    /**
+     * Gets the store, loading it if this is the first time anyone's asked.
+     *
+     * @param c a Context
+     * @return the KnownLocationStore
+     */
+    @NonNull
+    public static synchronized KnownLocationStore get(@NonNull Context c) {
+        if(mInstance == null) {
+            mInstance = new KnownLocationStore(c.getApplicationContext());
+            mInstance.load();
+        }
+
+        return mInstance;
+    }
+
+    private KnownLocationStore(@NonNull Context c) {
+        mContext = c;
+        mFile = new File(c.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Gets all the KnownLocations.  This is a snapshot; it doesn't change, and
+     * you can't change it.  Make a copy if you need to.
+     *
+     * @return all the KnownLocations, in the order they were added
+     */
+    @NonNull
+    public List<KnownLocation> getAll() {
+        return mSnapshot;
+    }
+
+    /**
+     * @return how many KnownLocations there are
+     */
+    public int size() {
+        return mSnapshot.size();
+    }
+
+    /**
+     * Adds a new KnownLocation to the end of the list.
+     *
+     * @param kl the new KnownLocation
+     */
+    public void add(@NonNull KnownLocation kl) {
+        synchronized(this) {
+            long id = mNextId++;
+            putLocked(id, kl);
+            appendLocked(makePutRecord(id, kl));
+        }
+
+        notifyListeners();
+    }
+
+    /**
+     * Replaces an existing KnownLocation with a new one, in the same spot in
+     * the list.  If the existing one isn't in here, the new one just gets
+     * added to the end.
+     *
+     * @param existing the KnownLocation to replace
+     * @param replacement what to replace it with
+     */
+    public void replace(@NonNull KnownLocation existing, @NonNull KnownLocation replacement) {
+        synchronized(this) {
+            Long id = findIdLocked(existing);
+            if(id == null) id = mNextId++;
+            else mIds.remove(mLocations.get(id));
+
+            putLocked(id, replacement);
+            appendLocked(makePutRecord(id, replacement));
+        }
+
+        notifyListeners();
+    }
+
+    /**
+     * Removes a KnownLocation.  If it isn't in here, nothing happens.
+     *
+     * @param kl the KnownLocation to remove
+     */
+    public void remove(@NonNull KnownLocation kl) {
+        synchronized(this) {
+            Long id = findIdLocked(kl);
+            if(id == null) return;
+
+            mIds.remove(mLocations.remove(id));
+            mSnapshot = makeSnapshotLocked();
+            appendLocked(makeDeleteRecord(id));
+        }
+
+        notifyListeners();
+    }
+
+    /**
+     * Replaces ALL the KnownLocations with the given ones.  This rewrites the
+     * whole journal, so for single changes, use {@link #add(KnownLocation)},
+     * {@link #replace(KnownLocation, KnownLocation)}, or {@link #remove(KnownLocation)}.
+     *
+     * @param locations the new KnownLocations
+     */
+    public void replaceAll(@NonNull List<KnownLocation> locations) {
+        synchronized(this) {
+            setAllLocked(locations);
+            scheduleRewriteLocked();
+        }
+
+        notifyListeners();
+    }
+
+    /**
+     * Gets ready for the journal to be replaced out from under us by a backup
+     * restore.  Anything that's queued up to be written gets dropped, and
+     * nothing new gets written until {@link #reload()}.  The caller must be
+     * holding {@link #FILE_LOCK}, and must call {@link #reload()} when the
+     * restore's done (or failed).
+     */
+    void beginRestore() {
+        mRestoring = true;
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Throws out the in-memory snapshot and reads everything back in from
+     * disk (and from the old preference, if it's back for some reason).  This
+     * is for after a backup restore.
+     */
+    public void reload() {
+        mRestoring = false;
+        load();
+        notifyListeners();
+    }
+
+    /**
+     * Adds a listener.  It'll get called after every change.
+     *
+     * @param listener the listener
+     */
+    public void addListener(@NonNull OnKnownLocationsChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(@NonNull OnKnownLocationsChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void notifyListeners() {
+        List<KnownLocation> snapshot = mSnapshot;
+        for(OnKnownLocationsChangedListener listener : mListeners)
+            listener.onKnownLocationsChanged(snapshot);
+    }
+
+    @Nullable
+    private Long findIdLocked(@NonNull KnownLocation kl) {
+        // Usually, whoever's asking got this very object from us.  If not
+        // (say, it came back out of a Parcel), fall back to equals().
+        Long id = mIds.get(kl);
+        if(id != null) return id;
+
+        for(Map.Entry<Long, KnownLocation> entry : mLocations.entrySet()) {
+            if(entry.getValue().equals(kl)) return entry.getKey();
+        }
+
+        return null;
+    }
+
+    private void putLocked(long id, @NonNull KnownLocation kl) {
+        mLocations.put(id, kl);
+        mIds.put(kl, id);
+        mSnapshot = makeSnapshotLocked();
+    }
+
+    private void setAllLocked(@NonNull List<KnownLocation> locations) {
+        mLocations.clear();
+        mIds.clear();
+        mNextId = 1;
+        for(KnownLocation kl : locations) {
+            long id = mNextId++;
+            mLocations.put(id, kl);
+            mIds.put(kl, id);
+        }
+        mSnapshot = makeSnapshotLocked();
+    }
+
+    @NonNull
+    private List<KnownLocation> makeSnapshotLocked() {
+        return Collections.unmodifiableList(new ArrayList<>(mLocations.values()));
+    }
+
+    private synchronized void load() {
+        mLocations.clear();
+        mIds.clear();
+        mNextId = 1;
+        mJournalRecords = 0;
+        mReadOnly = false;
+
+        // The old preference wins if it's there.  Either this is the first
+        // run since the store showed up, or an old backup just got restored.
+        // Either way, that's what the user expects to see.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String blob = prefs.getString(GHDConstants.PREF_KNOWN_LOCATIONS, null);
+        if(blob != null) {
+            List<KnownLocation> migrated = parseJsonBlob(blob);
+            Log.i(DEBUG_TAG, "Moving " + migrated.size() + " known location(s) out of preferences...");
+            setAllLocked(migrated);
+
+            // Write the journal out BEFORE getting rid of the preference, so
+            // there's no point where they're in neither place.
+            synchronized(FILE_LOCK) {
+                try {
+                    rewrite(mSnapshot);
+                    mJournalRecords = mSnapshot.size();
+                    prefs.edit().remove(GHDConstants.PREF_KNOWN_LOCATIONS).apply();
+                    new BackupManager(mContext).dataChanged();
+                } catch(IOException ioe) {
+                    // Leave the preference alone; we'll try again next time.
+                    Log.e(DEBUG_TAG, "Couldn't write the known locations journal!", ioe);
+                }
+            }
+            return;
+        }
+
+        int status;
+        synchronized(FILE_LOCK) {
+            status = readJournal();
+        }
+
+        mSnapshot = makeSnapshotLocked();
+
+        // If we can't read it, we'd better not write it.
+        mReadOnly = status == JOURNAL_UNREADABLE;
+        if(mReadOnly)
+            Log.e(DEBUG_TAG, "The known locations journal is unreadable; leaving it alone and NOT saving any changes!");
+
+        if(status == JOURNAL_NEEDS_REWRITE) scheduleRewriteLocked();
+    }
+
+    // Returns whether the journal's fine, needs rewriting (it ends partway
+    // through a record, or it's mostly junk), or can't be read at all (and
+    // thus shouldn't be touched).
+    private int readJournal() {
+        if(!mFile.exists() || mFile.length() == 0) return JOURNAL_OKAY;
+
+        JournalContents contents;
+        try(InputStream in = new BufferedInputStream(new FileInputStream(mFile))) {
+            contents = readJournal(in);
+        } catch(IOException ioe) {
+            Log.e(DEBUG_TAG, "Couldn't read the known locations journal!", ioe);
+            return JOURNAL_UNREADABLE;
+        }
+
+        // Don't take ANYTHING from a journal we can't read.  Half of what
+        // someone had is worse than none of it, since none of it at least
+        // makes it obvious something went wrong.
+        if(contents.status == JOURNAL_UNREADABLE) return JOURNAL_UNREADABLE;
+
+        for(Map.Entry<Long, KnownLocation> entry : contents.locations.entrySet()) {
+            mLocations.put(entry.getKey(), entry.getValue());
+            mIds.put(entry.getValue(), entry.getKey());
+        }
+        mNextId = contents.nextId;
+        mJournalRecords = contents.records;
+
+        if(contents.status == JOURNAL_NEEDS_REWRITE
+                || contents.records > mLocations.size() * 2 + COMPACT_SLACK)
+            return JOURNAL_NEEDS_REWRITE;
+        return JOURNAL_OKAY;
+    }
+
+    /**
+     * Reads a journal out of a stream.  The stream isn't closed.  If it comes
+     * back {@link #JOURNAL_UNREADABLE}, whatever's in the locations shouldn't
+     * be trusted.
+     *
+     * @param stream the journal, from the very start
+     * @return what was in it
+     * @throws IOException the stream couldn't be read
+     */
+    @NonNull
+    static JournalContents readJournal(@NonNull InputStream stream) throws IOException {
+        JournalContents contents = new JournalContents();
+        DataInputStream in = new DataInputStream(stream);
+
+        // A header we don't recognize (or only part of one) means this isn't
+        // something we know how to deal with.  Don't even try.
+        int magic;
+        int version;
+        try {
+            magic = in.readInt();
+            version = in.readInt();
+        } catch(EOFException eofe) {
+            Log.e(DEBUG_TAG, "Known locations journal doesn't even have a whole header!");
+            contents.status = JOURNAL_UNREADABLE;
+            return contents;
+        }
+
+        if(magic != MAGIC) {
+            Log.e(DEBUG_TAG, "That's not a known locations journal!");
+            contents.status = JOURNAL_UNREADABLE;
+            return contents;
+        }
+
+        if(version != VERSION) {
+            Log.e(DEBUG_TAG, "Unknown known locations journal version " + version + "!");
+            contents.status = JOURNAL_UNREADABLE;
+            return contents;
+        }
+
+        try {
+            while(true) {
+                int op = in.read();
+                if(op < 0) break;
+
+                long id = in.readLong();
+                if(op == OP_PUT) {
+                    String name = in.readUTF();
+                    double lat = in.readDouble();
+                    double lon = in.readDouble();
+                    double range = in.readDouble();
+                    boolean restrict = in.readBoolean();
+
+                    contents.locations.put(id, new KnownLocation(name, new LatLng(lat, lon), range, restrict));
+                } else if(op == OP_DELETE) {
+                    contents.locations.remove(id);
+                } else {
+                    // We don't know what comes after this, so we can't very
+                    // well compact it away.
+                    Log.e(DEBUG_TAG, "Unknown known locations journal op " + op + "!");
+                    contents.status = JOURNAL_UNREADABLE;
+                    return contents;
+                }
+
+                contents.nextId = Math.max(contents.nextId, id + 1);
+                contents.records++;
+            }
+        } catch(EOFException eofe) {
+            // This one's fine.  The header was good, so this is just the last
+            // write getting cut off.
+            Log.w(DEBUG_TAG, "Known locations journal ends partway through a record, keeping what came before it.");
+            contents.status = JOURNAL_NEEDS_REWRITE;
+        }
+
+        return contents;
+    }
+
+    // Whether anything should go to disk right now.  Call this holding the
+    // store's lock.
+    private boolean canWriteLocked() {
+        if(mReadOnly) {
+            Log.w(DEBUG_TAG, "Not saving known location changes; the journal couldn't be read.");
+            return false;
+        }
+
+        // Anything during a restore is about to get replaced by reload()
+        // anyway.
+        return !mRestoring;
+    }
+
+    private void appendLocked(@NonNull final byte[] record) {
+        if(!canWriteLocked()) return;
+
+        mJournalRecords++;
+
+        if(mJournalRecords > mLocations.size() * 2 + COMPACT_SLACK) {
+            // The rewrite covers this record, too.
+            scheduleRewriteLocked();
+            return;
+        }
+
+        final int generation = mGeneration.get();
+        mWriter.execute(() -> {
+            synchronized(FILE_LOCK) {
+                if(generation != mGeneration.get()) return;
+
+                try {
+                    boolean fresh = !mFile.exists() || mFile.length() == 0;
+                    try(FileOutputStream out = new FileOutputStream(mFile, true)) {
+                        if(fresh) out.write(makeHeader());
+                        out.write(record);
+                    }
+                } catch(IOException ioe) {
+                    Log.e(DEBUG_TAG, "Couldn't append to the known locations journal!", ioe);
+                }
+            }
+
+            new BackupManager(mContext).dataChanged();
+        });
+    }
+
+    private void scheduleRewriteLocked() {
+        final List<KnownLocation> snapshot = mSnapshot;
+        mJournalRecords = snapshot.size();
+
+        // The IDs get renumbered from scratch, same as the order in the
+        // snapshot.
+        setAllLocked(snapshot);
+
+        if(!canWriteLocked()) return;
+
+        final int generation = mGeneration.get();
+        mWriter.execute(() -> {
+            synchronized(FILE_LOCK) {
+                if(generation != mGeneration.get()) return;
+
+                try {
+                    rewrite(snapshot);
+                } catch(IOException ioe) {
+                    Log.e(DEBUG_TAG, "Couldn't rewrite the known locations journal!", ioe);
+                }
+            }
+
+            new BackupManager(mContext).dataChanged();
+        });
+    }
+
+    // Writes out a fresh journal with just a put for each KnownLocation, with
+    // IDs counting up from 1.  Call this holding FILE_LOCK.
+    private void rewrite(@NonNull List<KnownLocation> locations) throws IOException {
+        File temp = new File(mFile.getPath() + ".tmp");
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(makeHeader());
+            long id = 1;
+            for(KnownLocation kl : locations)
+                out.write(makePutRecord(id++, kl));
+        }
+
+        if(!temp.renameTo(mFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Couldn't move the new known locations journal into place!");
+        }
+    }
+
+    @NonNull
+    static byte[] makeHeader() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch(IOException ioe) {
+            // ByteArrayOutputStream doesn't throw these.
+            throw new RuntimeException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    @NonNull
+    static byte[] makePutRecord(long id, @NonNull KnownLocation kl) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            LatLng ll = kl.getLatLng();
+            out.writeByte(OP_PUT);
+            out.writeLong(id);
+            out.writeUTF(kl.getName());
+            out.writeDouble(ll.latitude);
+            out.writeDouble(ll.longitude);
+            out.writeDouble(kl.getRange());
+            out.writeBoolean(kl.isRestrictedGraticule());
+        } catch(IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    @NonNull
+    static byte[] makeDeleteRecord(long id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(OP_DELETE);
+            out.writeLong(id);
+        } catch(IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Parses the old preference-style JSON blob into KnownLocations.  Anything
+     * that doesn't parse gets skipped.
+     *
+     * @param blob the JSON blob
+     * @return whatever KnownLocations were in it (or an empty List)
+     */
+    @NonNull
+    static List<KnownLocation> parseJsonBlob(@NonNull String blob) {
+        List<KnownLocation> toReturn = new ArrayList<>();
+
+        // I really hope this is a JSONArray...
+        JSONArray arr;
+        try {
+            arr = new JSONArray(blob);
+        } catch(JSONException je) {
+            Log.e(DEBUG_TAG, "Couldn't parse the known locations JSON blob!", je);
+            return toReturn;
+        }
+
+        // What's more, I really hope every entry in the JSONArray is a
+        // JSONObject that happens to be a KnownLocation...
+        for(int i = 0; i < arr.length(); i++) {
+            try {
+                JSONObject obj = arr.getJSONObject(i);
+                KnownLocation kl = KnownLocation.deserialize(obj);
+                if(kl != null) toReturn.add(kl);
+            } catch(JSONException je) {
+                Log.e(DEBUG_TAG, "Item " + i + " in the known locations JSON blob wasn't a JSONObject!", je);
+            }
+        }
+
+        return toReturn;
+    }
+}
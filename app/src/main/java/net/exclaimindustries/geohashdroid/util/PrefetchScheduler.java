@@ -0,0 +1,167 @@
+/*
+ * PrefetchScheduler.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.content.Context;
+import android.content.Intent;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import net.exclaimindustries.geohashdroid.core.DayHash;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
+import net.exclaimindustries.geohashdroid.services.StockService;
+import net.exclaimindustries.tools.AndroidUtil;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * <code>PrefetchScheduler</code> guesses what the user's going to look at next
+ * and quietly gets it into the stock cache ahead of time.  When an expedition
+ * is showing a point, the obvious next moves are the day before, the day
+ * after, and whatever's on the other side of the 30W line if a neighboring
+ * Graticule's over there.  On a Friday, add the weekend and Monday's 30W hash,
+ * since all of those come from Friday's stock anyway.
+ * </p>
+ *
+ * <p>
+ * All of that goes to StockService as one low-priority batch request
+ * ({@link StockService#FLAG_PREFETCH}), which doesn't broadcast anything and
+ * gets out of the way the moment any other request comes in.  Nothing gets
+ * prefetched on a metered connection or a low battery.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class PrefetchScheduler {
+    private static final String DEBUG_TAG = "PrefetchScheduler";
+
+    // At or under this battery percentage, prefetching waits.
+    private static final int LOW_BATTERY_PERCENT = 20;
+
+    private PrefetchScheduler() { }
+
+    /**
+     * Returns whether now's a good time to prefetch anything at all.  That
+     * means a connection that isn't metered and a battery that isn't low.
+     *
+     * @param context a Context
+     * @return true if prefetching is okay, false if not
+     */
+    public static boolean isPrefetchAllowed(@NonNull Context context) {
+        return AndroidUtil.isConnected(context)
+                && !AndroidUtil.isMeteredConnection(context)
+                && !AndroidUtil.isBatteryLow(context, LOW_BATTERY_PERCENT);
+    }
+
+    /**
+     * Schedules a prefetch of everything the user's likely to ask for after
+     * looking at the given Info.  Anything older that was scheduled but
+     * hasn't run yet gets replaced.  This doesn't touch the database, so it's
+     * safe to call from the main thread.
+     *
+     * @param context a Context
+     * @param info what the user's looking at right now
+     */
+    public static void prefetchAround(@NonNull Context context, @NonNull Info info) {
+        if(!isPrefetchAllowed(context)) {
+            Log.v(DEBUG_TAG, "Not a good time to prefetch, skipping.");
+            return;
+        }
+
+        HashDate date = info.getHashDate();
+        Graticule g = info.getGraticule();
+
+        // Everything on the same side of the 30W line shares a hash, so the
+        // neighborhood comes down to one Graticule per side it touches.
+        List<Graticule> sides = getSides(g);
+
+        // The day before and the day after, plus the rest of the weekend if
+        // this is a Friday.  The current date's in there, too, in case a
+        // neighbor is across the 30W line from here.
+        List<HashDate> dates = new ArrayList<>();
+        dates.add(date.plusDays(-1));
+        dates.add(date);
+        dates.add(date.plusDays(1));
+        boolean friday = date.getDayOfWeek() == Calendar.FRIDAY;
+        if(friday) {
+            dates.add(date.plusDays(2));
+            dates.add(date.plusDays(3));
+        }
+
+        // Anything whose stock date hasn't been posted yet can't be fetched,
+        // so don't bother asking.  That's going by New York, not wherever the
+        // user happens to be.
+        int latestStock = StockPostingStats.getMostRecentStockDate().getEpochDay();
+        int monday = date.plusDays(3).getEpochDay();
+        int current = DayHash.makeKey(date.getEpochDay(),
+                HashBuilder.usesPreviousDay(date, g));
+
+        Set<Integer> seen = new HashSet<>();
+        List<HashDate> itemDates = new ArrayList<>();
+        List<Graticule> itemGrats = new ArrayList<>();
+
+        for(HashDate d : dates) {
+            for(Graticule side : sides) {
+                boolean uses30W = HashBuilder.usesPreviousDay(d, side);
+                int key = DayHash.makeKey(d.getEpochDay(), uses30W);
+
+                // We've already got the one we're looking at, and there's
+                // only any point in one request per hash.
+                if(key == current || !seen.add(key)) continue;
+
+                // Monday's non-30W hash needs Monday's stock, which Friday
+                // certainly doesn't have.
+                if(friday && d.getEpochDay() == monday && !uses30W) continue;
+
+                if(d.getStockDate(uses30W).getEpochDay() > latestStock) continue;
+
+                itemDates.add(d);
+                itemGrats.add(side);
+            }
+        }
+
+        if(itemDates.isEmpty()) return;
+
+        Log.d(DEBUG_TAG, "Prefetching " + itemDates.size() + " hash(es) around " + date);
+
+        Intent request = StockService.makeBatchRequest(context, itemDates, itemGrats)
+                .putExtra(StockService.EXTRA_REQUEST_FLAGS, StockService.FLAG_PREFETCH);
+
+        StockService.enqueueWork(context, request);
+    }
+
+    @NonNull
+    private static List<Graticule> getSides(@Nullable Graticule g) {
+        List<Graticule> sides = new ArrayList<>(2);
+        sides.add(g);
+
+        // A Globalhash only has the one side.
+        if(g == null) return sides;
+
+        // Otherwise, if any of the neighbors are on the other side of 30W,
+        // grab one of those, too.
+        boolean uses30W = g.uses30WRule();
+        int base = g.getPackedId();
+        for(int lonOff = -1; lonOff <= 1; lonOff += 2) {
+            int neighbor = PackedGraticule.offset(base, 0, lonOff);
+            if(PackedGraticule.uses30WRule(neighbor) != uses30W) {
+                sides.add(Graticule.fromPackedId(neighbor));
+                break;
+            }
+        }
+
+        return sides;
+    }
+}
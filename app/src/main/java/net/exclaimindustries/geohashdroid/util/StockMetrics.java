@@ -0,0 +1,246 @@
+/*
+ * StockMetrics.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.net.Uri;
+import androidx.annotation.NonNull;
+
+import net.exclaimindustries.geohashdroid.core.DayHashCache;
+import net.exclaimindustries.geohashdroid.core.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * <code>StockMetrics</code> keeps count of where stock lookups get answered
+ * from (the quick cache, the stock archive, the database, or the network) and
+ * how long each of those takes.  It's all atomic counters and
+ * {@link LatencyHistogram}s, so it's cheap enough to just leave on.
+ * </p>
+ *
+ * <p>
+ * Nothing here is persisted; it all starts over when the process does.  To
+ * see it, either use the debug section in the preferences (see
+ * {@link GHDConstants#PREF_SHOW_DEBUG_INFO}) or ask StockService nicely:
+ * </p>
+ *
+ * <pre>
+ * adb shell dumpsys activity service net.exclaimindustries.geohashdroid/.services.StockService
+ * </pre>
+ *
+ * <p>
+ * (StockService has to be running at the time for that to work, which it
+ * usually isn't for very long.  The preferences way always works.)
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockMetrics {
+    /**
+     * Counts for one of the stock servers.
+     */
+    public static final class MirrorStats {
+        private final String mName;
+
+        /** How many times this server was asked. */
+        public final AtomicLong attempts = new AtomicLong();
+        /** How many times it came back with a valid stock. */
+        public final AtomicLong successes = new AtomicLong();
+        /** How many times it said the stock wasn't posted (404). */
+        public final AtomicLong notPosted = new AtomicLong();
+        /** How many times it failed any other way (including timeouts). */
+        public final AtomicLong errors = new AtomicLong();
+        /** How many times it got aborted because someone else won. */
+        public final AtomicLong aborted = new AtomicLong();
+        /** How many bytes of response body it sent us. */
+        public final AtomicLong bytes = new AtomicLong();
+        /** How long it took to answer, aborted attempts excluded. */
+        public final LatencyHistogram latency = new LatencyHistogram();
+
+        private MirrorStats(@NonNull String name) {
+            mName = name;
+        }
+
+        /**
+         * @return the server's name (its host, usually)
+         */
+        @NonNull
+        public String getName() {
+            return mName;
+        }
+
+        private void reset() {
+            attempts.set(0);
+            successes.set(0);
+            notPosted.set(0);
+            errors.set(0);
+            aborted.set(0);
+            bytes.set(0);
+            latency.reset();
+        }
+    }
+
+    /** DayHash lookups answered by the database. */
+    public static final AtomicLong dbHashHits = new AtomicLong();
+    /** DayHash lookups the database didn't have. */
+    public static final AtomicLong dbHashMisses = new AtomicLong();
+    /** Stock lookups answered by the archive. */
+    public static final AtomicLong archiveHits = new AtomicLong();
+    /** Stock lookups the archive (if there is one) didn't have. */
+    public static final AtomicLong archiveMisses = new AtomicLong();
+    /** Stock lookups answered by the database. */
+    public static final AtomicLong dbStockHits = new AtomicLong();
+    /** Stock lookups the database didn't have. */
+    public static final AtomicLong dbStockMisses = new AtomicLong();
+    /**
+     * How long database lookups take, DayHashes and stocks alike.  These are
+     * usually well under a millisecond, so this one's in microseconds.
+     */
+    public static final LatencyHistogram dbLatency = new LatencyHistogram(TimeUnit.MICROSECONDS);
+
+    /** Trips to the network that actually went out. */
+    public static final AtomicLong networkFetches = new AtomicLong();
+    /** Network trips that got a stock. */
+    public static final AtomicLong networkSuccesses = new AtomicLong();
+    /** Network trips where the stock wasn't posted yet. */
+    public static final AtomicLong networkNotPosted = new AtomicLong();
+    /** Network trips that just plain failed. */
+    public static final AtomicLong networkErrors = new AtomicLong();
+    /** Network trips that got interrupted because nobody wanted them. */
+    public static final AtomicLong networkCancelled = new AtomicLong();
+    /** Requests that waited on someone else's trip instead of making one. */
+    public static final AtomicLong networkCoalesced = new AtomicLong();
+    /** Requests answered by remembering the stock wasn't posted yet. */
+    public static final AtomicLong notPostedCacheHits = new AtomicLong();
+    /** How long whole network trips take, hedging and all. */
+    public static final LatencyHistogram networkLatency = new LatencyHistogram();
+
+    private static final MirrorStats[] mMirrors =
+            new MirrorStats[HashBuilder.StockRunner.getServerCount()];
+
+    static {
+        for(int i = 0; i < mMirrors.length; i++)
+            mMirrors[i] = new MirrorStats(HashBuilder.StockRunner.getServerName(i));
+    }
+
+    private StockMetrics() { }
+
+    /**
+     * Gets the stats for one of the stock servers, in the order StockRunner
+     * tries them.
+     *
+     * @param index which server
+     * @return its stats
+     */
+    @NonNull
+    public static MirrorStats getMirror(int index) {
+        return mMirrors[index];
+    }
+
+    /**
+     * @return total bytes of stock data fetched from all servers
+     */
+    public static long getBytesFetched() {
+        long total = 0;
+        for(MirrorStats mirror : mMirrors) total += mirror.bytes.get();
+        return total;
+    }
+
+    /**
+     * Resets everything back to zero.  The quick cache keeps its own counts,
+     * so those aren't touched.
+     */
+    public static void reset() {
+        dbHashHits.set(0);
+        dbHashMisses.set(0);
+        archiveHits.set(0);
+        archiveMisses.set(0);
+        dbStockHits.set(0);
+        dbStockMisses.set(0);
+        dbLatency.reset();
+        networkFetches.set(0);
+        networkSuccesses.set(0);
+        networkNotPosted.set(0);
+        networkErrors.set(0);
+        networkCancelled.set(0);
+        networkCoalesced.set(0);
+        notPostedCacheHits.set(0);
+        networkLatency.reset();
+        for(MirrorStats mirror : mMirrors) mirror.reset();
+    }
+
+    /**
+     * Writes out a human-readable report of everything.
+     *
+     * @param out where to write it
+     */
+    public static void dump(@NonNull PrintWriter out) {
+        DayHashCache.Stats quick = HashBuilder.getQuickCacheStats();
+
+        out.println("Quick cache: " + quick.getHits() + " hit(s), "
+                + quick.getMisses() + " miss(es), "
+                + quick.getEvictions() + " eviction(s), "
+                + quick.getSize() + "/" + quick.getMaxSize() + " entries");
+        out.println("Database (DayHashes): " + dbHashHits.get() + " hit(s), "
+                + dbHashMisses.get() + " miss(es)");
+        out.println("Archive (stocks): " + archiveHits.get() + " hit(s), "
+                + archiveMisses.get() + " miss(es)");
+        out.println("Database (stocks): " + dbStockHits.get() + " hit(s), "
+                + dbStockMisses.get() + " miss(es)");
+        out.println("Database latency: " + dbLatency);
+        out.println("Network: " + networkFetches.get() + " fetch(es), "
+                + networkSuccesses.get() + " success(es), "
+                + networkNotPosted.get() + " not posted, "
+                + networkErrors.get() + " error(s), "
+                + networkCancelled.get() + " cancelled, "
+                + networkCoalesced.get() + " coalesced, "
+                + notPostedCacheHits.get() + " answered by not-posted cache");
+        out.println("Network latency: " + networkLatency);
+        out.println("Bytes fetched: " + getBytesFetched());
+
+        for(MirrorStats mirror : mMirrors) {
+            out.println("Server " + mirror.getName() + ": "
+                    + mirror.attempts.get() + " attempt(s), "
+                    + mirror.successes.get() + " success(es), "
+                    + mirror.notPosted.get() + " not posted, "
+                    + mirror.errors.get() + " error(s), "
+                    + mirror.aborted.get() + " aborted, "
+                    + mirror.bytes.get() + " byte(s)");
+            out.println("  latency: " + mirror.latency);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Same as {@link #dump(PrintWriter)}, but as a String.
+     *
+     * @return the report
+     */
+    @NonNull
+    public static String dumpToString() {
+        StringWriter writer = new StringWriter();
+        dump(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    /**
+     * Picks a short name for a server out of its URL template.
+     *
+     * @param url the URL
+     * @return the host, or the whole URL if there isn't one
+     */
+    @NonNull
+    static String nameFromUrl(@NonNull String url) {
+        String host = Uri.parse(url).getHost();
+        return host == null ? url : host;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * StockPostingStats.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import android.util.Log;
+
+import net.exclaimindustries.geohashdroid.core.HashDate;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * <code>StockPostingStats</code> keeps track of when, on each weekday, each of
+ * the stock servers actually started having that day's stock.  The stock
+ * alarm uses that to decide when to make its first attempt and when to retry,
+ * rather than always going at 9:30am ET and then every half hour after.
+ * </p>
+ *
+ * <p>
+ * We never actually SEE the moment a stock gets posted, of course.  What we
+ * see is a server saying "not yet" at one time and "here it is" at another,
+ * so the posting time is somewhere in between.  If we've got both for the same
+ * day, and they're only a few minutes apart, the sample is the middle of that.
+ * A "not yet" from 7am and a success at 9:45 just says the stock showed up
+ * sometime that morning, so that counts the same as a success on its own.
+ * That's only worth anything if it came shortly after the opening bell (that
+ * is, the alarm's own first attempt); a success at lunchtime just means the
+ * user opened the app at lunchtime.
+ * </p>
+ *
+ * <p>
+ * All times are in minutes since midnight, New York time.  Everything's kept
+ * in its own SharedPreferences file, since there's no reason to back it up or
+ * show it to the user.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockPostingStats {
+    private static final String DEBUG_TAG = "StockPostingStats";
+
+    private static final String PREFS_NAME = "StockPostingStats";
+
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    /**
+     * The earliest we'll ever try for a stock, in minutes since midnight ET.
+     * That's 9:30am, the same as the alarm always used.
+     */
+    public static final int EARLIEST_MINUTE = 9 * 60 + 30;
+
+    // The latest we'll push the first attempt back to, no matter how late the
+    // stocks have been lately.  That's 11:00am.
+    private static final int LATEST_FIRST_MINUTE = 11 * 60;
+
+    // How long after the opening bell an unbracketed success still counts as
+    // a sample.
+    private static final int MAX_UNBRACKETED_MINUTES = 20;
+
+    // How far apart a "not yet" and a success can be and still pin down when
+    // the stock got posted.  Any wider, and the middle of it is just a guess.
+    private static final int MAX_BRACKET_MINUTES = 5;
+
+    // How many samples to keep per weekday per server, and how many we need
+    // before we trust them over the default.
+    private static final int MAX_SAMPLES = 12;
+    private static final int MIN_SAMPLES = 3;
+
+    private static StockPostingStats mInstance;
+
+    private final SharedPreferences mPrefs;
+
+    private StockPostingStats(@NonNull Context context) {
+        mPrefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Gets the StockPostingStats.
+     *
+     * @param context a Context
+     * @return the StockPostingStats
+     */
+    @NonNull
+    public static synchronized StockPostingStats get(@NonNull Context context) {
+        if(mInstance == null) mInstance = new StockPostingStats(context);
+        return mInstance;
+    }
+
+    /**
+     * @return the current time, in minutes since midnight ET
+     */
+    public static int getCurrentMinute() {
+        Calendar cal = Calendar.getInstance(NEW_YORK);
+        return cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+    }
+
+    /**
+     * @return today's date in New York
+     */
+    @NonNull
+    public static HashDate getToday() {
+        return HashDate.fromCalendar(Calendar.getInstance(NEW_YORK));
+    }
+
+    /**
+     * Gets the most recent date that ought to have a stock posted by now.
+     * That's today in New York if it's past 9:30am there, yesterday if not.
+     * This is the same rule the stock alarm uses, so it doesn't go by the
+     * posting times we've seen; it's for deciding what's worth asking for at
+     * all, not for when to ask.
+     *
+     * @return the most recent stock date
+     */
+    @NonNull
+    public static HashDate getMostRecentStockDate() {
+        Calendar cal = Calendar.getInstance(NEW_YORK);
+        HashDate today = HashDate.fromCalendar(cal);
+        int minute = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+        return minute < EARLIEST_MINUTE ? today.plusDays(-1) : today;
+    }
+
+    /**
+     * Records what one stock server said about one stock, right now.  Anything
+     * that isn't about today's stock (in New York) is ignored, since the
+     * server answering about some old date says nothing about when today's
+     * got posted.
+     *
+     * @param date the stock date that was asked for
+     * @param mirror which server, in the order StockRunner tries them
+     * @param posted true if it had the stock, false if it said it wasn't
+     *               posted yet
+     */
+    public synchronized void recordResult(@NonNull HashDate date, int mirror, boolean posted) {
+        HashDate today = getToday();
+        if(!date.equals(today)) return;
+
+        int dow = today.getDayOfWeek();
+        if(dow == Calendar.SATURDAY || dow == Calendar.SUNDAY) return;
+
+        int day = today.getEpochDay();
+        int minute = getCurrentMinute();
+
+        // Only the first success each day counts.  After that, it's just
+        // telling us what we already know.
+        if(mPrefs.getInt(recordedDayKey(mirror), -1) == day) return;
+
+        if(!posted) {
+            // Not posted yet.  Hang on to the latest "not yet" for today; if a
+            // success comes along later, that brackets the posting time.
+            mPrefs.edit()
+                    .putInt(lowerDayKey(mirror), day)
+                    .putInt(lowerMinuteKey(mirror), minute)
+                    .apply();
+            return;
+        }
+
+        int lower = mPrefs.getInt(lowerDayKey(mirror), -1) == day
+                ? mPrefs.getInt(lowerMinuteKey(mirror), -1)
+                : -1;
+
+        int sample;
+        if(lower >= 0 && lower <= minute && minute - lower <= MAX_BRACKET_MINUTES) {
+            sample = lower + (minute - lower) / 2;
+        } else if(minute <= EARLIEST_MINUTE + MAX_UNBRACKETED_MINUTES) {
+            sample = minute;
+        } else {
+            // Too late to say anything useful.  Still, mark the day as done so
+            // we don't pick up any more of these.
+            mPrefs.edit().putInt(recordedDayKey(mirror), day).apply();
+            return;
+        }
+
+        List<Integer> samples = getSamples(dow, mirror);
+        samples.add(Math.max(EARLIEST_MINUTE, sample));
+        while(samples.size() > MAX_SAMPLES) samples.remove(0);
+
+        Log.d(DEBUG_TAG, "Server " + mirror + " had the stock for " + date + " by minute " + sample);
+
+        mPrefs.edit()
+                .putString(samplesKey(dow, mirror), joinSamples(samples))
+                .putInt(recordedDayKey(mirror), day)
+                .apply();
+    }
+
+    /**
+     * Works out when the first attempt at a stock on the given weekday should
+     * be.  That's a bit early in whichever server's been posting earliest,
+     * since StockRunner hedges across all of them and the first one to answer
+     * wins.  Until there's enough data, it's {@link #EARLIEST_MINUTE}.
+     *
+     * @param dayOfWeek the day of the week, as a Calendar constant
+     * @return the minute (since midnight ET) to make the first attempt
+     */
+    public synchronized int getFirstAttemptMinute(int dayOfWeek) {
+        int best = LATEST_FIRST_MINUTE;
+        boolean found = false;
+
+        for(int mirror = 0; mirror < HashBuilder.StockRunner.getServerCount(); mirror++) {
+            List<Integer> samples = getSamples(dayOfWeek, mirror);
+            if(samples.size() < MIN_SAMPLES) continue;
+
+            // The lower quartile.  Going a little early means we still find
+            // out if things got faster; going late just loses time.
+            Collections.sort(samples);
+            best = Math.min(best, samples.get((samples.size() - 1) / 4));
+            found = true;
+        }
+
+        if(!found) return EARLIEST_MINUTE;
+        return Math.max(EARLIEST_MINUTE, Math.min(LATEST_FIRST_MINUTE, best));
+    }
+
+    /**
+     * Finds the next time after the given minute that any server has posted
+     * a stock on the given weekday.  If a retry would otherwise sleep through
+     * one of those, it's worth waking up right after it instead.
+     *
+     * @param dayOfWeek the day of the week, as a Calendar constant
+     * @param afterMinute the minute (since midnight ET) to look after
+     * @return the next observed posting minute, or -1 if there isn't one
+     */
+    public synchronized int getNextLikelyMinute(int dayOfWeek, int afterMinute) {
+        int next = -1;
+
+        for(int mirror = 0; mirror < HashBuilder.StockRunner.getServerCount(); mirror++) {
+            for(int sample : getSamples(dayOfWeek, mirror)) {
+                if(sample > afterMinute && (next < 0 || sample < next))
+                    next = sample;
+            }
+        }
+
+        return next;
+    }
+
+    @NonNull
+    private List<Integer> getSamples(int dayOfWeek, int mirror) {
+        List<Integer> toReturn = new ArrayList<>();
+        String raw = mPrefs.getString(samplesKey(dayOfWeek, mirror), "");
+        if(raw == null || raw.isEmpty()) return toReturn;
+
+        for(String s : raw.split(",")) {
+            try {
+                toReturn.add(Integer.parseInt(s));
+            } catch(NumberFormatException nfe) {
+                // Whatever that was, it's not a sample.
+            }
+        }
+
+        return toReturn;
+    }
+
+    @NonNull
+    private static String joinSamples(@NonNull List<Integer> samples) {
+        StringBuilder builder = new StringBuilder();
+        for(int sample : samples) {
+            if(builder.length() > 0) builder.append(',');
+            builder.append(sample);
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private static String samplesKey(int dayOfWeek, int mirror) {
+        return "Samples" + dayOfWeek + "_" + mirror;
+    }
+
+    @NonNull
+    private static String lowerDayKey(int mirror) {
+        return "LowerDay" + mirror;
+    }
+
+    @NonNull
+    private static String lowerMinuteKey(int mirror) {
+        return "LowerMinute" + mirror;
+    }
+
+    @NonNull
+    private static String recordedDayKey(int mirror) {
+        return "RecordedDay" + mirror;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * StockResult.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
+
+/**
+ * <p>
+ * A <code>StockResult</code> is what StockService sends back for a single
+ * stock request: the date, the Graticule asked for, and the resulting Info and
+ * nearby points, if any.  Rather than a Serializable Calendar and a pile of
+ * Parcelable Infos (each parceling its own Graticule and date), it's all
+ * flattened down to one epoch day, an array of packed Graticules, and an array
+ * of hash fractions.  That's the same no matter how many nearby points there
+ * are, and it doesn't need any reflection or ClassLoader tricks to unparcel.
+ * </p>
+ *
+ * <p>
+ * The Info objects themselves don't get built until someone asks for them,
+ * and only the ones asked for.  So if the receiver decides it doesn't care
+ * about this result (wrong request ID, alarm response, whatever), it never
+ * pays for them at all.  Since they're built lazily, this isn't thread-safe;
+ * keep it on one thread (which will almost certainly be the main thread).
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockResult implements Parcelable {
+    private final int mEpochDay;
+    private final int mRequested;
+    private final boolean mHasInfo;
+
+    // One packed Graticule per item, and two fractions (latitude, longitude)
+    // per item.  If there's an Info, it's item zero, and the nearby points
+    // come after it.
+    private final int[] mGraticules;
+    private final double[] mFractions;
+
+    // Built on demand.
+    private Info[] mDecoded;
+
+    /**
+     * Builds a StockResult.
+     *
+     * @param date the date that was requested
+     * @param requested the Graticule that was requested (null for a Globalhash)
+     * @param info the resulting Info, or null if there wasn't one
+     * @param nearby the nearby points, or null if there weren't any
+     */
+    public StockResult(@NonNull HashDate date,
+                       @Nullable Graticule requested,
+                       @Nullable Info info,
+                       @Nullable Info[] nearby) {
+        mEpochDay = date.getEpochDay();
+        mRequested = packGraticule(requested);
+        mHasInfo = info != null;
+
+        int count = (mHasInfo ? 1 : 0) + (nearby == null ? 0 : nearby.length);
+        mGraticules = new int[count];
+        mFractions = new double[count * 2];
+
+        int i = 0;
+        if(mHasInfo) put(i++, info);
+        if(nearby != null) {
+            for(Info n : nearby) put(i++, n);
+        }
+    }
+
+    private StockResult(Parcel in) {
+        mEpochDay = in.readInt();
+        mRequested = in.readInt();
+        mHasInfo = in.readInt() != 0;
+        mGraticules = in.createIntArray();
+        mFractions = in.createDoubleArray();
+    }
+
+    private void put(int index, @NonNull Info info) {
+        mGraticules[index] = packGraticule(info.getGraticule());
+        mFractions[index * 2] = info.getLatitudeHash();
+        mFractions[index * 2 + 1] = info.getLongitudeHash();
+    }
+
+    private static int packGraticule(@Nullable Graticule g) {
+        return g == null ? PackedGraticule.GLOBALHASH : g.getPackedId();
+    }
+
+    /**
+     * @return the date that was requested
+     */
+    @NonNull
+    public HashDate getHashDate() {
+        return HashDate.fromEpochDay(mEpochDay);
+    }
+
+    /**
+     * @return the Graticule that was requested, or null if it was a Globalhash
+     */
+    @Nullable
+    public Graticule getGraticule() {
+        return mRequested == PackedGraticule.GLOBALHASH ? null : Graticule.fromPackedId(mRequested);
+    }
+
+    /**
+     * Gets the resulting Info.  This gets built the first time it's asked for.
+     *
+     * @return the Info, or null if there wasn't one (that is, there was an
+     *         error)
+     */
+    @Nullable
+    public Info getInfo() {
+        return mHasInfo ? decode(0) : null;
+    }
+
+    /**
+     * @return how many nearby points there are
+     */
+    public int getNearbyCount() {
+        return mGraticules.length - (mHasInfo ? 1 : 0);
+    }
+
+    /**
+     * Gets one of the nearby points.  This gets built the first time it's
+     * asked for.
+     *
+     * @param index which one, from zero to {@link #getNearbyCount()} - 1
+     * @return that nearby point
+     */
+    @NonNull
+    public Info getNearbyPoint(int index) {
+        if(index < 0 || index >= getNearbyCount())
+            throw new IndexOutOfBoundsException("There's no nearby point " + index + "!");
+
+        return decode(index + (mHasInfo ? 1 : 0));
+    }
+
+    /**
+     * Gets all the nearby points as an array, the same way StockService used
+     * to send them.  This builds all of them, so if you only need a few, use
+     * {@link #getNearbyPoint(int)} instead.
+     *
+     * @return the nearby points, or null if there weren't any
+     */
+    @Nullable
+    public Info[] getNearbyPoints() {
+        int count = getNearbyCount();
+        if(count == 0) return null;
+
+        Info[] toReturn = new Info[count];
+        for(int i = 0; i < count; i++)
+            toReturn[i] = getNearbyPoint(i);
+        return toReturn;
+    }
+
+    @NonNull
+    private Info decode(int index) {
+        if(mDecoded == null) mDecoded = new Info[mGraticules.length];
+
+        Info info = mDecoded[index];
+        if(info == null) {
+            int packed = mGraticules[index];
+            double latHash = mFractions[index * 2];
+            double lonHash = mFractions[index * 2 + 1];
+            HashDate date = HashDate.fromEpochDay(mEpochDay);
+
+            // Globalhash Infos take the raw hash values, same as HashBuilder
+            // does it.
+            if(packed == PackedGraticule.GLOBALHASH)
+                info = new Info(latHash, lonHash, null, date);
+            else
+                info = new Info(PackedGraticule.makeLatitude(packed, latHash),
+                        PackedGraticule.makeLongitude(packed, lonHash),
+                        Graticule.fromPackedId(packed),
+                        date);
+
+            mDecoded[index] = info;
+        }
+
+        return info;
+    }
+
+    public static final Parcelable.Creator<StockResult> CREATOR = new Parcelable.Creator<StockResult>() {
+        public StockResult createFromParcel(Parcel in) {
+            return new StockResult(in);
+        }
+
+        public StockResult[] newArray(int size) {
+            return new StockResult[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mEpochDay);
+        dest.writeInt(mRequested);
+        dest.writeInt(mHasInfo ? 1 : 0);
+        dest.writeIntArray(mGraticules);
+        dest.writeDoubleArray(mFractions);
+    }
+}
@@ -7,27 +7,59 @@
  */
 package net.exclaimindustries.geohashdroid.util;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 
-import net.exclaimindustries.tools.DateTools;
+import net.exclaimindustries.geohashdroid.core.DayHash;
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.StockQuote;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
  * A <code>StockStoreDatabase</code> object talks to the database to store and
- * retrieve stock prices to and from (respectively) the cache.  It does this via
- * <code>Info</code> bundles, so it will account for the 30W Rule as need be,
- * assuming it was created properly from <code>HashBuilder</code>.
+ * retrieve stock prices to and from (respectively) the cache.  Hashes go in
+ * and out as <code>DayHash</code>es, so it will account for the 30W Rule as
+ * need be, assuming they were created properly from <code>HashBuilder</code>.
+ * </p>
+ *
+ * <p>
+ * Dates are stored as epoch days (see {@link HashDate#getEpochDay()}), and
+ * each table has a unique index on its key, so lookups don't get any slower as
+ * the cache gets bigger, and storing something that's already there is just
+ * quietly ignored by SQLite itself.
+ * </p>
+ *
+ * <p>
+ * Every row also remembers when it was last used.  Pruning the cache down to
+ * size happens in {@link #performMaintenance(Context, int[], int[])}, which
+ * throws out whatever's gone unused the longest, except for anything pinned.
+ * That's meant to be run every so often in the background, NOT every time
+ * something gets stored.  Reads don't write that time to the database right
+ * away, either; they just make a note of it, and maintenance writes all those
+ * notes out at once.
+ * </p>
+ *
+ * <p>
+ * Stocks that came in by way of a bulk import (see {@link #storeStocks(Iterable)})
+ * are flagged as such, and maintenance never prunes those.  Someone who went
+ * to the trouble of importing decades of history doesn't want it cut back to
+ * fifteen rows the next morning, nor should all that history push out
+ * whatever they were actually using.
  * </p>
  * 
  * @author Nicholas Killewald
@@ -35,6 +67,17 @@ import java.util.Calendar;
 public class StockStoreDatabase {
     private DatabaseHelper mHelper;
     private SQLiteDatabase mDatabase;
+
+    // The hot statements, compiled once in init.  These aren't thread-safe on
+    // their own, so only touch them inside synchronized(this).
+    private SQLiteStatement mInsertStock;
+    private SQLiteStatement mInsertHash;
+    private SQLiteStatement mSelectStock;
+
+    // Reads that haven't had their last-access times written out yet, keyed
+    // on stock epoch day and DayHash key, respectively.  Guarded by this.
+    private final HashMap<Integer, Long> mStockTouches = new HashMap<>();
+    private final HashMap<Integer, Long> mHashTouches = new HashMap<>();
     
     private static final String DEBUG_TAG = "StockStoreDatabase";
     
@@ -44,6 +87,10 @@ public class StockStoreDatabase {
     private static final String KEY_STOCKS_DATE = "date";
     /** The name of the stock value column. */
     private static final String KEY_STOCKS_STOCK = "stock";
+    /** The name of the column for when the stock was last used. */
+    private static final String KEY_STOCKS_LASTACCESS = "last_access";
+    /** The name of the column flagging a stock as bulk-imported (and thus never pruned). */
+    private static final String KEY_STOCKS_IMPORTED = "imported";
     
     /** The name of the column for the row's IDs for hashes. */
     private static final String KEY_HASHES_ROWID = "_id";
@@ -55,10 +102,71 @@ public class StockStoreDatabase {
     private static final String KEY_HASHES_LATHASH = "lathash";
     /** The name of the longitude hashpart column. */
     private static final String KEY_HASHES_LONHASH = "lonhash";
+    /** The name of the column for when the hash was last used. */
+    private static final String KEY_HASHES_LASTACCESS = "last_access";
     
     private static final String TABLE_STOCKS = "stocks";
     private static final String TABLE_HASHES = "hashes";
+
+    private static final String INDEX_STOCKS_DATE = "stocks_date";
+    private static final String INDEX_HASHES_DATE_30W = "hashes_date_30w";
+
+    private static final String INSERT_STOCK =
+            "INSERT OR IGNORE INTO " + TABLE_STOCKS
+                    + " (" + KEY_STOCKS_DATE + ", " + KEY_STOCKS_STOCK + ", "
+                    + KEY_STOCKS_LASTACCESS + ") VALUES (?, ?, ?)";
+
+    private static final String INSERT_IMPORTED_STOCK =
+            "INSERT OR IGNORE INTO " + TABLE_STOCKS
+                    + " (" + KEY_STOCKS_DATE + ", " + KEY_STOCKS_STOCK + ", "
+                    + KEY_STOCKS_LASTACCESS + ", " + KEY_STOCKS_IMPORTED + ") VALUES (?, ?, ?, 1)";
+
+    // If an imported stock was already in the cache, it's now part of the
+    // imported history, too.
+    private static final String MARK_IMPORTED_STOCK =
+            "UPDATE " + TABLE_STOCKS + " SET " + KEY_STOCKS_IMPORTED + " = 1"
+                    + " WHERE " + KEY_STOCKS_DATE + " = ?";
+
+    // How many imported stocks go into the database per transaction.  Between
+    // batches, everyone else gets a turn at the database.
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    private static final String INSERT_HASH =
+            "INSERT OR IGNORE INTO " + TABLE_HASHES
+                    + " (" + KEY_HASHES_DATE + ", " + KEY_HASHES_30W + ", "
+                    + KEY_HASHES_LATHASH + ", " + KEY_HASHES_LONHASH + ", "
+                    + KEY_HASHES_LASTACCESS + ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_STOCK =
+            "SELECT " + KEY_STOCKS_STOCK + " FROM " + TABLE_STOCKS
+                    + " WHERE " + KEY_STOCKS_DATE + " = ?";
+
+    // SQLiteStatement can only hand back one simple value, and we want two
+    // doubles, so this one goes through rawQuery.  Since the SQL never
+    // changes, SQLite's own statement cache keeps it compiled anyway.
+    private static final String SELECT_HASH =
+            "SELECT " + KEY_HASHES_LATHASH + ", " + KEY_HASHES_LONHASH + " FROM " + TABLE_HASHES
+                    + " WHERE " + KEY_HASHES_DATE + " = ? AND " + KEY_HASHES_30W + " = ?";
+
+    private static final String TOUCH_STOCK =
+            "UPDATE " + TABLE_STOCKS + " SET " + KEY_STOCKS_LASTACCESS + " = ?"
+                    + " WHERE " + KEY_STOCKS_DATE + " = ?";
+
+    private static final String TOUCH_HASH =
+            "UPDATE " + TABLE_HASHES + " SET " + KEY_HASHES_LASTACCESS + " = ?"
+                    + " WHERE " + KEY_HASHES_DATE + " = ? AND " + KEY_HASHES_30W + " = ?";
     
+    // Up through version 3, dates went in as yyyyMMdd.  This turns one of
+    // those into an epoch day, entirely in SQL.  julianday gives us a day
+    // number starting at noon, 4714 BC, and 2440587.5 of those is midnight,
+    // January 1, 1970.  If the date's garbage, this comes out NULL, and the
+    // NOT NULL constraint tosses the row out.  Both tables call the column
+    // "date", so this works on either.
+    static final String YYYYMMDD_TO_EPOCH_DAY =
+            "CAST(julianday(substr(" + KEY_STOCKS_DATE + ", 1, 4) || '-' || substr("
+                    + KEY_STOCKS_DATE + ", 5, 2) || '-' || substr("
+                    + KEY_STOCKS_DATE + ", 7, 2)) - 2440587.5 AS INTEGER)";
+
     /**
      * Implements SQLiteOpenHelper.  Much like Hamburger Helper, this can take
      * a pound of database and turn it into a meal.
@@ -67,13 +175,15 @@ public class StockStoreDatabase {
      */
     private static class DatabaseHelper extends SQLiteOpenHelper {
         private static final String DATABASE_NAME = "stockstore";
-        private static final int DATABASE_VERSION = 3;
+        private static final int DATABASE_VERSION = 6;
 
         private static final String CREATE_STOCKS_TABLE =
                 "CREATE TABLE " + TABLE_STOCKS
                         + " (" + KEY_STOCKS_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                         + KEY_STOCKS_DATE + " INTEGER NOT NULL, "
-                        + KEY_STOCKS_STOCK + " TEXT NOT NULL);";
+                        + KEY_STOCKS_STOCK + " TEXT NOT NULL, "
+                        + KEY_STOCKS_LASTACCESS + " INTEGER NOT NULL DEFAULT 0, "
+                        + KEY_STOCKS_IMPORTED + " INTEGER NOT NULL DEFAULT 0);";
 
         private static final String CREATE_HASHES_TABLE =
                 "CREATE TABLE " + TABLE_HASHES
@@ -81,7 +191,16 @@ public class StockStoreDatabase {
                         + KEY_HASHES_DATE + " INTEGER NOT NULL, "
                         + KEY_HASHES_30W + " INTEGER NOT NULL, "
                         + KEY_HASHES_LATHASH + " REAL NOT NULL, "
-                        + KEY_HASHES_LONHASH + " REAL NOT NULL);";
+                        + KEY_HASHES_LONHASH + " REAL NOT NULL, "
+                        + KEY_HASHES_LASTACCESS + " INTEGER NOT NULL DEFAULT 0);";
+
+        private static final String CREATE_STOCKS_INDEX =
+                "CREATE UNIQUE INDEX " + INDEX_STOCKS_DATE
+                        + " ON " + TABLE_STOCKS + " (" + KEY_STOCKS_DATE + ");";
+
+        private static final String CREATE_HASHES_INDEX =
+                "CREATE UNIQUE INDEX " + INDEX_HASHES_DATE_30W
+                        + " ON " + TABLE_HASHES + " (" + KEY_HASHES_DATE + ", " + KEY_HASHES_30W + ");";
 
         DatabaseHelper(Context context) {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -91,15 +210,66 @@ public class StockStoreDatabase {
         public void onCreate(SQLiteDatabase db) {
             db.execSQL(CREATE_STOCKS_TABLE);
             db.execSQL(CREATE_HASHES_TABLE);
+            db.execSQL(CREATE_STOCKS_INDEX);
+            db.execSQL(CREATE_HASHES_INDEX);
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             if(oldVersion == 1 || oldVersion == 2) {
-                // Versions 1 and 2 only had one table, named "stocks".
-                db.execSQL("DROP TABLE IF EXISTS stocks");
-                db.execSQL(CREATE_STOCKS_TABLE);
-                db.execSQL(CREATE_HASHES_TABLE);
+                // Versions 1 and 2 only had one table, named "stocks".  That's
+                // not worth saving; just start over.
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_STOCKS);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_HASHES);
+                onCreate(db);
+                return;
+            }
+
+            if(oldVersion == 3) {
+                // Version 3 had the right tables, but with yyyyMMdd dates and
+                // no indexes.  So, rename those out of the way, make the new
+                // ones, copy everything over (in the same order, so the row
+                // IDs still say what came first), and drop the old ones.  The
+                // new tables are already the latest version, so we're done
+                // after that.  SQLiteOpenHelper already has us in a transaction, so
+                // if any of this fails, nothing changes.
+                Log.i(DEBUG_TAG, "Migrating the stock cache to version 4...");
+                db.execSQL("ALTER TABLE " + TABLE_STOCKS + " RENAME TO " + TABLE_STOCKS + "_v3");
+                db.execSQL("ALTER TABLE " + TABLE_HASHES + " RENAME TO " + TABLE_HASHES + "_v3");
+                onCreate(db);
+
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE_STOCKS
+                        + " (" + KEY_STOCKS_ROWID + ", " + KEY_STOCKS_DATE + ", " + KEY_STOCKS_STOCK + ")"
+                        + " SELECT " + KEY_STOCKS_ROWID + ", " + YYYYMMDD_TO_EPOCH_DAY + ", " + KEY_STOCKS_STOCK
+                        + " FROM " + TABLE_STOCKS + "_v3 ORDER BY " + KEY_STOCKS_ROWID);
+
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE_HASHES
+                        + " (" + KEY_HASHES_ROWID + ", " + KEY_HASHES_DATE + ", " + KEY_HASHES_30W + ", "
+                        + KEY_HASHES_LATHASH + ", " + KEY_HASHES_LONHASH + ")"
+                        + " SELECT " + KEY_HASHES_ROWID + ", " + YYYYMMDD_TO_EPOCH_DAY + ", "
+                        + KEY_HASHES_30W + ", " + KEY_HASHES_LATHASH + ", " + KEY_HASHES_LONHASH
+                        + " FROM " + TABLE_HASHES + "_v3 ORDER BY " + KEY_HASHES_ROWID);
+
+                db.execSQL("DROP TABLE " + TABLE_STOCKS + "_v3");
+                db.execSQL("DROP TABLE " + TABLE_HASHES + "_v3");
+                return;
+            }
+
+            if(oldVersion == 4) {
+                // Version 4 just didn't track when things were used.  Anything
+                // already there counts as never used, and gets thrown out
+                // first, oldest row first.
+                db.execSQL("ALTER TABLE " + TABLE_STOCKS + " ADD COLUMN "
+                        + KEY_STOCKS_LASTACCESS + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + TABLE_HASHES + " ADD COLUMN "
+                        + KEY_HASHES_LASTACCESS + " INTEGER NOT NULL DEFAULT 0");
+            }
+
+            if(oldVersion <= 5) {
+                // Version 5 didn't know about imported stocks.  Nothing
+                // already there was imported, as far as we can tell.
+                db.execSQL("ALTER TABLE " + TABLE_STOCKS + " ADD COLUMN "
+                        + KEY_STOCKS_IMPORTED + " INTEGER NOT NULL DEFAULT 0");
             }
         }
     }
@@ -117,6 +287,10 @@ public class StockStoreDatabase {
     public StockStoreDatabase init(@NonNull Context c) throws SQLException {
         mHelper = new DatabaseHelper(c);
         mDatabase = mHelper.getWritableDatabase();
+
+        mInsertStock = mDatabase.compileStatement(INSERT_STOCK);
+        mInsertHash = mDatabase.compileStatement(INSERT_HASH);
+        mSelectStock = mDatabase.compileStatement(SELECT_STOCK);
         return this;
     }
     
@@ -124,43 +298,41 @@ public class StockStoreDatabase {
      * Finishes up.  In this case, closes the database.
      */
     public void finish() {
+        synchronized(this) {
+            mInsertStock.close();
+            mInsertHash.close();
+            mSelectStock.close();
+        }
         mHelper.close();
     }
     
     /**
-     * Stores a bundle of Info into the database.  That is, store a new entry in
-     * the hashes table.  It is presumed this has nothing to do with the actual
+     * Stores a DayHash into the database.  That is, store a new entry in the
+     * hashes table.  It is presumed this has nothing to do with the actual
      * stock value.  When retrieved later, this will preserve the fractional
-     * parts of the coordinates (that is, the hash part).
+     * parts of the coordinates (that is, the hash part) exactly.
      * 
-     * @param i the aforementioned bundle of Info to be stored into the database
+     * @param hash the DayHash to be stored into the database
      */
-    public void storeInfo(Info i) {
+    public void storeDayHash(@NonNull DayHash hash) {
         synchronized(this) {
-            // Fortunately, there's a handy ContentValues object for this sort
-            // of thing.  I mean, we COULD do manual SQLite calls, but why
-            // bother?
-            
-            // But first!  First we need to know if this already exists.  If it
-            // does, return a -1.
-            // TODO: No, wrong.  I need a better mechanism for that.
-            if(getInfo(i.getCalendar(), i.getGraticule()) != null) {
-                Log.v(DEBUG_TAG, "Info already exists for that data, ignoring...");
-                return;
+            // The unique index takes care of not storing it twice.  If it's
+            // already there, SQLite ignores it and we get a -1 back.
+            mInsertHash.bindLong(1, hash.getEpochDay());
+            mInsertHash.bindLong(2, hash.uses30WRule() ? 1 : 0);
+            mInsertHash.bindDouble(3, hash.getLatitudeHash());
+            mInsertHash.bindDouble(4, hash.getLongitudeHash());
+            mInsertHash.bindLong(5, System.currentTimeMillis());
+
+            if(mInsertHash.executeInsert() == -1) {
+                Log.v(DEBUG_TAG, "Hash already exists for that data, ignoring...");
+            } else {
+                Log.v(DEBUG_TAG, "NOW STORING TO HASHES " + hash.getDate()
+                        + (hash.uses30WRule() ? " (30W)" : "") + " : "
+                        + hash.getLatitudeHash() + "," + hash.getLongitudeHash());
             }
-            
-            ContentValues toGo = new ContentValues();
-            Calendar cal = i.getCalendar();
-            toGo.put(KEY_HASHES_DATE, DateTools.getDateString(cal));
-            toGo.put(KEY_HASHES_30W, i.uses30WRule());
-            toGo.put(KEY_HASHES_LATHASH, i.getLatitudeHash());
-            toGo.put(KEY_HASHES_LONHASH, i.getLongitudeHash());
-            
-            Log.v(DEBUG_TAG, "NOW STORING TO HASHES " + DateTools.getDateString(cal)
-                    + (i.uses30WRule() ? " (30W)" : "") + " : "
-                    + i.getLatitudeHash() + "," + i.getLongitudeHash());
 
-            mDatabase.insert(TABLE_HASHES, null, toGo);
+            mInsertHash.clearBindings();
         }
     }
     
@@ -169,78 +341,148 @@ public class StockStoreDatabase {
      * value is already adjusted for weekends and 30W (that is, this is the raw
      * stock value for that date).
      * 
-     * @param cal the date of the stock
+     * @param date the date of the stock
      * @param stock the stock itself, as a string
      */
-    public void storeStock(Calendar cal, String stock) {
+    public void storeStock(@NonNull HashDate date, @NonNull String stock) {
         synchronized(this) {
-            // First, check over the database to make sure it doesn't already
-            // exist.
-            if(getStock(cal) != null) {
-                Log.v(DEBUG_TAG, "Stock price already exists in database for " + DateTools.getDateString(cal) + ", ignoring...");
-                return;
+            // Same as with hashes, if it's already there, this won't do
+            // anything.
+            mInsertStock.bindLong(1, date.getEpochDay());
+            mInsertStock.bindString(2, stock);
+            mInsertStock.bindLong(3, System.currentTimeMillis());
+
+            if(mInsertStock.executeInsert() == -1) {
+                Log.v(DEBUG_TAG, "Stock price already exists in database for " + date + ", ignoring...");
+            } else {
+                Log.v(DEBUG_TAG, "NOW STORING TO STOCKS " + date
+                        + " : " + stock);
             }
-            
-            // Otherwise, store away!
-            ContentValues toGo = new ContentValues();
-            toGo.put(KEY_STOCKS_DATE, DateTools.getDateString(cal));
-            toGo.put(KEY_STOCKS_STOCK, stock);
-            
-            Log.v(DEBUG_TAG, "NOW STORING TO STOCKS " + DateTools.getDateString(cal)
-                    + " : " + stock);
 
-            mDatabase.insert(TABLE_STOCKS, null, toGo);
+            mInsertStock.clearBindings();
         }
     }
     
     /**
-     * Retrieves enough data from the database to construct an Info bundle, if
-     * such data exists.  If not, returns null instead.
+     * <p>
+     * Imports a whole bunch of stock values at once.  This is a LOT faster
+     * than calling {@link #storeStock(HashDate, String)} over and over, so use
+     * this for backfilling or importing.  Anything that's already in the
+     * database is left alone, apart from getting flagged as imported.
+     * </p>
+     *
+     * <p>
+     * Everything stored this way is flagged as imported, which means
+     * {@link #performMaintenance(Context, int[], int[])} will never prune it,
+     * and it doesn't count against the cache size.  The quotes get read in
+     * batches, and each batch goes in as its own transaction.  Reading the
+     * quotes (which might well mean parsing a file) happens outside of the
+     * database lock, so anyone else who wants the database only has to wait
+     * for one batch at most.
+     * </p>
+     *
+     * @param quotes the stocks to store (these can be streamed in; nothing
+     *               here holds on to more than one batch at a time)
+     * @return how many were actually new
+     */
+    public int storeStocks(@NonNull Iterable<StockQuote> quotes) {
+        int stored = 0;
+        int seen = 0;
+        List<StockQuote> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+
+        for(StockQuote quote : quotes) {
+            batch.add(quote);
+            if(batch.size() >= IMPORT_BATCH_SIZE) {
+                stored += storeStockBatch(batch);
+                seen += batch.size();
+                batch.clear();
+            }
+        }
+
+        if(!batch.isEmpty()) {
+            stored += storeStockBatch(batch);
+            seen += batch.size();
+        }
+
+        Log.d(DEBUG_TAG, "Bulk stored " + stored + " new stocks out of " + seen + ".");
+        return stored;
+    }
+
+    private int storeStockBatch(@NonNull List<StockQuote> batch) {
+        synchronized(this) {
+            int stored = 0;
+            long now = System.currentTimeMillis();
+
+            SQLiteStatement insert = mDatabase.compileStatement(INSERT_IMPORTED_STOCK);
+            SQLiteStatement mark = mDatabase.compileStatement(MARK_IMPORTED_STOCK);
+
+            mDatabase.beginTransaction();
+            try {
+                for(StockQuote quote : batch) {
+                    insert.bindLong(1, quote.getDate().getEpochDay());
+                    insert.bindString(2, quote.getPrice());
+                    insert.bindLong(3, now);
+                    // We don't need the row ID, just whether or not the row
+                    // went in, and the changed row count says that directly.
+                    // Not every SQLite out there reports an ignored insert as
+                    // -1 (Robolectric's doesn't, for one).
+                    if(insert.executeUpdateDelete() > 0) {
+                        stored++;
+                    } else {
+                        mark.bindLong(1, quote.getDate().getEpochDay());
+                        mark.executeUpdateDelete();
+                    }
+                }
+                mDatabase.setTransactionSuccessful();
+            } finally {
+                mDatabase.endTransaction();
+                insert.close();
+                mark.close();
+            }
+
+            return stored;
+        }
+    }
+
+    /**
+     * Retrieves a DayHash from the database, if such data exists.  If not,
+     * returns null instead.
      * 
-     * @param c Calendar containing the date to retrieve (this should NOT be
-     *          adjusted for the 30W Rule)
-     * @param g Graticule to use to determine if the 30W Rule is in effect and
-     *          to create the new Info bundle with
-     * @return Info bundle you're looking for, or null if the database doesn't
+     * @param date the date to retrieve (this should NOT be adjusted for the
+     *             30W Rule)
+     * @param uses30W true to get the hash made from the previous day's stock
+     *                (the 30W Rule or a Globalhash), false for the same day's
+     * @return the DayHash you're looking for, or null if the database doesn't
      *         have the data you want
      */
-    public Info getInfo(Calendar c, Graticule g) {
+    @Nullable
+    public DayHash getDayHash(@NonNull HashDate date, boolean uses30W) {
         synchronized(this) {
             Log.v(DEBUG_TAG, "Querying the hashes database...");
-            // First, adjust the calendar if we need to.
-            Info toReturn = null;
+            DayHash toReturn = null;
             
             // Now, to the database!
-            Cursor cursor = mDatabase.query(TABLE_HASHES, new String[] {KEY_HASHES_LATHASH, KEY_HASHES_LONHASH},
-                    KEY_HASHES_DATE + " = " + DateTools.getDateString(c) + " AND " + KEY_HASHES_30W + " = "
-                    + ((g == null || g.uses30WRule()) ? "1" : "0"),
-                    null, null, null, null);
+            Cursor cursor = mDatabase.rawQuery(SELECT_HASH, new String[] {
+                    Integer.toString(date.getEpochDay()), uses30W ? "1" : "0"});
             
             if(cursor == null) {
                 // If a problem happens, assume there's no stock to get.
                 Log.w(DEBUG_TAG, "HEY!  The cursor returned from the query was null!");
                 return null;
-            } else if(cursor.getCount() == 0) {
-                // If nothing resulted from this, the stock doesn't exist in the
+            }
+
+            if(!cursor.moveToFirst()) {
+                // If nothing resulted from this, the hash doesn't exist in the
                 // cache.
-                Log.v(DEBUG_TAG, "Info doesn't exist in database");
+                Log.v(DEBUG_TAG, "Hash doesn't exist in database");
             } else {
-                // Otherwise, grab the first one we come across.
-                if(!cursor.moveToFirst()) return null;
-                
+                // Otherwise, there's only ever the one.
                 double latHash = cursor.getDouble(0);
                 double lonHash = cursor.getDouble(1);
-                Log.v(DEBUG_TAG, "Info found -- Today's lucky numbers are " + latHash + "," + lonHash);
+                Log.v(DEBUG_TAG, "Hash found -- Today's lucky numbers are " + latHash + "," + lonHash);
                 
-                // Get the destination set...
-                if(g != null) {
-                    double lat = (g.getLatitude() + latHash) * (g.isSouth() ? -1 : 1);
-                    double lon = (g.getLongitude() + lonHash) * (g.isWest() ? -1 : 1);
-                    
-                    toReturn = new Info(lat, lon, g, c);
-                } else {
-                    toReturn = new Info(latHash, lonHash, null, c);
-                }
+                toReturn = new DayHash(date.getEpochDay(), uses30W, latHash, lonHash);
+                mHashTouches.put(toReturn.getKey(), System.currentTimeMillis());
             }
             
             cursor.close();
@@ -252,97 +494,162 @@ public class StockStoreDatabase {
      * Retrieves a stock value from the database for the given date.  This date
      * should already be adjusted for weekends and such.
      * 
-     * @param cal already-adjusted date for which to get a stock
+     * @param date already-adjusted date for which to get a stock
      * @return the String representation of the stock, or null if none is stored 
      */
-    public String getStock(Calendar cal) {
+    @Nullable
+    public String getStock(@NonNull HashDate date) {
         synchronized(this) {
             Log.v(DEBUG_TAG, "Querying the stock database...");
             
             String toReturn = null;
             
             // Go!
-            Cursor cursor = mDatabase.query(TABLE_STOCKS, new String[] {KEY_STOCKS_STOCK},
-                    KEY_STOCKS_DATE + " = " + DateTools.getDateString(cal),
-                    null, null, null, null);
-            
-            // And now the check...
-            if(cursor == null) {
-                // If a problem happens, assume there's no stock to get.
-                Log.w(DEBUG_TAG, "HEY!  The cursor returned from the query was null!");
-                return null;
-            } else if(cursor.getCount() == 0) {
-                // If nothing resulted from this, the stock doesn't exist in the
-                // cache.
-                Log.v(DEBUG_TAG, "Stock doesn't exist in database");
-            } else {
-                // Otherwise, grab the first one we come across.
-                if(!cursor.moveToFirst()) return null;
-                
-                toReturn = cursor.getString(0);
+            mSelectStock.bindLong(1, date.getEpochDay());
+
+            try {
+                toReturn = mSelectStock.simpleQueryForString();
                 Log.v(DEBUG_TAG, "Stock found -- Today's lucky number is " + toReturn);
+                mStockTouches.put(date.getEpochDay(), System.currentTimeMillis());
+            } catch (SQLiteDoneException sde) {
+                // This is how SQLiteStatement says "no rows".  So, the stock
+                // doesn't exist in the cache.
+                Log.v(DEBUG_TAG, "Stock doesn't exist in database");
+            } finally {
+                mSelectStock.clearBindings();
             }
-            
-            cursor.close();
+
             return toReturn;
         }
     }
     
     /**
-     * Performs cache cleanup.  This involves pruning the cache down to however
-     * many entries should be the max.
+     * <p>
+     * Performs cache maintenance.  First, every read since the last time this
+     * ran gets its last-access time written out.  Then, each table gets
+     * pruned down to however many entries the preferences say it should
+     * have, throwing out whatever was used the longest time ago first.
+     * Anything pinned or imported is never thrown out, and doesn't count
+     * against the limit.  If the cache is turned off (a size of zero),
+     * everything goes, pinned or not, except for imported stocks.
+     * </p>
+     *
+     * <p>
+     * This is all one transaction, so it's not terribly slow, but it's still
+     * not something to do on every store.  Run it every so often in the
+     * background.
+     * </p>
      *
      * @param c Context to use to get preferences and such
+     * @param pinnedStockDays stock dates (as epoch days) to keep no matter what
+     * @param pinnedHashDays expedition dates (as epoch days) whose hashes
+     *                       should be kept no matter what
      */
-    public void cleanup(@NonNull Context c) {
+    public void performMaintenance(@NonNull Context c,
+                                   @NonNull int[] pinnedStockDays,
+                                   @NonNull int[] pinnedHashDays) {
         synchronized(this) {
             SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(c);
-            
-            Log.v(DEBUG_TAG, "Pruning database...");
+
+            Log.v(DEBUG_TAG, "Performing stock cache maintenance...");
+            mDatabase.beginTransaction();
             try {
+                // Write out the reads...
+                flushTouches();
+
                 // Presumably, initPrefs was already run from the GeohashDroid
                 // class.  Thus, if the pref doesn't exist at this point or
                 // isn't parseable into an int, we can quite justifiably spaz
                 // out.
                 int max = Integer.parseInt(prefs.getString(GHDConstants.PREF_STOCK_CACHE_SIZE, "15"));
-                
-                // Step one: Get the highest row ID.  I could probably ram this
-                // all into one big monolithic SQL statement, but that would get
-                // more than a bit unreadable.  Also note very carefully, this
-                // entire method depends on there being no holes in the rowids.
-                // "SELECT _rowid FROM stocks ORDER BY _rowid DESC LIMIT 1;"
-                Cursor cursor = mDatabase.query(TABLE_STOCKS, new String[] {KEY_STOCKS_ROWID},
-                        null, null, null, null, KEY_STOCKS_ROWID + " DESC", "1");
-                
-                cursor.moveToFirst();
-                int highest = cursor.getInt(0);
-                cursor.close();
-                
-                // Step two: Delete anything in the database older than the
-                // highest minus the max.
-                // "DELETE FROM stocks WHERE _rowid < (highest - max);"
-                int deleted = mDatabase.delete(TABLE_STOCKS, KEY_STOCKS_ROWID + " <= " + (highest - max), null);
 
+                int deleted = prune(TABLE_STOCKS, KEY_STOCKS_ROWID, KEY_STOCKS_DATE,
+                        KEY_STOCKS_LASTACCESS, KEY_STOCKS_IMPORTED, max, pinnedStockDays);
                 Log.v(DEBUG_TAG, "Stock rows deleted: " + deleted);
-                
-                // Now, do all that again, but for hashes.
-                
-                cursor = mDatabase.query(TABLE_HASHES, new String[] {KEY_HASHES_ROWID},
-                        null, null, null, null, KEY_HASHES_ROWID + " DESC", "1");
-                
-                cursor.moveToFirst();
-                highest = cursor.getInt(0);
-                cursor.close();
-                
-                deleted = mDatabase.delete(TABLE_HASHES, KEY_HASHES_ROWID + " <= " + (highest - max), null);
-                
+
+                deleted = prune(TABLE_HASHES, KEY_HASHES_ROWID, KEY_HASHES_DATE,
+                        KEY_HASHES_LASTACCESS, null, max, pinnedHashDays);
                 Log.v(DEBUG_TAG, "Info rows deleted: " + deleted);
+
+                mDatabase.setTransactionSuccessful();
             } catch (Exception e) {
                 // If something went wrong, let it go.
-                Log.w(DEBUG_TAG, "HEY!  Couldn't prune the stock cache database: " + e.toString());
+                Log.w(DEBUG_TAG, "HEY!  Couldn't maintain the stock cache database: " + e.toString());
+            } finally {
+                mDatabase.endTransaction();
             }
         }
     }
+
+    private void flushTouches() {
+        if(!mStockTouches.isEmpty()) {
+            SQLiteStatement touch = mDatabase.compileStatement(TOUCH_STOCK);
+            for(Map.Entry<Integer, Long> entry : mStockTouches.entrySet()) {
+                touch.bindLong(1, entry.getValue());
+                touch.bindLong(2, entry.getKey());
+                touch.executeUpdateDelete();
+            }
+            touch.close();
+        }
+
+        if(!mHashTouches.isEmpty()) {
+            SQLiteStatement touch = mDatabase.compileStatement(TOUCH_HASH);
+            for(Map.Entry<Integer, Long> entry : mHashTouches.entrySet()) {
+                // Remember, the key is the date shifted up one, plus the 30W
+                // flag at the bottom.
+                int key = entry.getKey();
+                touch.bindLong(1, entry.getValue());
+                touch.bindLong(2, key >> 1);
+                touch.bindLong(3, key & 1);
+                touch.executeUpdateDelete();
+            }
+            touch.close();
+        }
+
+        Log.v(DEBUG_TAG, "Wrote out " + mStockTouches.size() + " stock and "
+                + mHashTouches.size() + " hash access times.");
+        mStockTouches.clear();
+        mHashTouches.clear();
+    }
+
+    private int prune(@NonNull String table,
+                      @NonNull String rowId,
+                      @NonNull String date,
+                      @NonNull String lastAccess,
+                      @Nullable String imported,
+                      int max,
+                      @NonNull int[] pinned) {
+        // Imported rows are never up for pruning, cache on or off.
+        String notImported = imported == null ? "1" : imported + " = 0";
+
+        // If the cache is off, that's easy.
+        if(max <= 0) return mDatabase.delete(table, notImported, null);
+
+        // The dates are all ints, so there's no injection worry in just
+        // writing them into the SQL.
+        String unpinned;
+        if(pinned.length == 0) {
+            unpinned = notImported;
+        } else {
+            StringBuilder builder = new StringBuilder(notImported)
+                    .append(" AND ").append(date).append(" NOT IN (");
+            for(int i = 0; i < pinned.length; i++) {
+                if(i != 0) builder.append(',');
+                builder.append(pinned[i]);
+            }
+            unpinned = builder.append(')').toString();
+        }
+
+        // "DELETE FROM table WHERE (unpinned) AND _id NOT IN (SELECT _id FROM
+        // table WHERE (unpinned) ORDER BY last_access DESC, _id DESC LIMIT
+        // max);"  In other words, keep the max most recently used unpinned
+        // rows, with the most recently added winning ties.
+        return mDatabase.delete(table,
+                unpinned + " AND " + rowId + " NOT IN (SELECT " + rowId + " FROM " + table
+                        + " WHERE " + unpinned
+                        + " ORDER BY " + lastAccess + " DESC, " + rowId + " DESC LIMIT " + max + ")",
+                null);
+    }
     
     /**
      * Erases everything from the stock cache database.  This is really only to
@@ -353,6 +660,8 @@ public class StockStoreDatabase {
             try {
                 Log.v(DEBUG_TAG, "Emptying the stock cache...");
                 // KABOOM!
+                mStockTouches.clear();
+                mHashTouches.clear();
                 mDatabase.delete(TABLE_STOCKS, null, null);
                 mDatabase.delete(TABLE_HASHES, null, null);
                 return true;
@@ -21,7 +21,6 @@ import net.exclaimindustries.geohashdroid.util.Graticule;
 import net.exclaimindustries.geohashdroid.util.Info;
 import net.exclaimindustries.geohashdroid.util.UnitConverter;
 import net.exclaimindustries.tools.DOMUtil;
-import net.exclaimindustries.tools.DateTools;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -856,7 +855,7 @@ public class WikiUtils {
      * @return said pagename
      */
     public static String getWikiPageName(@NonNull Info info) {
-        String date = DateTools.getHyphenatedDateString(info.getCalendar());
+        String date = info.getHashDate().toHyphenatedString();
 
         Graticule g = info.getGraticule();
 
@@ -887,7 +886,7 @@ public class WikiUtils {
      */
     public static String getWikiExpeditionTemplate(@NonNull Info info,
                                                    @NonNull Context c) {
-        String date = DateTools.getHyphenatedDateString(info.getCalendar());
+        String date = info.getHashDate().toHyphenatedString();
 
         Graticule g = info.getGraticule();
 
@@ -933,7 +932,7 @@ public class WikiUtils {
      * @return said categories
      */
     public static String getWikiCategories(@NonNull Info info) {
-        String date = DateTools.getHyphenatedDateString(info.getCalendar());
+        String date = info.getHashDate().toHyphenatedString();
 
         String toReturn = "[[Category:Meetup on "
                 + date + "]]\n";
@@ -5,10 +5,14 @@ import java.util.List;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
 
 /**
  * AndroidUtil features some helpful convenience methods for Android.
@@ -71,6 +75,53 @@ public class AndroidUtil {
         return (networkInfo != null && networkInfo.isConnected());
     }
 
+    /**
+     * Indicates whether the current connection is metered, meaning the user
+     * might be paying by the byte for it (mobile data, usually).  If there's
+     * no connection at all, this returns true, on the grounds that it's
+     * certainly not a good time to go download anything optional.
+     *
+     * @param context a Context, needed to get the ConnectivityManager
+     * @return true if the connection is metered (or absent), false otherwise
+     */
+    public static boolean isMeteredConnection(Context context) {
+        ConnectivityManager cm = (ConnectivityManager)context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return cm == null || cm.isActiveNetworkMetered();
+    }
+
+    /**
+     * Indicates whether the battery is low enough that anything optional
+     * should wait.  That's if power saver mode is on, or if the battery is at
+     * or under the given percentage and isn't charging.
+     *
+     * @param context a Context, needed to check the battery
+     * @param lowPercent the percentage at or under which the battery counts
+     *                   as low
+     * @return true if the battery's low, false otherwise
+     */
+    public static boolean isBatteryLow(Context context, int lowPercent) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager pm = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+            if(pm != null && pm.isPowerSaveMode()) return true;
+        }
+
+        // The battery status is a sticky broadcast, so we can just grab the
+        // last one without actually registering anything.
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if(battery == null) return false;
+
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        if(status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL)
+            return false;
+
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if(level < 0 || scale <= 0) return false;
+
+        return level * 100 / scale <= lowPercent;
+    }
+
     /**
      * Enables or disables a given component class.  So, like a manifest-defined
      * BroadcastReceiver or whatnot.
@@ -0,0 +1,142 @@
+/*
+ * KnownLocationStoreTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link KnownLocationStore}'s journal format: that what it writes is
+ * what it reads, that a cut-off last record only costs that record, and that
+ * anything it doesn't recognize gets called unreadable rather than damaged
+ * (damaged journals get rewritten, and rewriting something we don't
+ * understand would lose it).
+ */
+public class KnownLocationStoreTest {
+    private static final KnownLocation HOME =
+            new KnownLocation("Home", new LatLng(37.421, -122.084), 5000.0, false);
+    private static final KnownLocation WORK =
+            new KnownLocation("W\u00f6rk", new LatLng(-33.857, 151.215), 1000.0, true);
+
+    @Test
+    public void putsAndDeletesRoundTrip() throws IOException {
+        KnownLocationStore.JournalContents contents = read(
+                KnownLocationStore.makeHeader(),
+                KnownLocationStore.makePutRecord(1, HOME),
+                KnownLocationStore.makePutRecord(2, WORK),
+                KnownLocationStore.makePutRecord(3, HOME),
+                KnownLocationStore.makeDeleteRecord(1));
+
+        assertEquals(KnownLocationStore.JOURNAL_OKAY, contents.status);
+        assertEquals(4, contents.records);
+        assertEquals(4, contents.nextId);
+        assertEquals(Arrays.asList(2L, 3L), Arrays.asList(contents.locations.keySet().toArray()));
+
+        assertSameLocation(WORK, contents.locations.get(2L));
+        assertSameLocation(HOME, contents.locations.get(3L));
+    }
+
+    @Test
+    public void putReplacesInPlace() throws IOException {
+        KnownLocationStore.JournalContents contents = read(
+                KnownLocationStore.makeHeader(),
+                KnownLocationStore.makePutRecord(1, HOME),
+                KnownLocationStore.makePutRecord(2, HOME),
+                KnownLocationStore.makePutRecord(1, WORK));
+
+        assertEquals(KnownLocationStore.JOURNAL_OKAY, contents.status);
+        assertEquals(Arrays.asList(1L, 2L), Arrays.asList(contents.locations.keySet().toArray()));
+        assertSameLocation(WORK, contents.locations.get(1L));
+    }
+
+    @Test
+    public void truncatedTailKeepsEverythingBefore() throws IOException {
+        byte[] last = KnownLocationStore.makePutRecord(2, WORK);
+
+        // Every possible place the last write could've been cut off.
+        for(int cut = 1; cut < last.length; cut++) {
+            KnownLocationStore.JournalContents contents = read(
+                    KnownLocationStore.makeHeader(),
+                    KnownLocationStore.makePutRecord(1, HOME),
+                    Arrays.copyOf(last, cut));
+
+            assertEquals("cut at " + cut, KnownLocationStore.JOURNAL_NEEDS_REWRITE, contents.status);
+            assertEquals(1, contents.locations.size());
+            assertSameLocation(HOME, contents.locations.get(1L));
+            assertNull(contents.locations.get(2L));
+        }
+    }
+
+    @Test
+    public void emptyJournalIsFine() throws IOException {
+        KnownLocationStore.JournalContents contents = read(KnownLocationStore.makeHeader());
+
+        assertEquals(KnownLocationStore.JOURNAL_OKAY, contents.status);
+        assertTrue(contents.locations.isEmpty());
+        assertEquals(1, contents.nextId);
+    }
+
+    @Test
+    public void badHeadersAreUnreadable() throws IOException {
+        byte[] header = KnownLocationStore.makeHeader();
+        byte[] record = KnownLocationStore.makePutRecord(1, HOME);
+
+        // Not a journal at all.
+        byte[] wrongMagic = header.clone();
+        wrongMagic[0] = 'X';
+        assertEquals(KnownLocationStore.JOURNAL_UNREADABLE, read(wrongMagic, record).status);
+
+        // A journal from the future.
+        byte[] wrongVersion = header.clone();
+        wrongVersion[7] = KnownLocationStore.VERSION + 1;
+        assertEquals(KnownLocationStore.JOURNAL_UNREADABLE, read(wrongVersion, record).status);
+
+        // Not even a whole header.
+        assertEquals(KnownLocationStore.JOURNAL_UNREADABLE,
+                read(Arrays.copyOf(header, header.length - 1)).status);
+    }
+
+    @Test
+    public void unknownOpsAreUnreadable() throws IOException {
+        byte[] mystery = KnownLocationStore.makeDeleteRecord(2);
+        mystery[0] = 42;
+
+        KnownLocationStore.JournalContents contents = read(
+                KnownLocationStore.makeHeader(),
+                KnownLocationStore.makePutRecord(1, HOME),
+                mystery);
+
+        assertEquals(KnownLocationStore.JOURNAL_UNREADABLE, contents.status);
+    }
+
+    private static KnownLocationStore.JournalContents read(byte[]... parts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for(byte[] part : parts) bytes.write(part);
+        return KnownLocationStore.readJournal(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void assertSameLocation(KnownLocation expected, KnownLocation actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLatLng().latitude, actual.getLatLng().latitude, 0.0);
+        assertEquals(expected.getLatLng().longitude, actual.getLatLng().longitude, 0.0);
+        assertEquals(expected.getRange(), actual.getRange(), 0.0);
+        assertEquals(expected.isRestrictedGraticule(), actual.isRestrictedGraticule());
+        assertFalse(expected == actual);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * StockStoreDatabaseTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.geohashdroid.core.StockQuote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks {@link StockStoreDatabase#storeStocks(Iterable)} against a real
+ * SQLiteDatabase (courtesy of Robolectric): that the quotes go in 500 at a
+ * time, that everything it stores is flagged as imported, and that
+ * maintenance never prunes imported stocks, no matter how small the cache is.
+ */
+@RunWith(RobolectricTestRunner.class)
+// Robolectric won't do SDK 29 on Java 8, and nothing here cares which SDK it
+// is anyway.
+@Config(sdk = 28)
+public class StockStoreDatabaseTest {
+    private static final int FIRST_DAY = HashDate.of(1990, 1, 1).getEpochDay();
+
+    private Context mContext;
+    private StockStoreDatabase mStore;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mStore = new StockStoreDatabase().init(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.finish();
+    }
+
+    private static HashDate day(int offset) {
+        return HashDate.fromEpochDay(FIRST_DAY + offset);
+    }
+
+    private static StockQuote quote(int offset) {
+        return new StockQuote(day(offset), (2000 + offset) + ".00");
+    }
+
+    private void setCacheSize(int size) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(GHDConstants.PREF_STOCK_CACHE_SIZE, Integer.toString(size))
+                .commit();
+    }
+
+    private void maintain() {
+        mStore.performMaintenance(mContext, new int[0], new int[0]);
+    }
+
+    @Test
+    public void storesInBatchesOfFiveHundred() {
+        final int count = 1201;
+
+        // This checks the database as it goes.  storeStocks doesn't hold the
+        // lock while it's reading quotes, so it's fine to look in from here.
+        Iterable<StockQuote> quotes = new Iterable<StockQuote>() {
+            @Override
+            public Iterator<StockQuote> iterator() {
+                return new Iterator<StockQuote>() {
+                    private int mNext = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return mNext < count;
+                    }
+
+                    @Override
+                    public StockQuote next() {
+                        // Nothing's written until a whole batch has been
+                        // read...
+                        if(mNext == 499 || mNext == 999)
+                            assertNull("Quote " + mNext, mStore.getStock(day(mNext - 1)));
+
+                        // ...and by the time the next one's asked for, that
+                        // whole batch is in.
+                        if(mNext == 500 || mNext == 1000)
+                            assertNotNull("Quote " + mNext, mStore.getStock(day(mNext - 1)));
+
+                        return quote(mNext++);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        assertEquals(count, mStore.storeStocks(quotes));
+
+        // The last, partial batch made it in, too.
+        for(int i = 0; i < count; i++)
+            assertEquals(quote(i).getPrice(), mStore.getStock(day(i)));
+
+        // Importing it all again doesn't add anything.
+        assertEquals(0, mStore.storeStocks(Arrays.asList(quote(0), quote(600), quote(1200))));
+    }
+
+    @Test
+    public void maintenanceNeverPrunesImports() {
+        // Three ordinary cache entries...
+        mStore.storeStock(day(0), quote(0).getPrice());
+        mStore.storeStock(day(1), quote(1).getPrice());
+        mStore.storeStock(day(2), quote(2).getPrice());
+
+        // ...one of which shows up in an import, so it's imported now, too.
+        assertEquals(2, mStore.storeStocks(Arrays.asList(quote(0), quote(3), quote(4))));
+
+        // With room for one, the imports don't count against it, and the
+        // most recently added of the other two stays.
+        setCacheSize(1);
+        maintain();
+
+        assertNotNull(mStore.getStock(day(0)));
+        assertNull(mStore.getStock(day(1)));
+        assertNotNull(mStore.getStock(day(2)));
+        assertNotNull(mStore.getStock(day(3)));
+        assertNotNull(mStore.getStock(day(4)));
+
+        // With the cache off, the ordinary one goes, but the imports stay.
+        setCacheSize(0);
+        maintain();
+
+        assertNotNull(mStore.getStock(day(0)));
+        assertNull(mStore.getStock(day(2)));
+        assertNotNull(mStore.getStock(day(3)));
+        assertNotNull(mStore.getStock(day(4)));
+    }
+
+    @Test
+    public void deletingTheCacheTakesImportsToo() {
+        mStore.storeStocks(Arrays.asList(quote(0), quote(1)));
+        mStore.deleteCache();
+
+        assertNull(mStore.getStock(day(0)));
+        assertNull(mStore.getStock(day(1)));
+    }
+}
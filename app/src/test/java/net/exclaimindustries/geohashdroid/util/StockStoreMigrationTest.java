@@ -0,0 +1,134 @@
+/*
+ * StockStoreMigrationTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.util;
+
+import net.exclaimindustries.geohashdroid.core.HashDate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the SQL that turns version 3's yyyyMMdd dates into epoch days
+ * ({@link StockStoreDatabase#YYYYMMDD_TO_EPOCH_DAY}) against
+ * {@link HashDate}.  There's no SQLiteDatabase on a plain JVM, so this runs
+ * the expression through a JDBC SQLite instead; julianday() has been the same
+ * in SQLite since long before API 16.
+ */
+public class StockStoreMigrationTest {
+    private Connection mConnection;
+
+    @Before
+    public void setUp() throws SQLException {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try(Statement statement = mConnection.createStatement()) {
+            // Version 3 declared it INTEGER, but it's SQLite, so a TEXT date
+            // could've snuck in just as easily.
+            statement.execute("CREATE TABLE old_ints (date INTEGER)");
+            statement.execute("CREATE TABLE old_text (date TEXT)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        mConnection.close();
+    }
+
+    @Test
+    public void matchesHashDate() throws SQLException {
+        // 1990 through 2040 takes in every leap day rule that'll ever come
+        // up, including 2000.
+        int first = HashDate.of(1990, 1, 1).getEpochDay();
+        int last = HashDate.of(2040, 12, 31).getEpochDay();
+
+        mConnection.setAutoCommit(false);
+        try(PreparedStatement ints = mConnection.prepareStatement("INSERT INTO old_ints VALUES (?)");
+            PreparedStatement text = mConnection.prepareStatement("INSERT INTO old_text VALUES (?)")) {
+            for(int day = first; day <= last; day++) {
+                int dateInt = HashDate.fromEpochDay(day).toDateInt();
+                ints.setInt(1, dateInt);
+                ints.addBatch();
+                text.setString(1, Integer.toString(dateInt));
+                text.addBatch();
+            }
+            ints.executeBatch();
+            text.executeBatch();
+        }
+        mConnection.commit();
+
+        assertEquals(last - first + 1, checkTable("old_ints"));
+        assertEquals(last - first + 1, checkTable("old_text"));
+    }
+
+    @Test
+    public void garbageComesOutNull() throws SQLException {
+        try(Statement statement = mConnection.createStatement()) {
+            statement.execute("INSERT INTO old_text VALUES ('nope')");
+            statement.execute("INSERT INTO old_text VALUES ('20051301')");
+            statement.execute("INSERT INTO old_text VALUES ('')");
+
+            try(ResultSet results = statement.executeQuery(
+                    "SELECT " + StockStoreDatabase.YYYYMMDD_TO_EPOCH_DAY + " FROM old_text")) {
+                int count = 0;
+                while(results.next()) {
+                    results.getInt(1);
+                    assertTrue(results.wasNull());
+                    count++;
+                }
+                assertEquals(3, count);
+            }
+        }
+    }
+
+    @Test
+    public void epochStartsAtZero() throws SQLException {
+        try(Statement statement = mConnection.createStatement()) {
+            statement.execute("INSERT INTO old_ints VALUES (19700101)");
+            statement.execute("INSERT INTO old_ints VALUES (19691231)");
+
+            try(ResultSet results = statement.executeQuery(
+                    "SELECT " + StockStoreDatabase.YYYYMMDD_TO_EPOCH_DAY + " FROM old_ints ORDER BY rowid")) {
+                assertTrue(results.next());
+                assertEquals(0, results.getInt(1));
+                assertTrue(results.next());
+                assertEquals(-1, results.getInt(1));
+            }
+        }
+    }
+
+    // Returns how many rows it checked.
+    private int checkTable(String table) throws SQLException {
+        int count = 0;
+
+        try(Statement statement = mConnection.createStatement();
+            ResultSet results = statement.executeQuery(
+                    "SELECT date, " + StockStoreDatabase.YYYYMMDD_TO_EPOCH_DAY + " FROM " + table)) {
+            while(results.next()) {
+                int dateInt = Integer.parseInt(results.getString(1));
+                int converted = results.getInt(2);
+                assertFalse(table + ": " + dateInt + " came out NULL", results.wasNull());
+                assertEquals(table + ": " + dateInt,
+                        HashDate.fromDateInt(dateInt).getEpochDay(), converted);
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
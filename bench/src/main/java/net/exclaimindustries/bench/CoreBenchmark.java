@@ -0,0 +1,104 @@
+/*
+ * CoreBenchmark.java
+ * Copyright (C) 2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.bench;
+
+import net.exclaimindustries.geohashdroid.core.DayHash;
+import net.exclaimindustries.geohashdroid.core.DayHashCache;
+import net.exclaimindustries.geohashdroid.core.GeohashMath;
+import net.exclaimindustries.geohashdroid.core.PackedGraticule;
+import net.exclaimindustries.geohashdroid.core.StockDates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the geohash-core pieces the app leans on for every point:
+ * computing the hash fractions (what HashBuilder.createInfo does), adjusting
+ * the date for the 30W Rule and weekends (Info.makeAdjustedCalendar),
+ * offsetting Graticules (Graticule.createOffsetFrom), and hitting HashBuilder's
+ * quick cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CoreBenchmark {
+    private String mStock = "10458.68";
+    private double[] mFractions = new double[2];
+
+    private Calendar mSaturday;
+    private int mGraticule;
+
+    private DayHashCache mCache;
+    private int[] mKeys;
+    private int mNextKey;
+
+    @Setup
+    public void setup() {
+        // A Saturday in 30W territory, so both adjustments kick in.
+        mSaturday = new GregorianCalendar(2008, Calendar.MAY, 31);
+        mGraticule = PackedGraticule.pack(51, false, 0, true);
+
+        // A month's worth of both sides of the line, all of which fit.
+        mCache = new DayHashCache(64);
+        mKeys = new int[64];
+        for(int i = 0; i < 32; i++) {
+            for(int j = 0; j < 2; j++) {
+                DayHash hash = new DayHash(14000 + i, j == 1, 0.5, 0.5);
+                mCache.put(hash);
+                mKeys[i * 2 + j] = hash.getKey();
+            }
+        }
+    }
+
+    @Benchmark
+    public double[] computeFractions() {
+        GeohashMath.computeFractions(2005, 5, 26, mStock, mFractions);
+        return mFractions;
+    }
+
+    @Benchmark
+    public Calendar makeAdjustedCalendar() {
+        return StockDates.makeAdjustedCalendar(mSaturday,
+                StockDates.usesPreviousDay(mSaturday, mGraticule));
+    }
+
+    @Benchmark
+    public void offsetNeighborhood(Blackhole bh) {
+        // The usual three-by-three ring of nearby points.
+        for(int i = -1; i <= 1; i++) {
+            for(int j = -1; j <= 1; j++) {
+                bh.consume(PackedGraticule.offset(mGraticule, i, j));
+            }
+        }
+    }
+
+    @Benchmark
+    public DayHash quickCacheHit() {
+        // Walk through the keys so it isn't just the most recent one every
+        // time.
+        mNextKey = (mNextKey + 1) & 63;
+        return mCache.get(mKeys[mNextKey]);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * DateBenchmark.java
+ * Copyright (C) 2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.bench;
+
+import net.exclaimindustries.geohashdroid.core.HashDate;
+import net.exclaimindustries.tools.DateTools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the date-string work that happens on every cache lookup, the
+ * old SimpleDateFormat way and the HashDate way.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DateBenchmark {
+    private Calendar mCal;
+    private HashDate mDate;
+
+    @Setup
+    public void setup() {
+        mCal = new GregorianCalendar(2005, Calendar.MAY, 26);
+        mDate = HashDate.of(2005, 5, 26);
+    }
+
+    @Benchmark
+    public String getDateString() {
+        return DateTools.getDateString(mCal);
+    }
+
+    @Benchmark
+    public String getHyphenatedDateString() {
+        return DateTools.getHyphenatedDateString(mCal);
+    }
+
+    @Benchmark
+    public int hashDateFromCalendar() {
+        return HashDate.fromCalendar(mCal).toDateInt();
+    }
+
+    @Benchmark
+    public String hashDateString() {
+        return mDate.toDateString();
+    }
+
+    @Benchmark
+    public HashDate hashDateStockDate() {
+        // A Thursday, so going back a day for 30W doesn't land on a weekend.
+        // The weekend case is just one more subtraction anyway.
+        return mDate.getStockDate(true);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * HashingBenchmark.java
+ * Copyright (C) 2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.bench;
+
+import net.exclaimindustries.tools.CharToByte;
+import net.exclaimindustries.tools.HexFraction;
+import net.exclaimindustries.tools.MD5Tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the pieces that turn a date and a stock price into a hash.
+ * The test data is the original example from the comic (2005-05-26, DJIA
+ * opening of 10458.68), so the answers are easy to sanity-check.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashingBenchmark {
+    private int mYear = 2005;
+    private int mMonth = 5;
+    private int mDay = 26;
+    private String mStock = "10458.68";
+
+    private String mHashInput;
+    private String mHash;
+    private String mLatitudeChunk;
+    private byte[] mDigestBytes;
+    private long mLatitudeBits;
+
+    @Setup
+    public void setup() {
+        mHashInput = String.format(Locale.US, "%4d-%02d-%02d-%s", mYear, mMonth, mDay, mStock);
+        mHash = MD5Tools.MD5hash(mHashInput);
+        mLatitudeChunk = mHash.substring(0, 16);
+        mLatitudeBits = Long.parseUnsignedLong(mLatitudeChunk, 16);
+
+        mDigestBytes = new byte[16];
+        for(int i = 0; i < 16; i++)
+            mDigestBytes[i] = (byte)Integer.parseInt(mHash.substring(i * 2, i * 2 + 2), 16);
+    }
+
+    @Benchmark
+    public String md5Hash() {
+        return MD5Tools.MD5hash(mHashInput);
+    }
+
+    @Benchmark
+    public String bytesToString() {
+        return CharToByte.bytesToString(mDigestBytes);
+    }
+
+    @Benchmark
+    public double hexFractionCalculate() {
+        return HexFraction.calculate(mLatitudeChunk);
+    }
+
+    @Benchmark
+    public double hexFractionFromBits() {
+        return HexFraction.fromBits(mLatitudeBits);
+    }
+
+    /**
+     * The whole string-based trip HashBuilder used to take per point: format
+     * the input, MD5 it to a hex string, then chop that up and feed each half
+     * to {@link HexFraction#calculate(String)}.  This stands in for the old
+     * makeHash/getLatitude/getLongitude trio, which were private (and are now
+     * gone), so this is what new versions get measured against.
+     */
+    @Benchmark
+    public void stringHashPipeline(Blackhole bh) {
+        String hash = MD5Tools.MD5hash(String.format(Locale.US,
+                "%4d-%02d-%02d-%s", mYear, mMonth, mDay, mStock));
+        bh.consume(37 + HexFraction.calculate(hash.substring(0, 16)));
+        bh.consume((122 + HexFraction.calculate(hash.substring(16, 32))) * -1);
+    }
+}
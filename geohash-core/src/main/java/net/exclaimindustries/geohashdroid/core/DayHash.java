@@ -0,0 +1,181 @@
+/*
+ * DayHash.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * <p>
+ * A <code>DayHash</code> is the fractional part of a day's hash, and nothing
+ * else.  It doesn't know or care what Graticule it's in, because the whole
+ * point of the algorithm is that it's the same for every Graticule on the same
+ * side of the 30W line on the same day.  So, work out one of these once, then
+ * slap it onto as many Graticules as you like with plain arithmetic.
+ * </p>
+ *
+ * <p>
+ * There are at most two of these for any given date: one for everything using
+ * that date's stock, one for everything using the day before's (that's the
+ * 30W Rule, and also the Globalhash).  Note that the flag here is whether or
+ * not the previous day's stock was used, as per
+ * {@link HashDate#usesPreviousDay(int)}, NOT just whether or not something's
+ * east of 30W.  Before the rule existed, those aren't the same thing.
+ * </p>
+ *
+ * <p>
+ * These are immutable, so feel free to toss them around threads and caches.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class DayHash {
+    private final int mEpochDay;
+    private final boolean mUses30W;
+    private final double mLatHash;
+    private final double mLonHash;
+
+    /**
+     * Makes a new DayHash.  This doesn't check anything; it just assumes
+     * you've got the fractions right.
+     *
+     * @param epochDay the REAL expedition date, as days since 1970-01-01 (see
+     *                 {@link HashDate#getEpochDay()})
+     * @param uses30W true if this came from the previous day's stock
+     * @param latHash fractional part of the latitude
+     * @param lonHash fractional part of the longitude
+     */
+    public DayHash(int epochDay, boolean uses30W, double latHash, double lonHash) {
+        mEpochDay = epochDay;
+        mUses30W = uses30W;
+        mLatHash = latHash;
+        mLonHash = lonHash;
+    }
+
+    /**
+     * Makes a cache key out of a date and 30W flag.  Any two DayHashes with
+     * the same key have the same fractions, so this is all anything needs to
+     * look one up.
+     *
+     * @param epochDay the REAL expedition date, as days since 1970-01-01
+     * @param uses30W true if the previous day's stock is used
+     * @return a key
+     */
+    public static int makeKey(int epochDay, boolean uses30W) {
+        return (epochDay << 1) | (uses30W ? 1 : 0);
+    }
+
+    /**
+     * Gets the expedition date of this DayHash, in days since 1970-01-01.
+     *
+     * @return the epoch day
+     */
+    public int getEpochDay() {
+        return mEpochDay;
+    }
+
+    /**
+     * Gets the expedition date of this DayHash.
+     *
+     * @return the date
+     */
+    @NonNull
+    public HashDate getDate() {
+        return HashDate.fromEpochDay(mEpochDay);
+    }
+
+    /**
+     * Returns whether this DayHash came from the previous day's stock.
+     *
+     * @return true if 30W (or Globalhash), false if not
+     */
+    public boolean uses30WRule() {
+        return mUses30W;
+    }
+
+    /**
+     * Gets this DayHash's cache key, as per {@link #makeKey(int, boolean)}.
+     *
+     * @return the key
+     */
+    public int getKey() {
+        return makeKey(mEpochDay, mUses30W);
+    }
+
+    /**
+     * Gets the fractional part of the latitude.
+     *
+     * @return the latitude hash
+     */
+    public double getLatitudeHash() {
+        return mLatHash;
+    }
+
+    /**
+     * Gets the fractional part of the longitude.
+     *
+     * @return the longitude hash
+     */
+    public double getLongitudeHash() {
+        return mLonHash;
+    }
+
+    /**
+     * Gets the final latitude of this hash in the given Graticule.  If that's
+     * {@link PackedGraticule#GLOBALHASH}, you get the Globalhash latitude.
+     *
+     * @param packed a packed Graticule
+     * @return the latitude of the hashpoint
+     */
+    public double getLatitude(int packed) {
+        if(packed == PackedGraticule.GLOBALHASH)
+            return GeohashMath.toGlobalLatitude(mLatHash);
+        return PackedGraticule.makeLatitude(packed, mLatHash);
+    }
+
+    /**
+     * Gets the final longitude of this hash in the given Graticule.  If that's
+     * {@link PackedGraticule#GLOBALHASH}, you get the Globalhash longitude.
+     *
+     * @param packed a packed Graticule
+     * @return the longitude of the hashpoint
+     */
+    public double getLongitude(int packed) {
+        if(packed == PackedGraticule.GLOBALHASH)
+            return GeohashMath.toGlobalLongitude(mLonHash);
+        return PackedGraticule.makeLongitude(packed, mLonHash);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof DayHash)) return false;
+
+        DayHash other = (DayHash)o;
+        return mEpochDay == other.mEpochDay
+                && mUses30W == other.mUses30W
+                && Double.compare(mLatHash, other.mLatHash) == 0
+                && Double.compare(mLonHash, other.mLonHash) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getKey();
+        long bits = Double.doubleToLongBits(mLatHash);
+        result = 31 * result + (int)(bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(mLonHash);
+        result = 31 * result + (int)(bits ^ (bits >>> 32));
+        return result;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DayHash(" + getDate() + (mUses30W ? ", 30W" : "") + ": "
+                + mLatHash + ", " + mLonHash + ")";
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * DayHashCache.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * A <code>DayHashCache</code> is a small least-recently-used cache of
+ * {@link DayHash}es, keyed on {@link DayHash#makeKey(int, boolean)}.  Once it's
+ * full, adding something new throws out whatever was used the longest time
+ * ago.
+ * </p>
+ *
+ * <p>
+ * The key's a plain int, so rather than boxing everything up for a HashMap,
+ * this keeps its own open-addressed table pointing into a fixed set of slots,
+ * with the recently-used order kept as a linked list of slot indices.  Nothing
+ * gets allocated on a lookup, and nothing gets allocated on an insert other
+ * than whatever DayHash you're putting in.
+ * </p>
+ *
+ * <p>
+ * Every public method is synchronized, so one of these can be shared by any
+ * number of threads.  It also keeps count of hits, misses, and evictions, for
+ * the curious.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class DayHashCache {
+    private static final int NONE = -1;
+
+    private int mMaxSize;
+    private int mSize;
+
+    // The slots.  Each one has a DayHash and links to the slots used just
+    // before (more recently) and just after (less recently) it.
+    private DayHash[] mEntries;
+    private int[] mNewer;
+    private int[] mOlder;
+    private int mNewest;
+    private int mOldest;
+
+    // The open-addressed table.  Each entry is a slot index plus one, so that
+    // zero can mean empty.  This is always a power of two and at least twice
+    // the max size, so probes stay short.
+    private int[] mTable;
+    private int mTableShift;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    /**
+     * A snapshot of a DayHashCache's counters.  This won't change after it's
+     * made, even if the cache does.
+     */
+    public static final class Stats {
+        private final long mHits;
+        private final long mMisses;
+        private final long mEvictions;
+        private final int mSize;
+        private final int mMaxSize;
+
+        private Stats(long hits, long misses, long evictions, int size, int maxSize) {
+            mHits = hits;
+            mMisses = misses;
+            mEvictions = evictions;
+            mSize = size;
+            mMaxSize = maxSize;
+        }
+
+        /**
+         * @return how many lookups found what they were looking for
+         */
+        public long getHits() {
+            return mHits;
+        }
+
+        /**
+         * @return how many lookups came up empty
+         */
+        public long getMisses() {
+            return mMisses;
+        }
+
+        /**
+         * @return how many entries got thrown out to make room
+         */
+        public long getEvictions() {
+            return mEvictions;
+        }
+
+        /**
+         * @return how many entries were in the cache
+         */
+        public int getSize() {
+            return mSize;
+        }
+
+        /**
+         * @return how many entries the cache could hold
+         */
+        public int getMaxSize() {
+            return mMaxSize;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d/%d entries, %d hits, %d misses, %d evictions",
+                    mSize, mMaxSize, mHits, mMisses, mEvictions);
+        }
+    }
+
+    /**
+     * Makes a new, empty DayHashCache.
+     *
+     * @param maxSize the most entries this will hold at once
+     * @throws IllegalArgumentException maxSize was less than one
+     */
+    public DayHashCache(int maxSize) {
+        if(maxSize < 1)
+            throw new IllegalArgumentException("A DayHashCache has to hold at least one entry!");
+
+        allocate(maxSize);
+    }
+
+    /**
+     * Looks up a DayHash.  If it's there, it becomes the most recently used
+     * entry.
+     *
+     * @param key the key, as per {@link DayHash#makeKey(int, boolean)}
+     * @return the DayHash, or null if it isn't in the cache
+     */
+    @Nullable
+    public synchronized DayHash get(int key) {
+        int slot = findSlot(key);
+
+        if(slot == NONE) {
+            mMisses++;
+            return null;
+        }
+
+        mHits++;
+        moveToNewest(slot);
+        return mEntries[slot];
+    }
+
+    /**
+     * Puts a DayHash into the cache as the most recently used entry.  If
+     * there's already one with the same key, it gets replaced.  If the cache is
+     * full, the least recently used entry gets tossed.
+     *
+     * @param hash the DayHash to add
+     */
+    public synchronized void put(@NonNull DayHash hash) {
+        int key = hash.getKey();
+        int slot = findSlot(key);
+
+        if(slot != NONE) {
+            // Already here.  Just freshen it up.
+            mEntries[slot] = hash;
+            moveToNewest(slot);
+            return;
+        }
+
+        if(mSize < mMaxSize) {
+            // Still room, so use the next unused slot.  Slots only ever get
+            // freed all at once (see clear()), so the used ones are always
+            // zero through mSize - 1.
+            slot = mSize++;
+        } else {
+            // Full up.  Out goes the oldest, and we take its slot.
+            slot = mOldest;
+            removeFromTable(mEntries[slot].getKey());
+            unlink(slot);
+            mEvictions++;
+        }
+
+        mEntries[slot] = hash;
+        linkAsNewest(slot);
+        insertIntoTable(key, slot);
+    }
+
+    /**
+     * Empties the cache.  The counters are left alone.
+     */
+    public synchronized void clear() {
+        allocate(mMaxSize);
+    }
+
+    /**
+     * Changes how many entries this cache can hold.  If it's shrinking, the
+     * least recently used entries get evicted until it fits.
+     *
+     * @param maxSize the most entries this will hold at once
+     * @throws IllegalArgumentException maxSize was less than one
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize < 1)
+            throw new IllegalArgumentException("A DayHashCache has to hold at least one entry!");
+
+        if(maxSize == mMaxSize) return;
+
+        // Pull out whatever will survive, newest first...
+        int keep = Math.min(mSize, maxSize);
+        DayHash[] survivors = new DayHash[keep];
+        int slot = mNewest;
+        for(int i = 0; i < keep; i++) {
+            survivors[i] = mEntries[slot];
+            slot = mOlder[slot];
+        }
+        mEvictions += mSize - keep;
+
+        // ...then put them back in oldest-first, so they come out in the same
+        // order.
+        allocate(maxSize);
+        for(int i = keep - 1; i >= 0; i--)
+            put(survivors[i]);
+    }
+
+    /**
+     * @return the most entries this cache will hold
+     */
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return how many entries are in the cache right now
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Gets a snapshot of the cache's counters.
+     *
+     * @return a new Stats
+     */
+    @NonNull
+    public synchronized Stats getStats() {
+        return new Stats(mHits, mMisses, mEvictions, mSize, mMaxSize);
+    }
+
+    private void allocate(int maxSize) {
+        mMaxSize = maxSize;
+        mSize = 0;
+        mEntries = new DayHash[maxSize];
+        mNewer = new int[maxSize];
+        mOlder = new int[maxSize];
+        mNewest = NONE;
+        mOldest = NONE;
+
+        int tableSize = Integer.highestOneBit(maxSize) << 2;
+        mTable = new int[tableSize];
+        mTableShift = 32 - Integer.numberOfTrailingZeros(tableSize);
+    }
+
+    private int indexFor(int key) {
+        // Fibonacci hashing.  Keys are mostly consecutive days, and this
+        // spreads those out nicely across the table.
+        return (key * 0x9E3779B9) >>> mTableShift;
+    }
+
+    private int findSlot(int key) {
+        int mask = mTable.length - 1;
+        for(int i = indexFor(key); ; i = (i + 1) & mask) {
+            int entry = mTable[i];
+            if(entry == 0) return NONE;
+            if(mEntries[entry - 1].getKey() == key) return entry - 1;
+        }
+    }
+
+    private void insertIntoTable(int key, int slot) {
+        int mask = mTable.length - 1;
+        int i = indexFor(key);
+        while(mTable[i] != 0)
+            i = (i + 1) & mask;
+        mTable[i] = slot + 1;
+    }
+
+    private void removeFromTable(int key) {
+        int mask = mTable.length - 1;
+        int i = indexFor(key);
+        while(mEntries[mTable[i] - 1].getKey() != key)
+            i = (i + 1) & mask;
+
+        // Linear probing doesn't allow just blanking out the entry, since that
+        // would break the chain for anything that probed past it.  So, shift
+        // back anything later in the chain that's allowed to move into the
+        // hole, and keep going until we hit an empty spot.
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(mTable[j] == 0) break;
+
+            int home = indexFor(mEntries[mTable[j] - 1].getKey());
+
+            // The entry at j can move to i if its home isn't cyclically in
+            // (i, j].
+            boolean canMove = (i <= j)
+                    ? (home <= i || home > j)
+                    : (home <= i && home > j);
+
+            if(canMove) {
+                mTable[i] = mTable[j];
+                i = j;
+            }
+        }
+        mTable[i] = 0;
+    }
+
+    private void moveToNewest(int slot) {
+        if(slot == mNewest) return;
+        unlink(slot);
+        linkAsNewest(slot);
+    }
+
+    private void linkAsNewest(int slot) {
+        mNewer[slot] = NONE;
+        mOlder[slot] = mNewest;
+        if(mNewest != NONE) mNewer[mNewest] = slot;
+        mNewest = slot;
+        if(mOldest == NONE) mOldest = slot;
+    }
+
+    private void unlink(int slot) {
+        int newer = mNewer[slot];
+        int older = mOlder[slot];
+
+        if(newer != NONE) mOlder[newer] = older;
+        else mNewest = older;
+
+        if(older != NONE) mNewer[older] = newer;
+        else mOldest = newer;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * GeohashMath.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import net.exclaimindustries.tools.HexFraction;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * <code>GeohashMath</code> does the actual Geohashing part of Geohashing.
+ * Given a date and a stock price, it works out the fractional parts of the
+ * day's hashpoint, and given those fractions, it can turn them into real
+ * coordinates for a Graticule or the Globalhash.
+ * </p>
+ *
+ * <p>
+ * Note that none of this cares about the 30W Rule.  By the time you get here,
+ * you should already know which stock price to use.  See {@link StockDates}
+ * for that.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class GeohashMath {
+    // Working space for computeFractions, one per thread, so we're not making
+    // new MessageDigests and byte arrays for every hash we work out.
+    private static final ThreadLocal<HashScratch> mScratch = new ThreadLocal<HashScratch>() {
+        @Override
+        protected HashScratch initialValue() {
+            return new HashScratch();
+        }
+    };
+
+    private GeohashMath() { }
+
+    /**
+     * <p>
+     * Works out the fractional parts of the hashpoint for the given date and
+     * stock price.  The REAL date, that is.  Not a 30W Rule-adjusted date.
+     * This is the same as MD5ing "YYYY-MM-DD-stock" and turning each half of
+     * the hex digest into a fraction, except that it never makes the hex
+     * digest in the first place.  The two halves get read right out of the
+     * digest bytes.
+     * </p>
+     *
+     * <p>
+     * This doesn't allocate anything once the calling thread has hashed a
+     * stock price at least as long as this one, so it's safe to hammer on for
+     * nearby points, known locations, and the like.
+     * </p>
+     *
+     * @param year the four-digit year
+     * @param month the month, from 1 to 12 (NOT the zero-based Calendar month)
+     * @param day the day of the month
+     * @param stock the stock price, exactly as it was reported
+     * @param out array of at least two doubles; the latitude fraction goes in
+     *            index 0, the longitude fraction in index 1
+     * @throws IllegalArgumentException out can't hold two values
+     */
+    public static void computeFractions(int year,
+                                        int month,
+                                        int day,
+                                        @NonNull CharSequence stock,
+                                        @NonNull double[] out) {
+        if(out.length < 2)
+            throw new IllegalArgumentException("The output array needs room for both the latitude and longitude!");
+
+        HashScratch scratch = mScratch.get();
+
+        // Build up "YYYY-MM-DD-stock" as bytes.  The year gets padded out to
+        // four characters with spaces, same as the old "%4d" format did.
+        byte[] input = scratch.ensureInput(stock.length() + 16);
+        int len = appendNumber(input, 0, year, 4, (byte)' ');
+        input[len++] = '-';
+        len = appendNumber(input, len, month, 2, (byte)'0');
+        input[len++] = '-';
+        len = appendNumber(input, len, day, 2, (byte)'0');
+        input[len++] = '-';
+        for(int i = 0; i < stock.length(); i++) {
+            input[len++] = (byte)(stock.charAt(i) & 0xFF);
+        }
+
+        // MD5 it up...
+        byte[] digest = scratch.digest;
+        try {
+            scratch.md5.update(input, 0, len);
+            scratch.md5.digest(digest, 0, digest.length);
+        } catch(DigestException de) {
+            // This really shouldn't happen; the digest array's always big
+            // enough for an MD5.
+            scratch.md5.reset();
+            throw new IllegalStateException("Couldn't get the MD5 digest out!", de);
+        }
+
+        // ...and the first eight bytes are the latitude, the last eight are the
+        // longitude.
+        out[0] = HexFraction.fromBits(readLong(digest, 0));
+        out[1] = HexFraction.fromBits(readLong(digest, 8));
+    }
+
+    /**
+     * Attaches a fractional hash part to a Graticule's whole-degree part.
+     * Since Graticules come with negative zeroes, the degree is given as an
+     * absolute value plus a flag for which side of zero it's on.
+     *
+     * @param absDegree absolute value of the Graticule's latitude or longitude
+     * @param negative true if south or west, false if north or east
+     * @param fraction the fractional part of the hash
+     * @return the full coordinate, negative if south or west
+     */
+    public static double toCoordinate(int absDegree, boolean negative, double fraction) {
+        return (absDegree + fraction) * (negative ? -1 : 1);
+    }
+
+    /**
+     * Turns a latitude fraction into a Globalhash latitude.  The Globalhash
+     * stretches the fraction across the whole planet, rather than one
+     * Graticule.
+     *
+     * @param fraction the fractional part of the hash
+     * @return a latitude, from -90 to 90
+     */
+    public static double toGlobalLatitude(double fraction) {
+        return fraction * 180 - 90;
+    }
+
+    /**
+     * Turns a longitude fraction into a Globalhash longitude.
+     *
+     * @param fraction the fractional part of the hash
+     * @return a longitude, from -180 to 180
+     */
+    public static double toGlobalLongitude(double fraction) {
+        return fraction * 360 - 180;
+    }
+
+    /**
+     * Per-thread working space for {@link #computeFractions(int, int, int, CharSequence, double[])}.
+     * MessageDigest isn't thread-safe, and we don't want to make a new one (or
+     * new buffers) every time we hash something.
+     */
+    private static class HashScratch {
+        final MessageDigest md5;
+        final byte[] digest = new byte[16];
+        byte[] input = new byte[32];
+
+        HashScratch() {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch(NoSuchAlgorithmException nsae) {
+                // No, seriously, if this fails, we're all doomed.
+                throw new IllegalStateException("This device doesn't have MD5?", nsae);
+            }
+        }
+
+        @NonNull
+        byte[] ensureInput(int size) {
+            if(input.length < size)
+                input = new byte[size];
+            return input;
+        }
+    }
+
+    private static int appendNumber(@NonNull byte[] buf, int pos, int value, int width, byte pad) {
+        // Count the digits first so we know how much padding we need.
+        int digits = 1;
+        for(int v = value; v >= 10; v /= 10)
+            digits++;
+
+        for(int i = digits; i < width; i++)
+            buf[pos++] = pad;
+
+        // Then write the digits in from the right.
+        int end = pos + digits;
+        for(int i = end - 1; i >= pos; i--) {
+            buf[i] = (byte)('0' + (value % 10));
+            value /= 10;
+        }
+
+        return end;
+    }
+
+    private static long readLong(@NonNull byte[] buf, int offset) {
+        long toReturn = 0;
+        for(int i = offset; i < offset + 8; i++)
+            toReturn = (toReturn << 8) | (buf[i] & 0xFFL);
+        return toReturn;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * HashDate.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * <p>
+ * A <code>HashDate</code> is a date, and only a date.  No time of day, no time
+ * zone, no locale, no mutable fields, no cloning.  Under the hood it's just the
+ * number of days since January 1, 1970, which makes it cheap to compare, cheap
+ * to hash, and cheap to use as a key for anything.
+ * </p>
+ *
+ * <p>
+ * This is what the stock and hash machinery uses internally.  The 30W Rule,
+ * clamping weekends back to Friday, and spitting out the yyyyMMdd strings the
+ * database and stock servers want are all plain integer arithmetic, so none of
+ * it goes anywhere near a Calendar or a SimpleDateFormat.  Convert to and from
+ * Calendar at the edges, where the user can see it.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class HashDate implements Comparable<HashDate> {
+    /**
+     * The first date on which the 30W Rule applies, as an epoch day.  The
+     * rule was made up on May 26, 2008, and took effect the day after.
+     */
+    private static final int FIRST_30W_DAY = toEpochDay(2008, 5, 27);
+
+    private final int mEpochDay;
+
+    private HashDate(int epochDay) {
+        mEpochDay = epochDay;
+    }
+
+    /**
+     * Makes a HashDate out of days since January 1, 1970.
+     *
+     * @param epochDay days since 1970-01-01 (negative if before then)
+     * @return a new HashDate
+     */
+    @NonNull
+    public static HashDate fromEpochDay(int epochDay) {
+        return new HashDate(epochDay);
+    }
+
+    /**
+     * Makes a HashDate out of a year, month, and day.
+     *
+     * @param year the year
+     * @param month the month, from 1 to 12 (NOT Calendar's zero-based months)
+     * @param day the day of the month
+     * @return a new HashDate
+     */
+    @NonNull
+    public static HashDate of(int year, int month, int day) {
+        return new HashDate(toEpochDay(year, month, day));
+    }
+
+    /**
+     * Makes a HashDate out of whatever date a Calendar says it is, in the
+     * Calendar's own time zone.  The time of day is ignored.
+     *
+     * @param c the Calendar
+     * @return a new HashDate
+     */
+    @NonNull
+    public static HashDate fromCalendar(@NonNull Calendar c) {
+        return of(c.get(Calendar.YEAR),
+                c.get(Calendar.MONTH) + 1,
+                c.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Makes a HashDate out of a yyyyMMdd int, such as {@link #toDateInt()}
+     * makes.
+     *
+     * @param dateInt the date as yyyyMMdd
+     * @return a new HashDate
+     */
+    @NonNull
+    public static HashDate fromDateInt(int dateInt) {
+        return of(dateInt / 10000, (dateInt / 100) % 100, dateInt % 100);
+    }
+
+    /**
+     * Converts a plain old year/month/day into the number of days since
+     * January 1, 1970.  This is purely calendar arithmetic (proleptic
+     * Gregorian), so time zones and the time of day don't enter into it.
+     *
+     * @param year the year
+     * @param month the month, from 1 to 12 (NOT Calendar's zero-based months)
+     * @param day the day of the month
+     * @return days since 1970-01-01 (negative if before then)
+     */
+    public static int toEpochDay(int year, int month, int day) {
+        // Shift the year to start in March, so the leap day is at the end and
+        // we don't have to care about it.  This is the usual days-from-civil
+        // trick; the eras are 400-year chunks, since that's how often the
+        // Gregorian calendar repeats itself.
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Gets this date as days since January 1, 1970.
+     *
+     * @return the epoch day
+     */
+    public int getEpochDay() {
+        return mEpochDay;
+    }
+
+    /**
+     * Gets the year.
+     *
+     * @return the year
+     */
+    public int getYear() {
+        // The reverse of toEpochDay, same March-based eras.  See there.
+        int z = mEpochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        // January and February belong to the previous March-based year.
+        return yoe + era * 400 + (getMonth() <= 2 ? 1 : 0);
+    }
+
+    /**
+     * Gets the month, from 1 to 12.  Note that's NOT the same as Calendar's
+     * zero-based months.
+     *
+     * @return the month
+     */
+    public int getMonth() {
+        int mp = (5 * getDayOfMarchYear() + 2) / 153;
+        return mp < 10 ? mp + 3 : mp - 9;
+    }
+
+    /**
+     * Gets the day of the month.
+     *
+     * @return the day of the month
+     */
+    public int getDayOfMonth() {
+        int doy = getDayOfMarchYear();
+        int mp = (5 * doy + 2) / 153;
+        return doy - (153 * mp + 2) / 5 + 1;
+    }
+
+    private int getDayOfMarchYear() {
+        int z = mEpochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        return doe - (365 * yoe + yoe / 4 - yoe / 100);
+    }
+
+    /**
+     * Gets the day of the week, using the same constants as Calendar (so
+     * {@link Calendar#SUNDAY} through {@link Calendar#SATURDAY}).
+     *
+     * @return the day of the week
+     */
+    public int getDayOfWeek() {
+        // January 1, 1970 was a Thursday.
+        int dow = (mEpochDay + 4) % 7;
+        if(dow < 0) dow += 7;
+        return dow + Calendar.SUNDAY;
+    }
+
+    /**
+     * Makes a new HashDate some number of days from this one.
+     *
+     * @param days days to add (negative to go back)
+     * @return a new HashDate
+     */
+    @NonNull
+    public HashDate plusDays(int days) {
+        return days == 0 ? this : new HashDate(mEpochDay + days);
+    }
+
+    /**
+     * Determines if this date is late enough for the 30W Rule to apply.  That
+     * means May 27, 2008 or later; before that, everyone used the same day's
+     * opening.
+     *
+     * @return true if the 30W Rule existed on this date, false if not
+     */
+    public boolean is30WRuleInEffect() {
+        return mEpochDay >= FIRST_30W_DAY;
+    }
+
+    /**
+     * Returns whether this expedition date and the given location use
+     * yesterday's stock.  Globalhashes always do.  Graticules do if they're
+     * east of 30W and the date is after the rule came into being.
+     *
+     * @param packed packed Graticule (see {@link PackedGraticule}), or
+     *               {@link PackedGraticule#GLOBALHASH}
+     * @return true if the day before's stock is used, false if not
+     */
+    public boolean usesPreviousDay(int packed) {
+        return packed == PackedGraticule.GLOBALHASH
+                || (is30WRuleInEffect() && PackedGraticule.uses30WRule(packed));
+    }
+
+    /**
+     * Gets the date from which the stock price is pulled, if this is the
+     * expedition date.  That is, back a day if need be for the 30W Rule, then
+     * rewinding to Friday if it falls on a weekend.  Note that this doesn't
+     * account for holidays when the US stocks aren't trading.
+     *
+     * @param previousDay true to go back a day first (that is, the 30W Rule is
+     *                    in effect), false to not
+     * @return the stock date
+     */
+    @NonNull
+    public HashDate getStockDate(boolean previousDay) {
+        int day = previousDay ? mEpochDay - 1 : mEpochDay;
+
+        // If this new date is a weekend, clamp it back to Friday.  This saves
+        // a few database entries, as the weekend will always be Friday's
+        // value.  Epoch day zero was a Thursday, so counting from there,
+        // Saturday is 2 and Sunday is 3.
+        int sinceThursday = day % 7;
+        if(sinceThursday < 0) sinceThursday += 7;
+
+        if(sinceThursday == 2)
+            // Saturday: Back one day
+            day -= 1;
+        else if(sinceThursday == 3)
+            // SUNDAY SUNDAY SUNDAY!!!!!!: Back two days
+            day -= 2;
+
+        return day == mEpochDay ? this : new HashDate(day);
+    }
+
+    /**
+     * Gets this date as a yyyyMMdd int.  This is how the stock cache database
+     * stores it.
+     *
+     * @return the date as yyyyMMdd
+     */
+    public int toDateInt() {
+        return getYear() * 10000 + getMonth() * 100 + getDayOfMonth();
+    }
+
+    /**
+     * Gets this date as a yyyyMMdd string.
+     *
+     * @return a yyyyMMdd string
+     */
+    @NonNull
+    public String toDateString() {
+        char[] out = new char[8];
+        writeDigits(out, 0, getYear(), 4);
+        writeDigits(out, 4, getMonth(), 2);
+        writeDigits(out, 6, getDayOfMonth(), 2);
+        return new String(out);
+    }
+
+    /**
+     * Gets this date as a yyyy-MM-dd string.
+     *
+     * @return a yyyy-MM-dd string
+     */
+    @NonNull
+    public String toHyphenatedString() {
+        char[] out = new char[10];
+        writeDigits(out, 0, getYear(), 4);
+        out[4] = '-';
+        writeDigits(out, 5, getMonth(), 2);
+        out[7] = '-';
+        writeDigits(out, 8, getDayOfMonth(), 2);
+        return new String(out);
+    }
+
+    private static void writeDigits(char[] out, int offset, int value, int width) {
+        for(int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Makes a Calendar for midnight at the start of this date, in the default
+     * time zone.  Use this at the edges, when something outside the stock
+     * machinery needs a Calendar.
+     *
+     * @return a new Calendar
+     */
+    @NonNull
+    public Calendar toCalendar() {
+        return new GregorianCalendar(getYear(), getMonth() - 1, getDayOfMonth());
+    }
+
+    @Override
+    public int compareTo(@NonNull HashDate other) {
+        return Integer.compare(mEpochDay, other.mEpochDay);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || (o instanceof HashDate && ((HashDate)o).mEpochDay == mEpochDay);
+    }
+
+    @Override
+    public int hashCode() {
+        return mEpochDay;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return toHyphenatedString();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * LatencyHistogram.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A <code>LatencyHistogram</code> keeps a rough idea of how long something
+ * takes.  It's a fixed set of power-of-two buckets (under 1, 1-2, 2-4, and so
+ * on up to "over 2^25"), so recording a sample is a couple of atomic adds and
+ * never allocates or locks anything.  That makes it cheap enough to leave on
+ * all the time.
+ * </p>
+ *
+ * <p>
+ * Samples are in milliseconds unless you say otherwise.  Anything that's
+ * usually well under a millisecond (a database lookup, say) should use
+ * microseconds, or everything just piles up in the first bucket and tells you
+ * nothing.  In milliseconds, the buckets go up to over nine hours; in
+ * microseconds, over half a minute.
+ * </p>
+ *
+ * <p>
+ * Percentiles come out as the upper bound of whatever bucket they land in,
+ * which is as precise as this gets.  For "is the database slow or is the
+ * network slow", that's plenty.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class LatencyHistogram {
+    /**
+     * How many buckets there are.  Bucket 0 is under 1 (of whatever unit),
+     * bucket n is under 2^n, and the last bucket takes everything from
+     * 2^(n-1) on up.
+     */
+    public static final int BUCKETS = 27;
+
+    private final TimeUnit mUnit;
+    private final String mSuffix;
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Makes a new LatencyHistogram that counts in milliseconds.
+     */
+    public LatencyHistogram() {
+        this(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes a new LatencyHistogram that counts in whatever unit you like.
+     * Everything going in and coming out is in that unit.
+     *
+     * @param unit the unit of every sample
+     */
+    public LatencyHistogram(@NonNull TimeUnit unit) {
+        mUnit = unit;
+
+        switch(unit) {
+            case NANOSECONDS:
+                mSuffix = "ns";
+                break;
+            case MICROSECONDS:
+                mSuffix = "us";
+                break;
+            case MILLISECONDS:
+                mSuffix = "ms";
+                break;
+            case SECONDS:
+                mSuffix = "s";
+                break;
+            default:
+                mSuffix = " " + unit.toString().toLowerCase(Locale.US);
+        }
+    }
+
+    /**
+     * @return the unit every sample is in
+     */
+    @NonNull
+    public TimeUnit getUnit() {
+        return mUnit;
+    }
+
+    /**
+     * Records one sample.  Negative times (clock weirdness) count as zero.
+     *
+     * @param time how long it took, in this histogram's unit
+     */
+    public void record(long time) {
+        if(time < 0) time = 0;
+
+        mBuckets.incrementAndGet(bucketFor(time));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(time);
+
+        // Only bother with the compare-and-set dance if this might actually
+        // be a new max, which it usually isn't.
+        long max;
+        while(time > (max = mMax.get())) {
+            if(mMax.compareAndSet(max, time)) break;
+        }
+    }
+
+    /**
+     * Records the time from a {@link System#nanoTime()} reading until now,
+     * converted to this histogram's unit.
+     *
+     * @param startNanos what System.nanoTime() said when it started
+     */
+    public void recordSince(long startNanos) {
+        record(mUnit.convert(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * @return how many samples have been recorded
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return the mean of all samples, or zero if there aren't any
+     */
+    public long getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotal.get() / count;
+    }
+
+    /**
+     * @return the longest sample recorded
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Gets (roughly) the given percentile.  This is the upper bound of the
+     * bucket the percentile falls in, or the max if it's in the last bucket.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return that percentile, in this histogram's unit, or zero if there
+     *         aren't any samples
+     */
+    public long getPercentile(double percentile) {
+        // The buckets and count aren't updated together, so add the buckets
+        // up ourselves rather than trust mCount to match them.
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = mBuckets.get(i);
+            count += snapshot[i];
+        }
+        if(count == 0) return 0;
+
+        long target = (long)Math.ceil(count * Math.max(0.0, Math.min(100.0, percentile)) / 100.0);
+        if(target < 1) target = 1;
+
+        long seen = 0;
+        for(int i = 0; i < BUCKETS - 1; i++) {
+            seen += snapshot[i];
+            if(seen >= target) return Math.min(1L << i, mMax.get());
+        }
+
+        return mMax.get();
+    }
+
+    /**
+     * Clears everything out.  Samples recorded while this is going on might
+     * end up half-counted, but this is for diagnostics, so who cares.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) mBuckets.set(i, 0);
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    private static int bucketFor(long time) {
+        // 0 goes in bucket 0, 1 in bucket 1, 2-3 in bucket 2, 4-7 in bucket 3,
+        // and so on.
+        int bucket = 64 - Long.numberOfLeadingZeros(time);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "n=" + getCount()
+                + " mean=" + getMean() + mSuffix
+                + " p50=" + getPercentile(50) + mSuffix
+                + " p90=" + getPercentile(90) + mSuffix
+                + " p99=" + getPercentile(99) + mSuffix
+                + " max=" + getMax() + mSuffix;
+    }
+}
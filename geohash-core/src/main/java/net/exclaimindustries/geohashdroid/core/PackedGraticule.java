@@ -0,0 +1,201 @@
+/*
+ * PackedGraticule.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+/**
+ * <p>
+ * <code>PackedGraticule</code> is a bunch of static methods for dealing with a
+ * Graticule packed into a single int.  This is the same scheme Graticule has
+ * always used for parceling, just squished down one more step.  Latitude goes
+ * from 0 (89S) to 179 (89N), with 89 being 0S and 90 being 0N.  Longitude goes
+ * from 0 (179W) to 359 (179E), with 179 being 0W and 180 being 0E.  The packed
+ * value is the latitude index times 360, plus the longitude index.
+ * </p>
+ *
+ * <p>
+ * The nice thing about it is that the negative zero graticules fall right
+ * into place, so moving a Graticule around is just addition (and a bit of
+ * wrapping for longitude).  The other nice thing is that it's an int, so you
+ * can use it as a key for anything without making any objects.
+ * </p>
+ *
+ * <p>
+ * The Globalhash doesn't have a Graticule, so it gets {@link #GLOBALHASH}.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class PackedGraticule {
+    /** The packed "Graticule" for a Globalhash.  It's not a real one. */
+    public static final int GLOBALHASH = -1;
+
+    /** How many latitude indices there are (89S through 89N). */
+    public static final int LATITUDE_COUNT = 180;
+    /** How many longitude indices there are (179W through 179E). */
+    public static final int LONGITUDE_COUNT = 360;
+
+    private PackedGraticule() { }
+
+    /**
+     * Packs a Graticule's parts into an int.  Like Graticule itself, this will
+     * clamp anything past 89 latitude or 179 longitude, and ignores negatives
+     * in favor of the south and west flags.
+     *
+     * @param latitude absolute value of the latitude
+     * @param south true if south, false if north
+     * @param longitude absolute value of the longitude
+     * @param west true if west, false if east
+     * @return the packed Graticule
+     */
+    public static int pack(int latitude, boolean south, int longitude, boolean west) {
+        latitude = Math.min(Math.abs(latitude), 89);
+        longitude = Math.min(Math.abs(longitude), 179);
+
+        int latIndex = south ? 89 - latitude : latitude + 90;
+        int lonIndex = west ? 179 - longitude : longitude + 180;
+
+        return fromIndices(latIndex, lonIndex);
+    }
+
+    /**
+     * Packs a Graticule directly from its latitude and longitude indices (see
+     * the class description for what those are).
+     *
+     * @param latIndex latitude index, from 0 to 179
+     * @param lonIndex longitude index, from 0 to 359
+     * @return the packed Graticule
+     */
+    public static int fromIndices(int latIndex, int lonIndex) {
+        return latIndex * LONGITUDE_COUNT + lonIndex;
+    }
+
+    /**
+     * Gets the latitude index (0 for 89S, 179 for 89N) of a packed Graticule.
+     *
+     * @param packed a packed Graticule
+     * @return the latitude index
+     */
+    public static int getLatitudeIndex(int packed) {
+        return packed / LONGITUDE_COUNT;
+    }
+
+    /**
+     * Gets the longitude index (0 for 179W, 359 for 179E) of a packed
+     * Graticule.
+     *
+     * @param packed a packed Graticule
+     * @return the longitude index
+     */
+    public static int getLongitudeIndex(int packed) {
+        return packed % LONGITUDE_COUNT;
+    }
+
+    /**
+     * Gets the absolute value of the latitude of a packed Graticule.
+     *
+     * @param packed a packed Graticule
+     * @return the absolute value of the latitude
+     */
+    public static int getLatitude(int packed) {
+        int latIndex = getLatitudeIndex(packed);
+        return latIndex < 90 ? 89 - latIndex : latIndex - 90;
+    }
+
+    /**
+     * Gets the absolute value of the longitude of a packed Graticule.
+     *
+     * @param packed a packed Graticule
+     * @return the absolute value of the longitude
+     */
+    public static int getLongitude(int packed) {
+        int lonIndex = getLongitudeIndex(packed);
+        return lonIndex < 180 ? 179 - lonIndex : lonIndex - 180;
+    }
+
+    /**
+     * Returns whether a packed Graticule is south of the equator.
+     *
+     * @param packed a packed Graticule
+     * @return true if south, false if north
+     */
+    public static boolean isSouth(int packed) {
+        return getLatitudeIndex(packed) < 90;
+    }
+
+    /**
+     * Returns whether a packed Graticule is west of the Prime Meridian.
+     *
+     * @param packed a packed Graticule
+     * @return true if west, false if east
+     */
+    public static boolean isWest(int packed) {
+        return getLongitudeIndex(packed) < 180;
+    }
+
+    /**
+     * Returns true if the 30W Rule is in effect for this Graticule.  That is,
+     * anything east of 30W.  Same as Graticule, this doesn't care about the
+     * date; the 30W Rule didn't exist before May 27, 2008, so check with
+     * {@link StockDates} for that.
+     *
+     * @param packed a packed Graticule (or {@link #GLOBALHASH}, which always
+     *               counts as 30W)
+     * @return true if the 30W Rule is in effect, false otherwise
+     */
+    public static boolean uses30WRule(int packed) {
+        // Index 150 is 29W.  Anything from there on east is 30W territory.
+        return packed == GLOBALHASH || getLongitudeIndex(packed) >= 150;
+    }
+
+    /**
+     * <p>
+     * Offsets a packed Graticule by however many degrees.  This works exactly
+     * like Graticule.createOffsetFrom: longitude wraps around the planet,
+     * crossing the equator or Prime Meridian goes through the negative zero
+     * graticules, and latitude clamps at 89N and 89S (so don't try to go over
+     * the poles).
+     * </p>
+     *
+     * @param packed a packed Graticule
+     * @param latOff number of degrees north to offset (negative is south)
+     * @param lonOff number of degrees east to offset (negative is west)
+     * @return the new packed Graticule
+     */
+    public static int offset(int packed, int latOff, int lonOff) {
+        int latIndex = getLatitudeIndex(packed) + latOff;
+        if(latIndex < 0) latIndex = 0;
+        if(latIndex >= LATITUDE_COUNT) latIndex = LATITUDE_COUNT - 1;
+
+        int lonIndex = (getLongitudeIndex(packed) + lonOff) % LONGITUDE_COUNT;
+        if(lonIndex < 0) lonIndex += LONGITUDE_COUNT;
+
+        return fromIndices(latIndex, lonIndex);
+    }
+
+    /**
+     * Attaches a latitude fraction to a packed Graticule.
+     *
+     * @param packed a packed Graticule
+     * @param latHash the fractional part of the latitude
+     * @return the full latitude
+     */
+    public static double makeLatitude(int packed, double latHash) {
+        return GeohashMath.toCoordinate(getLatitude(packed), isSouth(packed), latHash);
+    }
+
+    /**
+     * Attaches a longitude fraction to a packed Graticule.
+     *
+     * @param packed a packed Graticule
+     * @param lonHash the fractional part of the longitude
+     * @return the full longitude
+     */
+    public static double makeLongitude(int packed, double lonHash) {
+        return GeohashMath.toCoordinate(getLongitude(packed), isWest(packed), lonHash);
+    }
+}
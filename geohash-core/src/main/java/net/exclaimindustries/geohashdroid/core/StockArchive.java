@@ -0,0 +1,200 @@
+/*
+ * StockArchive.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * A <code>StockArchive</code> is a read-only pile of historical DJIA openings,
+ * in a compact binary format that can be memory-mapped and looked up without
+ * any parsing, searching, or database cursors.  Finding a stock is one bit of
+ * arithmetic and a few byte reads.
+ * </p>
+ *
+ * <p>
+ * The format, all big-endian:
+ * </p>
+ *
+ * <ul>
+ * <li>4 bytes: the magic, "DJIA"</li>
+ * <li>4 bytes: the format version (currently 1)</li>
+ * <li>4 bytes: the epoch day of the first record</li>
+ * <li>4 bytes: how many records there are</li>
+ * <li>4 bytes: how wide each record is, in bytes</li>
+ * <li>12 bytes: reserved, all zeroes</li>
+ * <li>Then, one record per calendar day, starting with the first one.  Each
+ * record is a length byte followed by that many ASCII bytes of the opening
+ * price, exactly as the hash wants it, padded out with zeroes to the record
+ * width.  Days without a price (weekends, holidays) have a length of zero.</li>
+ * </ul>
+ *
+ * <p>
+ * Use {@link StockArchiveBuilder} to make one of these out of a CSV file.
+ * These are immutable and thread-safe; nothing ever moves the buffer's
+ * position.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockArchive {
+    private static final String DEBUG_TAG = "StockArchive";
+
+    // No android.util.Log in here, but java.util.logging ends up in logcat
+    // all the same.
+    private static final Logger mLog = Logger.getLogger(DEBUG_TAG);
+
+    /** The magic number at the start of the file ("DJIA"). */
+    static final int MAGIC = 0x444A4941;
+    /** The version of the format this reads and writes. */
+    static final int VERSION = 1;
+    /** How big the header is, in bytes. */
+    static final int HEADER_SIZE = 32;
+    /**
+     * How wide each record is.  One length byte plus eleven price bytes, which
+     * holds a DJIA of up to 99,999,999.99, which ought to do for a while.
+     */
+    static final int RECORD_WIDTH = 12;
+
+    private final ByteBuffer mBuffer;
+    private final int mFirstDay;
+    private final int mCount;
+    private final int mWidth;
+
+    /**
+     * Makes a StockArchive out of a buffer that already has the archive in it,
+     * starting at position zero.
+     *
+     * @param buffer the archive data
+     * @throws IOException the buffer isn't a valid archive
+     */
+    public StockArchive(@NonNull ByteBuffer buffer) throws IOException {
+        if(buffer.capacity() < HEADER_SIZE)
+            throw new IOException("Stock archive is too short to have a header!");
+
+        if(buffer.getInt(0) != MAGIC)
+            throw new IOException("That's not a stock archive!");
+
+        int version = buffer.getInt(4);
+        if(version != VERSION)
+            throw new IOException("Unknown stock archive version " + version);
+
+        mFirstDay = buffer.getInt(8);
+        mCount = buffer.getInt(12);
+        mWidth = buffer.getInt(16);
+
+        if(mCount < 0 || mWidth < 2 || mWidth > 256
+                || (long)HEADER_SIZE + (long)mCount * mWidth > buffer.capacity())
+            throw new IOException("Stock archive header doesn't match its size!");
+
+        mBuffer = buffer;
+    }
+
+    /**
+     * Memory-maps an archive file and makes a StockArchive out of it.  The
+     * file can be closed (and is) once it's mapped; the mapping sticks around
+     * as long as this object does.
+     *
+     * @param file the archive file
+     * @return a new StockArchive
+     * @throws IOException the file couldn't be read or isn't a valid archive
+     */
+    @NonNull
+    public static StockArchive open(@NonNull File file) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel()) {
+            return new StockArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Gets the stock for the given stock date (that is, already adjusted for
+     * weekends and the 30W Rule).
+     *
+     * @param date the stock date
+     * @return the opening price, or null if the archive doesn't have it
+     */
+    @Nullable
+    public String getStock(@NonNull HashDate date) {
+        return getStock(date.getEpochDay());
+    }
+
+    /**
+     * Gets the stock for the given stock date, as an epoch day.
+     *
+     * @param epochDay the stock date
+     * @return the opening price, or null if the archive doesn't have it
+     */
+    @Nullable
+    public String getStock(int epochDay) {
+        int offset = recordOffset(epochDay);
+        if(offset < 0) return null;
+
+        int length = mBuffer.get(offset) & 0xFF;
+        if(length == 0) return null;
+
+        // A length that runs past the record means the archive's damaged.
+        // Reading on would hand back part of the NEXT record as the price,
+        // and a wrong stock is a wrong hashpoint.  Better to have nothing.
+        if(length > mWidth - 1) {
+            mLog.warning("Stock archive record for epoch day " + epochDay + " claims a length of "
+                    + length + ", but records only hold " + (mWidth - 1) + "!");
+            return null;
+        }
+
+        // It's all ASCII, so each byte is a char.
+        char[] chars = new char[length];
+        for(int i = 0; i < length; i++)
+            chars[i] = (char)(mBuffer.get(offset + 1 + i) & 0xFF);
+        return new String(chars);
+    }
+
+    /**
+     * Returns whether the archive has a stock for the given stock date.
+     *
+     * @param epochDay the stock date
+     * @return true if it's there, false if not
+     */
+    public boolean hasStock(int epochDay) {
+        int offset = recordOffset(epochDay);
+        if(offset < 0) return false;
+
+        int length = mBuffer.get(offset) & 0xFF;
+        return length != 0 && length <= mWidth - 1;
+    }
+
+    /**
+     * @return the first stock date this archive covers
+     */
+    @NonNull
+    public HashDate getFirstDate() {
+        return HashDate.fromEpochDay(mFirstDay);
+    }
+
+    /**
+     * @return the last stock date this archive covers
+     */
+    @NonNull
+    public HashDate getLastDate() {
+        return HashDate.fromEpochDay(mFirstDay + mCount - 1);
+    }
+
+    private int recordOffset(int epochDay) {
+        int index = epochDay - mFirstDay;
+        if(index < 0 || index >= mCount) return -1;
+        return HEADER_SIZE + index * mWidth;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * StockArchiveBuilder.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * <code>StockArchiveBuilder</code> turns a pile of {@link StockQuote}s into a
+ * {@link StockArchive} file.  It's also a command-line tool for doing exactly
+ * that with a CSV file (anything {@link StockCsvReader} can read):
+ * </p>
+ *
+ * <pre>
+ * java net.exclaimindustries.geohashdroid.core.StockArchiveBuilder djia.csv djia.bin
+ * </pre>
+ *
+ * <p>
+ * Or, from the top of the source tree, "./gradlew :geohash-core:buildStockArchive
+ * -Pcsv=djia.csv -Pout=djia.bin".
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockArchiveBuilder {
+    private final TreeMap<Integer, String> mQuotes = new TreeMap<>();
+
+    /**
+     * Adds a quote to the archive-to-be.  If there's already one for that
+     * date, this replaces it.
+     *
+     * @param quote the quote to add
+     * @return this, for chaining
+     * @throws IllegalArgumentException the price won't fit in a record
+     */
+    @NonNull
+    public StockArchiveBuilder add(@NonNull StockQuote quote) {
+        String price = quote.getPrice();
+        if(price.length() > StockArchive.RECORD_WIDTH - 1)
+            throw new IllegalArgumentException("Price " + price + " is too long for the archive!");
+
+        mQuotes.put(quote.getDate().getEpochDay(), price);
+        return this;
+    }
+
+    /**
+     * Adds a whole bunch of quotes.
+     *
+     * @param quotes the quotes to add
+     * @return this, for chaining
+     */
+    @NonNull
+    public StockArchiveBuilder addAll(@NonNull Iterable<StockQuote> quotes) {
+        for(StockQuote quote : quotes) add(quote);
+        return this;
+    }
+
+    /**
+     * @return how many quotes have been added
+     */
+    public int size() {
+        return mQuotes.size();
+    }
+
+    /**
+     * Writes out the archive.  This covers every calendar day from the
+     * earliest quote to the latest.  The stream is not closed.
+     *
+     * @param out where to write it
+     * @throws IOException something went wrong writing
+     * @throws IllegalStateException there's nothing to write
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        if(mQuotes.isEmpty())
+            throw new IllegalStateException("There aren't any quotes to archive!");
+
+        int firstDay = mQuotes.firstKey();
+        int count = mQuotes.lastKey() - firstDay + 1;
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        data.writeInt(StockArchive.MAGIC);
+        data.writeInt(StockArchive.VERSION);
+        data.writeInt(firstDay);
+        data.writeInt(count);
+        data.writeInt(StockArchive.RECORD_WIDTH);
+        data.write(new byte[StockArchive.HEADER_SIZE - 20]);
+
+        byte[] record = new byte[StockArchive.RECORD_WIDTH];
+        byte[] empty = new byte[StockArchive.RECORD_WIDTH];
+        int nextDay = firstDay;
+        for(Map.Entry<Integer, String> entry : mQuotes.entrySet()) {
+            // Empty records for any days in between...
+            for(; nextDay < entry.getKey(); nextDay++)
+                data.write(empty);
+
+            // ...then this one.
+            String price = entry.getValue();
+            Arrays.fill(record, (byte)0);
+            record[0] = (byte)price.length();
+            for(int i = 0; i < price.length(); i++)
+                record[i + 1] = (byte)price.charAt(i);
+            data.write(record);
+            nextDay++;
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Converts a CSV file into an archive file.
+     *
+     * @param args the CSV file, then the archive file
+     * @throws IOException something went wrong reading or writing
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: StockArchiveBuilder <input.csv> <output.bin>");
+            System.exit(1);
+            return;
+        }
+
+        StockArchiveBuilder builder = new StockArchiveBuilder();
+        int skipped;
+
+        try(StockCsvReader reader = new StockCsvReader(
+                new InputStreamReader(new FileInputStream(args[0]), Charset.forName("US-ASCII")))) {
+            builder.addAll(reader);
+            reader.checkError();
+            skipped = reader.getSkippedLines();
+        }
+
+        File outFile = new File(args[1]);
+        try(OutputStream out = new FileOutputStream(outFile)) {
+            builder.writeTo(out);
+        }
+
+        System.out.println("Wrote " + builder.size() + " stocks to " + outFile
+                + " (" + outFile.length() + " bytes), skipped " + skipped + " bad line(s).");
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * StockCsvReader.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * A <code>StockCsvReader</code> reads historical DJIA openings out of a CSV
+ * file, one {@link StockQuote} at a time.  It never holds more than one line
+ * in memory, so it's fine to point it at decades of data and feed the result
+ * straight into a database.
+ * </p>
+ *
+ * <p>
+ * The date has to be in the first column, as yyyy-MM-dd, yyyy/MM/dd, or
+ * yyyyMMdd.  If there's a header line with a column named "Open", that's where
+ * the price comes from; otherwise, it's the second column.  That covers both
+ * the plain date,price files the geohashing folks pass around and the usual
+ * Date,Open,High,Low,Close,... files from financial sites.  Blank lines and
+ * lines starting with # are ignored, and so is any line that doesn't make
+ * sense (see {@link #getSkippedLines()}).
+ * </p>
+ *
+ * <p>
+ * Prices get normalized to exactly two decimal places with no thousands
+ * separators, since that's what the stock servers report and thus what the
+ * hash expects.
+ * </p>
+ *
+ * <p>
+ * This can only be iterated once.  Since Iterators can't throw IOExceptions,
+ * if one happens, iteration just stops and {@link #checkError()} will throw it
+ * afterward.  Check that when you're done.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockCsvReader implements Iterable<StockQuote>, Closeable {
+    private final BufferedReader mReader;
+    private boolean mIterated = false;
+    private int mPriceColumn = 1;
+    private boolean mSawFirstLine = false;
+    private int mSkipped = 0;
+    private IOException mError;
+
+    /**
+     * Makes a new StockCsvReader.  This will wrap the Reader in a
+     * BufferedReader if it isn't one already.
+     *
+     * @param reader where the CSV data comes from
+     */
+    public StockCsvReader(@NonNull Reader reader) {
+        mReader = reader instanceof BufferedReader
+                ? (BufferedReader)reader
+                : new BufferedReader(reader);
+    }
+
+    /**
+     * Gets the one and only Iterator for this reader.
+     *
+     * @return an Iterator of StockQuotes
+     * @throws IllegalStateException this was already called once
+     */
+    @NonNull
+    @Override
+    public Iterator<StockQuote> iterator() {
+        if(mIterated)
+            throw new IllegalStateException("A StockCsvReader can only be read once!");
+        mIterated = true;
+
+        return new Iterator<StockQuote>() {
+            private StockQuote mNext;
+            private boolean mDone = false;
+
+            @Override
+            public boolean hasNext() {
+                if(mNext == null && !mDone) {
+                    mNext = readNext();
+                    if(mNext == null) mDone = true;
+                }
+                return mNext != null;
+            }
+
+            @Override
+            public StockQuote next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                StockQuote toReturn = mNext;
+                mNext = null;
+                return toReturn;
+            }
+        };
+    }
+
+    /**
+     * Gets how many non-blank, non-comment lines have been skipped so far
+     * because they didn't make sense as a date and price.  A header line
+     * doesn't count.
+     *
+     * @return the number of skipped lines
+     */
+    public int getSkippedLines() {
+        return mSkipped;
+    }
+
+    /**
+     * Throws whatever IOException stopped iteration, if any did.
+     *
+     * @throws IOException the read failed at some point
+     */
+    public void checkError() throws IOException {
+        if(mError != null) throw mError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    @Nullable
+    private StockQuote readNext() {
+        try {
+            String line;
+            while((line = mReader.readLine()) != null) {
+                line = line.trim();
+                if(line.isEmpty() || line.charAt(0) == '#') continue;
+
+                List<String> fields = splitLine(line);
+                HashDate date = parseDate(fields.get(0));
+
+                if(date == null) {
+                    // If the very first line's not a date, it's a header.
+                    // Look for the Open column.  Anything else is junk.
+                    if(!mSawFirstLine) {
+                        for(int i = 1; i < fields.size(); i++) {
+                            if(fields.get(i).toLowerCase(Locale.US).equals("open")) {
+                                mPriceColumn = i;
+                                break;
+                            }
+                        }
+                    } else {
+                        mSkipped++;
+                    }
+
+                    mSawFirstLine = true;
+                    continue;
+                }
+                mSawFirstLine = true;
+
+                String price = fields.size() > mPriceColumn
+                        ? normalizePrice(fields.get(mPriceColumn))
+                        : null;
+
+                if(price == null) {
+                    mSkipped++;
+                    continue;
+                }
+
+                return new StockQuote(date, price);
+            }
+        } catch(IOException ioe) {
+            mError = ioe;
+        }
+
+        return null;
+    }
+
+    @NonNull
+    private static List<String> splitLine(@NonNull String line) {
+        // Just enough CSV to handle quoted fields, since some files put
+        // thousands separators in the prices.  Doubled-up quotes inside a
+        // quoted field don't come up with numbers and dates, so those aren't
+        // handled.
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(c == '"') {
+                quoted = !quoted;
+            } else if(c == ',' && !quoted) {
+                fields.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString().trim());
+
+        return fields;
+    }
+
+    @Nullable
+    private static HashDate parseDate(@NonNull String field) {
+        int year, month, day;
+
+        if(field.length() == 10
+                && (field.charAt(4) == '-' || field.charAt(4) == '/')
+                && field.charAt(7) == field.charAt(4)) {
+            year = parseDigits(field, 0, 4);
+            month = parseDigits(field, 5, 7);
+            day = parseDigits(field, 8, 10);
+        } else if(field.length() == 8) {
+            year = parseDigits(field, 0, 4);
+            month = parseDigits(field, 4, 6);
+            day = parseDigits(field, 6, 8);
+        } else {
+            return null;
+        }
+
+        if(year < 0 || month < 1 || month > 12 || day < 1 || day > 31)
+            return null;
+
+        // Make sure the day actually exists in that month (no February 30ths
+        // sneaking in as March 2nds).
+        HashDate date = HashDate.of(year, month, day);
+        return date.getDayOfMonth() == day ? date : null;
+    }
+
+    private static int parseDigits(@NonNull String s, int start, int end) {
+        int result = 0;
+        for(int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if(c < '0' || c > '9') return -1;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    @Nullable
+    private static String normalizePrice(@NonNull String field) {
+        String cleaned = field.replace(",", "");
+        if(cleaned.isEmpty()) return null;
+
+        try {
+            BigDecimal price = new BigDecimal(cleaned);
+            if(price.signum() <= 0) return null;
+            return price.setScale(2, RoundingMode.HALF_UP).toPlainString();
+        } catch(NumberFormatException nfe) {
+            return null;
+        }
+    }
+}
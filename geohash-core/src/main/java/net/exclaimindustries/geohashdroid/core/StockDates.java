@@ -0,0 +1,78 @@
+/*
+ * StockDates.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Calendar;
+
+/**
+ * <code>StockDates</code> works out which day's stock price goes with which
+ * expedition date.  That means the 30W Rule (east of 30W, use yesterday's
+ * opening, but only for dates after the rule was made up) and clamping
+ * weekends back to Friday.  The actual work is done by {@link HashDate}; these
+ * are for when you've got a Calendar on hand, such as anything the user sees.
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockDates {
+    private StockDates() { }
+
+    /**
+     * Determines if the given date is late enough for the 30W Rule to apply.
+     * The rule only applies after May 26, 2008; before that, everyone used the
+     * same day's opening.
+     *
+     * @param c date to check
+     * @return true if the 30W Rule existed on that date, false if not
+     */
+    public static boolean is30WRuleInEffect(@NonNull Calendar c) {
+        return HashDate.fromCalendar(c).is30WRuleInEffect();
+    }
+
+    /**
+     * Returns whether the given expedition date and location use yesterday's
+     * stock.  Globalhashes always do.  Graticules do if they're east of 30W
+     * and the date is after the rule came into being.
+     *
+     * @param c expedition date
+     * @param packed packed Graticule (see {@link PackedGraticule}), or
+     *               {@link PackedGraticule#GLOBALHASH}
+     * @return true if the day before's stock is used, false if not
+     */
+    public static boolean usesPreviousDay(@NonNull Calendar c, int packed) {
+        return HashDate.fromCalendar(c).usesPreviousDay(packed);
+    }
+
+    /**
+     * Returns a calendar representing the date from which the stock price is
+     * pulled.  That is, back a day if need be for the 30W Rule, then rewinding
+     * to Friday if it falls on a weekend.  Note that this doesn't account for
+     * holidays when the US stocks aren't trading.
+     *
+     * @param c date to adjust (this won't be changed)
+     * @param previousDay true to go back a day first (that is, the 30W Rule is
+     *                    in effect), false to not
+     * @return a new adjusted Calendar
+     */
+    @NonNull
+    public static Calendar makeAdjustedCalendar(@NonNull Calendar c, boolean previousDay) {
+        // Clone the calendar.  We don't want to muck about with the original
+        // for various reasons, and this way the time and time zone come along
+        // for the ride.
+        Calendar cal = (Calendar)(c.clone());
+
+        // HashDate knows how far back to go.  Just go that far.
+        HashDate date = HashDate.fromCalendar(c);
+        cal.add(Calendar.DAY_OF_MONTH,
+                date.getStockDate(previousDay).getEpochDay() - date.getEpochDay());
+
+        // There!  Done!
+        return cal;
+    }
+}
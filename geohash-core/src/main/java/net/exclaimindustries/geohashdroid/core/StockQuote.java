@@ -0,0 +1,72 @@
+/*
+ * StockQuote.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A <code>StockQuote</code> is one day's DJIA opening: the stock date (NOT the
+ * expedition date; that is, already adjusted for weekends and the 30W Rule)
+ * and the price, as the exact string that goes into the hash.  These are
+ * immutable.
+ *
+ * @author Nicholas Killewald
+ */
+public final class StockQuote {
+    private final HashDate mDate;
+    private final String mPrice;
+
+    /**
+     * Makes a new StockQuote.  Note that the price has to be exactly what the
+     * stock servers would report (two decimal places, no thousands
+     * separators), else any hash made from it will be wrong.
+     *
+     * @param date the stock date
+     * @param price the opening price
+     */
+    public StockQuote(@NonNull HashDate date, @NonNull String price) {
+        mDate = date;
+        mPrice = price;
+    }
+
+    /**
+     * @return the stock date
+     */
+    @NonNull
+    public HashDate getDate() {
+        return mDate;
+    }
+
+    /**
+     * @return the opening price, as a string
+     */
+    @NonNull
+    public String getPrice() {
+        return mPrice;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof StockQuote)) return false;
+
+        StockQuote other = (StockQuote)o;
+        return mDate.equals(other.mDate) && mPrice.equals(other.mPrice);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mDate.hashCode() + mPrice.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "StockQuote(" + mDate + ": " + mPrice + ")";
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * The pure math behind Geohashing, with no Android anywhere in sight.  This is
+ * where the hash gets computed, where the 30W Rule and weekend adjustments
+ * live, and where Graticules get moved around.  The app's Graticule, Info, and
+ * HashBuilder classes are wrappers around this.
+ *
+ * @author Nicholas Killewald
+ */
+package net.exclaimindustries.geohashdroid.core;
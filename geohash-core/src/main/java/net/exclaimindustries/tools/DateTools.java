@@ -21,6 +21,8 @@ import java.util.Locale;
  */
 public class DateTools {
 
+    // SimpleDateFormat isn't thread-safe, and these are shared by everything,
+    // so each one gets synchronized on when used.
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMdd", Locale.ENGLISH);
     private static final SimpleDateFormat HYPHENATED_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
     private static final SimpleDateFormat WIKI_DATE_FORMAT = new SimpleDateFormat("HH:mm, d MMMM yyyy (z)", Locale.ENGLISH);
@@ -32,7 +34,9 @@ public class DateTools {
      * @return a YYYYMMDD string
      */
     public static String getDateString(@NonNull Calendar c) {
-        return DATE_FORMAT.format(c.getTime());
+        synchronized(DATE_FORMAT) {
+            return DATE_FORMAT.format(c.getTime());
+        }
     }
     
     /**
@@ -44,7 +48,9 @@ public class DateTools {
     public static String getHyphenatedDateString(@NonNull Calendar c) {
         // Turns out the SimpleDateFormat class does all the tricky work for me.
         // Huh.
-        return HYPHENATED_DATE_FORMAT.format(c.getTime());
+        synchronized(HYPHENATED_DATE_FORMAT) {
+            return HYPHENATED_DATE_FORMAT.format(c.getTime());
+        }
     }
     
     /**
@@ -60,7 +66,9 @@ public class DateTools {
      * @return a wiki-signature-like date string
      */
     public static String getWikiDateString(@NonNull Calendar c) {
-        return WIKI_DATE_FORMAT.format(c.getTime());
+        synchronized(WIKI_DATE_FORMAT) {
+            return WIKI_DATE_FORMAT.format(c.getTime());
+        }
     }
 
     /**
@@ -48,4 +48,37 @@ public class HexFraction {
         // Finally, return at will!
         return curvalue.doubleValue();
     }
+
+    /**
+     * <p>
+     * Converts 64 bits, taken as the first sixteen hexits of a fraction (that
+     * is, an unsigned value over 2^64), into its double counterpart.  This
+     * gives the same answer {@link #calculate(String)} would give for the
+     * sixteen-character hex string of those bits, just without the String or
+     * any BigDecimals.
+     * </p>
+     *
+     * <p>
+     * The top bit is treated as a magnitude bit, not a sign bit, so don't try
+     * to pass a negative number in expecting a negative fraction out.
+     * </p>
+     *
+     * @param bits the bits of the fraction, most significant hexit first
+     * @return a double value of the fraction, in the range [0, 1]
+     */
+    public static double fromBits(long bits) {
+        // A double only holds 53 bits of mantissa, so anything bigger than that
+        // has to be rounded.  Java's long-to-double conversion rounds properly
+        // (to nearest, ties to even), but it thinks the top bit is a sign.  So,
+        // shift one bit off, keeping it around as a sticky bit so the rounding
+        // still comes out the same as if we had all 64 bits, then double it
+        // back up.  Multiplying by a power of two afterward is exact.
+        double value;
+        if(bits >= 0)
+            value = (double)bits;
+        else
+            value = (double)((bits >>> 1) | (bits & 1)) * 2.0;
+
+        return value * 0x1.0p-64;
+    }
 }
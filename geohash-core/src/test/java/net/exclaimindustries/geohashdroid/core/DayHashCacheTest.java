@@ -0,0 +1,285 @@
+/*
+ * DayHashCacheTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks {@link DayHashCache} against a LinkedHashMap in access order, which
+ * is the plain, slow way to write an LRU cache.  If the two ever disagree on
+ * what's in there or what the counters say, the open addressing is broken
+ * somewhere.
+ */
+public class DayHashCacheTest {
+    /**
+     * The model.  It counts its own evictions so they can be compared, too.
+     */
+    private static class Model extends LinkedHashMap<Integer, DayHash> {
+        int maxSize;
+        long hits;
+        long misses;
+        long evictions;
+
+        Model(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        DayHash lookUp(int key) {
+            DayHash hash = get(key);
+            if(hash == null) misses++;
+            else hits++;
+            return hash;
+        }
+
+        void resize(int newSize) {
+            maxSize = newSize;
+            trim();
+        }
+
+        void trim() {
+            while(size() > maxSize) {
+                remove(keySet().iterator().next());
+                evictions++;
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, DayHash> eldest) {
+            if(size() > maxSize) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static DayHash makeHash(int epochDay, boolean uses30W) {
+        return new DayHash(epochDay, uses30W, epochDay / 100000.0, uses30W ? 0.5 : 0.25);
+    }
+
+    private static void assertSameStats(Model model, DayHashCache cache) {
+        DayHashCache.Stats stats = cache.getStats();
+        assertEquals(model.hits, stats.getHits());
+        assertEquals(model.misses, stats.getMisses());
+        assertEquals(model.evictions, stats.getEvictions());
+        assertEquals(model.size(), stats.getSize());
+        assertEquals(model.maxSize, stats.getMaxSize());
+    }
+
+    @Test
+    public void matchesTheModel() {
+        // A small key space against a small cache, so there's plenty of
+        // hitting, missing, evicting, and probing going on.  Every so often
+        // the size changes, too.
+        Random random = new Random(8675309L);
+        DayHashCache cache = new DayHashCache(8);
+        Model model = new Model(8);
+
+        for(int i = 0; i < 200000; i++) {
+            int epochDay = 14000 + random.nextInt(40);
+            boolean uses30W = random.nextBoolean();
+            int key = DayHash.makeKey(epochDay, uses30W);
+            int op = random.nextInt(100);
+
+            if(op < 45) {
+                DayHash expected = model.lookUp(key);
+                DayHash actual = cache.get(key);
+                if(expected == null)
+                    assertNull("op " + i, actual);
+                else
+                    assertSame("op " + i, expected, actual);
+            } else if(op < 99) {
+                DayHash hash = makeHash(epochDay, uses30W);
+                model.put(key, hash);
+                cache.put(hash);
+            } else {
+                int newSize = 1 + random.nextInt(20);
+                model.resize(newSize);
+                cache.setMaxSize(newSize);
+            }
+
+            assertSameStats(model, cache);
+        }
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        DayHashCache cache = new DayHashCache(3);
+        DayHash a = makeHash(1, false);
+        DayHash b = makeHash(2, false);
+        DayHash c = makeHash(3, false);
+        DayHash d = makeHash(4, false);
+
+        cache.put(a);
+        cache.put(b);
+        cache.put(c);
+
+        // Touching a makes b the oldest...
+        assertSame(a, cache.get(a.getKey()));
+        cache.put(d);
+
+        // ...so b's the one that goes.
+        assertNull(cache.get(b.getKey()));
+        assertSame(a, cache.get(a.getKey()));
+        assertSame(c, cache.get(c.getKey()));
+        assertSame(d, cache.get(d.getKey()));
+
+        DayHashCache.Stats stats = cache.getStats();
+        assertEquals(4, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(3, stats.getSize());
+    }
+
+    @Test
+    public void puttingTheSameKeyReplacesIt() {
+        DayHashCache cache = new DayHashCache(2);
+        DayHash first = makeHash(10, true);
+        DayHash second = new DayHash(10, true, 0.125, 0.875);
+        DayHash other = makeHash(11, true);
+
+        cache.put(first);
+        cache.put(other);
+        cache.put(second);
+
+        // Replacing it doesn't take up another entry, and it freshens it up,
+        // so other is the oldest now.
+        assertEquals(2, cache.size());
+        cache.put(makeHash(12, true));
+        assertNull(cache.get(other.getKey()));
+        assertSame(second, cache.get(first.getKey()));
+        assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    /**
+     * Finds epoch days (with the 30W flag off) whose keys land in the given
+     * home slot of a sixteen-slot table.  This has to match how DayHashCache
+     * hashes, which is why it's this test's business to know that a cache of
+     * four gets sixteen slots.
+     */
+    private static List<DayHash> hashesHomedAt(int home, int count) {
+        List<DayHash> toReturn = new ArrayList<>();
+        for(int epochDay = 1; toReturn.size() < count; epochDay++) {
+            int key = DayHash.makeKey(epochDay, false);
+            if((key * 0x9E3779B9) >>> 28 == home)
+                toReturn.add(makeHash(epochDay, false));
+        }
+        return toReturn;
+    }
+
+    @Test
+    public void deletingInsideAProbeChain() {
+        // Three keys homed at slot 15 fill 15, then wrap around to 0 and 1.
+        // A fourth, homed at 0, has to go past all of them to 2.
+        List<DayHash> chain = hashesHomedAt(15, 3);
+        DayHash atZero = hashesHomedAt(0, 1).get(0);
+
+        DayHashCache cache = new DayHashCache(4);
+        for(DayHash hash : chain) cache.put(hash);
+        cache.put(atZero);
+
+        // Now evict the head of the chain by putting in something new.  The
+        // rest of the chain has to get shifted back so it's still findable.
+        DayHash newcomer = hashesHomedAt(7, 1).get(0);
+        cache.put(newcomer);
+
+        assertNull(cache.get(chain.get(0).getKey()));
+        assertSame(chain.get(1), cache.get(chain.get(1).getKey()));
+        assertSame(chain.get(2), cache.get(chain.get(2).getKey()));
+        assertSame(atZero, cache.get(atZero.getKey()));
+        assertSame(newcomer, cache.get(newcomer.getKey()));
+
+        // Evicting from the middle of the chain has to work, too.  Everything
+        // got touched above in order, so chain.get(1) is the oldest.
+        cache.put(hashesHomedAt(15, 4).get(3));
+        assertNull(cache.get(chain.get(1).getKey()));
+        assertSame(chain.get(2), cache.get(chain.get(2).getKey()));
+        assertSame(atZero, cache.get(atZero.getKey()));
+        assertNotNull(cache.get(hashesHomedAt(15, 4).get(3).getKey()));
+    }
+
+    @Test
+    public void shrinkingKeepsTheNewest() {
+        DayHashCache cache = new DayHashCache(6);
+        for(int i = 1; i <= 6; i++) cache.put(makeHash(i, false));
+
+        // 1 becomes the newest; 2 and 3 are the oldest.
+        cache.get(DayHash.makeKey(1, false));
+        cache.setMaxSize(4);
+
+        assertEquals(4, cache.size());
+        assertEquals(4, cache.getMaxSize());
+        assertEquals(2, cache.getStats().getEvictions());
+        assertNull(cache.get(DayHash.makeKey(2, false)));
+        assertNull(cache.get(DayHash.makeKey(3, false)));
+
+        // The order has to survive the shrink, too: 4 is the oldest now.
+        cache.put(makeHash(7, false));
+        assertNull(cache.get(DayHash.makeKey(4, false)));
+        for(int i : new int[] {1, 5, 6, 7})
+            assertNotNull(cache.get(DayHash.makeKey(i, false)));
+    }
+
+    @Test
+    public void growingKeepsEverything() {
+        DayHashCache cache = new DayHashCache(2);
+        cache.put(makeHash(1, false));
+        cache.put(makeHash(2, false));
+        cache.setMaxSize(40);
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getStats().getEvictions());
+
+        // There's room for 38 more before anything goes, and 1 goes first.
+        for(int i = 3; i <= 40; i++) cache.put(makeHash(i, false));
+        assertEquals(0, cache.getStats().getEvictions());
+        cache.put(makeHash(41, false));
+        assertNull(cache.get(DayHash.makeKey(1, false)));
+        assertNotNull(cache.get(DayHash.makeKey(2, false)));
+    }
+
+    @Test
+    public void clearingKeepsTheCounters() {
+        DayHashCache cache = new DayHashCache(1);
+        cache.put(makeHash(1, false));
+        cache.put(makeHash(2, false));
+        cache.get(DayHash.makeKey(2, false));
+        cache.get(DayHash.makeKey(1, false));
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get(DayHash.makeKey(2, false)));
+
+        DayHashCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getEvictions());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAnEmptyCache() {
+        new DayHashCache(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesShrinkingToNothing() {
+        new DayHashCache(4).setMaxSize(0);
+    }
+}
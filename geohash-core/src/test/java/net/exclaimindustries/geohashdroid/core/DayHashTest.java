@@ -0,0 +1,65 @@
+/*
+ * DayHashTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link DayHash}: that one day's fractions turn into the right point
+ * in any Graticule (and the Globalhash), and that the keys keep the 30W Rule
+ * apart.
+ */
+public class DayHashTest {
+    @Test
+    public void onePairOfFractionsForEveryGraticule() {
+        double[] out = new double[2];
+        GeohashMath.computeFractions(2005, 5, 26, "10458.68", out);
+        DayHash hash = new DayHash(HashDate.of(2005, 5, 26).getEpochDay(), false, out[0], out[1]);
+
+        // The comic's San Francisco example...
+        int sanFrancisco = PackedGraticule.pack(37, false, 122, true);
+        assertEquals(37.857713, hash.getLatitude(sanFrancisco), 0.0000005);
+        assertEquals(-122.544543, hash.getLongitude(sanFrancisco), 0.0000005);
+
+        // ...and the same fractions anywhere else, exactly.
+        int sydney = PackedGraticule.pack(33, true, 151, false);
+        assertEquals(-(33 + out[0]), hash.getLatitude(sydney), 0.0);
+        assertEquals(151 + out[1], hash.getLongitude(sydney), 0.0);
+    }
+
+    @Test
+    public void globalhashCoversTheWorld() {
+        DayHash hash = new DayHash(0, true, 0.5, 0.25);
+
+        assertEquals(0.0, hash.getLatitude(PackedGraticule.GLOBALHASH), 0.0);
+        assertEquals(-90.0, hash.getLongitude(PackedGraticule.GLOBALHASH), 0.0);
+    }
+
+    @Test
+    public void keysKeepThe30WRuleApart() {
+        int day = HashDate.of(2020, 4, 15).getEpochDay();
+
+        assertTrue(DayHash.makeKey(day, true) != DayHash.makeKey(day, false));
+        assertTrue(DayHash.makeKey(day, false) != DayHash.makeKey(day + 1, false));
+        assertEquals(DayHash.makeKey(day, true), new DayHash(day, true, 0.1, 0.2).getKey());
+    }
+
+    @Test
+    public void equalityIsByValue() {
+        DayHash a = new DayHash(100, true, 0.1, 0.2);
+
+        assertEquals(a, new DayHash(100, true, 0.1, 0.2));
+        assertEquals(a.hashCode(), new DayHash(100, true, 0.1, 0.2).hashCode());
+        assertNotEquals(a, new DayHash(100, false, 0.1, 0.2));
+        assertNotEquals(a, new DayHash(100, true, 0.1, 0.3));
+    }
+}
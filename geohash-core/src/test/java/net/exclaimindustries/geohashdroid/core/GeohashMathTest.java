@@ -0,0 +1,87 @@
+/*
+ * GeohashMathTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.HexFraction;
+import net.exclaimindustries.tools.MD5Tools;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link GeohashMath} comes out bit-for-bit the same as the old
+ * String-and-BigDecimal way of doing it (MD5Tools, then HexFraction on each
+ * half of the hex string).  "Close enough" isn't; two people at the same
+ * hashpoint need to be at the SAME hashpoint.
+ */
+public class GeohashMathTest {
+    @Test
+    public void matchesTheComic() {
+        // The original example, straight from xkcd #426.
+        double[] out = new double[2];
+        GeohashMath.computeFractions(2005, 5, 26, "10458.68", out);
+
+        assertEquals(0.857713, out[0], 0.0000005);
+        assertEquals(0.544543, out[1], 0.0000005);
+        assertBitsEqual(HexFraction.calculate("db9318c2259923d0"), out[0]);
+        assertBitsEqual(HexFraction.calculate("8b672cb305440f97"), out[1]);
+    }
+
+    @Test
+    public void matchesTheSlowWay() {
+        Random random = new Random(426);
+        double[] out = new double[2];
+
+        for(int i = 0; i < 5000; i++) {
+            int year = 1928 + random.nextInt(150);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            String stock = String.format(Locale.US, "%d.%02d", random.nextInt(40000), random.nextInt(100));
+
+            GeohashMath.computeFractions(year, month, day, stock, out);
+
+            String md5 = MD5Tools.MD5hash(String.format(Locale.US, "%4d-%02d-%02d-%s", year, month, day, stock));
+            assertBitsEqual(HexFraction.calculate(md5.substring(0, 16)), out[0]);
+            assertBitsEqual(HexFraction.calculate(md5.substring(16, 32)), out[1]);
+        }
+    }
+
+    @Test
+    public void outputNeedsRoomForBoth() {
+        try {
+            GeohashMath.computeFractions(2005, 5, 26, "10458.68", new double[1]);
+            fail("One double shouldn't have been enough!");
+        } catch(IllegalArgumentException iae) {
+            // Good.
+        }
+    }
+
+    @Test
+    public void coordinates() {
+        // Negative zeroes get the fraction on the negative side.
+        assertEquals(-0.25, GeohashMath.toCoordinate(0, true, 0.25), 0.0);
+        assertEquals(0.25, GeohashMath.toCoordinate(0, false, 0.25), 0.0);
+        assertEquals(-122.5, GeohashMath.toCoordinate(122, true, 0.5), 0.0);
+
+        // The Globalhash stretches it over the whole planet.
+        assertEquals(-90.0, GeohashMath.toGlobalLatitude(0.0), 0.0);
+        assertEquals(0.0, GeohashMath.toGlobalLatitude(0.5), 0.0);
+        assertEquals(-180.0, GeohashMath.toGlobalLongitude(0.0), 0.0);
+        assertEquals(90.0, GeohashMath.toGlobalLongitude(0.75), 0.0);
+    }
+
+    private static void assertBitsEqual(double expected, double actual) {
+        assertEquals(expected + " vs. " + actual,
+                Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * HashDateTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link HashDate}'s hand-rolled calendar math against
+ * java.time.LocalDate, which we can't use in the app itself (not on API 16,
+ * anyway), but which is perfectly good for telling us if we got it wrong.
+ */
+public class HashDateTest {
+    // Wide enough to cover every century rule in both directions.
+    private static final LocalDate START = LocalDate.of(1600, 1, 1);
+    private static final LocalDate END = LocalDate.of(2401, 1, 1);
+
+    private static final LocalDate RULE_30W = LocalDate.of(2008, 5, 27);
+
+    @Test
+    public void epochDaysMatchLocalDate() {
+        for(LocalDate ld = START; ld.isBefore(END); ld = ld.plusDays(1)) {
+            int epochDay = (int)ld.toEpochDay();
+
+            HashDate fromDay = HashDate.fromEpochDay(epochDay);
+            assertEquals(ld.toString(), ld.getYear(), fromDay.getYear());
+            assertEquals(ld.toString(), ld.getMonthValue(), fromDay.getMonth());
+            assertEquals(ld.toString(), ld.getDayOfMonth(), fromDay.getDayOfMonth());
+
+            assertEquals(ld.toString(), epochDay,
+                    HashDate.toEpochDay(ld.getYear(), ld.getMonthValue(), ld.getDayOfMonth()));
+            assertEquals(ld.toString(), fromDay,
+                    HashDate.of(ld.getYear(), ld.getMonthValue(), ld.getDayOfMonth()));
+        }
+    }
+
+    @Test
+    public void dayOfWeekMatchesLocalDate() {
+        for(LocalDate ld = START; ld.isBefore(END); ld = ld.plusDays(1)) {
+            assertEquals(ld.toString(), toCalendarDay(ld.getDayOfWeek()),
+                    HashDate.fromEpochDay((int)ld.toEpochDay()).getDayOfWeek());
+        }
+    }
+
+    @Test
+    public void stockDateMatchesLocalDate() {
+        LocalDate start = LocalDate.of(2008, 1, 1);
+        LocalDate end = LocalDate.of(2009, 1, 1);
+
+        for(LocalDate ld = start; ld.isBefore(end); ld = ld.plusDays(1)) {
+            HashDate date = HashDate.fromEpochDay((int)ld.toEpochDay());
+
+            assertEquals(ld.toString(), expectedStockDate(ld), toLocalDate(date.getStockDate(false)));
+            assertEquals(ld.toString(), expectedStockDate(ld.minusDays(1)), toLocalDate(date.getStockDate(true)));
+        }
+
+        // Nothing to adjust should hand back the very same object.
+        HashDate wednesday = HashDate.of(2020, 4, 15);
+        assertSame(wednesday, wednesday.getStockDate(false));
+    }
+
+    @Test
+    public void thirtyWestRuleStartsOnTheRightDay() {
+        HashDate before = HashDate.fromEpochDay((int)RULE_30W.minusDays(1).toEpochDay());
+        HashDate on = HashDate.fromEpochDay((int)RULE_30W.toEpochDay());
+
+        assertFalse(before.is30WRuleInEffect());
+        assertTrue(on.is30WRuleInEffect());
+
+        // Berlin's east of 30W, Boston isn't.
+        int berlin = PackedGraticule.pack(52, false, 13, false);
+        int boston = PackedGraticule.pack(42, false, 71, true);
+
+        assertFalse(before.usesPreviousDay(berlin));
+        assertTrue(on.usesPreviousDay(berlin));
+        assertFalse(on.usesPreviousDay(boston));
+
+        // Globalhashes always do, rule or no rule.
+        assertTrue(before.usesPreviousDay(PackedGraticule.GLOBALHASH));
+    }
+
+    @Test
+    public void conversionsRoundTrip() {
+        HashDate date = HashDate.of(2005, 5, 26);
+
+        assertEquals(20050526, date.toDateInt());
+        assertEquals("20050526", date.toDateString());
+        assertEquals("2005-05-26", date.toHyphenatedString());
+        assertEquals(date, HashDate.fromDateInt(20050526));
+        assertEquals(date.plusDays(7), HashDate.of(2005, 6, 2));
+
+        Calendar cal = date.toCalendar();
+        assertEquals(2005, cal.get(Calendar.YEAR));
+        assertEquals(Calendar.MAY, cal.get(Calendar.MONTH));
+        assertEquals(26, cal.get(Calendar.DAY_OF_MONTH));
+        assertEquals(date, HashDate.fromCalendar(cal));
+
+        // Whatever time zone the Calendar's in, it's the date on it that
+        // counts.
+        Calendar tokyo = new GregorianCalendar(TimeZone.getTimeZone("Asia/Tokyo"));
+        tokyo.clear();
+        tokyo.set(2005, Calendar.MAY, 26, 23, 59);
+        assertEquals(date, HashDate.fromCalendar(tokyo));
+    }
+
+    @Test
+    public void ordersByDate() {
+        HashDate earlier = HashDate.of(1999, 12, 31);
+        HashDate later = HashDate.of(2000, 1, 1);
+
+        assertTrue(earlier.compareTo(later) < 0);
+        assertTrue(later.compareTo(earlier) > 0);
+        assertEquals(0, later.compareTo(HashDate.fromEpochDay(later.getEpochDay())));
+    }
+
+    private static LocalDate expectedStockDate(LocalDate ld) {
+        if(ld.getDayOfWeek() == DayOfWeek.SATURDAY) return ld.minusDays(1);
+        if(ld.getDayOfWeek() == DayOfWeek.SUNDAY) return ld.minusDays(2);
+        return ld;
+    }
+
+    private static LocalDate toLocalDate(HashDate date) {
+        return LocalDate.ofEpochDay(date.getEpochDay());
+    }
+
+    private static int toCalendarDay(DayOfWeek dow) {
+        // DayOfWeek goes Monday (1) to Sunday (7); Calendar goes Sunday (1) to
+        // Saturday (7).
+        return dow.getValue() % 7 + 1;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * LatencyHistogramTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link LatencyHistogram}'s buckets, percentiles, and units.
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void percentilesComeFromBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // 90 fast ones, 9 slower ones, and one that's just awful.
+        for(int i = 0; i < 90; i++) histogram.record(3);
+        for(int i = 0; i < 9; i++) histogram.record(100);
+        histogram.record(5000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals((90 * 3 + 9 * 100 + 5000) / 100, histogram.getMean());
+        assertEquals(5000, histogram.getMax());
+
+        // 3 lands in the 2-4 bucket, 100 in the 64-128 bucket.
+        assertEquals(4, histogram.getPercentile(50));
+        assertEquals(4, histogram.getPercentile(90));
+        assertEquals(128, histogram.getPercentile(99));
+        assertEquals(5000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void hugeSamplesLandInTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        histogram.record(-5);
+
+        // The negative one counts as zero, which is in the "under 1" bucket.
+        assertEquals(Long.MAX_VALUE / 2, histogram.getMax());
+        assertEquals(Long.MAX_VALUE / 2, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void microsecondsForTheFastStuff() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MICROSECONDS);
+        assertEquals(TimeUnit.MICROSECONDS, histogram.getUnit());
+
+        // Anything under a millisecond used to all come out as zero.  Now
+        // 250us is 250us (well, 256us or under, since that's the bucket, but
+        // nothing's been bigger than 250).
+        histogram.record(250);
+        histogram.record(100);
+        assertEquals(128, histogram.getPercentile(50));
+        assertEquals(250, histogram.getPercentile(100));
+        assertTrue(histogram.toString().contains("max=250us"));
+
+        long start = System.nanoTime();
+        Thread.sleep(2);
+        histogram.recordSince(start);
+        assertTrue(histogram.getMax() >= 2000);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals("n=0 mean=0ms p50=0ms p90=0ms p99=0ms max=0ms", histogram.toString());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * PackedGraticuleTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link PackedGraticule}, mostly for the edges of the world: the
+ * negative zeroes, the antimeridian, and the poles.
+ */
+public class PackedGraticuleTest {
+    @Test
+    public void packRoundTrips() {
+        for(int lat = 0; lat < 90; lat++) {
+            for(int lon = 0; lon < 180; lon++) {
+                for(int which = 0; which < 4; which++) {
+                    boolean south = (which & 1) != 0;
+                    boolean west = (which & 2) != 0;
+
+                    int packed = PackedGraticule.pack(lat, south, lon, west);
+                    assertEquals(lat, PackedGraticule.getLatitude(packed));
+                    assertEquals(lon, PackedGraticule.getLongitude(packed));
+                    assertEquals(south, PackedGraticule.isSouth(packed));
+                    assertEquals(west, PackedGraticule.isWest(packed));
+                    assertEquals(packed, PackedGraticule.fromIndices(
+                            PackedGraticule.getLatitudeIndex(packed),
+                            PackedGraticule.getLongitudeIndex(packed)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void negativeZeroesAreTheirOwnGraticules() {
+        assertTrue(PackedGraticule.pack(0, true, 0, false) != PackedGraticule.pack(0, false, 0, false));
+        assertTrue(PackedGraticule.pack(0, false, 0, true) != PackedGraticule.pack(0, false, 0, false));
+
+        // One step north of 0S is 0N, one step east of 0W is 0E.
+        assertEquals(PackedGraticule.pack(0, false, 0, false),
+                PackedGraticule.offset(PackedGraticule.pack(0, true, 0, false), 1, 0));
+        assertEquals(PackedGraticule.pack(0, false, 0, false),
+                PackedGraticule.offset(PackedGraticule.pack(0, false, 0, true), 0, 1));
+
+        // And the hash hangs off the right side of zero.
+        int southWest = PackedGraticule.pack(0, true, 0, true);
+        assertEquals(-0.25, PackedGraticule.makeLatitude(southWest, 0.25), 0.0);
+        assertEquals(-0.75, PackedGraticule.makeLongitude(southWest, 0.75), 0.0);
+    }
+
+    @Test
+    public void offsetWrapsAcrossTheAntimeridian() {
+        int farEast = PackedGraticule.pack(10, false, 179, false);
+        int farWest = PackedGraticule.pack(10, false, 179, true);
+
+        assertEquals(farWest, PackedGraticule.offset(farEast, 0, 1));
+        assertEquals(farEast, PackedGraticule.offset(farWest, 0, -1));
+        assertEquals(PackedGraticule.pack(10, false, 178, true), PackedGraticule.offset(farEast, 0, 2));
+
+        // All the way around gets right back where we started.
+        assertEquals(farEast, PackedGraticule.offset(farEast, 0, PackedGraticule.LONGITUDE_COUNT));
+        assertEquals(farEast, PackedGraticule.offset(farEast, 0, -PackedGraticule.LONGITUDE_COUNT));
+    }
+
+    @Test
+    public void offsetUndoes() {
+        for(int lonIndex = 0; lonIndex < PackedGraticule.LONGITUDE_COUNT; lonIndex++) {
+            int packed = PackedGraticule.fromIndices(45, lonIndex);
+            for(int off = -3; off <= 3; off++) {
+                int moved = PackedGraticule.offset(packed, off, off);
+                assertEquals(packed, PackedGraticule.offset(moved, -off, -off));
+            }
+        }
+    }
+
+    @Test
+    public void offsetClampsAtThePoles() {
+        int north = PackedGraticule.pack(89, false, 5, false);
+        int south = PackedGraticule.pack(89, true, 5, true);
+
+        assertEquals(north, PackedGraticule.offset(north, 1, 0));
+        assertEquals(north, PackedGraticule.offset(north, 50, 0));
+        assertEquals(south, PackedGraticule.offset(south, -1, 0));
+        assertEquals(south, PackedGraticule.offset(south, -50, 0));
+
+        // Clamping the latitude doesn't stop the longitude from moving.
+        assertEquals(PackedGraticule.pack(89, false, 6, false), PackedGraticule.offset(north, 3, 1));
+
+        // Nor does pack() let anything past 89 through.
+        assertEquals(north, PackedGraticule.pack(95, false, 5, false));
+    }
+
+    @Test
+    public void thirtyWestRule() {
+        // 30W itself isn't east of 30W, but 29W is.
+        assertFalse(PackedGraticule.uses30WRule(PackedGraticule.pack(50, false, 30, true)));
+        assertTrue(PackedGraticule.uses30WRule(PackedGraticule.pack(50, false, 29, true)));
+        assertTrue(PackedGraticule.uses30WRule(PackedGraticule.pack(50, false, 0, true)));
+        assertTrue(PackedGraticule.uses30WRule(PackedGraticule.pack(50, false, 179, false)));
+        assertFalse(PackedGraticule.uses30WRule(PackedGraticule.pack(50, false, 179, true)));
+        assertTrue(PackedGraticule.uses30WRule(PackedGraticule.GLOBALHASH));
+    }
+}
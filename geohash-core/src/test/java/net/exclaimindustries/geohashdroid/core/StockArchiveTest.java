@@ -0,0 +1,170 @@
+/*
+ * StockArchiveTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that whatever {@link StockArchiveBuilder} writes out,
+ * {@link StockArchive} reads back in the same, and that it won't read
+ * anything it shouldn't.
+ */
+public class StockArchiveTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    // A Thursday, a Friday, then (after a weekend) a Tuesday, since Monday
+    // was Memorial Day.
+    private static final List<StockQuote> QUOTES = Arrays.asList(
+            new StockQuote(HashDate.of(2005, 5, 26), "10458.68"),
+            new StockQuote(HashDate.of(2005, 5, 27), "10542.55"),
+            new StockQuote(HashDate.of(2005, 5, 31), "10467.03"));
+
+    @Test
+    public void roundTrip() throws IOException {
+        StockArchive archive = new StockArchive(ByteBuffer.wrap(build(QUOTES)));
+        checkArchive(archive);
+    }
+
+    @Test
+    public void roundTripThroughAFile() throws IOException {
+        File file = mFolder.newFile("djia.bin");
+        try(OutputStream out = new FileOutputStream(file)) {
+            out.write(build(QUOTES));
+        }
+
+        checkArchive(StockArchive.open(file));
+    }
+
+    @Test
+    public void laterQuotesReplaceEarlierOnes() throws IOException {
+        StockArchiveBuilder builder = new StockArchiveBuilder()
+                .addAll(QUOTES)
+                .add(new StockQuote(HashDate.of(2005, 5, 27), "1.00"));
+        assertEquals(3, builder.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        builder.writeTo(bytes);
+
+        StockArchive archive = new StockArchive(ByteBuffer.wrap(bytes.toByteArray()));
+        assertEquals("1.00", archive.getStock(HashDate.of(2005, 5, 27)));
+    }
+
+    @Test
+    public void refusesPricesThatDoNotFit() {
+        try {
+            new StockArchiveBuilder().add(new StockQuote(HashDate.of(2005, 5, 26), "123456789.00"));
+            fail("That price shouldn't have fit!");
+        } catch(IllegalArgumentException iae) {
+            // Good.
+        }
+    }
+
+    @Test
+    public void refusesAnEmptyArchive() throws IOException {
+        try {
+            new StockArchiveBuilder().writeTo(new ByteArrayOutputStream());
+            fail("There shouldn't be any archive with nothing in it!");
+        } catch(IllegalStateException ise) {
+            // Good.
+        }
+    }
+
+    @Test
+    public void refusesBadHeaders() throws IOException {
+        byte[] good = build(QUOTES);
+
+        // Wrong magic.
+        byte[] bad = good.clone();
+        bad[0] = 'X';
+        assertRefused(bad);
+
+        // Wrong version.
+        bad = good.clone();
+        bad[7] = 2;
+        assertRefused(bad);
+
+        // More records than there's room for.
+        assertRefused(Arrays.copyOf(good, good.length - 1));
+
+        // Not even a whole header.
+        assertRefused(Arrays.copyOf(good, StockArchive.HEADER_SIZE - 1));
+    }
+
+    @Test
+    public void ignoresRecordsLongerThanTheyCanBe() throws IOException {
+        byte[] data = build(QUOTES);
+
+        // The second record is the 27th.  Make it claim to run into the
+        // 28th.
+        int offset = StockArchive.HEADER_SIZE + StockArchive.RECORD_WIDTH;
+        data[offset] = StockArchive.RECORD_WIDTH;
+
+        StockArchive archive = new StockArchive(ByteBuffer.wrap(data));
+        assertNull(archive.getStock(HashDate.of(2005, 5, 27)));
+        assertFalse(archive.hasStock(HashDate.of(2005, 5, 27).getEpochDay()));
+
+        // The others are still fine.
+        assertEquals("10458.68", archive.getStock(HashDate.of(2005, 5, 26)));
+        assertEquals("10467.03", archive.getStock(HashDate.of(2005, 5, 31)));
+    }
+
+    private static void checkArchive(StockArchive archive) {
+        assertEquals(HashDate.of(2005, 5, 26), archive.getFirstDate());
+        assertEquals(HashDate.of(2005, 5, 31), archive.getLastDate());
+
+        for(StockQuote quote : QUOTES) {
+            assertTrue(archive.hasStock(quote.getDate().getEpochDay()));
+            assertEquals(quote.getPrice(), archive.getStock(quote.getDate()));
+        }
+
+        // The gaps are there, just empty.
+        for(int day = 28; day <= 30; day++) {
+            HashDate date = HashDate.of(2005, 5, day);
+            assertFalse(archive.hasStock(date.getEpochDay()));
+            assertNull(archive.getStock(date));
+        }
+
+        // And off either end is nothing at all.
+        assertNull(archive.getStock(HashDate.of(2005, 5, 25)));
+        assertNull(archive.getStock(HashDate.of(2005, 6, 1)));
+        assertFalse(archive.hasStock(HashDate.of(2005, 6, 1).getEpochDay()));
+    }
+
+    private static void assertRefused(byte[] data) {
+        try {
+            new StockArchive(ByteBuffer.wrap(data));
+            fail("That archive shouldn't have been accepted!");
+        } catch(IOException ioe) {
+            // Good.
+        }
+    }
+
+    private static byte[] build(List<StockQuote> quotes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new StockArchiveBuilder().addAll(quotes).writeTo(bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * StockCsvReaderTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link StockCsvReader} gets the right prices out of the sorts
+ * of CSV files people actually have lying around, and throws out the lines it
+ * should.
+ */
+public class StockCsvReaderTest {
+    @Test
+    public void plainDateAndPrice() throws IOException {
+        StockCsvReader reader = new StockCsvReader(new StringReader(
+                "2005-05-26,10458.68\n"
+                        + "2005/05/27,10542.55\n"
+                        + "20050531,10467.03\n"));
+
+        List<StockQuote> quotes = readAll(reader);
+        assertEquals(3, quotes.size());
+        assertQuote(quotes.get(0), 2005, 5, 26, "10458.68");
+        assertQuote(quotes.get(1), 2005, 5, 27, "10542.55");
+        assertQuote(quotes.get(2), 2005, 5, 31, "10467.03");
+        assertEquals(0, reader.getSkippedLines());
+    }
+
+    @Test
+    public void headerPicksTheOpenColumn() throws IOException {
+        StockCsvReader reader = new StockCsvReader(new StringReader(
+                "Date,Close,High,Low,OPEN,Volume\n"
+                        + "2005-05-26,10500.00,10600.00,10400.00,10458.68,1000\n"));
+
+        List<StockQuote> quotes = readAll(reader);
+        assertEquals(1, quotes.size());
+        assertQuote(quotes.get(0), 2005, 5, 26, "10458.68");
+
+        // The header isn't a skipped line.
+        assertEquals(0, reader.getSkippedLines());
+    }
+
+    @Test
+    public void quotedFieldsAndNormalizing() throws IOException {
+        StockCsvReader reader = new StockCsvReader(new StringReader(
+                "\"2005-05-26\",\"10,458.68\"\n"
+                        + "2005-05-27, 10542.5 \n"
+                        + "2005-05-31,10467.025\n"
+                        + "2005-06-01,10467\n"));
+
+        List<StockQuote> quotes = readAll(reader);
+        assertEquals(4, quotes.size());
+        assertEquals("10458.68", quotes.get(0).getPrice());
+        assertEquals("10542.50", quotes.get(1).getPrice());
+        assertEquals("10467.03", quotes.get(2).getPrice());
+        assertEquals("10467.00", quotes.get(3).getPrice());
+    }
+
+    @Test
+    public void badLinesGetSkipped() throws IOException {
+        StockCsvReader reader = new StockCsvReader(new StringReader(
+                "# Some historical DJIA openings\n"
+                        + "\n"
+                        + "2005-05-26,10458.68\n"
+                        + "this is not a stock\n"
+                        + "2005-05-27\n"
+                        + "2005-05-28,-5.00\n"
+                        + "2005-05-29,0\n"
+                        + "2005-05-30,lots\n"
+                        + "2005-13-01,100.00\n"
+                        + "2005-02-30,100.00\n"
+                        + "2005-02-29,100.00\n"
+                        + "   \n"
+                        + "2004-02-29,10583.92\n"));
+
+        List<StockQuote> quotes = readAll(reader);
+        assertEquals(2, quotes.size());
+        assertQuote(quotes.get(0), 2005, 5, 26, "10458.68");
+        assertQuote(quotes.get(1), 2004, 2, 29, "10583.92");
+
+        // Comments and blank lines don't count, everything else does.
+        assertEquals(8, reader.getSkippedLines());
+    }
+
+    @Test
+    public void onlyIteratesOnce() {
+        StockCsvReader reader = new StockCsvReader(new StringReader("2005-05-26,10458.68\n"));
+        reader.iterator();
+
+        try {
+            reader.iterator();
+            fail("A second iterator shouldn't have been allowed!");
+        } catch(IllegalStateException ise) {
+            // Good.
+        }
+    }
+
+    @Test
+    public void readErrorsStopAndGetReported() {
+        final IOException boom = new IOException("Boom!");
+        Reader broken = new Reader() {
+            private boolean mOnce = false;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if(mOnce) throw boom;
+                mOnce = true;
+
+                String line = "2005-05-26,10458.68\n";
+                line.getChars(0, line.length(), cbuf, off);
+                return line.length();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        StockCsvReader reader = new StockCsvReader(broken);
+        List<StockQuote> quotes = new ArrayList<>();
+        for(StockQuote quote : reader) quotes.add(quote);
+
+        assertEquals(1, quotes.size());
+        try {
+            reader.checkError();
+            fail("The read error should've come back out!");
+        } catch(IOException ioe) {
+            assertSame(boom, ioe);
+        }
+    }
+
+    private static List<StockQuote> readAll(StockCsvReader reader) throws IOException {
+        List<StockQuote> quotes = new ArrayList<>();
+        for(StockQuote quote : reader) quotes.add(quote);
+        reader.checkError();
+        return quotes;
+    }
+
+    private static void assertQuote(StockQuote quote, int year, int month, int day, String price) {
+        assertEquals(HashDate.of(year, month, day), quote.getDate());
+        assertEquals(price, quote.getPrice());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * StockDatesTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link StockDates}: the 30W Rule's start date, and which day's stock
+ * goes with which expedition date.
+ */
+public class StockDatesTest {
+    private static final TimeZone BERLIN_TIME = TimeZone.getTimeZone("Europe/Berlin");
+
+    @Test
+    public void thirtyWestRuleStartsAfterMay26th2008() {
+        assertFalse(StockDates.is30WRuleInEffect(makeCalendar(2008, Calendar.MAY, 26, 23)));
+        assertTrue(StockDates.is30WRuleInEffect(makeCalendar(2008, Calendar.MAY, 27, 0)));
+
+        int berlin = PackedGraticule.pack(52, false, 13, false);
+        int boston = PackedGraticule.pack(42, false, 71, true);
+
+        assertFalse(StockDates.usesPreviousDay(makeCalendar(2008, Calendar.MAY, 26, 12), berlin));
+        assertTrue(StockDates.usesPreviousDay(makeCalendar(2008, Calendar.MAY, 27, 12), berlin));
+        assertFalse(StockDates.usesPreviousDay(makeCalendar(2008, Calendar.MAY, 27, 12), boston));
+        assertTrue(StockDates.usesPreviousDay(makeCalendar(2005, Calendar.MAY, 26, 12), PackedGraticule.GLOBALHASH));
+    }
+
+    @Test
+    public void weekendsGoBackToFriday() {
+        // May 2008: the 23rd is a Friday.
+        Calendar friday = makeCalendar(2008, Calendar.MAY, 23, 10);
+        Calendar saturday = makeCalendar(2008, Calendar.MAY, 24, 10);
+        Calendar sunday = makeCalendar(2008, Calendar.MAY, 25, 10);
+        Calendar monday = makeCalendar(2008, Calendar.MAY, 26, 10);
+        Calendar tuesday = makeCalendar(2008, Calendar.MAY, 27, 10);
+
+        assertSameDay(friday, StockDates.makeAdjustedCalendar(friday, false));
+        assertSameDay(friday, StockDates.makeAdjustedCalendar(saturday, false));
+        assertSameDay(friday, StockDates.makeAdjustedCalendar(sunday, false));
+        assertSameDay(monday, StockDates.makeAdjustedCalendar(monday, false));
+
+        // With the 30W Rule, Saturday, Sunday, AND Monday all use Friday, and
+        // Tuesday uses Monday.
+        assertSameDay(friday, StockDates.makeAdjustedCalendar(saturday, true));
+        assertSameDay(friday, StockDates.makeAdjustedCalendar(sunday, true));
+        assertSameDay(friday, StockDates.makeAdjustedCalendar(monday, true));
+        assertSameDay(monday, StockDates.makeAdjustedCalendar(tuesday, true));
+    }
+
+    @Test
+    public void adjustingLeavesTheOriginalAlone() {
+        Calendar sunday = makeCalendar(2008, Calendar.MAY, 25, 10);
+        long before = sunday.getTimeInMillis();
+
+        Calendar adjusted = StockDates.makeAdjustedCalendar(sunday, true);
+
+        assertNotSame(sunday, adjusted);
+        assertEquals(before, sunday.getTimeInMillis());
+
+        // The time of day and time zone come along.
+        assertEquals(BERLIN_TIME, adjusted.getTimeZone());
+        assertEquals(10, adjusted.get(Calendar.HOUR_OF_DAY));
+    }
+
+    private static Calendar makeCalendar(int year, int month, int day, int hour) {
+        Calendar cal = new GregorianCalendar(BERLIN_TIME);
+        cal.clear();
+        cal.set(year, month, day, hour, 0);
+        return cal;
+    }
+
+    private static void assertSameDay(Calendar expected, Calendar actual) {
+        assertEquals(expected.get(Calendar.YEAR), actual.get(Calendar.YEAR));
+        assertEquals(expected.get(Calendar.MONTH), actual.get(Calendar.MONTH));
+        assertEquals(expected.get(Calendar.DAY_OF_MONTH), actual.get(Calendar.DAY_OF_MONTH));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * HexFractionTest.java
+ * Copyright (C)2020 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.tools;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link HexFraction#fromBits(long)} rounds exactly the way
+ * {@link HexFraction#calculate(String)} does, especially in the spots where a
+ * long-to-double conversion likes to go wrong: the top bit, and ties in the
+ * bits that don't fit in a double.
+ */
+public class HexFractionTest {
+    @Test
+    public void edgeCases() {
+        long[] cases = {
+                0L,
+                1L,
+                0x7FFFFFFFFFFFFFFFL,
+                0x8000000000000000L,
+                0x8000000000000001L,
+                0xFFFFFFFFFFFFFFFFL,
+                // Exactly halfway between two doubles, both ways to even...
+                0x0000000000000400L | (1L << 53),
+                0x0000000000000C00L | (1L << 53),
+                0x8000000000000400L,
+                0x8000000000000C00L,
+                // ...and just past halfway, where only the dropped bit says so.
+                0x8000000000000401L,
+                0x8000000000000402L,
+        };
+
+        for(long bits : cases) check(bits);
+    }
+
+    @Test
+    public void randomBits() {
+        Random random = new Random(16);
+        for(int i = 0; i < 20000; i++) check(random.nextLong());
+    }
+
+    private static void check(long bits) {
+        String hex = String.format("%016x", bits);
+        assertEquals(hex, Double.doubleToLongBits(HexFraction.calculate(hex)),
+                Double.doubleToLongBits(HexFraction.fromBits(bits)));
+    }
+}